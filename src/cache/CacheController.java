@@ -2,81 +2,286 @@ package cache;
 
 
 import java.util.ArrayList;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Remembers the unique IDs of serviced requests for CacheEntry.VALID_PERIOD so that retransmitted
+ * requests are not applied twice. IDs are kept in a concurrent hash table (lookups and inserts are O(1)
+ * and only lock the bin of the ID) and are expired by a timing wheel.
+ * The encoded response of a request can be stored with its ID so that a retransmitted request is answered
+ * with the original response. Stored responses are limited by a memory budget and the oldest ones are evicted first.
+ */
 public class CacheController {
 
+    public static final int DEFAULT_CACHE_SIZE = 200000;
+    public static final long DEFAULT_MAX_RESPONSE_BYTES = 16 * 1024 * 1024;
+    public static final long TICK_MILLIS = 100;
+
+    // Bytes counted for a stored response in addition to its length (array header)
+    public static final int RESPONSE_OVERHEAD_BYTES = 16;
 
     private static CacheController singletonInstance;
-    private ArrayList<CacheEntry> cache;
-    private int cacheSize;
 
-    private ReentrantReadWriteLock cacheListLock;
+    private final ConcurrentHashMap<CacheEntry, Record> cache;
+    private final TimingWheel<CacheEntry> expiryWheel;
+    private final int cacheSize;
+
+    // Records holding a response, oldest first
+    private final ConcurrentLinkedQueue<Record> responseQueue;
+    private final AtomicLong responseBytes;
+    private final long maxResponseBytes;
+
+    // Statistics
+    private final AtomicLong duplicateCount;
+    private final AtomicLong overflowCount;
+    private final AtomicLong replayCount;
+    private final AtomicLong evictedResponseCount;
+
+
+    /**
+     * Time a unique ID was added and the response of its request
+     */
+    private class Record {
+        private final long timestamp;
+        private final AtomicReference<byte[]> response;
+
+        private Record(long timestamp) {
+            this.timestamp = timestamp;
+            this.response = new AtomicReference<byte[]>();
+        }
+
+        private boolean setResponse(byte[] responseToStore) {
+            if(!response.compareAndSet(null, responseToStore)) {
+                return false;
+            }
+            responseBytes.addAndGet(responseToStore.length + RESPONSE_OVERHEAD_BYTES);
+            return true;
+        }
+
+        private boolean releaseResponse() {
+            byte[] released = response.getAndSet(null);
+            if(released == null) {
+                return false;
+            }
+            responseBytes.addAndGet(-(released.length + RESPONSE_OVERHEAD_BYTES));
+            return true;
+        }
+    }
 
 
     protected CacheController(int cacheSize) {
-        cache = new ArrayList<CacheEntry>();
-        cacheListLock = new ReentrantReadWriteLock();
+        this(cacheSize, DEFAULT_MAX_RESPONSE_BYTES);
+    }
+
+
+    protected CacheController(int cacheSize, long maxResponseBytes) {
+        if(cacheSize <= 0 || maxResponseBytes < 0) {
+            throw new IllegalArgumentException();
+        }
+
+        this.cache = new ConcurrentHashMap<CacheEntry, Record>();
+        // One slot more than the valid period spans, plus the slot that is being filled
+        this.expiryWheel = new TimingWheel<CacheEntry>((int) (CacheEntry.VALID_PERIOD / TICK_MILLIS) + 2, TICK_MILLIS,
+                System.currentTimeMillis());
         this.cacheSize = cacheSize;
+        this.responseQueue = new ConcurrentLinkedQueue<Record>();
+        this.responseBytes = new AtomicLong();
+        this.maxResponseBytes = maxResponseBytes;
+        this.duplicateCount = new AtomicLong();
+        this.overflowCount = new AtomicLong();
+        this.replayCount = new AtomicLong();
+        this.evictedResponseCount = new AtomicLong();
     }
 
 
-    public static CacheController getInstance() {
+    public static synchronized CacheController getInstance() {
         if(singletonInstance == null) {
-            singletonInstance = new CacheController(50);
+            singletonInstance = new CacheController(DEFAULT_CACHE_SIZE);
         }
 
         return singletonInstance;
     }
 
 
-    public CacheEntry isUniqueIDInCache(byte[] uniqueID) {
-        cacheListLock.readLock().lock();
-        try {
-            CacheEntry cacheEntryToCheck = new CacheEntry(uniqueID);
-            for(CacheEntry cacheEntry : cache) {
-                if(cacheEntry.equals(cacheEntryToCheck)) {
-                    return cacheEntry;
-                }
+    /**
+     * Checks if a unique ID was added within the valid period
+     * @param uniqueID - Unique ID of a request
+     * @return - True if the ID is in the cache and not expired
+     */
+    public boolean isUniqueIDInCache(byte[] uniqueID) {
+        Record record = cache.get(new CacheEntry(uniqueID));
+        return record != null && !isExpired(record, System.currentTimeMillis());
+    }
+
+
+    /**
+     * Adds a unique ID unless it was already added within the valid period
+     * @param uniqueID - Unique ID of a request
+     * @return - True if the ID was added, false if the request is a duplicate
+     */
+    public boolean addIfAbsent(byte[] uniqueID) {
+        long now = System.currentTimeMillis();
+        if(expiryWheel.isAdvanceDue(now)) {
+            removeExpiredEntries(now);
+        }
+
+        CacheEntry entry = new CacheEntry(uniqueID);
+        Record record = new Record(now);
+        Record existing = cache.get(entry);
+        if(existing == null) {
+            // Stop remembering new IDs when full. Duplicates of them are serviced again.
+            if(cache.size() >= cacheSize) {
+                overflowCount.incrementAndGet();
+                return true;
+            }
+            existing = cache.putIfAbsent(entry, record);
+            if(existing == null) {
+                expiryWheel.schedule(entry, now + CacheEntry.VALID_PERIOD);
+                return true;
             }
-            return null;
-        } finally {
-            cacheListLock.readLock().unlock();
         }
-    }
 
+        // Replace an expired entry that has not been removed yet
+        if(isExpired(existing, now) && cache.replace(entry, existing, record)) {
+            existing.releaseResponse();
+            expiryWheel.schedule(entry, now + CacheEntry.VALID_PERIOD);
+            return true;
+        }
+
+        duplicateCount.incrementAndGet();
+        return false;
+    }
 
-    public void addToCache(byte[] uniqueID) {
 
-        removeAllExpiredEntries();
+    /**
+     * Stores the encoded response of a request whose unique ID was added with addIfAbsent.
+     * Older responses are evicted if the memory budget would be exceeded.
+     * @param uniqueID - Unique ID of the request
+     * @param response - Encoded response (not copied, must not be changed afterwards)
+     */
+    public void setResponse(byte[] uniqueID, byte[] response) {
+        Record record = cache.get(new CacheEntry(uniqueID));
+        if(record == null || response.length + RESPONSE_OVERHEAD_BYTES > maxResponseBytes || !record.setResponse(response)) {
+            return;
+        }
+        responseQueue.offer(record);
 
-        cacheListLock.writeLock().lock();
-        try {
-            if(cache.size() >= cacheSize) {
-                cache.remove(0);
+        // Drop the oldest responses until the budget is met. Records whose response was already released are skipped.
+        Record oldest;
+        while(responseBytes.get() > maxResponseBytes && (oldest = responseQueue.poll()) != null) {
+            if(oldest.releaseResponse()) {
+                evictedResponseCount.incrementAndGet();
             }
-            cache.add(new CacheEntry(uniqueID));
-        } finally {
-            cacheListLock.writeLock().unlock();
+        }
+
+        // Forget records at the head of the queue that expired
+        while((oldest = responseQueue.peek()) != null && oldest.response.get() == null) {
+            responseQueue.remove(oldest);
         }
     }
 
 
+    /**
+     * Gets the stored response of a request that was already serviced
+     * @param uniqueID - Unique ID of the request
+     * @return - Encoded response, or null if the ID is unknown, expired, still being serviced or its response was evicted
+     */
+    public byte[] getResponse(byte[] uniqueID) {
+        Record record = cache.get(new CacheEntry(uniqueID));
+        if(record == null || isExpired(record, System.currentTimeMillis())) {
+            return null;
+        }
+        byte[] response = record.response.get();
+        if(response != null) {
+            replayCount.incrementAndGet();
+        }
+        return response;
+    }
 
 
+    /**
+     * Removes all expired entries. Called periodically, since addIfAbsent only moves the wheel while IDs are added.
+     */
     public void removeAllExpiredEntries() {
-        cacheListLock.writeLock().lock();
-        try {
-            for(CacheEntry cacheEntry : cache) {
-                if(cacheEntry.isExpired()) {
-                    cache.remove(cacheEntry);
+        removeExpiredEntries(System.currentTimeMillis());
+    }
+
+
+    /**
+     * Removes the entries that expired by a time and releases their responses
+     * @param now - Current time
+     */
+    protected void removeExpiredEntries(long now) {
+        ArrayList<CacheEntry> candidates = new ArrayList<CacheEntry>();
+        if(!expiryWheel.advance(now, candidates)) {
+            return;
+        }
+
+        for(CacheEntry entry : candidates) {
+            Record record = cache.get(entry);
+            if(record == null) {
+                continue;
+            }
+            if(isExpired(record, now)) {
+                // Only removes the entry if it was not replaced in the meantime
+                if(cache.remove(entry, record)) {
+                    record.releaseResponse();
                 }
+            } else {
+                expiryWheel.schedule(entry, record.timestamp + CacheEntry.VALID_PERIOD);
             }
-        } finally {
-            cacheListLock.writeLock().unlock();
         }
     }
 
 
+    private static boolean isExpired(Record record, long now) {
+        return now - record.timestamp >= CacheEntry.VALID_PERIOD;
+    }
+
+
+    public int getEntryCount() {
+        return cache.size();
+    }
+
 
+    public long getDuplicateCount() {
+        return duplicateCount.get();
+    }
+
+
+    public long getOverflowCount() {
+        return overflowCount.get();
+    }
+
+
+    /**
+     * Gets the memory used by stored responses as counted against the budget
+     * @return - Bytes
+     */
+    public long getResponseBytes() {
+        return responseBytes.get();
+    }
+
+
+    public long getReplayCount() {
+        return replayCount.get();
+    }
+
+
+    public long getEvictedResponseCount() {
+        return evictedResponseCount.get();
+    }
+
+
+    /**
+     * Prints the cache statistics
+     */
+    public void printStatistics() {
+        System.out.println("Request cache: entries=" + getEntryCount() + " duplicates=" + getDuplicateCount() +
+                " overflows=" + getOverflowCount() + " replays=" + getReplayCount() + " responseBytes=" + getResponseBytes() +
+                " evictedResponses=" + getEvictedResponseCount());
+    }
 }
@@ -1,41 +1,41 @@
 package cache;
 
-import java.util.Arrays;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
+/**
+ * Unique ID of a request held in the cache. The 16 ID bytes are kept as two longs.
+ */
 public class CacheEntry {
 
     public static final long VALID_PERIOD = 15000;
+    public static final int UNIQUE_ID_SIZE_BYTES = 16;
 
-    private long timestamp;
-    private byte[] uniqueID;
+    private final long high;
+    private final long low;
 
-    public CacheEntry(byte[] uniqueID){
-        this.uniqueID = uniqueID;
-        timestamp = System.currentTimeMillis();
+    public CacheEntry(byte[] uniqueID) {
+        if(uniqueID == null || uniqueID.length != UNIQUE_ID_SIZE_BYTES) {
+            throw new IllegalArgumentException();
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(uniqueID).order(ByteOrder.LITTLE_ENDIAN);
+        this.low = buffer.getLong(0);
+        this.high = buffer.getLong(8);
     }
 
-    public boolean isExpired(){
-        return (System.currentTimeMillis() - timestamp >= VALID_PERIOD);
+    @Override
+    public int hashCode() {
+        long hash = high * 31 + low;
+        return (int) (hash ^ (hash >>> 32));
     }
 
     @Override
     public boolean equals(Object obj) {
-        if (obj == null) { return false; }
-
-        if(!(obj instanceof CacheEntry)) { return false; }
-
         if (this == obj) { return true; }
 
-        if(this == null || obj == null) {
-            return false;
-        }
+        if(!(obj instanceof CacheEntry)) { return false; }
 
         final CacheEntry other = (CacheEntry) obj;
-        if(Arrays.equals(other.uniqueID, this.uniqueID)) {
-            return true;
-        } else {
-            return false;
-        }
-
+        return other.high == this.high && other.low == this.low;
     }
 }
@@ -0,0 +1,177 @@
+package cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hierarchical timing wheel for deadlines far beyond one turn of a single wheel. Level 0 has a slot per tick,
+ * every level above it has slots that span a full turn of the level below. An item is put on the lowest level
+ * whose turn reaches its deadline and moves down a level each time the wheel enters the slot it sits in,
+ * so scheduling is O(1), an item is moved at most once per level, and advancing only touches the items of the
+ * slots that were passed. Deadlines beyond the top level wait in its last slot and are placed again from there.
+ * Like TimingWheel, an item scheduled while another thread moves the wheel may land in a slot that was just passed
+ * and is then handed back one turn of its level late.
+ * @param <T> - Type of the scheduled items
+ */
+public class HierarchicalTimingWheel<T> {
+
+    private static class Timer<T> {
+        private final T item;
+        private final long tick;
+
+        private Timer(T item, long tick) {
+            this.item = item;
+            this.tick = tick;
+        }
+    }
+
+    private final ConcurrentLinkedQueue<Timer<T>>[][] slots;
+    private final int slotBits;
+    private final long tickMillis;
+    private final ReentrantLock advanceLock;
+
+    // Next tick whose level 0 slot has not been emptied yet
+    private volatile long currentTick;
+
+
+    /**
+     * Creates a wheel
+     * @param slotCount - Slots per level, a power of two
+     * @param levelCount - Number of levels, the wheel covers slotCount ^ levelCount ticks
+     * @param tickMillis - Time covered by a level 0 slot
+     * @param startMillis - Current time
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public HierarchicalTimingWheel(int slotCount, int levelCount, long tickMillis, long startMillis) {
+        if(slotCount <= 1 || Integer.bitCount(slotCount) != 1 || levelCount <= 0 ||
+                (long) Integer.numberOfTrailingZeros(slotCount) * levelCount >= Long.SIZE - 1 || tickMillis <= 0) {
+            throw new IllegalArgumentException();
+        }
+
+        slots = new ConcurrentLinkedQueue[levelCount][slotCount];
+        for(int level = 0; level < levelCount; level++) {
+            for(int i = 0; i < slotCount; i++) {
+                slots[level][i] = new ConcurrentLinkedQueue<Timer<T>>();
+            }
+        }
+        this.slotBits = Integer.numberOfTrailingZeros(slotCount);
+        this.tickMillis = tickMillis;
+        this.advanceLock = new ReentrantLock();
+        this.currentTick = startMillis / tickMillis;
+    }
+
+
+    /**
+     * Schedules an item. Items with a deadline in the past are handed back on the next advance.
+     * @param item - Item to schedule
+     * @param deadlineMillis - Time at which the item expires
+     */
+    public void schedule(T item, long deadlineMillis) {
+        long now = currentTick;
+        place(new Timer<T>(item, Math.max(deadlineMillis / tickMillis, now)), now);
+    }
+
+
+    /**
+     * Puts a timer on the lowest level whose turn, counted from a tick, reaches the tick of the timer
+     */
+    private void place(Timer<T> timer, long fromTick) {
+        long tick = Math.max(timer.tick, fromTick);
+        int slotCount = getSlotCount();
+        int topLevel = slots.length - 1;
+        for(int level = 0; level <= topLevel; level++) {
+            int shift = level * slotBits;
+            long slotDistance = (tick >>> shift) - (fromTick >>> shift);
+            if(slotDistance < slotCount) {
+                slots[level][(int) ((tick >>> shift) & (slotCount - 1))].offer(timer);
+                return;
+            }
+        }
+        // Beyond the top level, wait in its last slot and be placed again once the wheel gets there
+        long parkingSlot = (fromTick >>> (topLevel * slotBits)) + slotCount - 1;
+        slots[topLevel][(int) (parkingSlot & (slotCount - 1))].offer(timer);
+    }
+
+
+    /**
+     * Checks if the wheel has slots to empty at the given time
+     * @param nowMillis - Current time
+     * @return - True if advance would pass at least one tick
+     */
+    public boolean isAdvanceDue(long nowMillis) {
+        return nowMillis / tickMillis > currentTick;
+    }
+
+
+    /**
+     * Moves the wheel to the given time and collects the items whose deadline was passed.
+     * Returns immediately if another thread is moving the wheel.
+     * @param nowMillis - Current time
+     * @param expired - Collection the expired items are added to
+     * @return - False if another thread was moving the wheel
+     */
+    public boolean advance(long nowMillis, Collection<T> expired) {
+        if(!advanceLock.tryLock()) {
+            return false;
+        }
+
+        try {
+            long targetTick = nowMillis / tickMillis;
+            List<Timer<T>> moved = new ArrayList<Timer<T>>();
+            for(long tick = currentTick; tick < targetTick; tick++) {
+                // Entering a slot of an upper level moves its timers down, starting at the top so they can cascade
+                for(int level = slots.length - 1; level > 0; level--) {
+                    int shift = level * slotBits;
+                    if((tick & ((1L << shift) - 1)) == 0) {
+                        drain(slots[level][(int) ((tick >>> shift) & (getSlotCount() - 1))], moved);
+                        for(Timer<T> timer : moved) {
+                            place(timer, tick);
+                        }
+                        moved.clear();
+                    }
+                }
+
+                drain(slots[0][(int) (tick & (getSlotCount() - 1))], moved);
+                for(Timer<T> timer : moved) {
+                    if(timer.tick <= tick) {
+                        expired.add(timer.item);
+                    } else {
+                        // Only timers due at this tick map to its slot, but an item is never handed back early
+                        place(timer, tick + 1);
+                    }
+                }
+                moved.clear();
+                currentTick = tick + 1;
+            }
+            return true;
+        } finally {
+            advanceLock.unlock();
+        }
+    }
+
+
+    private static <T> void drain(ConcurrentLinkedQueue<Timer<T>> slot, List<Timer<T>> destination) {
+        Timer<T> timer;
+        while((timer = slot.poll()) != null) {
+            destination.add(timer);
+        }
+    }
+
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+
+    public int getSlotCount() {
+        return slots[0].length;
+    }
+
+
+    public int getLevelCount() {
+        return slots.length;
+    }
+}
@@ -0,0 +1,102 @@
+package cache;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hashed timing wheel. Items are put into the slot of the tick their deadline falls in and are
+ * handed back once the wheel has moved past that tick, so scheduling is O(1) and expiring
+ * only touches the items of the slots that were passed.
+ * Deadlines must lie less than (slotCount - 1) ticks ahead of the current time.
+ * @param <T> - Type of the scheduled items
+ */
+public class TimingWheel<T> {
+
+    private final ConcurrentLinkedQueue<T>[] slots;
+    private final long tickMillis;
+    private final ReentrantLock advanceLock;
+
+    // Next tick whose slot has not been emptied yet
+    private volatile long currentTick;
+
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TimingWheel(int slotCount, long tickMillis, long startMillis) {
+        if(slotCount <= 1 || tickMillis <= 0) {
+            throw new IllegalArgumentException();
+        }
+
+        slots = new ConcurrentLinkedQueue[slotCount];
+        for(int i = 0; i < slotCount; i++) {
+            slots[i] = new ConcurrentLinkedQueue<T>();
+        }
+        this.tickMillis = tickMillis;
+        this.advanceLock = new ReentrantLock();
+        this.currentTick = startMillis / tickMillis;
+    }
+
+
+    /**
+     * Schedules an item. Items with a deadline in the past are handed back on the next advance.
+     * @param item - Item to schedule
+     * @param deadlineMillis - Time at which the item expires
+     */
+    public void schedule(T item, long deadlineMillis) {
+        long tick = Math.max(deadlineMillis / tickMillis, currentTick);
+        slots[(int) (tick % slots.length)].offer(item);
+    }
+
+
+    /**
+     * Checks if the wheel has slots to empty at the given time
+     * @param nowMillis - Current time
+     * @return - True if advance would pass at least one tick
+     */
+    public boolean isAdvanceDue(long nowMillis) {
+        return nowMillis / tickMillis > currentTick;
+    }
+
+
+    /**
+     * Moves the wheel to the given time and collects the items of all slots that were passed.
+     * Returns immediately if another thread is moving the wheel.
+     * @param nowMillis - Current time
+     * @param expired - Collection the items of the passed slots are added to
+     * @return - False if another thread was moving the wheel
+     */
+    public boolean advance(long nowMillis, Collection<T> expired) {
+        if(!advanceLock.tryLock()) {
+            return false;
+        }
+
+        try {
+            long targetTick = nowMillis / tickMillis;
+            // A full turn empties every slot, there is no need to go around more than once
+            long tick = Math.max(currentTick, targetTick - slots.length);
+            for(; tick < targetTick; tick++) {
+                ConcurrentLinkedQueue<T> slot = slots[(int) (tick % slots.length)];
+                T item;
+                while((item = slot.poll()) != null) {
+                    expired.add(item);
+                }
+            }
+            if(targetTick > currentTick) {
+                currentTick = targetTick;
+            }
+            return true;
+        } finally {
+            advanceLock.unlock();
+        }
+    }
+
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+
+    public int getSlotCount() {
+        return slots.length;
+    }
+}
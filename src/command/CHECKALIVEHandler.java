@@ -27,8 +27,7 @@ public class CHECKALIVEHandler {
         // Build response message
         byte[] newPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.PRED_ALIVE_REP);
         try {
-            byte[] newMessage = Message.buildMessage(header, newPayload);
-            packetToSend = new DatagramPacket(newMessage, newMessage.length, incomingPacket.getAddress(), incomingPacket.getPort());
+            packetToSend = Message.buildPacket(header, newPayload, incomingPacket.getAddress(), incomingPacket.getPort());
         } catch(InvalidMessageException e) {
             e.printStackTrace();
         }
@@ -59,8 +58,7 @@ public class CHECKALIVEHandler {
         // Build response message
         byte[] newPayload = Payload.buildPayloadWithNodeList(ResponseCodes.SUCC_ALIVE_REP, listToSend);
         try {
-            byte[] newMessage = Message.buildMessage(header, newPayload);
-            packetToSend = new DatagramPacket(newMessage, newMessage.length, incomingPacket.getAddress(), incomingPacket.getPort());
+            packetToSend = Message.buildPacket(header, newPayload, incomingPacket.getAddress(), incomingPacket.getPort());
         } catch(InvalidMessageException e) {
             e.printStackTrace();
         }
@@ -76,8 +74,7 @@ public class CHECKALIVEHandler {
      */
     public static void handleSuccessorAliveResponse(DatagramPacket incomingPacket) {
         // Extract payload
-        byte[] message = incomingPacket.getData();
-        byte[] payload = Message.extractPayload(message);
+        byte[] payload = Message.extractPayload(incomingPacket);
 
         NodeListController nlc = NodeListController.getInstance();
         DatagramPacket packetToSend = null;
@@ -98,8 +95,7 @@ public class CHECKALIVEHandler {
                 listToSend.add(self);
                 byte[] listToSendAsBytes = NodeSerializerUtility.serializeNodeList(listToSend);
                 byte[] newPayload = Payload.buildPayloadWithNodeList(RequestCodes.POTENTIAL_IMPS_UPDATE, listToSendAsBytes);
-                byte[] newMessage = Message.buildMessage(header, newPayload);
-                packetToSend = new DatagramPacket(newMessage, newMessage.length, firstSuccessor.getHostname(), firstSuccessor.getReceivingPort());
+                packetToSend = Message.buildPacket(header, newPayload, firstSuccessor.getHostname(), firstSuccessor.getReceivingPort());
             } else {
                 // CASE 2) Predecessor of successor is this node
                 if(self.getId() == predecessorOfSuccessor.getId()) {
@@ -124,13 +120,13 @@ public class CHECKALIVEHandler {
                     listToSend.add(self);
                     byte[] listToSendAsBytes = NodeSerializerUtility.serializeNodeList(listToSend);
                     byte[] newPayload = Payload.buildPayloadWithNodeList(RequestCodes.POTENTIAL_IMPS_UPDATE, listToSendAsBytes);
-                    byte[] newMessage = Message.buildMessage(header, newPayload);
-                    packetToSend = new DatagramPacket(newMessage, newMessage.length, predecessorOfSuccessor.getHostname(), predecessorOfSuccessor.getReceivingPort());
+                    packetToSend = Message.buildPacket(header, newPayload, predecessorOfSuccessor.getHostname(), predecessorOfSuccessor.getReceivingPort());
                 }
             }
 
             if(packetToSend != null) {
                 UDPSend.sendPacket(packetToSend);
+                BufferPool.getInstance().release(packetToSend.getData());
             }
 
 
@@ -150,8 +146,7 @@ public class CHECKALIVEHandler {
     public static void handlePotentialPredecessorUpdate(DatagramPacket incomingPacket) {
 
         // Extract payload
-        byte[] message = incomingPacket.getData();
-        byte[] payload = Message.extractPayload(message);
+        byte[] payload = Message.extractPayload(incomingPacket);
 
         NodeListController nlc = NodeListController.getInstance();
         DatagramPacket packetToSend = null;
@@ -2,47 +2,47 @@ package command;
 
 import algorithm.ImmediateSuccessorRouter;
 import algorithm.NoPotentialIMSException;
-import cache.CacheController;
-import cache.CacheEntry;
+import kvstore.KVKey;
 import kvstore.KVStoreController;
-import kvstore.KVStoreKeyNotFoundException;
-import message.BadValueLengthException;
 import message.InvalidMessageException;
-import message.Message;
+import message.MessageView;
+import message.MessageWriter;
 import message.Payload;
+import message.PayloadView;
+import message.RoutingStatistics;
 import nodelist.Node;
 import nodelist.NodeListController;
 import timestamp.Timestamp;
 import utility.HashUtility;
-import utility.UTF8StringUtility;
 
 import java.net.DatagramPacket;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 
 public class GETHandler {
 
+    // Views that decode the requests handled by each thread
+    private static final ThreadLocal<MessageView> messageViews = MessageView.createPerThread();
+
+
     /**
      * Handles client get requests
      * @param incomingPacket - Incoming packet
      * @return
      */
     public static DatagramPacket handleClientGET(DatagramPacket incomingPacket) {
-        byte[] message = incomingPacket.getData();
-        byte[] header = Message.extractHeader(message);
-        byte[] payload = Message.extractPayload(message);
+        MessageView messageView = messageViews.get();
 
         DatagramPacket packetToSend = null;
         NodeListController nlc = NodeListController.getInstance();
 
         try {
-            // Get key from payload
-            byte[] keyAsBytes = Payload.getPayloadElement(Payload.Element.KEY, payload);
-            String key = UTF8StringUtility.bytesUTF8ToString(keyAsBytes);
+            messageView.wrap(incomingPacket);
+            PayloadView payload = messageView.getPayload();
 
-            int keyRequestID = HashUtility.simpleHash(key, HashUtility.DEFAULT_HASH_RANGE);
+            // Hash the key in place. The key is only decoded on the node that owns the key.
+            int keyRequestID = payload.getKeyHash(HashUtility.DEFAULT_HASH_RANGE);
 
             Node predecessor = nlc.getPredecessor();
             Node self = nlc.getSelf();
@@ -55,7 +55,7 @@ public class GETHandler {
 
                     if(self.getId() == keyRequestID) {
                         // Perform search in local kvstore
-                        packetToSend = performGetOperation(key, header, self.getHostname(), self.getReceivingPort(), incomingPacket.getAddress(),
+                        packetToSend = performGetOperation(new KVKey(payload.getKey()), messageView, self.getHostname(), self.getReceivingPort(), incomingPacket.getAddress(),
                                 incomingPacket.getPort());
                     } else {
                         int successorList[] = nlc.getSuccessorListIDs();
@@ -64,34 +64,24 @@ public class GETHandler {
                             Node potentialIMS = nlc.getNodeByID(potentialIMSID);
                             if(potentialIMS != null) {
                                 // Prepare potential ims get packet
-                                byte[] newPayload = Payload.buildClientForwardingRequestPayload(
-                                        RequestCodes.POTENTIAL_IMS_GET, self.getHostname(), self.getReceivingPort(),
-                                        incomingPacket.getAddress(), incomingPacket.getPort(), payload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, potentialIMS.getHostname(), potentialIMS.getReceivingPort());
+                                packetToSend = MessageWriter.buildClientForwardingRequestPacket(messageView, RequestCodes.POTENTIAL_IMS_GET,
+                                        self.getHostname(), self.getReceivingPort(), incomingPacket.getAddress(), incomingPacket.getPort(), keyRequestID, payload,
+                                        potentialIMS.getHostname(), potentialIMS.getReceivingPort());
                             } else {
                                 // Build error packet
-                                byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.INTERNAL_KVSTORE_FAILURE);
-                                byte[] newPayload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, incomingPacket.getAddress(), incomingPacket.getPort(), stdPayload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, self.getHostname(), self.getReceivingPort());
+                                packetToSend = MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.INTERNAL_KVSTORE_FAILURE, incomingPacket.getAddress(), incomingPacket.getPort(), self.getHostname(), self.getReceivingPort());
                             }
                         } catch(NoPotentialIMSException e) {
                             // Get last successor
                             Node lastSuccessor = nlc.getLastSuccessor();
                             if(lastSuccessor != null) {
                                 // Prepare forward get packet
-                                byte[] newPayload = Payload.buildClientForwardingRequestPayload(RequestCodes.FWD_GET,
-                                        self.getHostname(), self.getReceivingPort(), incomingPacket.getAddress(),
-                                        incomingPacket.getPort(), payload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, lastSuccessor.getHostname(), lastSuccessor.getReceivingPort());
+                                packetToSend = MessageWriter.buildClientForwardingRequestPacket(messageView, RequestCodes.FWD_GET,
+                                        self.getHostname(), self.getReceivingPort(), incomingPacket.getAddress(), incomingPacket.getPort(), keyRequestID, payload,
+                                        lastSuccessor.getHostname(), lastSuccessor.getReceivingPort());
                             } else {
                                 // Build error packet
-                                byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.INTERNAL_KVSTORE_FAILURE);
-                                byte[] newPayload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, incomingPacket.getAddress(), incomingPacket.getPort(), stdPayload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, self.getHostname(), self.getReceivingPort());
+                                packetToSend = MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.INTERNAL_KVSTORE_FAILURE, incomingPacket.getAddress(), incomingPacket.getPort(), self.getHostname(), self.getReceivingPort());
                             }
                         }
                     }
@@ -99,7 +89,7 @@ public class GETHandler {
                 // CASE 2) Null predecessor and empty successor list
                 else {
                     // Search local kvstore
-                    packetToSend = performGetOperation(key, header, self.getHostname(), self.getReceivingPort(), incomingPacket.getAddress(),
+                    packetToSend = performGetOperation(new KVKey(payload.getKey()), messageView, self.getHostname(), self.getReceivingPort(), incomingPacket.getAddress(),
                             incomingPacket.getPort());
                 }
             }
@@ -112,7 +102,7 @@ public class GETHandler {
                     // iii) If potential ims found in successor list -> Send potential ims request to element
                     if(ImmediateSuccessorRouter.isSelfPotentialIMS(keyRequestID, predecessor.getId(), self.getId())) {
                         // Perform search in local kvstore
-                        packetToSend = performGetOperation(key, header, self.getHostname(), self.getReceivingPort(), incomingPacket.getAddress(),
+                        packetToSend = performGetOperation(new KVKey(payload.getKey()), messageView, self.getHostname(), self.getReceivingPort(), incomingPacket.getAddress(),
                                 incomingPacket.getPort());
                     } else {
                         int successorList[] = nlc.getSuccessorListIDs();
@@ -121,34 +111,24 @@ public class GETHandler {
                             Node potentialIMS = nlc.getNodeByID(potentialIMSID);
                             if(potentialIMS != null) {
                                 // Prepare potential ims get packet
-                                byte[] newPayload = Payload.buildClientForwardingRequestPayload(
-                                        RequestCodes.POTENTIAL_IMS_GET, self.getHostname(), self.getReceivingPort(),
-                                        incomingPacket.getAddress(), incomingPacket.getPort(), payload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, potentialIMS.getHostname(), potentialIMS.getReceivingPort());
+                                packetToSend = MessageWriter.buildClientForwardingRequestPacket(messageView, RequestCodes.POTENTIAL_IMS_GET,
+                                        self.getHostname(), self.getReceivingPort(), incomingPacket.getAddress(), incomingPacket.getPort(), keyRequestID, payload,
+                                        potentialIMS.getHostname(), potentialIMS.getReceivingPort());
                             } else {
                                 // Build error packet
-                                byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.INTERNAL_KVSTORE_FAILURE);
-                                byte[] newPayload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, incomingPacket.getAddress(), incomingPacket.getPort(), stdPayload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, self.getHostname(), self.getReceivingPort());
+                                packetToSend = MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.INTERNAL_KVSTORE_FAILURE, incomingPacket.getAddress(), incomingPacket.getPort(), self.getHostname(), self.getReceivingPort());
                             }
                         } catch(NoPotentialIMSException e) {
                             // Get last successor
                             Node lastSuccessor = nlc.getLastSuccessor();
                             if(lastSuccessor != null) {
                                 // Prepare forward get packet
-                                byte[] newPayload = Payload.buildClientForwardingRequestPayload(RequestCodes.FWD_GET,
-                                        self.getHostname(), self.getReceivingPort(), incomingPacket.getAddress(),
-                                        incomingPacket.getPort(), payload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, lastSuccessor.getHostname(), lastSuccessor.getReceivingPort());
+                                packetToSend = MessageWriter.buildClientForwardingRequestPacket(messageView, RequestCodes.FWD_GET,
+                                        self.getHostname(), self.getReceivingPort(), incomingPacket.getAddress(), incomingPacket.getPort(), keyRequestID, payload,
+                                        lastSuccessor.getHostname(), lastSuccessor.getReceivingPort());
                             } else {
                                 // Build error packet
-                                byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.INTERNAL_KVSTORE_FAILURE);
-                                byte[] newPayload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, incomingPacket.getAddress(), incomingPacket.getPort(), stdPayload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, self.getHostname(), self.getReceivingPort());
+                                packetToSend = MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.INTERNAL_KVSTORE_FAILURE, incomingPacket.getAddress(), incomingPacket.getPort(), self.getHostname(), self.getReceivingPort());
                             }
                         }
                     }
@@ -156,17 +136,12 @@ public class GETHandler {
                 // CASE 4) Predecessor set and empty successor list
                 else {
                     // Build error packet
-                    byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.INTERNAL_KVSTORE_FAILURE);
-                    byte[] newPayload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, incomingPacket.getAddress(), incomingPacket.getPort(), stdPayload);
-                    byte[] newMessage = Message.buildMessage(header, newPayload);
-                    packetToSend = new DatagramPacket(newMessage, newMessage.length, self.getHostname(), self.getReceivingPort());
+                    packetToSend = MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.INTERNAL_KVSTORE_FAILURE, incomingPacket.getAddress(), incomingPacket.getPort(), self.getHostname(), self.getReceivingPort());
                 }
             }
 
         } catch(InvalidMessageException e) {
             e.printStackTrace();
-        } catch(BadValueLengthException e) {
-            e.printStackTrace();
         }
 
 
@@ -181,26 +156,32 @@ public class GETHandler {
      */
     public static DatagramPacket handleForwardGET(DatagramPacket incomingPacket) {
         // Extract header and payload
-        byte[] message = incomingPacket.getData();
-        byte[] header = Message.extractHeader(message);
-        byte[] payload = Message.extractPayload(message);
+        MessageView messageView = messageViews.get();
 
         NodeListController nlc = NodeListController.getInstance();
         DatagramPacket packetToSend = null;
 
         try {
+            messageView.wrap(incomingPacket);
+            PayloadView payload = messageView.getPayload();
+
             // Get actual payload
-            InetAddress returnAddress = InetAddress.getByAddress(Payload.getPayloadElement(Payload.Element.IP_ADDRESS, payload));
-            int returnPort = ByteBuffer.wrap(Payload.getPayloadElement(Payload.Element.PORT, payload)).order(ByteOrder.LITTLE_ENDIAN).getInt();
-            InetAddress clientAddress = InetAddress.getByAddress(
-                    Payload.getPayloadElement(Payload.Element.CLIENT_IP_ADDRESS, payload));
-            int clientPort = ByteBuffer.wrap(Payload.getPayloadElement(Payload.Element.CLIENT_PORT, payload)).order(ByteOrder.LITTLE_ENDIAN).getInt();
-            byte[] actualPayload = Payload.getPayloadElement(Payload.Element.CLIENT_FORWARD_PAYLOAD, payload);
-
-            // Get key from payload
-            byte[] keyAsBytes = Payload.getPayloadElement(Payload.Element.KEY, actualPayload);
-            String key = UTF8StringUtility.bytesUTF8ToString(keyAsBytes);
-            int keyRequestID = HashUtility.simpleHash(key, HashUtility.DEFAULT_HASH_RANGE);
+            InetAddress returnAddress = payload.getReturnAddress();
+            int returnPort = payload.getReturnPort();
+            InetAddress clientAddress = payload.getClientAddress();
+            int clientPort = payload.getClientPort();
+
+            // Answer requests caught in a routing loop instead of relaying them again
+            int hopCount = payload.getHopCount();
+            RoutingStatistics.recordReceived(hopCount);
+            if(hopCount >= Payload.MAX_HOP_COUNT) {
+                RoutingStatistics.recordHopLimitExceeded();
+                return MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.INTERNAL_KVSTORE_FAILURE, clientAddress, clientPort, returnAddress, returnPort);
+            }
+            PayloadView actualPayload = messageView.getClientForwardPayload();
+
+            // Route on the ring ID computed by the entry node. The key is only decoded on the node that owns the key.
+            int keyRequestID = payload.getRingID();
 
             // Get predecessor and self
             Node predecessor = nlc.getPredecessor();
@@ -215,7 +196,7 @@ public class GETHandler {
 
                     if(self.getId() == keyRequestID) {
                         // Perform search in local kvstore
-                        packetToSend = performGetOperation(key, header, returnAddress, returnPort, clientAddress, clientPort);
+                        packetToSend = performGetOperation(new KVKey(actualPayload.getKey()), messageView, returnAddress, returnPort, clientAddress, clientPort);
                     } else {
                         int successorList[] = nlc.getSuccessorListIDs();
                         try {
@@ -223,33 +204,20 @@ public class GETHandler {
                             Node potentialIMS = nlc.getNodeByID(potentialIMSID);
                             if(potentialIMS != null) {
                                 // Prepare potential ims get packet
-                                byte[] newPayload = Payload.buildClientForwardingRequestPayload(
-                                        RequestCodes.POTENTIAL_IMS_GET, returnAddress, returnPort, clientAddress,
-                                        clientPort, actualPayload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, potentialIMS.getHostname(), potentialIMS.getReceivingPort());
+                                packetToSend = messageView.toRelayPacket(RequestCodes.POTENTIAL_IMS_GET, potentialIMS.getHostname(), potentialIMS.getReceivingPort());
                             } else {
                                 // Build error packet
-                                byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.INTERNAL_KVSTORE_FAILURE);
-                                byte[] newPayload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, clientAddress, clientPort, stdPayload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, returnAddress, returnPort);
+                                packetToSend = MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.INTERNAL_KVSTORE_FAILURE, clientAddress, clientPort, returnAddress, returnPort);
                             }
                         } catch(NoPotentialIMSException e) {
                             // Get last successor
                             Node lastSuccessor = nlc.getLastSuccessor();
                             if(lastSuccessor != null) {
                                 // Prepare forward get packet
-                                byte[] newPayload = Payload.buildClientForwardingRequestPayload(RequestCodes.FWD_GET,
-                                        returnAddress, returnPort, clientAddress, clientPort, actualPayload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, lastSuccessor.getHostname(), lastSuccessor.getReceivingPort());
+                                packetToSend = messageView.toRelayPacket(RequestCodes.FWD_GET, lastSuccessor.getHostname(), lastSuccessor.getReceivingPort());
                             } else {
                                 // Build error packet
-                                byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.INTERNAL_KVSTORE_FAILURE);
-                                byte[] newPayload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, clientAddress, clientPort, stdPayload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, returnAddress, returnPort);
+                                packetToSend = MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.INTERNAL_KVSTORE_FAILURE, clientAddress, clientPort, returnAddress, returnPort);
                             }
                         }
                     }
@@ -257,10 +225,7 @@ public class GETHandler {
                 // CASE 2) Null predecessor and empty successor list
                 else {
                     // Build error packet
-                    byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.INTERNAL_KVSTORE_FAILURE);
-                    byte[] newPayload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, clientAddress, clientPort, stdPayload);
-                    byte[] newMessage = Message.buildMessage(header, newPayload);
-                    packetToSend = new DatagramPacket(newMessage, newMessage.length, returnAddress, returnPort);
+                    packetToSend = MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.INTERNAL_KVSTORE_FAILURE, clientAddress, clientPort, returnAddress, returnPort);
                 }
             }
             else {
@@ -272,7 +237,7 @@ public class GETHandler {
                     // iii) If potential ims found in successor list -> Send potential ims request to element
                     if(self.getId() == keyRequestID) {
                         // Perform search in local kvstore
-                        packetToSend = performGetOperation(key, header, returnAddress, returnPort, clientAddress, clientPort);
+                        packetToSend = performGetOperation(new KVKey(actualPayload.getKey()), messageView, returnAddress, returnPort, clientAddress, clientPort);
                     } else {
                         int successorList[] = nlc.getSuccessorListIDs();
                         try {
@@ -280,33 +245,20 @@ public class GETHandler {
                             Node potentialIMS = nlc.getNodeByID(potentialIMSID);
                             if(potentialIMS != null) {
                                 // Prepare potential ims get packet
-                                byte[] newPayload = Payload.buildClientForwardingRequestPayload(
-                                        RequestCodes.POTENTIAL_IMS_GET, returnAddress, returnPort, clientAddress,
-                                        clientPort, actualPayload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, potentialIMS.getHostname(), potentialIMS.getReceivingPort());
+                                packetToSend = messageView.toRelayPacket(RequestCodes.POTENTIAL_IMS_GET, potentialIMS.getHostname(), potentialIMS.getReceivingPort());
                             } else {
                                 // Build error packet
-                                byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.INTERNAL_KVSTORE_FAILURE);
-                                byte[] newPayload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, clientAddress, clientPort, stdPayload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, returnAddress, returnPort);
+                                packetToSend = MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.INTERNAL_KVSTORE_FAILURE, clientAddress, clientPort, returnAddress, returnPort);
                             }
                         } catch(NoPotentialIMSException e) {
                             // Get last successor
                             Node lastSuccessor = nlc.getLastSuccessor();
                             if(lastSuccessor != null) {
                                 // Prepare forward get packet
-                                byte[] newPayload = Payload.buildClientForwardingRequestPayload(RequestCodes.FWD_GET,
-                                        returnAddress, returnPort, clientAddress, clientPort, actualPayload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, lastSuccessor.getHostname(), lastSuccessor.getReceivingPort());
+                                packetToSend = messageView.toRelayPacket(RequestCodes.FWD_GET, lastSuccessor.getHostname(), lastSuccessor.getReceivingPort());
                             } else {
                                 // Build error packet
-                                byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.INTERNAL_KVSTORE_FAILURE);
-                                byte[] newPayload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, clientAddress, clientPort, stdPayload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, returnAddress, returnPort);
+                                packetToSend = MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.INTERNAL_KVSTORE_FAILURE, clientAddress, clientPort, returnAddress, returnPort);
                             }
                         }
                     }
@@ -314,10 +266,7 @@ public class GETHandler {
                 // CASE 4) Predecessor set and empty successor list
                 else {
                     // Build error packet
-                    byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.INTERNAL_KVSTORE_FAILURE);
-                    byte[] newPayload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, clientAddress, clientPort, stdPayload);
-                    byte[] newMessage = Message.buildMessage(header, newPayload);
-                    packetToSend = new DatagramPacket(newMessage, newMessage.length, returnAddress, returnPort);
+                    packetToSend = MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.INTERNAL_KVSTORE_FAILURE, clientAddress, clientPort, returnAddress, returnPort);
                 }
             }
 
@@ -325,8 +274,6 @@ public class GETHandler {
 
         } catch(InvalidMessageException e) {
             e.printStackTrace();
-        } catch(BadValueLengthException e) {
-            e.printStackTrace();
         } catch(UnknownHostException e) {
             e.printStackTrace();
         }
@@ -358,25 +305,32 @@ public class GETHandler {
      */
     public static DatagramPacket handlePotentialIMSGET(DatagramPacket incomingPacket) {
         // Extract header and payload
-        byte[] message = incomingPacket.getData();
-        byte[] header = Message.extractHeader(message);
-        byte[] payload = Message.extractPayload(message);
+        MessageView messageView = messageViews.get();
 
         NodeListController nlc = NodeListController.getInstance();
         DatagramPacket packetToSend = null;
 
         try {
+            messageView.wrap(incomingPacket);
+            PayloadView payload = messageView.getPayload();
+
             // Get actual payload
-            InetAddress returnAddress = InetAddress.getByAddress(Payload.getPayloadElement(Payload.Element.IP_ADDRESS, payload));
-            int returnPort = ByteBuffer.wrap(Payload.getPayloadElement(Payload.Element.PORT, payload)).order(ByteOrder.LITTLE_ENDIAN).getInt();
-            InetAddress clientAddress = InetAddress.getByAddress(Payload.getPayloadElement(Payload.Element.CLIENT_IP_ADDRESS, payload));
-            int clientPort = ByteBuffer.wrap(Payload.getPayloadElement(Payload.Element.CLIENT_PORT, payload)).order(ByteOrder.LITTLE_ENDIAN).getInt();
-            byte[] actualPayload = Payload.getPayloadElement(Payload.Element.CLIENT_FORWARD_PAYLOAD, payload);
+            InetAddress returnAddress = payload.getReturnAddress();
+            int returnPort = payload.getReturnPort();
+            InetAddress clientAddress = payload.getClientAddress();
+            int clientPort = payload.getClientPort();
+
+            // Answer requests caught in a routing loop instead of relaying them again
+            int hopCount = payload.getHopCount();
+            RoutingStatistics.recordReceived(hopCount);
+            if(hopCount >= Payload.MAX_HOP_COUNT) {
+                RoutingStatistics.recordHopLimitExceeded();
+                return MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.INTERNAL_KVSTORE_FAILURE, clientAddress, clientPort, returnAddress, returnPort);
+            }
+            PayloadView actualPayload = messageView.getClientForwardPayload();
 
-            // Get key from payload
-            byte[] keyAsBytes = Payload.getPayloadElement(Payload.Element.KEY, actualPayload);
-            String key = UTF8StringUtility.bytesUTF8ToString(keyAsBytes);
-            int keyRequestID = HashUtility.simpleHash(key, HashUtility.DEFAULT_HASH_RANGE);
+            // Route on the ring ID computed by the entry node. The key is only decoded on the node that owns the key.
+            int keyRequestID = payload.getRingID();
 
             // Get predecessor and self
             Node predecessor = nlc.getPredecessor();
@@ -391,22 +345,16 @@ public class GETHandler {
 
                     if(self.getId() == keyRequestID) {
                         // Perform search in local kvstore
-                        packetToSend = performGetOperation(key, header, returnAddress, returnPort, clientAddress, clientPort);
+                        packetToSend = performGetOperation(new KVKey(actualPayload.getKey()), messageView, returnAddress, returnPort, clientAddress, clientPort);
                     } else {
                         // Build error packet
-                        byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.INTERNAL_KVSTORE_FAILURE);
-                        byte[] newPayload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, clientAddress, clientPort, stdPayload);
-                        byte[] newMessage = Message.buildMessage(header, newPayload);
-                        packetToSend = new DatagramPacket(newMessage, newMessage.length, returnAddress, returnPort);
+                        packetToSend = MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.INTERNAL_KVSTORE_FAILURE, clientAddress, clientPort, returnAddress, returnPort);
                     }
                 }
                 // CASE 2) Null predecessor and empty successor list
                 else {
                     // Build error packet
-                    byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.INTERNAL_KVSTORE_FAILURE);
-                    byte[] newPayload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, clientAddress, clientPort, stdPayload);
-                    byte[] newMessage = Message.buildMessage(header, newPayload);
-                    packetToSend = new DatagramPacket(newMessage, newMessage.length, returnAddress, returnPort);
+                    packetToSend = MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.INTERNAL_KVSTORE_FAILURE, clientAddress, clientPort, returnAddress, returnPort);
                 }
             }
             else {
@@ -417,22 +365,17 @@ public class GETHandler {
                     // ii) If not correct -> Send predecessor a potential ims get request
                     if(ImmediateSuccessorRouter.isSelfPotentialIMS(keyRequestID, predecessor.getId(), self.getId())) {
                         // Perform search in local kvstore
-                        packetToSend = performGetOperation(key, header, returnAddress, returnPort, clientAddress, clientPort);
+                        packetToSend = performGetOperation(new KVKey(actualPayload.getKey()), messageView, returnAddress, returnPort, clientAddress, clientPort);
 
                     } else {
                         // Prepare potential ims get request to send to predecessor
-                        byte[] newPayload = Payload.buildClientForwardingRequestPayload(RequestCodes.POTENTIAL_IMS_GET,
-                                returnAddress, returnPort, clientAddress, clientPort, actualPayload);
-                        byte[] newMessage = Message.buildMessage(header, newPayload);
-                        packetToSend = new DatagramPacket(newMessage, newMessage.length, predecessor.getHostname(), predecessor.getReceivingPort());
+                        packetToSend = messageView.toRelayPacket(RequestCodes.POTENTIAL_IMS_GET, predecessor.getHostname(), predecessor.getReceivingPort());
                     }
                 }
 
             }
         } catch(InvalidMessageException e) {
             e.printStackTrace();
-        } catch(BadValueLengthException e) {
-            e.printStackTrace();
         } catch(UnknownHostException e) {
             e.printStackTrace();
         }
@@ -445,41 +388,40 @@ public class GETHandler {
     /**
      * Performs a get operation on local kvstore and builds a response packet
      * @param key - Key to GET
-     * @param header - Header to include in response packet
+     * @param request - Request whose header is included in the response packet
      * @param clientAddress - Client address to respond to
      * @param clientPort - Client port
      * @return
      */
-    protected static DatagramPacket performGetOperation(String key, byte[] header, InetAddress destinationAddress, int destinationPort, InetAddress clientAddress,
+    protected static DatagramPacket performGetOperation(KVKey key, MessageView request, InetAddress destinationAddress, int destinationPort, InetAddress clientAddress,
                                                         int clientPort) {
         DatagramPacket packet = null;
-        byte[] payload = null;
+        byte responseCode;
 
         KVStoreController kvStoreController = KVStoreController.getInstance();
-        try {
-            // Attempt to get value for input key from key value store
-            String value = kvStoreController.get(key);
+
+        // Attempt to get value for input key from key value store. The value is copied straight into the response.
+        ByteBuffer value = kvStoreController.getValueBuffer(key);
+
+        if(value != null) {
 
             /* If key was found in key-value store, build a response payload with value and
                 with response code: Operation Success */
 
-            byte[] valueToBytes = UTF8StringUtility.stringToBytesUTF8(value);
-            byte[] stdPayload = Payload.buildStandardResponsePayload(ResponseCodes.OPERATION_SUCCESS, valueToBytes);
-            payload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, clientAddress, clientPort, stdPayload);
+            responseCode = ResponseCodes.OPERATION_SUCCESS;
 
-        } catch(KVStoreKeyNotFoundException e) {
+        } else {
 
                 /* If key is not found in key-value store, build a response payload
                    with response code: Non-existent-key */
 
-            byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.NON_EXISTENT_KEY);
-            payload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, clientAddress, clientPort, stdPayload);
+            responseCode = ResponseCodes.NON_EXISTENT_KEY;
         }
 
-        if(payload != null && header != null && destinationAddress != null) {
+        if(request != null && destinationAddress != null) {
             try {
-                byte[] message = Message.buildMessage(header, payload);
-                packet = new DatagramPacket(message, message.length, destinationAddress, destinationPort);
+                packet = MessageWriter.buildClientForwardingResponsePacket(request, responseCode, value, clientAddress, clientPort,
+                        destinationAddress, destinationPort);
             } catch(InvalidMessageException e) {
                 e.printStackTrace();
             }
@@ -30,7 +30,7 @@ public class JOINHandler {
         // Extract header and payload
         byte[] message = incomingPacket.getData();
         byte[] header = Message.extractHeader(message);
-        byte[] payload = Message.extractPayload(message);
+        byte[] payload = Message.extractPayload(incomingPacket);
 
         NodeListController nlc = NodeListController.getInstance();
         DatagramPacket packetToSend = null;
@@ -64,8 +64,7 @@ public class JOINHandler {
                         Node potentialIMS = nlc.getNodeByID(potentialIMSID);
                         if(potentialIMS != null) {
                             byte[] newPayload = Payload.buildForwardingRequestPayload(RequestCodes.POTENTIAL_IMS_JOIN, joiningNode.getHostname(), incomingPacket.getPort(), payload);
-                            byte[] newMessage = Message.buildMessage(header, newPayload);
-                            packetToSend = new DatagramPacket(newMessage, newMessage.length, potentialIMS.getHostname(), potentialIMS.getReceivingPort());
+                            packetToSend = Message.buildPacket(header, newPayload, potentialIMS.getHostname(), potentialIMS.getReceivingPort());
                         } else {
                             // Drop packet
                             return null;
@@ -76,8 +75,7 @@ public class JOINHandler {
                         if(lastSuccessor != null) {
                             // Prepare forward join packet
                             byte[] newPayload = Payload.buildForwardingRequestPayload(RequestCodes.FWD_JOIN, joiningNode.getHostname(), incomingPacket.getPort(), payload);
-                            byte[] newMessage = Message.buildMessage(header, newPayload);
-                            packetToSend = new DatagramPacket(newMessage, newMessage.length, lastSuccessor.getHostname(), lastSuccessor.getReceivingPort());
+                            packetToSend = Message.buildPacket(header, newPayload, lastSuccessor.getHostname(), lastSuccessor.getReceivingPort());
                         } else {
                             // Drop packet
                             return null;
@@ -93,8 +91,7 @@ public class JOINHandler {
                     // Prepare join response packet
                     byte[] succListToSend = NodeSerializerUtility.serializeNodeList(nlc.getSuccessorListWithSelf());
                     byte[] newPayload = Payload.buildPayloadWithNodeList(ResponseCodes.JOIN_REP, succListToSend);
-                    byte[] newMessage = Message.buildMessage(header, newPayload);
-                    packetToSend = new DatagramPacket(newMessage, newMessage.length, joiningNode.getHostname(), incomingPacket.getPort());
+                    packetToSend = Message.buildPacket(header, newPayload, joiningNode.getHostname(), incomingPacket.getPort());
 
                     // Add node as successor if this is first join request this node is receiving
                     if(!hasHadPreviousJoinRequest) {
@@ -123,8 +120,7 @@ public class JOINHandler {
                             // Prepare join response packet
                             byte[] succListToSend = NodeSerializerUtility.serializeNodeList(nlc.getSuccessorListWithSelf());
                             byte[] newPayload = Payload.buildPayloadWithNodeList(ResponseCodes.JOIN_REP, succListToSend);
-                            byte[] newMessage = Message.buildMessage(header, newPayload);
-                            packetToSend = new DatagramPacket(newMessage, newMessage.length, joiningNode.getHostname(), incomingPacket.getPort());
+                            packetToSend = Message.buildPacket(header, newPayload, joiningNode.getHostname(), incomingPacket.getPort());
 
                             // Add node as successor if this is first join request this node is receiving
                             if(!hasHadPreviousJoinRequest) {
@@ -136,8 +132,7 @@ public class JOINHandler {
                             Node potentialIMS = nlc.getNodeByID(potentialIMSID);
                             if(potentialIMS != null) {
                                 byte[] newPayload = Payload.buildForwardingRequestPayload(RequestCodes.POTENTIAL_IMS_JOIN, joiningNode.getHostname(), incomingPacket.getPort(), payload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, potentialIMS.getHostname(), potentialIMS.getReceivingPort());
+                                packetToSend = Message.buildPacket(header, newPayload, potentialIMS.getHostname(), potentialIMS.getReceivingPort());
                             } else {
                                 // Drop packet
                                 return null;
@@ -149,8 +144,7 @@ public class JOINHandler {
                         if(lastSuccessor != null) {
                             // Prepare forward join packet
                             byte[] newPayload = Payload.buildForwardingRequestPayload(RequestCodes.FWD_JOIN, joiningNode.getHostname(), incomingPacket.getPort(), payload);
-                            byte[] newMessage = Message.buildMessage(header, newPayload);
-                            packetToSend = new DatagramPacket(newMessage, newMessage.length, lastSuccessor.getHostname(), lastSuccessor.getReceivingPort());
+                            packetToSend = Message.buildPacket(header, newPayload, lastSuccessor.getHostname(), lastSuccessor.getReceivingPort());
                             System.out.println("Potential IMS sending to node" + lastSuccessor.getId());
                         } else {
                             // Drop packet
@@ -184,7 +178,7 @@ public class JOINHandler {
         // Extract header and payload
         byte[] message = incomingPacket.getData();
         byte[] header = Message.extractHeader(message);
-        byte[] payload = Message.extractPayload(message);
+        byte[] payload = Message.extractPayload(incomingPacket);
 
         NodeListController nlc = NodeListController.getInstance();
         DatagramPacket packetToSend = null;
@@ -221,8 +215,7 @@ public class JOINHandler {
                         Node potentialIMS = nlc.getNodeByID(potentialIMSID);
                         if(potentialIMS != null) {
                             byte[] newPayload = Payload.buildForwardingRequestPayload(RequestCodes.POTENTIAL_IMS_JOIN, joiningNode.getHostname(), port, actualPayload);
-                            byte[] newMessage = Message.buildMessage(header, newPayload);
-                            packetToSend = new DatagramPacket(newMessage, newMessage.length, potentialIMS.getHostname(), potentialIMS.getReceivingPort());
+                            packetToSend = Message.buildPacket(header, newPayload, potentialIMS.getHostname(), potentialIMS.getReceivingPort());
                         } else {
                             // Drop packet
                             return null;
@@ -233,8 +226,7 @@ public class JOINHandler {
                         if(lastSuccessor != null) {
                             // Prepare forward join packet
                             byte[] newPayload = Payload.buildForwardingRequestPayload(RequestCodes.FWD_JOIN, joiningNode.getHostname(), port, actualPayload);
-                            byte[] newMessage = Message.buildMessage(header, newPayload);
-                            packetToSend = new DatagramPacket(newMessage, newMessage.length, lastSuccessor.getHostname(), lastSuccessor.getReceivingPort());
+                            packetToSend = Message.buildPacket(header, newPayload, lastSuccessor.getHostname(), lastSuccessor.getReceivingPort());
                         } else {
                             // Drop packet
                             return null;
@@ -266,8 +258,7 @@ public class JOINHandler {
                             // Prepare join response packet
                             byte[] succListToSend = NodeSerializerUtility.serializeNodeList(nlc.getSuccessorListWithSelf());
                             byte[] newPayload = Payload.buildPayloadWithNodeList(ResponseCodes.JOIN_REP, succListToSend);
-                            byte[] newMessage = Message.buildMessage(header, newPayload);
-                            packetToSend = new DatagramPacket(newMessage, newMessage.length, joiningNode.getHostname(), port);
+                            packetToSend = Message.buildPacket(header, newPayload, joiningNode.getHostname(), port);
 
                             // Add node as successor if this is first join request this node is receiving
                             if(!hasHadPreviousJoinRequest) {
@@ -279,8 +270,7 @@ public class JOINHandler {
                             Node potentialIMS = nlc.getNodeByID(potentialIMSID);
                             if(potentialIMS != null) {
                                 byte[] newPayload = Payload.buildForwardingRequestPayload(RequestCodes.POTENTIAL_IMS_JOIN, joiningNode.getHostname(), port, actualPayload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, potentialIMS.getHostname(), potentialIMS.getReceivingPort());
+                                packetToSend = Message.buildPacket(header, newPayload, potentialIMS.getHostname(), potentialIMS.getReceivingPort());
                             } else {
                                 // Drop packet
                                 return null;
@@ -293,8 +283,7 @@ public class JOINHandler {
                         if(lastSuccessor != null) {
                             // Prepare forward join packet
                             byte[] newPayload = Payload.buildForwardingRequestPayload(RequestCodes.FWD_JOIN, joiningNode.getHostname(), port, actualPayload);
-                            byte[] newMessage = Message.buildMessage(header, newPayload);
-                            packetToSend = new DatagramPacket(newMessage, newMessage.length, lastSuccessor.getHostname(), lastSuccessor.getReceivingPort());
+                            packetToSend = Message.buildPacket(header, newPayload, lastSuccessor.getHostname(), lastSuccessor.getReceivingPort());
                         } else {
                             // Drop packet
                             return null;
@@ -328,7 +317,7 @@ public class JOINHandler {
         // Extract header and payload
         byte[] message = incomingPacket.getData();
         byte[] header = Message.extractHeader(message);
-        byte[] payload = Message.extractPayload(message);
+        byte[] payload = Message.extractPayload(incomingPacket);
 
         NodeListController nlc = NodeListController.getInstance();
         DatagramPacket packetToSend = null;
@@ -379,8 +368,7 @@ public class JOINHandler {
                         // Prepare join response packet
                         byte[] succListToSend = NodeSerializerUtility.serializeNodeList(nlc.getSuccessorListWithSelf());
                         byte[] newPayload = Payload.buildPayloadWithNodeList(ResponseCodes.JOIN_REP, succListToSend);
-                        byte[] newMessage = Message.buildMessage(header, newPayload);
-                        packetToSend = new DatagramPacket(newMessage, newMessage.length, joiningNode.getHostname(), port);
+                        packetToSend = Message.buildPacket(header, newPayload, joiningNode.getHostname(), port);
 
                         // Add node as successor if this is first join request this node is receiving
                         if(!hasHadPreviousJoinRequest) {
@@ -390,8 +378,7 @@ public class JOINHandler {
                     } else {
                         // Prepare potential ims join request to send to predecessor
                         byte[] newPayload = Payload.buildForwardingRequestPayload(RequestCodes.POTENTIAL_IMS_JOIN, joiningNode.getHostname(), port, actualPayload);
-                        byte[] newMessage = Message.buildMessage(header, newPayload);
-                        packetToSend = new DatagramPacket(newMessage, newMessage.length, predecessor.getHostname(), predecessor.getReceivingPort());
+                        packetToSend = Message.buildPacket(header, newPayload, predecessor.getHostname(), predecessor.getReceivingPort());
                     }
                 }
                 // CASE 4) Predecessor set and empty successor list
@@ -422,8 +409,7 @@ public class JOINHandler {
     public static void handleJOINResponse(DatagramPacket incomingPacket) {
 
         // Extract header and payload
-        byte[] message = incomingPacket.getData();
-        byte[] payload = Message.extractPayload(message);
+        byte[] payload = Message.extractPayload(incomingPacket);
 
         NodeListController nlc = NodeListController.getInstance();
 
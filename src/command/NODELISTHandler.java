@@ -31,10 +31,8 @@ public class NODELISTHandler {
 
         // Build payload
         byte[] payload = Payload.buildPayloadWithNodeList(ResponseCodes.NODE_LIST_RESPONSE, serializedNodeList);
-        byte[] messageToSend = null;
         try {
-            messageToSend = Message.buildMessage(header, payload);
-            packetToSend = new DatagramPacket(messageToSend, messageToSend.length, incomingPacket.getAddress(), incomingPacket.getPort());
+            packetToSend = Message.buildPacket(header, payload, incomingPacket.getAddress(), incomingPacket.getPort());
         } catch(InvalidMessageException e) {
             e.printStackTrace();
         }
@@ -3,51 +3,49 @@ package command;
 import algorithm.ImmediateSuccessorRouter;
 import algorithm.NoPotentialIMSException;
 import cache.CacheController;
-import cache.CacheEntry;
+import kvstore.KVKey;
 import kvstore.KVStoreController;
-import kvstore.KVStoreFullException;
-import kvstore.KVStoreInvalidKeyOrValueFormatException;
+import kvstore.KVStoreStatus;
 import message.BadValueLengthException;
 import message.InvalidMessageException;
-import message.Message;
+import message.MessageView;
+import message.MessageWriter;
 import message.Payload;
+import message.PayloadView;
+import message.RoutingStatistics;
 import nodelist.Node;
 import nodelist.NodeListController;
 import protocol.ReplicaForward;
 import timestamp.Timestamp;
 import utility.HashUtility;
-import utility.UTF8StringUtility;
 
 import java.net.DatagramPacket;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 
 public class PUTHandler {
 
+    // Views that decode the requests handled by each thread
+    private static final ThreadLocal<MessageView> messageViews = MessageView.createPerThread();
+
+
     /**
      * Handles client put requests
      * @param incomingPacket - Incoming packet
      * @return
      */
     public static DatagramPacket handleClientPUT(DatagramPacket incomingPacket) {
-        byte[] message = incomingPacket.getData();
-        byte[] header = Message.extractHeader(message);
-        byte[] payload = Message.extractPayload(message);
+        MessageView messageView = messageViews.get();
 
         DatagramPacket packetToSend = null;
         NodeListController nlc = NodeListController.getInstance();
 
         try {
-            // Get key from payload
-            byte[] keyAsBytes = Payload.getPayloadElement(Payload.Element.KEY, payload);
-            String key = UTF8StringUtility.bytesUTF8ToString(keyAsBytes);
-            int keyRequestID = HashUtility.simpleHash(key, HashUtility.DEFAULT_HASH_RANGE);
+            messageView.wrap(incomingPacket);
+            PayloadView payload = messageView.getPayload();
 
-            // Get value from payload
-            byte[] valueAsBytes = Payload.getPayloadElement(Payload.Element.REQUEST_VALUE, payload);
-            String value = UTF8StringUtility.bytesUTF8ToString(valueAsBytes);
+            // Hash the key in place. The key and value are only decoded on the node that owns the key.
+            int keyRequestID = payload.getKeyHash(HashUtility.DEFAULT_HASH_RANGE);
 
 
             Node predecessor = nlc.getPredecessor();
@@ -61,7 +59,7 @@ public class PUTHandler {
 
                     if(self.getId() == keyRequestID) {
                         // Perform put operation on local kvstore
-                        packetToSend = performPutOperation(key, value, header, self.getHostname(), self.getReceivingPort(), incomingPacket.getAddress(), incomingPacket.getPort());
+                        packetToSend = performPutOperation(new KVKey(payload.getKey()), payload.getRequestValue(), getTimeToLive(payload), messageView.getHeader(), self.getHostname(), self.getReceivingPort(), incomingPacket.getAddress(), incomingPacket.getPort());
                     } else {
                         int successorList[] = nlc.getSuccessorListIDs();
                         try {
@@ -70,34 +68,24 @@ public class PUTHandler {
                             Node potentialIMS = nlc.getNodeByID(potentialIMSID);
                             if(potentialIMS != null) {
                                 // Prepare potential ims put packet
-                                byte[] newPayload = Payload.buildClientForwardingRequestPayload(
-                                        RequestCodes.POTENTIAL_IMS_PUT, self.getHostname(), self.getReceivingPort(),
-                                        incomingPacket.getAddress(), incomingPacket.getPort(), payload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, potentialIMS.getHostname(), potentialIMS.getReceivingPort());
+                                packetToSend = MessageWriter.buildClientForwardingRequestPacket(messageView, RequestCodes.POTENTIAL_IMS_PUT,
+                                        self.getHostname(), self.getReceivingPort(), incomingPacket.getAddress(), incomingPacket.getPort(), keyRequestID, payload,
+                                        potentialIMS.getHostname(), potentialIMS.getReceivingPort());
                             } else {
                                 // Build error packet
-                                byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.INTERNAL_KVSTORE_FAILURE);
-                                byte[] newPayload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, incomingPacket.getAddress(), incomingPacket.getPort(), stdPayload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, self.getHostname(), self.getReceivingPort());
+                                packetToSend = MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.INTERNAL_KVSTORE_FAILURE, incomingPacket.getAddress(), incomingPacket.getPort(), self.getHostname(), self.getReceivingPort());
                             }
                         } catch(NoPotentialIMSException e) {
                             // Get last successor
                             Node lastSuccessor = nlc.getLastSuccessor();
                             if(lastSuccessor != null) {
                                 // Prepare forward put packet
-                                byte[] newPayload = Payload.buildClientForwardingRequestPayload(RequestCodes.FWD_PUT,
-                                        self.getHostname(), self.getReceivingPort(), incomingPacket.getAddress(),
-                                        incomingPacket.getPort(), payload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, lastSuccessor.getHostname(), lastSuccessor.getReceivingPort());
+                                packetToSend = MessageWriter.buildClientForwardingRequestPacket(messageView, RequestCodes.FWD_PUT,
+                                        self.getHostname(), self.getReceivingPort(), incomingPacket.getAddress(), incomingPacket.getPort(), keyRequestID, payload,
+                                        lastSuccessor.getHostname(), lastSuccessor.getReceivingPort());
                             } else {
                                 // Build error packet
-                                byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.INTERNAL_KVSTORE_FAILURE);
-                                byte[] newPayload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, incomingPacket.getAddress(), incomingPacket.getPort(), stdPayload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, self.getHostname(), self.getReceivingPort());
+                                packetToSend = MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.INTERNAL_KVSTORE_FAILURE, incomingPacket.getAddress(), incomingPacket.getPort(), self.getHostname(), self.getReceivingPort());
                             }
                         }
                     }
@@ -105,7 +93,7 @@ public class PUTHandler {
                 // CASE 2) Null predecessor and empty successor list
                 else {
                     // Perform put operation on local kvstore
-                    packetToSend = performPutOperation(key, value, header, self.getHostname(), self.getReceivingPort(), incomingPacket.getAddress(), incomingPacket.getPort());
+                    packetToSend = performPutOperation(new KVKey(payload.getKey()), payload.getRequestValue(), getTimeToLive(payload), messageView.getHeader(), self.getHostname(), self.getReceivingPort(), incomingPacket.getAddress(), incomingPacket.getPort());
                 }
             }
             else {
@@ -117,7 +105,7 @@ public class PUTHandler {
                     // iii) If potential ims found in successor list -> Send potential ims request to element
                     if(ImmediateSuccessorRouter.isSelfPotentialIMS(keyRequestID, predecessor.getId(), self.getId())) {
                         // Perform put operation on local kvstore
-                        packetToSend = performPutOperation(key, value, header, self.getHostname(), self.getReceivingPort(), incomingPacket.getAddress(), incomingPacket.getPort());
+                        packetToSend = performPutOperation(new KVKey(payload.getKey()), payload.getRequestValue(), getTimeToLive(payload), messageView.getHeader(), self.getHostname(), self.getReceivingPort(), incomingPacket.getAddress(), incomingPacket.getPort());
                     } else {
                         int successorList[] = nlc.getSuccessorListIDs();
                         try {
@@ -125,34 +113,24 @@ public class PUTHandler {
                             Node potentialIMS = nlc.getNodeByID(potentialIMSID);
                             if(potentialIMS != null) {
                                 // Prepare potential ims put packet
-                                byte[] newPayload = Payload.buildClientForwardingRequestPayload(
-                                        RequestCodes.POTENTIAL_IMS_PUT, self.getHostname(), self.getReceivingPort(),
-                                        incomingPacket.getAddress(), incomingPacket.getPort(), payload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, potentialIMS.getHostname(), potentialIMS.getReceivingPort());
+                                packetToSend = MessageWriter.buildClientForwardingRequestPacket(messageView, RequestCodes.POTENTIAL_IMS_PUT,
+                                        self.getHostname(), self.getReceivingPort(), incomingPacket.getAddress(), incomingPacket.getPort(), keyRequestID, payload,
+                                        potentialIMS.getHostname(), potentialIMS.getReceivingPort());
                             } else {
                                 // Build error packet
-                                byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.INTERNAL_KVSTORE_FAILURE);
-                                byte[] newPayload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, incomingPacket.getAddress(), incomingPacket.getPort(), stdPayload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, self.getHostname(), self.getReceivingPort());
+                                packetToSend = MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.INTERNAL_KVSTORE_FAILURE, incomingPacket.getAddress(), incomingPacket.getPort(), self.getHostname(), self.getReceivingPort());
                             }
                         } catch(NoPotentialIMSException e) {
                             // Get last successor
                             Node lastSuccessor = nlc.getLastSuccessor();
                             if(lastSuccessor != null) {
                                 // Prepare forward put packet
-                                byte[] newPayload = Payload.buildClientForwardingRequestPayload(RequestCodes.FWD_PUT,
-                                        self.getHostname(), self.getReceivingPort(), incomingPacket.getAddress(),
-                                        incomingPacket.getPort(), payload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, lastSuccessor.getHostname(), lastSuccessor.getReceivingPort());
+                                packetToSend = MessageWriter.buildClientForwardingRequestPacket(messageView, RequestCodes.FWD_PUT,
+                                        self.getHostname(), self.getReceivingPort(), incomingPacket.getAddress(), incomingPacket.getPort(), keyRequestID, payload,
+                                        lastSuccessor.getHostname(), lastSuccessor.getReceivingPort());
                             } else {
                                 // Build error packet
-                                byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.INTERNAL_KVSTORE_FAILURE);
-                                byte[] newPayload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, incomingPacket.getAddress(), incomingPacket.getPort(), stdPayload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, self.getHostname(), self.getReceivingPort());
+                                packetToSend = MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.INTERNAL_KVSTORE_FAILURE, incomingPacket.getAddress(), incomingPacket.getPort(), self.getHostname(), self.getReceivingPort());
                             }
                         }
                     }
@@ -160,10 +138,7 @@ public class PUTHandler {
                 // CASE 4) Predecessor set and empty successor list
                 else {
                     // Build error packet
-                    byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.INTERNAL_KVSTORE_FAILURE);
-                    byte[] newPayload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, incomingPacket.getAddress(), incomingPacket.getPort(), stdPayload);
-                    byte[] newMessage = Message.buildMessage(header, newPayload);
-                    packetToSend = new DatagramPacket(newMessage, newMessage.length, self.getHostname(), self.getReceivingPort());
+                    packetToSend = MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.INTERNAL_KVSTORE_FAILURE, incomingPacket.getAddress(), incomingPacket.getPort(), self.getHostname(), self.getReceivingPort());
                 }
             }
 
@@ -186,29 +161,32 @@ public class PUTHandler {
      */
     public static DatagramPacket handleForwardPUT(DatagramPacket incomingPacket) {
         // Extract header and payload
-        byte[] message = incomingPacket.getData();
-        byte[] header = Message.extractHeader(message);
-        byte[] payload = Message.extractPayload(message);
+        MessageView messageView = messageViews.get();
 
         NodeListController nlc = NodeListController.getInstance();
         DatagramPacket packetToSend = null;
 
         try {
-            // Get actual payload
-            InetAddress returnAddress = InetAddress.getByAddress(Payload.getPayloadElement(Payload.Element.IP_ADDRESS, payload));
-            int returnPort = ByteBuffer.wrap(Payload.getPayloadElement(Payload.Element.PORT, payload)).order(ByteOrder.LITTLE_ENDIAN).getInt();
-            InetAddress clientAddress = InetAddress.getByAddress(Payload.getPayloadElement(Payload.Element.CLIENT_IP_ADDRESS, payload));
-            int clientPort = ByteBuffer.wrap(Payload.getPayloadElement(Payload.Element.CLIENT_PORT, payload)).order(ByteOrder.LITTLE_ENDIAN).getInt();
-            byte[] actualPayload = Payload.getPayloadElement(Payload.Element.CLIENT_FORWARD_PAYLOAD, payload);
+            messageView.wrap(incomingPacket);
+            PayloadView payload = messageView.getPayload();
 
-            // Get key from payload
-            byte[] keyAsBytes = Payload.getPayloadElement(Payload.Element.KEY, actualPayload);
-            String key = UTF8StringUtility.bytesUTF8ToString(keyAsBytes);
-            int keyRequestID = HashUtility.simpleHash(key, HashUtility.DEFAULT_HASH_RANGE);
+            // Get actual payload
+            InetAddress returnAddress = payload.getReturnAddress();
+            int returnPort = payload.getReturnPort();
+            InetAddress clientAddress = payload.getClientAddress();
+            int clientPort = payload.getClientPort();
+
+            // Answer requests caught in a routing loop instead of relaying them again
+            int hopCount = payload.getHopCount();
+            RoutingStatistics.recordReceived(hopCount);
+            if(hopCount >= Payload.MAX_HOP_COUNT) {
+                RoutingStatistics.recordHopLimitExceeded();
+                return MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.INTERNAL_KVSTORE_FAILURE, clientAddress, clientPort, returnAddress, returnPort);
+            }
+            PayloadView actualPayload = messageView.getClientForwardPayload();
 
-            // Get value from payload
-            byte[] valueAsBytes = Payload.getPayloadElement(Payload.Element.REQUEST_VALUE, actualPayload);
-            String value = UTF8StringUtility.bytesUTF8ToString(valueAsBytes);
+            // Route on the ring ID computed by the entry node. The key and value are only decoded on the node that owns the key.
+            int keyRequestID = payload.getRingID();
 
             // Get predecessor and self
             Node predecessor = nlc.getPredecessor();
@@ -223,7 +201,7 @@ public class PUTHandler {
 
                     if(self.getId() == keyRequestID) {
                         // Perform put operation on local kvstore
-                        packetToSend = performPutOperation(key, value, header, returnAddress, returnPort, clientAddress, clientPort);
+                        packetToSend = performPutOperation(new KVKey(actualPayload.getKey()), actualPayload.getRequestValue(), getTimeToLive(actualPayload), messageView.getHeader(), returnAddress, returnPort, clientAddress, clientPort);
                     } else {
                         int successorList[] = nlc.getSuccessorListIDs();
                         try {
@@ -231,33 +209,20 @@ public class PUTHandler {
                             Node potentialIMS = nlc.getNodeByID(potentialIMSID);
                             if(potentialIMS != null) {
                                 // Prepare potential ims put packet
-                                byte[] newPayload = Payload.buildClientForwardingRequestPayload(
-                                        RequestCodes.POTENTIAL_IMS_PUT, returnAddress, returnPort, clientAddress,
-                                        clientPort, actualPayload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, potentialIMS.getHostname(), potentialIMS.getReceivingPort());
+                                packetToSend = messageView.toRelayPacket(RequestCodes.POTENTIAL_IMS_PUT, potentialIMS.getHostname(), potentialIMS.getReceivingPort());
                             } else {
                                 // Build error packet
-                                byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.INTERNAL_KVSTORE_FAILURE);
-                                byte[] newPayload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, clientAddress, clientPort, stdPayload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, returnAddress, returnPort);
+                                packetToSend = MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.INTERNAL_KVSTORE_FAILURE, clientAddress, clientPort, returnAddress, returnPort);
                             }
                         } catch(NoPotentialIMSException e) {
                             // Get last successor
                             Node lastSuccessor = nlc.getLastSuccessor();
                             if(lastSuccessor != null) {
                                 // Prepare forward put packet
-                                byte[] newPayload = Payload.buildClientForwardingRequestPayload(RequestCodes.FWD_PUT,
-                                        returnAddress, returnPort, clientAddress, clientPort, actualPayload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, lastSuccessor.getHostname(), lastSuccessor.getReceivingPort());
+                                packetToSend = messageView.toRelayPacket(RequestCodes.FWD_PUT, lastSuccessor.getHostname(), lastSuccessor.getReceivingPort());
                             } else {
                                 // Build error packet
-                                byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.INTERNAL_KVSTORE_FAILURE);
-                                byte[] newPayload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, clientAddress, clientPort, stdPayload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, returnAddress, returnPort);
+                                packetToSend = MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.INTERNAL_KVSTORE_FAILURE, clientAddress, clientPort, returnAddress, returnPort);
                             }
                         }
                     }
@@ -265,10 +230,7 @@ public class PUTHandler {
                 // CASE 2) Null predecessor and empty successor list
                 else {
                     // Build error packet
-                    byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.INTERNAL_KVSTORE_FAILURE);
-                    byte[] newPayload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, clientAddress, clientPort, stdPayload);
-                    byte[] newMessage = Message.buildMessage(header, newPayload);
-                    packetToSend = new DatagramPacket(newMessage, newMessage.length, returnAddress, returnPort);
+                    packetToSend = MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.INTERNAL_KVSTORE_FAILURE, clientAddress, clientPort, returnAddress, returnPort);
                 }
             }
             else {
@@ -280,7 +242,7 @@ public class PUTHandler {
                     // iii) If potential ims found in successor list -> Send potential ims request to element
                     if(self.getId() == keyRequestID) {
                         // Perform put operation on local kvstore
-                        packetToSend = performPutOperation(key, value, header, returnAddress, returnPort, clientAddress, clientPort);
+                        packetToSend = performPutOperation(new KVKey(actualPayload.getKey()), actualPayload.getRequestValue(), getTimeToLive(actualPayload), messageView.getHeader(), returnAddress, returnPort, clientAddress, clientPort);
                     } else {
                         int successorList[] = nlc.getSuccessorListIDs();
                         try {
@@ -288,33 +250,20 @@ public class PUTHandler {
                             Node potentialIMS = nlc.getNodeByID(potentialIMSID);
                             if(potentialIMS != null) {
                                 // Prepare potential ims put packet
-                                byte[] newPayload = Payload.buildClientForwardingRequestPayload(
-                                        RequestCodes.POTENTIAL_IMS_PUT, returnAddress, returnPort, clientAddress,
-                                        clientPort, actualPayload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, potentialIMS.getHostname(), potentialIMS.getReceivingPort());
+                                packetToSend = messageView.toRelayPacket(RequestCodes.POTENTIAL_IMS_PUT, potentialIMS.getHostname(), potentialIMS.getReceivingPort());
                             } else {
                                 // Build error packet
-                                byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.INTERNAL_KVSTORE_FAILURE);
-                                byte[] newPayload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, clientAddress, clientPort, stdPayload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, returnAddress, returnPort);
+                                packetToSend = MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.INTERNAL_KVSTORE_FAILURE, clientAddress, clientPort, returnAddress, returnPort);
                             }
                         } catch(NoPotentialIMSException e) {
                             // Get last successor
                             Node lastSuccessor = nlc.getLastSuccessor();
                             if(lastSuccessor != null) {
                                 // Prepare forward put packet
-                                byte[] newPayload = Payload.buildClientForwardingRequestPayload(RequestCodes.FWD_PUT,
-                                        returnAddress, returnPort, clientAddress, clientPort, actualPayload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, lastSuccessor.getHostname(), lastSuccessor.getReceivingPort());
+                                packetToSend = messageView.toRelayPacket(RequestCodes.FWD_PUT, lastSuccessor.getHostname(), lastSuccessor.getReceivingPort());
                             } else {
                                 // Build error packet
-                                byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.INTERNAL_KVSTORE_FAILURE);
-                                byte[] newPayload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, clientAddress, clientPort, stdPayload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, returnAddress, returnPort);
+                                packetToSend = MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.INTERNAL_KVSTORE_FAILURE, clientAddress, clientPort, returnAddress, returnPort);
                             }
                         }
                     }
@@ -322,10 +271,7 @@ public class PUTHandler {
                 // CASE 4) Predecessor set and empty successor list
                 else {
                     // Build error packet
-                    byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.INTERNAL_KVSTORE_FAILURE);
-                    byte[] newPayload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, clientAddress, clientPort, stdPayload);
-                    byte[] newMessage = Message.buildMessage(header, newPayload);
-                    packetToSend = new DatagramPacket(newMessage, newMessage.length, returnAddress, returnPort);
+                    packetToSend = MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.INTERNAL_KVSTORE_FAILURE, clientAddress, clientPort, returnAddress, returnPort);
                 }
             }
 
@@ -351,18 +297,21 @@ public class PUTHandler {
      * @return
      */
     public static void handleReplicaPUT(DatagramPacket incomingPacket) {
-        byte[] message = incomingPacket.getData();
-        byte[] payload = Message.extractPayload(message);
+        MessageView messageView = messageViews.get();
 
         try {
+            messageView.wrap(incomingPacket);
+            PayloadView payload = messageView.getPayload();
+
             // Get key from payload
-            String key = UTF8StringUtility.bytesUTF8ToString(Payload.getPayloadElement(Payload.Element.KEY, payload));
+            KVKey key = new KVKey(payload.getKey());
 
-            // Get value from payload
-            String value = UTF8StringUtility.bytesUTF8ToString(Payload.getPayloadElement(Payload.Element.REQUEST_VALUE, payload));
+            // Get value and its time to live from payload
+            byte[] value = payload.getRequestValue();
+            int timeToLiveSeconds = payload.getTimeToLive();
 
             // Perform a put operation
-            performPutOperation(key, value, null, null, -1, null, -1);
+            performPutOperation(key, value, timeToLiveSeconds, null, null, -1, null, -1);
 
 
         } catch(Exception e) {
@@ -380,29 +329,32 @@ public class PUTHandler {
      */
     public static DatagramPacket handlePotentialIMSPUT(DatagramPacket incomingPacket) {
         // Extract header and payload
-        byte[] message = incomingPacket.getData();
-        byte[] header = Message.extractHeader(message);
-        byte[] payload = Message.extractPayload(message);
+        MessageView messageView = messageViews.get();
 
         NodeListController nlc = NodeListController.getInstance();
         DatagramPacket packetToSend = null;
 
         try {
-            // Get actual payload
-            InetAddress returnAddress = InetAddress.getByAddress(Payload.getPayloadElement(Payload.Element.IP_ADDRESS, payload));
-            int returnPort = ByteBuffer.wrap(Payload.getPayloadElement(Payload.Element.PORT, payload)).order(ByteOrder.LITTLE_ENDIAN).getInt();
-            InetAddress clientAddress = InetAddress.getByAddress(Payload.getPayloadElement(Payload.Element.CLIENT_IP_ADDRESS, payload));
-            int clientPort = ByteBuffer.wrap(Payload.getPayloadElement(Payload.Element.CLIENT_PORT, payload)).order(ByteOrder.LITTLE_ENDIAN).getInt();
-            byte[] actualPayload = Payload.getPayloadElement(Payload.Element.CLIENT_FORWARD_PAYLOAD, payload);
+            messageView.wrap(incomingPacket);
+            PayloadView payload = messageView.getPayload();
 
-            // Get key from payload
-            byte[] keyAsBytes = Payload.getPayloadElement(Payload.Element.KEY, actualPayload);
-            String key = UTF8StringUtility.bytesUTF8ToString(keyAsBytes);
-            int keyRequestID = HashUtility.simpleHash(key, HashUtility.DEFAULT_HASH_RANGE);
+            // Get actual payload
+            InetAddress returnAddress = payload.getReturnAddress();
+            int returnPort = payload.getReturnPort();
+            InetAddress clientAddress = payload.getClientAddress();
+            int clientPort = payload.getClientPort();
+
+            // Answer requests caught in a routing loop instead of relaying them again
+            int hopCount = payload.getHopCount();
+            RoutingStatistics.recordReceived(hopCount);
+            if(hopCount >= Payload.MAX_HOP_COUNT) {
+                RoutingStatistics.recordHopLimitExceeded();
+                return MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.INTERNAL_KVSTORE_FAILURE, clientAddress, clientPort, returnAddress, returnPort);
+            }
+            PayloadView actualPayload = messageView.getClientForwardPayload();
 
-            // Get value from payload
-            byte[] valueAsBytes = Payload.getPayloadElement(Payload.Element.REQUEST_VALUE, actualPayload);
-            String value = UTF8StringUtility.bytesUTF8ToString(valueAsBytes);
+            // Route on the ring ID computed by the entry node. The key and value are only decoded on the node that owns the key.
+            int keyRequestID = payload.getRingID();
 
             // Get predecessor and self
             Node predecessor = nlc.getPredecessor();
@@ -417,22 +369,16 @@ public class PUTHandler {
 
                     if(self.getId() == keyRequestID) {
                         // Perform put operation on local kvstore
-                        packetToSend = performPutOperation(key, value, header, returnAddress, returnPort, clientAddress, clientPort);
+                        packetToSend = performPutOperation(new KVKey(actualPayload.getKey()), actualPayload.getRequestValue(), getTimeToLive(actualPayload), messageView.getHeader(), returnAddress, returnPort, clientAddress, clientPort);
                     } else {
                         // Build error packet
-                        byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.INTERNAL_KVSTORE_FAILURE);
-                        byte[] newPayload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, clientAddress, clientPort, stdPayload);
-                        byte[] newMessage = Message.buildMessage(header, newPayload);
-                        packetToSend = new DatagramPacket(newMessage, newMessage.length, returnAddress, returnPort);
+                        packetToSend = MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.INTERNAL_KVSTORE_FAILURE, clientAddress, clientPort, returnAddress, returnPort);
                     }
                 }
                 // CASE 2) Null predecessor and empty successor list
                 else {
                     // Build error packet
-                    byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.INTERNAL_KVSTORE_FAILURE);
-                    byte[] newPayload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, clientAddress, clientPort, stdPayload);
-                    byte[] newMessage = Message.buildMessage(header, newPayload);
-                    packetToSend = new DatagramPacket(newMessage, newMessage.length, returnAddress, returnPort);
+                    packetToSend = MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.INTERNAL_KVSTORE_FAILURE, clientAddress, clientPort, returnAddress, returnPort);
                 }
             }
             else {
@@ -443,15 +389,12 @@ public class PUTHandler {
                     // ii) If not correct -> Send predecessor a potential ims put request
                     if(ImmediateSuccessorRouter.isSelfPotentialIMS(keyRequestID, predecessor.getId(), self.getId())) {
                         // Perform put operation on local kvstore
-                        packetToSend = performPutOperation(key, value, header, returnAddress, returnPort, clientAddress, clientPort);
+                        packetToSend = performPutOperation(new KVKey(actualPayload.getKey()), actualPayload.getRequestValue(), getTimeToLive(actualPayload), messageView.getHeader(), returnAddress, returnPort, clientAddress, clientPort);
 
 
                     } else {
                         // Prepare potential ims put request to send to predecessor
-                        byte[] newPayload = Payload.buildClientForwardingRequestPayload(RequestCodes.POTENTIAL_IMS_PUT,
-                                returnAddress, returnPort, clientAddress, clientPort, actualPayload);
-                        byte[] newMessage = Message.buildMessage(header, newPayload);
-                        packetToSend = new DatagramPacket(newMessage, newMessage.length, predecessor.getHostname(), predecessor.getReceivingPort());
+                        packetToSend = messageView.toRelayPacket(RequestCodes.POTENTIAL_IMS_PUT, predecessor.getHostname(), predecessor.getReceivingPort());
                     }
                 }
 
@@ -470,81 +413,95 @@ public class PUTHandler {
     }
 
 
+    /**
+     * Gets the time to live of a PUT request sent by a client
+     * @param payload - PUT or PUT_WITH_TTL payload
+     * @return - Seconds until the value expires, 0 if it does not expire
+     * @throws InvalidMessageException
+     * @throws BadValueLengthException
+     */
+    private static int getTimeToLive(PayloadView payload) throws InvalidMessageException, BadValueLengthException {
+        return payload.getCommand() == RequestCodes.PUT_WITH_TTL ? payload.getTimeToLive() : 0;
+    }
+
+
     /**
      * Performs a put operation on local kvstore and builds a response packet
      * @param key - Key to store
      * @param value - Value associated with key
+     * @param timeToLiveSeconds - Seconds until the value expires, 0 or less if it does not expire
      * @param header - Header to include in response packet
      * @param clientAddress - Client address
      * @param clientPort - Client port
      * @return
      */
-    protected static DatagramPacket performPutOperation(String key, String value, byte[] header, InetAddress destinationAddress, int destinationPort, InetAddress clientAddress, int clientPort) {
+    protected static DatagramPacket performPutOperation(KVKey key, byte[] value, int timeToLiveSeconds, byte[] header, InetAddress destinationAddress, int destinationPort, InetAddress clientAddress, int clientPort) {
         DatagramPacket packet = null;
-        byte[] payload = null;
+        byte responseCode;
 
         CacheController cacheController = CacheController.getInstance();
         KVStoreController kvStoreController = KVStoreController.getInstance();
-        try {
 
-            CacheEntry cacheEntry = cacheController.isUniqueIDInCache(header);
-            if(cacheEntry == null) {
-                // Add new cache entry
-                cacheController.addToCache(header);
+        // Requests that have already been serviced are not applied again. Replica operations have no header and are always applied.
+        if(header != null && !cacheController.addIfAbsent(header)) {
+            // Answer with the stored response. Requests still being serviced or whose response was evicted are dropped.
+            byte[] response = cacheController.getResponse(header);
+            if(response == null || destinationAddress == null) {
+                return null;
             }
-            else {
-                // If cache entry was found, check if expired
-                if(cacheEntry.isExpired()) {
-                    // If expired, remove from cache and add new cache entry
-                    cacheController.removeAllExpiredEntries();
-                    cacheController.addToCache(header);
-                } else {
-                    // If not expired - build error packet as request has already been serviced
-
-                    // For now returning null
-                    return null;
-                }
-
+            try {
+                return MessageWriter.buildClientForwardingResponsePacket(header, response, clientAddress, clientPort,
+                        destinationAddress, destinationPort);
+            } catch(InvalidMessageException e) {
+                e.printStackTrace();
+                return null;
             }
+        }
 
 
-            // Attempt to put key-value pair in key value store
-            kvStoreController.put(key, value);
+        // Attempt to put key-value pair in key value store
+        long expiryMillis = timeToLiveSeconds > 0 ? System.currentTimeMillis() + timeToLiveSeconds * 1000L : KVStoreController.NO_EXPIRY;
+        KVStoreStatus status = kvStoreController.put(key, value, expiryMillis);
 
+        if(status == KVStoreStatus.SUCCESS) {
 
             /* If key was put in key-value store, build a response payload
                with response code: Operation Success */
 
-            byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.OPERATION_SUCCESS);
-            payload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, clientAddress, clientPort, stdPayload);
+            responseCode = ResponseCodes.OPERATION_SUCCESS;
             System.out.println("PUT operation succeeded");
 
-            // Forward to replicas only if <key, value> was inserted
-            ReplicaForward.forwardPUTtoReplica(header, key, value);
+            // Forward to replicas only if <key, value> was inserted. Replica operations have no destination and are not forwarded again.
+            if(destinationAddress != null) {
+                ReplicaForward.forwardPUTtoReplica(header, key.getBytes(), value, timeToLiveSeconds);
+            }
 
-        } catch(KVStoreFullException e) {
+        } else if(status == KVStoreStatus.STORE_FULL) {
 
             /* If key-value store is full, build a response payload
                with response code: Out of Space */
 
-            byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.OUT_OF_SPACE);
-            payload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, clientAddress, clientPort, stdPayload);
+            responseCode = ResponseCodes.OUT_OF_SPACE;
             System.out.println("PUT operation failed - out of space");
 
-        } catch(KVStoreInvalidKeyOrValueFormatException e) {
+        } else {
 
             /* If key or value is in wrong format, build a response payload
                with response code: Internal KVStore Failure */
 
-            byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.INTERNAL_KVSTORE_FAILURE);
-            payload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, clientAddress, clientPort, stdPayload);
+            responseCode = ResponseCodes.INTERNAL_KVSTORE_FAILURE;
             System.out.println("PUT operation failed - Internal KV Store Failure");
         }
 
-        if(payload != null && header != null && destinationAddress != null) {
+        if(header != null) {
+            // Keep the response so a retransmitted request gets the same answer
+            cacheController.setResponse(header, Payload.buildPayloadWithOnlyCommand(responseCode));
+        }
+
+        if(header != null && destinationAddress != null) {
             try {
-                byte[] message = Message.buildMessage(header, payload);
-                packet = new DatagramPacket(message, message.length, destinationAddress, destinationPort);
+                packet = MessageWriter.buildClientForwardingResponsePacket(header, responseCode, clientAddress, clientPort,
+                        destinationAddress, destinationPort);
             } catch(InvalidMessageException e) {
                 e.printStackTrace();
             }
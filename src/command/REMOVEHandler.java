@@ -3,37 +3,38 @@ package command;
 import algorithm.ImmediateSuccessorRouter;
 import algorithm.NoPotentialIMSException;
 import cache.CacheController;
-import cache.CacheEntry;
+import kvstore.KVKey;
 import kvstore.KVStoreController;
-import kvstore.KVStoreKeyNotFoundException;
-import message.BadValueLengthException;
+import kvstore.KVStoreStatus;
 import message.InvalidMessageException;
-import message.Message;
+import message.MessageView;
+import message.MessageWriter;
 import message.Payload;
+import message.PayloadView;
+import message.RoutingStatistics;
 import nodelist.Node;
 import nodelist.NodeListController;
 import protocol.ReplicaForward;
 import timestamp.Timestamp;
 import utility.HashUtility;
-import utility.UTF8StringUtility;
 
 import java.net.DatagramPacket;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 
 public class REMOVEHandler {
 
+    // Views that decode the requests handled by each thread
+    private static final ThreadLocal<MessageView> messageViews = MessageView.createPerThread();
+
+
     /**
      * Handles client remove requests
      * @param incomingPacket - Incoming packet
      * @return
      */
     public static DatagramPacket handleClientREMOVE(DatagramPacket incomingPacket) {
-        byte[] message = incomingPacket.getData();
-        byte[] header = Message.extractHeader(message);
-        byte[] payload = Message.extractPayload(message);
+        MessageView messageView = messageViews.get();
 
         DatagramPacket packetToSend = null;
         NodeListController nlc = NodeListController.getInstance();
@@ -41,11 +42,11 @@ public class REMOVEHandler {
         int portFromPacket = incomingPacket.getPort();
 
         try {
-            // Get key from payload
-            byte[] keyAsBytes = Payload.getPayloadElement(Payload.Element.KEY, payload);
-            String key = UTF8StringUtility.bytesUTF8ToString(keyAsBytes);
+            messageView.wrap(incomingPacket);
+            PayloadView payload = messageView.getPayload();
 
-            int keyRequestID = HashUtility.simpleHash(key, HashUtility.DEFAULT_HASH_RANGE);
+            // Hash the key in place. The key is only decoded on the node that owns the key.
+            int keyRequestID = payload.getKeyHash(HashUtility.DEFAULT_HASH_RANGE);
 
             Node predecessor = nlc.getPredecessor();
             Node self = nlc.getSelf();
@@ -58,7 +59,7 @@ public class REMOVEHandler {
 
                     if(self.getId() == keyRequestID) {
                         // Perform remove operation on local kvstore
-                        packetToSend = performRemoveOperation(key, header, self.getHostname(), self.getReceivingPort(), incomingPacket.getAddress(), incomingPacket.getPort());
+                        packetToSend = performRemoveOperation(new KVKey(payload.getKey()), messageView.getHeader(), self.getHostname(), self.getReceivingPort(), incomingPacket.getAddress(), incomingPacket.getPort());
                     } else {
                         int successorList[] = nlc.getSuccessorListIDs();
                         try {
@@ -67,34 +68,24 @@ public class REMOVEHandler {
                             Node potentialIMS = nlc.getNodeByID(potentialIMSID);
                             if(potentialIMS != null) {
                                 // Prepare potential ims remove packet
-                                byte[] newPayload = Payload.buildClientForwardingRequestPayload(
-                                        RequestCodes.POTENTIAL_IMS_REMOVE, self.getHostname(), self.getReceivingPort(),
-                                        incomingPacket.getAddress(), incomingPacket.getPort(), payload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, potentialIMS.getHostname(), potentialIMS.getReceivingPort());
+                                packetToSend = MessageWriter.buildClientForwardingRequestPacket(messageView, RequestCodes.POTENTIAL_IMS_REMOVE,
+                                        self.getHostname(), self.getReceivingPort(), incomingPacket.getAddress(), incomingPacket.getPort(), keyRequestID, payload,
+                                        potentialIMS.getHostname(), potentialIMS.getReceivingPort());
                             } else {
                                 // Build error packet
-                                byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.INTERNAL_KVSTORE_FAILURE);
-                                byte[] newPayload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, incomingPacket.getAddress(), incomingPacket.getPort(), stdPayload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, self.getHostname(), self.getReceivingPort());
+                                packetToSend = MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.INTERNAL_KVSTORE_FAILURE, incomingPacket.getAddress(), incomingPacket.getPort(), self.getHostname(), self.getReceivingPort());
                             }
                         } catch(NoPotentialIMSException e) {
                             // Get last successor
                             Node lastSuccessor = nlc.getLastSuccessor();
                             if(lastSuccessor != null) {
                                 // Prepare forward remove packet
-                                byte[] newPayload = Payload.buildClientForwardingRequestPayload(RequestCodes.FWD_REMOVE,
-                                        self.getHostname(), self.getReceivingPort(), incomingPacket.getAddress(),
-                                        incomingPacket.getPort(), payload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, lastSuccessor.getHostname(), lastSuccessor.getReceivingPort());
+                                packetToSend = MessageWriter.buildClientForwardingRequestPacket(messageView, RequestCodes.FWD_REMOVE,
+                                        self.getHostname(), self.getReceivingPort(), incomingPacket.getAddress(), incomingPacket.getPort(), keyRequestID, payload,
+                                        lastSuccessor.getHostname(), lastSuccessor.getReceivingPort());
                             } else {
                                 // Build error packet
-                                byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.INTERNAL_KVSTORE_FAILURE);
-                                byte[] newPayload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, incomingPacket.getAddress(), incomingPacket.getPort(), stdPayload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, self.getHostname(), self.getReceivingPort());
+                                packetToSend = MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.INTERNAL_KVSTORE_FAILURE, incomingPacket.getAddress(), incomingPacket.getPort(), self.getHostname(), self.getReceivingPort());
                             }
                         }
                     }
@@ -102,7 +93,7 @@ public class REMOVEHandler {
                 // CASE 2) Null predecessor and empty successor list
                 else {
                     // Perform remove operation on local kvstore
-                    packetToSend = performRemoveOperation(key, header, self.getHostname(), self.getReceivingPort(), incomingPacket.getAddress(), incomingPacket.getPort());
+                    packetToSend = performRemoveOperation(new KVKey(payload.getKey()), messageView.getHeader(), self.getHostname(), self.getReceivingPort(), incomingPacket.getAddress(), incomingPacket.getPort());
                 }
             }
             else {
@@ -114,7 +105,7 @@ public class REMOVEHandler {
                     // iii) If potential ims found in successor list -> Send potential ims request to element
                     if(ImmediateSuccessorRouter.isSelfPotentialIMS(keyRequestID, predecessor.getId(), self.getId())) {
                         // Perform remove operation on local kvstore
-                        packetToSend = performRemoveOperation(key, header, self.getHostname(), self.getReceivingPort(), incomingPacket.getAddress(), incomingPacket.getPort());
+                        packetToSend = performRemoveOperation(new KVKey(payload.getKey()), messageView.getHeader(), self.getHostname(), self.getReceivingPort(), incomingPacket.getAddress(), incomingPacket.getPort());
                     } else {
                         int successorList[] = nlc.getSuccessorListIDs();
                         try {
@@ -122,34 +113,24 @@ public class REMOVEHandler {
                             Node potentialIMS = nlc.getNodeByID(potentialIMSID);
                             if(potentialIMS != null) {
                                 // Prepare potential ims remove packet
-                                byte[] newPayload = Payload.buildClientForwardingRequestPayload(
-                                        RequestCodes.POTENTIAL_IMS_REMOVE, self.getHostname(), self.getReceivingPort(),
-                                        incomingPacket.getAddress(), incomingPacket.getPort(), payload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, potentialIMS.getHostname(), potentialIMS.getReceivingPort());
+                                packetToSend = MessageWriter.buildClientForwardingRequestPacket(messageView, RequestCodes.POTENTIAL_IMS_REMOVE,
+                                        self.getHostname(), self.getReceivingPort(), incomingPacket.getAddress(), incomingPacket.getPort(), keyRequestID, payload,
+                                        potentialIMS.getHostname(), potentialIMS.getReceivingPort());
                             } else {
                                 // Build error packet
-                                byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.INTERNAL_KVSTORE_FAILURE);
-                                byte[] newPayload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, incomingPacket.getAddress(), incomingPacket.getPort(), stdPayload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, self.getHostname(), self.getReceivingPort());
+                                packetToSend = MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.INTERNAL_KVSTORE_FAILURE, incomingPacket.getAddress(), incomingPacket.getPort(), self.getHostname(), self.getReceivingPort());
                             }
                         } catch(NoPotentialIMSException e) {
                             // Get last successor
                             Node lastSuccessor = nlc.getLastSuccessor();
                             if(lastSuccessor != null) {
                                 // Prepare forward remove packet
-                                byte[] newPayload = Payload.buildClientForwardingRequestPayload(RequestCodes.FWD_REMOVE,
-                                        self.getHostname(), self.getReceivingPort(), incomingPacket.getAddress(),
-                                        incomingPacket.getPort(), payload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, lastSuccessor.getHostname(), lastSuccessor.getReceivingPort());
+                                packetToSend = MessageWriter.buildClientForwardingRequestPacket(messageView, RequestCodes.FWD_REMOVE,
+                                        self.getHostname(), self.getReceivingPort(), incomingPacket.getAddress(), incomingPacket.getPort(), keyRequestID, payload,
+                                        lastSuccessor.getHostname(), lastSuccessor.getReceivingPort());
                             } else {
                                 // Build error packet
-                                byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.INTERNAL_KVSTORE_FAILURE);
-                                byte[] newPayload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, incomingPacket.getAddress(), incomingPacket.getPort(), stdPayload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, self.getHostname(), self.getReceivingPort());
+                                packetToSend = MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.INTERNAL_KVSTORE_FAILURE, incomingPacket.getAddress(), incomingPacket.getPort(), self.getHostname(), self.getReceivingPort());
                             }
                         }
                     }
@@ -157,17 +138,12 @@ public class REMOVEHandler {
                 // CASE 4) Predecessor set and empty successor list
                 else {
                     // Build error packet
-                    byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.INTERNAL_KVSTORE_FAILURE);
-                    byte[] newPayload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, incomingPacket.getAddress(), incomingPacket.getPort(), stdPayload);
-                    byte[] newMessage = Message.buildMessage(header, newPayload);
-                    packetToSend = new DatagramPacket(newMessage, newMessage.length, self.getHostname(), self.getReceivingPort());
+                    packetToSend = MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.INTERNAL_KVSTORE_FAILURE, incomingPacket.getAddress(), incomingPacket.getPort(), self.getHostname(), self.getReceivingPort());
                 }
             }
 
         } catch(InvalidMessageException e) {
             e.printStackTrace();
-        } catch(BadValueLengthException e) {
-            e.printStackTrace();
         }
 
 
@@ -183,25 +159,32 @@ public class REMOVEHandler {
      */
     public static DatagramPacket handleForwardREMOVE(DatagramPacket incomingPacket) {
         // Extract header and payload
-        byte[] message = incomingPacket.getData();
-        byte[] header = Message.extractHeader(message);
-        byte[] payload = Message.extractPayload(message);
+        MessageView messageView = messageViews.get();
 
         NodeListController nlc = NodeListController.getInstance();
         DatagramPacket packetToSend = null;
 
         try {
+            messageView.wrap(incomingPacket);
+            PayloadView payload = messageView.getPayload();
+
             // Get actual payload
-            InetAddress returnAddress = InetAddress.getByAddress(Payload.getPayloadElement(Payload.Element.IP_ADDRESS, payload));
-            int returnPort = ByteBuffer.wrap(Payload.getPayloadElement(Payload.Element.PORT, payload)).order(ByteOrder.LITTLE_ENDIAN).getInt();
-            InetAddress clientAddress = InetAddress.getByAddress(Payload.getPayloadElement(Payload.Element.CLIENT_IP_ADDRESS, payload));
-            int clientPort = ByteBuffer.wrap(Payload.getPayloadElement(Payload.Element.CLIENT_PORT, payload)).order(ByteOrder.LITTLE_ENDIAN).getInt();
-            byte[] actualPayload = Payload.getPayloadElement(Payload.Element.CLIENT_FORWARD_PAYLOAD, payload);
+            InetAddress returnAddress = payload.getReturnAddress();
+            int returnPort = payload.getReturnPort();
+            InetAddress clientAddress = payload.getClientAddress();
+            int clientPort = payload.getClientPort();
+
+            // Answer requests caught in a routing loop instead of relaying them again
+            int hopCount = payload.getHopCount();
+            RoutingStatistics.recordReceived(hopCount);
+            if(hopCount >= Payload.MAX_HOP_COUNT) {
+                RoutingStatistics.recordHopLimitExceeded();
+                return MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.INTERNAL_KVSTORE_FAILURE, clientAddress, clientPort, returnAddress, returnPort);
+            }
+            PayloadView actualPayload = messageView.getClientForwardPayload();
 
-            // Get key from payload
-            byte[] keyAsBytes = Payload.getPayloadElement(Payload.Element.KEY, actualPayload);
-            String key = UTF8StringUtility.bytesUTF8ToString(keyAsBytes);
-            int keyRequestID = HashUtility.simpleHash(key, HashUtility.DEFAULT_HASH_RANGE);
+            // Route on the ring ID computed by the entry node. The key is only decoded on the node that owns the key.
+            int keyRequestID = payload.getRingID();
 
             // Get predecessor and self
             Node predecessor = nlc.getPredecessor();
@@ -216,7 +199,7 @@ public class REMOVEHandler {
 
                     if(self.getId() == keyRequestID) {
                         // Perform remove operation on local kvstore
-                        packetToSend = performRemoveOperation(key, header, returnAddress, returnPort, clientAddress, clientPort);
+                        packetToSend = performRemoveOperation(new KVKey(actualPayload.getKey()), messageView.getHeader(), returnAddress, returnPort, clientAddress, clientPort);
                     } else {
                         int successorList[] = nlc.getSuccessorListIDs();
                         try {
@@ -224,33 +207,20 @@ public class REMOVEHandler {
                             Node potentialIMS = nlc.getNodeByID(potentialIMSID);
                             if(potentialIMS != null) {
                                 // Prepare potential ims remove packet
-                                byte[] newPayload = Payload.buildClientForwardingRequestPayload(
-                                        RequestCodes.POTENTIAL_IMS_REMOVE, returnAddress, returnPort, clientAddress,
-                                        clientPort, actualPayload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, potentialIMS.getHostname(), potentialIMS.getReceivingPort());
+                                packetToSend = messageView.toRelayPacket(RequestCodes.POTENTIAL_IMS_REMOVE, potentialIMS.getHostname(), potentialIMS.getReceivingPort());
                             } else {
                                 // Build error packet
-                                byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.INTERNAL_KVSTORE_FAILURE);
-                                byte[] newPayload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, clientAddress, clientPort, stdPayload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, returnAddress, returnPort);
+                                packetToSend = MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.INTERNAL_KVSTORE_FAILURE, clientAddress, clientPort, returnAddress, returnPort);
                             }
                         } catch(NoPotentialIMSException e) {
                             // Get last successor
                             Node lastSuccessor = nlc.getLastSuccessor();
                             if(lastSuccessor != null) {
                                 // Prepare forward remove packet
-                                byte[] newPayload = Payload.buildClientForwardingRequestPayload(RequestCodes.FWD_REMOVE,
-                                        returnAddress, returnPort, clientAddress, clientPort, actualPayload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, lastSuccessor.getHostname(), lastSuccessor.getReceivingPort());
+                                packetToSend = messageView.toRelayPacket(RequestCodes.FWD_REMOVE, lastSuccessor.getHostname(), lastSuccessor.getReceivingPort());
                             } else {
                                 // Build error packet
-                                byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.INTERNAL_KVSTORE_FAILURE);
-                                byte[] newPayload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, clientAddress, clientPort, stdPayload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, returnAddress, returnPort);
+                                packetToSend = MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.INTERNAL_KVSTORE_FAILURE, clientAddress, clientPort, returnAddress, returnPort);
                             }
                         }
                     }
@@ -258,10 +228,7 @@ public class REMOVEHandler {
                 // CASE 2) Null predecessor and empty successor list
                 else {
                     // Build error packet
-                    byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.INTERNAL_KVSTORE_FAILURE);
-                    byte[] newPayload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, clientAddress, clientPort, stdPayload);
-                    byte[] newMessage = Message.buildMessage(header, newPayload);
-                    packetToSend = new DatagramPacket(newMessage, newMessage.length, returnAddress, returnPort);
+                    packetToSend = MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.INTERNAL_KVSTORE_FAILURE, clientAddress, clientPort, returnAddress, returnPort);
                 }
             }
             else {
@@ -273,7 +240,7 @@ public class REMOVEHandler {
                     // iii) If potential ims found in successor list -> Send potential ims request to element
                     if(self.getId() == keyRequestID) {
                         // Perform remove operation on local kvstore
-                        packetToSend = performRemoveOperation(key, header, returnAddress, returnPort, clientAddress, clientPort);
+                        packetToSend = performRemoveOperation(new KVKey(actualPayload.getKey()), messageView.getHeader(), returnAddress, returnPort, clientAddress, clientPort);
                     } else {
                         int successorList[] = nlc.getSuccessorListIDs();
                         try {
@@ -281,33 +248,20 @@ public class REMOVEHandler {
                             Node potentialIMS = nlc.getNodeByID(potentialIMSID);
                             if(potentialIMS != null) {
                                 // Prepare potential ims remove packet
-                                byte[] newPayload = Payload.buildClientForwardingRequestPayload(
-                                        RequestCodes.POTENTIAL_IMS_REMOVE, returnAddress, returnPort, clientAddress,
-                                        clientPort, actualPayload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, potentialIMS.getHostname(), potentialIMS.getReceivingPort());
+                                packetToSend = messageView.toRelayPacket(RequestCodes.POTENTIAL_IMS_REMOVE, potentialIMS.getHostname(), potentialIMS.getReceivingPort());
                             } else {
                                 // Build error packet
-                                byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.INTERNAL_KVSTORE_FAILURE);
-                                byte[] newPayload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, clientAddress, clientPort, stdPayload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, returnAddress, returnPort);
+                                packetToSend = MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.INTERNAL_KVSTORE_FAILURE, clientAddress, clientPort, returnAddress, returnPort);
                             }
                         } catch(NoPotentialIMSException e) {
                             // Get last successor
                             Node lastSuccessor = nlc.getLastSuccessor();
                             if(lastSuccessor != null) {
                                 // Prepare forward remove packet
-                                byte[] newPayload = Payload.buildClientForwardingRequestPayload(RequestCodes.FWD_REMOVE,
-                                        returnAddress, returnPort, clientAddress, clientPort, actualPayload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, lastSuccessor.getHostname(), lastSuccessor.getReceivingPort());
+                                packetToSend = messageView.toRelayPacket(RequestCodes.FWD_REMOVE, lastSuccessor.getHostname(), lastSuccessor.getReceivingPort());
                             } else {
                                 // Build error packet
-                                byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.INTERNAL_KVSTORE_FAILURE);
-                                byte[] newPayload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, clientAddress, clientPort, stdPayload);
-                                byte[] newMessage = Message.buildMessage(header, newPayload);
-                                packetToSend = new DatagramPacket(newMessage, newMessage.length, returnAddress, returnPort);
+                                packetToSend = MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.INTERNAL_KVSTORE_FAILURE, clientAddress, clientPort, returnAddress, returnPort);
                             }
                         }
                     }
@@ -315,10 +269,7 @@ public class REMOVEHandler {
                 // CASE 4) Predecessor set and empty successor list
                 else {
                     // Build error packet
-                    byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.INTERNAL_KVSTORE_FAILURE);
-                    byte[] newPayload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, clientAddress, clientPort, stdPayload);
-                    byte[] newMessage = Message.buildMessage(header, newPayload);
-                    packetToSend = new DatagramPacket(newMessage, newMessage.length, returnAddress, returnPort);
+                    packetToSend = MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.INTERNAL_KVSTORE_FAILURE, clientAddress, clientPort, returnAddress, returnPort);
                 }
             }
 
@@ -326,8 +277,6 @@ public class REMOVEHandler {
 
         } catch(InvalidMessageException e) {
             e.printStackTrace();
-        } catch(BadValueLengthException e) {
-            e.printStackTrace();
         } catch(UnknownHostException e) {
             e.printStackTrace();
         }
@@ -344,12 +293,14 @@ public class REMOVEHandler {
      * @return
      */
     public static void handleReplicaREMOVE(DatagramPacket incomingPacket) {
-        byte[] message = incomingPacket.getData();
-        byte[] payload = Message.extractPayload(message);
+        MessageView messageView = messageViews.get();
 
         try {
+            messageView.wrap(incomingPacket);
+            PayloadView payload = messageView.getPayload();
+
             // Get key from payload
-            String key = UTF8StringUtility.bytesUTF8ToString(Payload.getPayloadElement(Payload.Element.KEY, payload));
+            KVKey key = new KVKey(payload.getKey());
 
             // Perform a remove operation
             performRemoveOperation(key, null, null, -1, null, -1);
@@ -367,25 +318,32 @@ public class REMOVEHandler {
      */
     public static DatagramPacket handlePotentialIMSREMOVE(DatagramPacket incomingPacket) {
         // Extract header and payload
-        byte[] message = incomingPacket.getData();
-        byte[] header = Message.extractHeader(message);
-        byte[] payload = Message.extractPayload(message);
+        MessageView messageView = messageViews.get();
 
         NodeListController nlc = NodeListController.getInstance();
         DatagramPacket packetToSend = null;
 
         try {
+            messageView.wrap(incomingPacket);
+            PayloadView payload = messageView.getPayload();
+
             // Get actual payload
-            InetAddress returnAddress = InetAddress.getByAddress(Payload.getPayloadElement(Payload.Element.IP_ADDRESS, payload));
-            int returnPort = ByteBuffer.wrap(Payload.getPayloadElement(Payload.Element.PORT, payload)).order(ByteOrder.LITTLE_ENDIAN).getInt();
-            InetAddress clientAddress = InetAddress.getByAddress(Payload.getPayloadElement(Payload.Element.CLIENT_IP_ADDRESS, payload));
-            int clientPort = ByteBuffer.wrap(Payload.getPayloadElement(Payload.Element.CLIENT_PORT, payload)).order(ByteOrder.LITTLE_ENDIAN).getInt();
-            byte[] actualPayload = Payload.getPayloadElement(Payload.Element.CLIENT_FORWARD_PAYLOAD, payload);
+            InetAddress returnAddress = payload.getReturnAddress();
+            int returnPort = payload.getReturnPort();
+            InetAddress clientAddress = payload.getClientAddress();
+            int clientPort = payload.getClientPort();
+
+            // Answer requests caught in a routing loop instead of relaying them again
+            int hopCount = payload.getHopCount();
+            RoutingStatistics.recordReceived(hopCount);
+            if(hopCount >= Payload.MAX_HOP_COUNT) {
+                RoutingStatistics.recordHopLimitExceeded();
+                return MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.INTERNAL_KVSTORE_FAILURE, clientAddress, clientPort, returnAddress, returnPort);
+            }
+            PayloadView actualPayload = messageView.getClientForwardPayload();
 
-            // Get key from payload
-            byte[] keyAsBytes = Payload.getPayloadElement(Payload.Element.KEY, actualPayload);
-            String key = UTF8StringUtility.bytesUTF8ToString(keyAsBytes);
-            int keyRequestID = HashUtility.simpleHash(key, HashUtility.DEFAULT_HASH_RANGE);
+            // Route on the ring ID computed by the entry node. The key is only decoded on the node that owns the key.
+            int keyRequestID = payload.getRingID();
 
             // Get predecessor and self
             Node predecessor = nlc.getPredecessor();
@@ -400,22 +358,16 @@ public class REMOVEHandler {
 
                     if(self.getId() == keyRequestID) {
                         // Perform remove operation on local kvstore
-                        packetToSend = performRemoveOperation(key, header, returnAddress, returnPort, clientAddress, clientPort);
+                        packetToSend = performRemoveOperation(new KVKey(actualPayload.getKey()), messageView.getHeader(), returnAddress, returnPort, clientAddress, clientPort);
                     } else {
                         // Build error packet
-                        byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.INTERNAL_KVSTORE_FAILURE);
-                        byte[] newPayload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, clientAddress, clientPort, stdPayload);
-                        byte[] newMessage = Message.buildMessage(header, newPayload);
-                        packetToSend = new DatagramPacket(newMessage, newMessage.length, returnAddress, returnPort);
+                        packetToSend = MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.INTERNAL_KVSTORE_FAILURE, clientAddress, clientPort, returnAddress, returnPort);
                     }
                 }
                 // CASE 2) Null predecessor and empty successor list
                 else {
                     // Build error packet
-                    byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.INTERNAL_KVSTORE_FAILURE);
-                    byte[] newPayload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, clientAddress, clientPort, stdPayload);
-                    byte[] newMessage = Message.buildMessage(header, newPayload);
-                    packetToSend = new DatagramPacket(newMessage, newMessage.length, returnAddress, returnPort);
+                    packetToSend = MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.INTERNAL_KVSTORE_FAILURE, clientAddress, clientPort, returnAddress, returnPort);
                 }
             }
             else {
@@ -426,23 +378,17 @@ public class REMOVEHandler {
                     // ii) If not correct -> Send predecessor a potential ims remove request
                     if(ImmediateSuccessorRouter.isSelfPotentialIMS(keyRequestID, predecessor.getId(), self.getId())) {
                         // Perform remove operation on local kvstore
-                        packetToSend = performRemoveOperation(key, header, returnAddress, returnPort, clientAddress, clientPort);
+                        packetToSend = performRemoveOperation(new KVKey(actualPayload.getKey()), messageView.getHeader(), returnAddress, returnPort, clientAddress, clientPort);
 
                     } else {
                         // Prepare potential ims remove request to send to predecessor
-                        byte[] newPayload = Payload.buildClientForwardingRequestPayload(
-                                RequestCodes.POTENTIAL_IMS_REMOVE, returnAddress, returnPort, clientAddress, clientPort,
-                                actualPayload);
-                        byte[] newMessage = Message.buildMessage(header, newPayload);
-                        packetToSend = new DatagramPacket(newMessage, newMessage.length, predecessor.getHostname(), predecessor.getReceivingPort());
+                        packetToSend = messageView.toRelayPacket(RequestCodes.POTENTIAL_IMS_REMOVE, predecessor.getHostname(), predecessor.getReceivingPort());
                     }
                 }
 
             }
         } catch(InvalidMessageException e) {
             e.printStackTrace();
-        } catch(BadValueLengthException e) {
-            e.printStackTrace();
         } catch(UnknownHostException e) {
             e.printStackTrace();
         }
@@ -461,62 +407,71 @@ public class REMOVEHandler {
      * @param clientPort - Client port
      * @return
      */
-    protected static DatagramPacket performRemoveOperation(String key, byte[] header, InetAddress destinationAddress, int destinationPort, InetAddress clientAddress, int clientPort) {
+    protected static DatagramPacket performRemoveOperation(KVKey key, byte[] header, InetAddress destinationAddress, int destinationPort, InetAddress clientAddress, int clientPort) {
         DatagramPacket packet = null;
-        byte[] payload = null;
+        byte responseCode;
 
         CacheController cacheController = CacheController.getInstance();
         KVStoreController kvStoreController = KVStoreController.getInstance();
-        try {
 
-            CacheEntry cacheEntry = cacheController.isUniqueIDInCache(header);
-            if(cacheEntry == null) {
-                // Add new cache entry
-                cacheController.addToCache(header);
+        // Requests that have already been serviced are not applied again. Replica operations have no header and are always applied.
+        if(header != null && !cacheController.addIfAbsent(header)) {
+            // Answer with the stored response. Requests still being serviced or whose response was evicted are dropped.
+            byte[] response = cacheController.getResponse(header);
+            if(response == null || destinationAddress == null) {
+                return null;
             }
-            else {
-                // If cache entry was found, check if expired
-                if(cacheEntry.isExpired()) {
-                    // If expired, remove from cache and add new cache entry
-                    cacheController.removeAllExpiredEntries();
-                    cacheController.addToCache(header);
-                } else {
-                    // If not expired - build error packet as request has already been serviced
-
-                    // For now returning null
-                    return null;
-                }
-
+            try {
+                return MessageWriter.buildClientForwardingResponsePacket(header, response, clientAddress, clientPort,
+                        destinationAddress, destinationPort);
+            } catch(InvalidMessageException e) {
+                e.printStackTrace();
+                return null;
             }
+        }
 
 
-            // Attempt to remove key-value pair from key value store
-            kvStoreController.remove(key);
+        // Attempt to remove key-value pair from key value store
+        KVStoreStatus status = kvStoreController.remove(key);
+
+        if(status == KVStoreStatus.SUCCESS) {
 
             /* If key was removed from key-value store, build a response payload
                with response code: Operation Success */
 
-            byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.OPERATION_SUCCESS);
-            payload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, clientAddress, clientPort, stdPayload);
+            responseCode = ResponseCodes.OPERATION_SUCCESS;
 //            System.out.println("REMOVE operation succeeded");
 
-            // Forward to replicas only if <key, value> was removed
-            ReplicaForward.forwardREMOVEToReplica(header, key);
+            // Forward to replicas only if <key, value> was removed. Replica operations have no destination and are not forwarded again.
+            if(destinationAddress != null) {
+                ReplicaForward.forwardREMOVEToReplica(header, key.getBytes());
+            }
 
-        } catch(KVStoreKeyNotFoundException e) {
+        } else if(status == KVStoreStatus.KEY_NOT_FOUND) {
 
             /* If key is not found in key-value store, build a response payload
                with response code: Non-existent-key */
 
-            byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.NON_EXISTENT_KEY);
-            payload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, clientAddress, clientPort, stdPayload);
+            responseCode = ResponseCodes.NON_EXISTENT_KEY;
 //            System.out.println("REMOVE operation failed - key not found");
+
+        } else {
+
+            /* If the removal could not be persisted, build a response payload
+               with response code: Internal KVStore Failure */
+
+            responseCode = ResponseCodes.INTERNAL_KVSTORE_FAILURE;
+        }
+
+        if(header != null) {
+            // Keep the response so a retransmitted request gets the same answer
+            cacheController.setResponse(header, Payload.buildPayloadWithOnlyCommand(responseCode));
         }
 
-        if(payload != null && header != null && destinationAddress != null) {
+        if(header != null && destinationAddress != null) {
             try {
-                byte[] message = Message.buildMessage(header, payload);
-                packet = new DatagramPacket(message, message.length, destinationAddress, destinationPort);
+                packet = MessageWriter.buildClientForwardingResponsePacket(header, responseCode, clientAddress, clientPort,
+                        destinationAddress, destinationPort);
             } catch(InvalidMessageException e) {
                 e.printStackTrace();
             }
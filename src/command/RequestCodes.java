@@ -31,12 +31,15 @@ public class RequestCodes {
     // This will be used for testing
     public final static byte NODE_LIST_REQUEST = 0x30;
 
+    // PUT whose payload carries a time to live in seconds after the value
+    public final static byte PUT_WITH_TTL = 0x31;
+
     // Cannot be initialized
     private RequestCodes() {}
 
     public static boolean isRecognizedRequestCode(byte code) {
         if((PUT <= code && code <= SHUTDOWN) ||
-                (FWD_PUT <= code && code <= NODE_LIST_REQUEST)) {
+                (FWD_PUT <= code && code <= PUT_WITH_TTL)) {
             return true;
         }
 
@@ -44,4 +47,24 @@ public class RequestCodes {
     }
 
 
+    /**
+     * Checks if a code is a GET, PUT (with or without a time to live) or REMOVE request sent by a client
+     * @param code - Code to check
+     * @return - True if the code is a client request code
+     */
+    public static boolean isClientRequestCode(byte code) {
+        return code == GET || code == PUT || code == PUT_WITH_TTL || code == REMOVE;
+    }
+
+
+    /**
+     * Checks if a code is a GET, PUT or REMOVE request forwarded between nodes in a client forwarding payload
+     * @param code - Code to check
+     * @return - True if the code is a forwarded client request code
+     */
+    public static boolean isForwardedClientRequestCode(byte code) {
+        return FWD_PUT <= code && code <= POTENTIAL_IMS_REMOVE;
+    }
+
+
 }
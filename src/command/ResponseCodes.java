@@ -24,12 +24,15 @@ public class ResponseCodes {
     // This will be used for testing
     public final static byte NODE_LIST_RESPONSE = 0x37;
 
+    // Sent to the return node after the client was answered directly
+    public final static byte CLIENT_FWD_COMPLETE = 0x38;
+
     // Cannot be initialized
     private ResponseCodes() {}
 
     public static boolean isRecognizedResponseCode(byte code) {
         if((OPERATION_SUCCESS <= code && code <= UNRECOGNIZED_COMMAND) ||
-                (JOIN_REP <= code && code <= NODE_LIST_RESPONSE)) {
+                (JOIN_REP <= code && code <= CLIENT_FWD_COMPLETE)) {
             return true;
         }
 
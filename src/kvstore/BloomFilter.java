@@ -0,0 +1,81 @@
+package kvstore;
+
+/**
+ * Bloom filter over keys. Answers whether a key may have been added: never no for an added key,
+ * and yes for a key that was not added with a probability of about 1% at the default of 10 bits per key.
+ * The bit positions of a key are derived from two hashes of its bytes (double hashing).
+ */
+public class BloomFilter {
+
+    public static final int DEFAULT_BITS_PER_KEY = 10;
+
+    private final long[] bits;
+    private final int bitCount;
+    private final int hashCount;
+
+
+    /**
+     * Creates an empty filter
+     * @param expectedKeyCount - Number of keys that will be added
+     * @param bitsPerKey - Bits per key, more bits mean fewer false positives
+     */
+    public BloomFilter(int expectedKeyCount, int bitsPerKey) {
+        if(expectedKeyCount < 0 || bitsPerKey <= 0) {
+            throw new IllegalArgumentException();
+        }
+        long wordCount = Math.max(1, ((long) expectedKeyCount * bitsPerKey + 63) / 64);
+        bits = new long[(int) Math.min(wordCount, Integer.MAX_VALUE / 64)];
+        bitCount = bits.length * 64;
+        hashCount = Math.max(1, (int) Math.round(bitsPerKey * Math.log(2)));
+    }
+
+
+    public void add(KVKey key) {
+        int hash = key.hashCode();
+        int step = secondHash(key);
+        for(int i = 0; i < hashCount; i++) {
+            int bit = ((hash + i * step) & Integer.MAX_VALUE) % bitCount;
+            bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+
+    /**
+     * Checks if a key may have been added
+     * @param key - Key
+     * @return - False if the key was certainly not added
+     */
+    public boolean mightContain(KVKey key) {
+        int hash = key.hashCode();
+        int step = secondHash(key);
+        for(int i = 0; i < hashCount; i++) {
+            int bit = ((hash + i * step) & Integer.MAX_VALUE) % bitCount;
+            if((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Gets the memory taken by the bits
+     * @return - Bytes
+     */
+    public long getSizeBytes() {
+        return bits.length * 8L;
+    }
+
+
+    /**
+     * FNV-1a over the key bytes, independent of the hash code of the key
+     */
+    private static int secondHash(KVKey key) {
+        int hash = 0x811c9dc5;
+        for(byte b : key.getBytes()) {
+            hash = (hash ^ (b & 0xff)) * 0x01000193;
+        }
+        // An odd step visits different bits for every hash function
+        return hash | 1;
+    }
+}
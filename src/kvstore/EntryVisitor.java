@@ -0,0 +1,17 @@
+package kvstore;
+
+import java.io.IOException;
+
+/**
+ * Receives the entries of the key value store one at a time, for example to write a snapshot
+ */
+public interface EntryVisitor {
+
+    /**
+     * Called for every stored entry
+     * @param key - Key
+     * @param value - Value (not a copy, must not be changed)
+     * @throws IOException - Stops the iteration
+     */
+    void visit(KVKey key, byte[] value) throws IOException;
+}
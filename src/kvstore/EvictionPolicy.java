@@ -0,0 +1,35 @@
+package kvstore;
+
+/**
+ * Chooses the keys that are evicted when the key value store is full.
+ * The store reports every insert, access and removal of a key. Implementations must be thread safe.
+ */
+public interface EvictionPolicy {
+
+    /**
+     * Records a key that was added to the store
+     * @param key - Added key
+     */
+    void onInsert(KVKey key);
+
+
+    /**
+     * Records a read or overwrite of a key that is in the store
+     * @param key - Accessed key
+     */
+    void onAccess(KVKey key);
+
+
+    /**
+     * Records a key that was removed from the store
+     * @param key - Removed key
+     */
+    void onRemove(KVKey key);
+
+
+    /**
+     * Chooses the next key to evict and stops tracking it
+     * @return - Key to evict, or null if no key is tracked
+     */
+    KVKey selectVictim();
+}
@@ -0,0 +1,115 @@
+package kvstore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the entries on the heap in an OpenAddressingTable. The default engine of the store.
+ */
+public class HeapStorageEngine implements StorageEngine {
+
+    private final OpenAddressingTable table;
+    private final AtomicLong sizeBytes;
+
+
+    public HeapStorageEngine() {
+        table = new OpenAddressingTable();
+        sizeBytes = new AtomicLong();
+    }
+
+
+    @Override
+    public String getName() {
+        return "heap";
+    }
+
+
+    @Override
+    public boolean isCapacityLimited() {
+        return true;
+    }
+
+
+    @Override
+    public int put(KVKey key, byte[] value) {
+        int replacedLength = table.put(key, value);
+        sizeBytes.addAndGet(replacedLength != NO_VALUE ? value.length - replacedLength : KVKey.KEY_SIZE_BYTES + value.length);
+        return replacedLength;
+    }
+
+
+    @Override
+    public byte[] get(KVKey key) {
+        return table.get(key);
+    }
+
+
+    @Override
+    public ByteBuffer getBuffer(KVKey key) {
+        return table.getBuffer(key);
+    }
+
+
+    @Override
+    public int getValueLength(KVKey key) {
+        return table.getValueLength(key);
+    }
+
+
+    @Override
+    public int remove(KVKey key) {
+        int removedLength = table.remove(key);
+        if(removedLength != NO_VALUE) {
+            sizeBytes.addAndGet(-(KVKey.KEY_SIZE_BYTES + removedLength));
+        }
+        return removedLength;
+    }
+
+
+    /**
+     * Visits the entries with keys in a range. The table is not sorted, so every entry is checked.
+     */
+    @Override
+    public void scan(final KVKey fromKey, final KVKey toKey, final EntryVisitor visitor) throws IOException {
+        table.forEach(new EntryVisitor() {
+            @Override
+            public void visit(KVKey key, byte[] value) throws IOException {
+                if(key.isInRange(fromKey, toKey)) {
+                    visitor.visit(key, value);
+                }
+            }
+        });
+    }
+
+
+    @Override
+    public void forEach(EntryVisitor visitor) throws IOException {
+        table.forEach(visitor);
+    }
+
+
+    @Override
+    public long size() {
+        return table.size();
+    }
+
+
+    @Override
+    public long getSizeBytes() {
+        return sizeBytes.get();
+    }
+
+
+    @Override
+    public long getEntryBytes(int valueLength) {
+        return OpenAddressingTable.getEntryBytes(valueLength);
+    }
+
+
+    @Override
+    public void printStatistics() {
+        System.out.println("Heap storage: keys=" + size() + " bytes=" + getSizeBytes() + " slots=" + table.getCapacity() +
+                " arenaBytes=" + table.getArenaBytes() + " memoryBytes=" + table.getMemoryBytes());
+    }
+}
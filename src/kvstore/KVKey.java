@@ -0,0 +1,81 @@
+package kvstore;
+
+import java.util.Arrays;
+
+/**
+ * Fixed size key of the key value store. Keys shorter than KEY_SIZE_BYTES are padded with zeros,
+ * the same way they arrive in a request, and the hash code is computed once.
+ * Keys are ordered by their bytes compared as unsigned numbers.
+ */
+public class KVKey implements Comparable<KVKey> {
+
+    public static final int KEY_SIZE_BYTES = 32;
+
+    // Heap taken by a key object (24 bytes) and its array (48 bytes) with compressed references
+    public static final int HEAP_BYTES = 72;
+
+    private final byte[] key;
+    private final int hash;
+
+
+    /**
+     * Creates a key. An array of exactly KEY_SIZE_BYTES is used without copying and must not be changed afterwards.
+     * @param key - Key bytes (at most KEY_SIZE_BYTES)
+     */
+    public KVKey(byte[] key) {
+        if(key == null || key.length > KEY_SIZE_BYTES) {
+            throw new IllegalArgumentException();
+        }
+        this.key = key.length == KEY_SIZE_BYTES ? key : Arrays.copyOf(key, KEY_SIZE_BYTES);
+        this.hash = Arrays.hashCode(this.key);
+    }
+
+
+    /**
+     * Gets the key bytes
+     * @return - Key of KEY_SIZE_BYTES (not a copy, must not be changed)
+     */
+    public byte[] getBytes() {
+        return key;
+    }
+
+
+    @Override
+    public int compareTo(KVKey other) {
+        for(int i = 0; i < KEY_SIZE_BYTES; i++) {
+            int difference = (key[i] & 0xff) - (other.key[i] & 0xff);
+            if(difference != 0) {
+                return difference;
+            }
+        }
+        return 0;
+    }
+
+
+    /**
+     * Checks if the key is in a range
+     * @param fromKey - First key of the range, or null for no lower bound
+     * @param toKey - Key after the range (exclusive), or null for no upper bound
+     * @return - True if fromKey <= key < toKey
+     */
+    public boolean isInRange(KVKey fromKey, KVKey toKey) {
+        return (fromKey == null || compareTo(fromKey) >= 0) && (toKey == null || compareTo(toKey) < 0);
+    }
+
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) { return true; }
+
+        if(!(obj instanceof KVKey)) { return false; }
+
+        final KVKey other = (KVKey) obj;
+        return other.hash == this.hash && Arrays.equals(other.key, this.key);
+    }
+}
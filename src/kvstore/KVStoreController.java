@@ -1,24 +1,102 @@
 package kvstore;
 
+import cache.HierarchicalTimingWheel;
+import utility.HashUtility;
+import utility.UTF8StringUtility;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * Manages all operations on key-value data store
+ * Manages all operations on key-value data store. Keys and values are kept as the bytes they arrive in,
+ * the string methods encode and decode them as UTF-8.
+ * The entries are held by a StorageEngine selected at startup: on the heap (the default), in off-heap slabs or
+ * memory mapped segment files, or in an LSM tree. The store keeps the write-ahead log, capacity and eviction on top of it.
+ * The store is full when its entries take up maxBytes or it holds maxCapacity keys. A full store rejects
+ * new entries unless an eviction policy is set, which then chooses the entries that make room.
+ * Engines that are not capacity limited, off-heap slabs, segment files and the LSM tree, are only bounded by their own storage.
+ * An entry can be given an expiry time. Expired entries are never returned and are removed when they are read,
+ * or by removeAllExpiredEntries, which moves a hierarchical timing wheel instead of scanning the store.
+ * The keys are also kept in a RingIndex by their ring ID, so the entries of an interval of the ring can be visited
+ * or removed when the node list changes without scanning the store.
  */
 public class KVStoreController {
 
-    private final static int MAX_CAPACITY = 100;
+    public final static long DEFAULT_MAX_BYTES = 64 * 1024 * 1024;
+
+    // Expiry time of an entry that does not expire
+    public final static long NO_EXPIRY = 0;
+
+    // Number of locks that keep the entries, their memory count and the eviction policy of a key consistent
+    private final static int LOCK_STRIPE_COUNT = 64;
+
+    // The expiry wheel has 256 slots of 100 ms on 4 levels, which covers about 13 years
+    public final static long EXPIRY_WHEEL_TICK_MILLIS = 100;
+    private final static int EXPIRY_WHEEL_SLOT_COUNT = 256;
+    private final static int EXPIRY_WHEEL_LEVEL_COUNT = 4;
 
-    private ConcurrentMap<String, String> keyValueStore;
+    // Holds the entries, a HeapStorageEngine unless another engine is set
+    private volatile StorageEngine storageEngine;
     private int maxCapacity;
+    private final long maxBytes;
+    private final AtomicLong usedBytes;
+
+    // Chooses the entries to evict when full, null to reject new entries instead
+    private volatile EvictionPolicy evictionPolicy;
+    private final Object capacityLock;
+    private final AtomicLong evictionCount;
+
+    // Log of the applied operations, null unless enabled
+    private volatile WriteAheadLog writeAheadLog;
+
+    // Expiry times of the entries that expire. The wheel may hold keys that were overwritten or removed since.
+    private final ConcurrentHashMap<KVKey, Long> expiryTimes;
+    private final HierarchicalTimingWheel<KVKey> expiryWheel;
+    private final AtomicLong expiredCount;
+
+    // Keys by ring ID, updated under the key lock with the storage engine
+    private final RingIndex ringIndex;
+
+    private final Object[] keyLocks;
 
     private static KVStoreController kvStoreController = null;
+    private static long maxBytesSetting = DEFAULT_MAX_BYTES;
 
     
     protected KVStoreController(int capacity) {
-        keyValueStore = new ConcurrentHashMap<String, String>();
+        this(capacity, DEFAULT_MAX_BYTES);
+    }
+
+
+    /**
+     * Creates a store
+     * @param capacity - Maximum number of keys
+     * @param maxBytes - Maximum memory taken by the entries, as counted by the storage engine
+     */
+    protected KVStoreController(int capacity, long maxBytes) {
+        if(capacity <= 0 || maxBytes <= 0) {
+            throw new IllegalArgumentException();
+        }
+        storageEngine = new HeapStorageEngine();
         maxCapacity = capacity;
+        this.maxBytes = maxBytes;
+        usedBytes = new AtomicLong();
+        capacityLock = new Object();
+        evictionCount = new AtomicLong();
+        expiryTimes = new ConcurrentHashMap<KVKey, Long>();
+        expiryWheel = new HierarchicalTimingWheel<KVKey>(EXPIRY_WHEEL_SLOT_COUNT, EXPIRY_WHEEL_LEVEL_COUNT,
+                EXPIRY_WHEEL_TICK_MILLIS, System.currentTimeMillis());
+        expiredCount = new AtomicLong();
+        ringIndex = new RingIndex(HashUtility.DEFAULT_HASH_RANGE);
+        keyLocks = new Object[LOCK_STRIPE_COUNT];
+        for(int i = 0; i < keyLocks.length; i++) {
+            keyLocks[i] = new Object();
+        }
     }
 
 
@@ -28,18 +106,136 @@ public class KVStoreController {
      */
     public synchronized static KVStoreController getInstance() {
         if(kvStoreController == null) {
-            kvStoreController = new KVStoreController(MAX_CAPACITY);
+            kvStoreController = new KVStoreController(Integer.MAX_VALUE, maxBytesSetting);
         }
         return kvStoreController;
     }
 
 
+    /**
+     * Sets the memory the singleton instance may use for its entries. Must be called before the instance is created.
+     * @param maxBytes - Maximum memory taken by the entries
+     * @throws IllegalStateException - Thrown if the singleton instance already exists
+     */
+    public synchronized static void setMaxBytes(long maxBytes) {
+        if(kvStoreController != null) {
+            throw new IllegalStateException();
+        }
+        if(maxBytes <= 0) {
+            throw new IllegalArgumentException();
+        }
+        maxBytesSetting = maxBytes;
+    }
+
+
+    /**
+     * Sets the policy that chooses the entries evicted when the store is full. Must be called while the store is empty.
+     * @param policy - Eviction policy, or null to reject new entries when full
+     * @throws IllegalStateException - Thrown if the store is not empty
+     */
+    public synchronized void setEvictionPolicy(EvictionPolicy policy) {
+        if(getSize() > 0) {
+            throw new IllegalStateException();
+        }
+        evictionPolicy = policy;
+    }
+
+
+    public EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+
+    /**
+     * Replays a write-ahead log into the store and then logs every put and remove to it.
+     * Puts and removes return once their record is synced. If the store rejects a replayed record, for example
+     * because it is smaller than the store that wrote the log, the log is not enabled, so it is not truncated by
+     * the next snapshot and no logged change is lost.
+     * @param log - Log to replay and append to
+     * @return - Number of replayed records
+     * @throws IOException - Thrown if the log cannot be read or a record could not be replayed
+     * @throws IllegalStateException - Thrown if a log is already enabled
+     */
+    public synchronized int enableWriteAheadLog(WriteAheadLog log) throws IOException {
+        if(writeAheadLog != null) {
+            throw new IllegalStateException();
+        }
+
+        // The log is not attached yet, so replayed operations are not logged again
+        final AtomicLong failedCount = new AtomicLong();
+        final AtomicReference<KVStoreStatus> firstFailure = new AtomicReference<KVStoreStatus>();
+        int recordCount = log.replay(new WriteAheadLog.RecordHandler() {
+            @Override
+            public void put(KVKey key, byte[] value, long expiryMillis) {
+                check(KVStoreController.this.put(key, value, expiryMillis));
+            }
+
+            @Override
+            public void remove(KVKey key) {
+                check(KVStoreController.this.remove(key));
+            }
+
+            private void check(KVStoreStatus status) {
+                if(status != KVStoreStatus.SUCCESS && status != KVStoreStatus.KEY_NOT_FOUND) {
+                    failedCount.incrementAndGet();
+                    firstFailure.compareAndSet(null, status);
+                }
+            }
+        });
+        if(failedCount.get() > 0) {
+            throw new IOException(failedCount.get() + " of " + recordCount + " log records could not be replayed (" +
+                    firstFailure.get() + "): " + log.getFile());
+        }
+        writeAheadLog = log;
+        return recordCount;
+    }
+
+
+    public WriteAheadLog getWriteAheadLog() {
+        return writeAheadLog;
+    }
+
+
+    /**
+     * Replaces the storage engine. Must be called while the store is empty.
+     * @param engine - Engine that holds the entries from now on
+     * @throws IllegalStateException - Thrown if the store is not empty
+     */
+    public synchronized void setStorageEngine(StorageEngine engine) {
+        if(engine == null) {
+            throw new IllegalArgumentException();
+        }
+        if(storageEngine.size() > 0) {
+            throw new IllegalStateException();
+        }
+        storageEngine = engine;
+    }
+
+
+    public StorageEngine getStorageEngine() {
+        return storageEngine;
+    }
+
+
+    /**
+     * Gets the number of stored key-value pairs. For the LSM engine this is an upper bound, keys that were
+     * overwritten or removed count until their table files are merged.
+     * @return - Number of keys
+     */
+    public int getSize() {
+        return (int) Math.min(storageEngine.size(), Integer.MAX_VALUE);
+    }
+
+
     /**
      * Checks to see if the key value store is full
      * @return - True if key value store is full, false otherwise.
      */
     public boolean isKVStoreFull() {
-        return keyValueStore.size() >= maxCapacity;
+        if(!storageEngine.isCapacityLimited()) {
+            return false;
+        }
+        return getSize() >= maxCapacity || usedBytes.get() >= maxBytes;
     }
 
 
@@ -52,11 +248,491 @@ public class KVStoreController {
     }
 
 
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+
+    /**
+     * Gets the memory taken by the entries, as counted by the storage engine
+     * @return - Bytes
+     */
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+
+    public long getExpiredCount() {
+        return expiredCount.get();
+    }
+
+
+    /**
+     * Gets the memory counted for an entry, which the storage engine reports for the structures it keeps the entry in
+     * @param valueLength - Length of the value
+     * @return - Bytes
+     */
+    public long getEntryBytes(int valueLength) {
+        return storageEngine.getEntryBytes(valueLength);
+    }
+
+
+    /**
+     * Inserts a key-value pair into key value store
+     * @param key - Key of key-value pair to insert
+     * @param value - Value of key-value pair to insert (not copied, must not be changed afterwards)
+     * @return - SUCCESS, INVALID_KEY_OR_VALUE if key or value is null or the value is empty, STORE_FULL,
+     *           or LOG_FAILURE if the pair was stored but could not be written to the write-ahead log
+     */
+    public KVStoreStatus put(KVKey key, byte[] value) {
+        return put(key, value, NO_EXPIRY);
+    }
+
+
+    /**
+     * Inserts a key-value pair that expires into key value store
+     * @param key - Key of key-value pair to insert
+     * @param value - Value of key-value pair to insert (not copied, must not be changed afterwards)
+     * @param expiryMillis - Time the pair expires at, or NO_EXPIRY to keep it until it is removed
+     * @return - SUCCESS, INVALID_KEY_OR_VALUE, STORE_FULL or LOG_FAILURE
+     */
+    public KVStoreStatus put(KVKey key, byte[] value, long expiryMillis) {
+        if(key == null || value == null || value.length == 0) {
+            return KVStoreStatus.INVALID_KEY_OR_VALUE;
+        }
+
+        StorageEngine engine = storageEngine;
+        boolean capacityLimited = engine.isCapacityLimited();
+        long entryBytes = engine.getEntryBytes(value.length);
+        if(capacityLimited && !reserve(key, entryBytes)) {
+            return KVStoreStatus.STORE_FULL;
+        }
+
+        long logSequence = 0;
+        WriteAheadLog log = writeAheadLog;
+        synchronized(getKeyLock(key)) {
+            int replacedLength = engine.put(key, value);
+            if(replacedLength == StorageEngine.NO_SPACE) {
+                if(capacityLimited) {
+                    usedBytes.addAndGet(-entryBytes);
+                }
+                return KVStoreStatus.STORE_FULL;
+            }
+
+            // Engines that do not know if a key is new, like the LSM tree, report NO_VALUE and add it again
+            if(replacedLength == StorageEngine.NO_VALUE) {
+                ringIndex.add(key);
+            }
+
+            if(capacityLimited) {
+                boolean replaced = replacedLength != StorageEngine.NO_VALUE;
+                if(replaced) {
+                    usedBytes.addAndGet(-engine.getEntryBytes(replacedLength));
+                }
+                EvictionPolicy policy = evictionPolicy;
+                if(policy != null) {
+                    if(replaced) {
+                        policy.onAccess(key);
+                    } else {
+                        policy.onInsert(key);
+                    }
+                }
+            }
+
+            if(expiryMillis == NO_EXPIRY) {
+                expiryTimes.remove(key);
+            } else {
+                expiryTimes.put(key, expiryMillis);
+                expiryWheel.schedule(key, expiryMillis);
+            }
+
+            /* Logged under the key lock so the log holds the operations on a key in the order they were applied,
+               and after the change so every record before a log mark belongs to a change a snapshot can see */
+            if(log != null) {
+                logSequence = log.appendPut(key, value, expiryMillis);
+            }
+        }
+
+        // Puts also move the expiry wheel, so entries expire even if the periodic removal falls behind
+        long now = System.currentTimeMillis();
+        if(expiryWheel.isAdvanceDue(now)) {
+            removeExpiredEntries(now);
+        }
+
+        // Wait for the group commit outside the key lock
+        return awaitLog(log, logSequence);
+    }
+
+
+    private static KVStoreStatus awaitLog(WriteAheadLog log, long logSequence) {
+        if(log != null && !log.awaitSync(logSequence)) {
+            return KVStoreStatus.LOG_FAILURE;
+        }
+        return KVStoreStatus.SUCCESS;
+    }
+
+
+    /**
+     * Fetches the value for the input key from the key value store
+     * @param key - Key of key-value pair to fetch
+     * @return - Value of the associated key (not a copy, must not be changed), or null if key does not exist
+     */
+    public byte[] get(KVKey key) {
+        StorageEngine engine = storageEngine;
+        byte[] value = engine.get(key);
+        if(value != null) {
+            if(isExpired(key)) {
+                return null;
+            }
+            onAccess(engine, key);
+        }
+        return value;
+    }
+
+
+    /**
+     * Fetches the value for the input key without copying it where the storage allows, so it can be written
+     * straight into a response. Values in segment or table files are returned as a view of their mapped file.
+     * @param key - Key of key-value pair to fetch
+     * @return - Read-only value of the associated key, or null if key does not exist
+     */
+    public ByteBuffer getValueBuffer(KVKey key) {
+        StorageEngine engine = storageEngine;
+        ByteBuffer value = engine.getBuffer(key);
+        if(value != null) {
+            if(isExpired(key)) {
+                return null;
+            }
+            onAccess(engine, key);
+        }
+        return value;
+    }
+
+
+    /**
+     * Checks if the entry of a key has expired and removes it if so
+     * @param key - Key of a stored entry
+     * @return - True if the entry has expired
+     */
+    private boolean isExpired(KVKey key) {
+        Long expiryMillis = expiryTimes.get(key);
+        if(expiryMillis == null) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        if(expiryMillis > now) {
+            return false;
+        }
+        expire(key, now);
+        return true;
+    }
+
+
+    /**
+     * Removes the entry of a key if it has expired. Keys from the expiry wheel may have been overwritten since
+     * they were scheduled, so the expiry time is checked again under the key lock.
+     * @param key - Key
+     * @param nowMillis - Current time
+     * @return - True if this call removed the entry
+     */
+    private boolean expire(KVKey key, long nowMillis) {
+        synchronized(getKeyLock(key)) {
+            Long expiryMillis = expiryTimes.get(key);
+            if(expiryMillis == null || expiryMillis > nowMillis) {
+                return false;
+            }
+            // Expiries are logged so a replay does not bring the entries back, but nothing waits for them
+            if(remove(key, false) != KVStoreStatus.SUCCESS) {
+                return false;
+            }
+            expiredCount.incrementAndGet();
+            return true;
+        }
+    }
+
+
+    /**
+     * Removes the entries whose expiry time has passed. Only the keys of the timing wheel slots that were passed
+     * since the last call are looked at.
+     * @return - Number of removed entries
+     */
+    public int removeAllExpiredEntries() {
+        return removeExpiredEntries(System.currentTimeMillis());
+    }
+
+
+    /**
+     * Removes the entries that expire before a time
+     * @param nowMillis - Current time
+     * @return - Number of removed entries, 0 if another thread is removing expired entries
+     */
+    int removeExpiredEntries(long nowMillis) {
+        List<KVKey> keys = new ArrayList<KVKey>();
+        if(!expiryWheel.advance(nowMillis, keys)) {
+            return 0;
+        }
+        int removedCount = 0;
+        for(KVKey key : keys) {
+            if(expire(key, nowMillis)) {
+                removedCount++;
+            }
+        }
+        return removedCount;
+    }
+
+
+    /**
+     * Gets the expiry time of the entry of a key
+     * @param key - Key
+     * @return - Time the entry expires at, or NO_EXPIRY if it does not expire or does not exist
+     */
+    public long getExpiryMillis(KVKey key) {
+        Long expiryMillis = expiryTimes.get(key);
+        return expiryMillis != null ? expiryMillis : NO_EXPIRY;
+    }
+
+
+    private void onAccess(StorageEngine engine, KVKey key) {
+        EvictionPolicy policy = evictionPolicy;
+        if(policy != null && engine.isCapacityLimited()) {
+            policy.onAccess(key);
+        }
+    }
+
+
+    /**
+     * Permanently removes a key-value pair from the key value store
+     * @param key - Key of key-value pair to remove
+     * @return - SUCCESS, KEY_NOT_FOUND if key does not exist in key value store, STORE_FULL if the storage engine
+     *           cannot record the removal, or LOG_FAILURE if the pair was removed but the removal could not be written
+     *           to the write-ahead log
+     */
+    public KVStoreStatus remove(KVKey key) {
+        return remove(key, true);
+    }
+
+
+    /**
+     * Permanently removes a key-value pair from the key value store
+     * @param key - Key of key-value pair to remove
+     * @param awaitLogSync - True to wait until the removal is synced to the write-ahead log
+     * @return - SUCCESS, KEY_NOT_FOUND, STORE_FULL or LOG_FAILURE
+     */
+    private KVStoreStatus remove(KVKey key, boolean awaitLogSync) {
+        long logSequence = 0;
+        WriteAheadLog log = writeAheadLog;
+        synchronized(getKeyLock(key)) {
+            StorageEngine engine = storageEngine;
+            int valueLength = engine.remove(key);
+            if(valueLength == StorageEngine.NO_SPACE) {
+                return KVStoreStatus.STORE_FULL;
+            }
+            expiryTimes.remove(key);
+            if(valueLength == StorageEngine.NO_VALUE) {
+                return KVStoreStatus.KEY_NOT_FOUND;
+            }
+            ringIndex.remove(key);
+
+            if(engine.isCapacityLimited()) {
+                usedBytes.addAndGet(-engine.getEntryBytes(valueLength));
+                EvictionPolicy policy = evictionPolicy;
+                if(policy != null) {
+                    policy.onRemove(key);
+                }
+            }
+
+            if(log != null) {
+                logSequence = log.appendRemove(key);
+            }
+        }
+
+        return awaitLogSync ? awaitLog(log, logSequence) : KVStoreStatus.SUCCESS;
+    }
+
+
+    /**
+     * Visits all entries, for example to write a snapshot. Writers are not blocked while the entries are visited,
+     * so changes made during the iteration may or may not be seen.
+     * @param visitor - Receives the entries
+     * @throws IOException - if the visitor fails
+     */
+    public void forEachEntry(EntryVisitor visitor) throws IOException {
+        storageEngine.forEach(skipExpired(visitor));
+    }
+
+
+    /**
+     * Visits the entries with keys in a range. Writers are not blocked while the entries are visited.
+     * @param fromKey - First key of the range, or null for no lower bound
+     * @param toKey - Key after the range (exclusive), or null for no upper bound
+     * @param visitor - Receives the entries
+     * @throws IOException - if the visitor fails
+     */
+    public void scanEntries(KVKey fromKey, KVKey toKey, EntryVisitor visitor) throws IOException {
+        storageEngine.scan(fromKey, toKey, skipExpired(visitor));
+    }
+
+
+    /**
+     * Visits the entries whose keys lie in an interval of the ring, for example to hand them to a node that joined.
+     * Only the buckets of the ring IDs in the interval are read, so the cost grows with the number of keys in the
+     * interval and not with the size of the store. Writers are not blocked while the entries are visited.
+     * @param fromRingID - Ring ID before the interval (exclusive)
+     * @param toRingID - Last ring ID of the interval (inclusive). The interval wraps around the end of the ring
+     *                   and covers the whole ring if it equals fromRingID.
+     * @param visitor - Receives the entries
+     * @throws IOException - if the visitor fails
+     */
+    public void forEachEntryInRingInterval(int fromRingID, int toRingID, EntryVisitor visitor) throws IOException {
+        checkRingInterval(fromRingID, toRingID);
+        long now = System.currentTimeMillis();
+        int ringID = fromRingID;
+        do {
+            ringID = ringIndex.next(ringID);
+            for(KVKey key : ringIndex.getKeys(ringID)) {
+                byte[] value = storageEngine.get(key);
+                Long expiryMillis = expiryTimes.get(key);
+                // Keys removed after the bucket was read have no value anymore
+                if(value != null && (expiryMillis == null || expiryMillis > now)) {
+                    visitor.visit(key, value);
+                }
+            }
+        } while(ringID != toRingID);
+    }
+
+
+    /**
+     * Removes the entries whose keys lie in an interval of the ring, for example after they were handed to the node
+     * that owns them now. The removals are logged, but are not waited for.
+     * @param fromRingID - Ring ID before the interval (exclusive)
+     * @param toRingID - Last ring ID of the interval (inclusive), see forEachEntryInRingInterval
+     * @return - Number of removed entries
+     */
+    public int removeRingInterval(int fromRingID, int toRingID) {
+        checkRingInterval(fromRingID, toRingID);
+        int removedCount = 0;
+        int ringID = fromRingID;
+        do {
+            ringID = ringIndex.next(ringID);
+            for(KVKey key : ringIndex.getKeys(ringID)) {
+                if(remove(key, false) == KVStoreStatus.SUCCESS) {
+                    removedCount++;
+                }
+            }
+        } while(ringID != toRingID);
+        return removedCount;
+    }
+
+
+    /**
+     * Counts the keys in an interval of the ring without reading their values
+     * @param fromRingID - Ring ID before the interval (exclusive)
+     * @param toRingID - Last ring ID of the interval (inclusive), see forEachEntryInRingInterval
+     * @return - Number of keys, including expired ones that have not been removed yet
+     */
+    public long getRingIntervalSize(int fromRingID, int toRingID) {
+        checkRingInterval(fromRingID, toRingID);
+        long size = 0;
+        int ringID = fromRingID;
+        do {
+            ringID = ringIndex.next(ringID);
+            size += ringIndex.getKeys(ringID).size();
+        } while(ringID != toRingID);
+        return size;
+    }
+
+
+    /**
+     * Gets the ring ID of a key, the same ID the request handlers route the key on
+     * @param key - Key
+     * @return - Ring ID
+     */
+    public int getRingID(KVKey key) {
+        return ringIndex.getRingID(key);
+    }
+
+
+    private void checkRingInterval(int fromRingID, int toRingID) {
+        int ringSize = ringIndex.getRingSize();
+        if(fromRingID < 0 || fromRingID >= ringSize || toRingID < 0 || toRingID >= ringSize) {
+            throw new IllegalArgumentException();
+        }
+    }
+
+
+    /**
+     * Wraps a visitor so it does not see entries that expired but have not been removed yet
+     */
+    private EntryVisitor skipExpired(final EntryVisitor visitor) {
+        if(expiryTimes.isEmpty()) {
+            return visitor;
+        }
+        final long now = System.currentTimeMillis();
+        return new EntryVisitor() {
+            @Override
+            public void visit(KVKey key, byte[] value) throws IOException {
+                Long expiryMillis = expiryTimes.get(key);
+                if(expiryMillis == null || expiryMillis > now) {
+                    visitor.visit(key, value);
+                }
+            }
+        };
+    }
+
+
+    /**
+     * Counts the memory of a new entry against the capacity, evicting entries if a policy is set.
+     * The memory of an entry the new one replaces is released by put, but is already taken into account here.
+     * @param key - Key of the entry
+     * @param entryBytes - Memory counted for the entry
+     * @return - False if the store is full and nothing could be evicted
+     */
+    private boolean reserve(KVKey key, long entryBytes) {
+        synchronized(capacityLock) {
+            while(getSize() >= maxCapacity || usedBytes.get() + entryBytes - getStoredEntryBytes(key) > maxBytes) {
+                EvictionPolicy policy = evictionPolicy;
+                KVKey victim = policy != null ? policy.selectVictim() : null;
+                if(victim == null) {
+                    return false;
+                }
+                // Evictions are logged so a replay does not bring the entries back, but puts do not wait for them
+                if(remove(victim, false) == KVStoreStatus.SUCCESS) {
+                    evictionCount.incrementAndGet();
+                }
+            }
+            usedBytes.addAndGet(entryBytes);
+            return true;
+        }
+    }
+
+
+    /**
+     * Gets the memory counted for the entry of a key
+     * @param key - Key
+     * @return - Bytes, or 0 if the key is not stored
+     */
+    private long getStoredEntryBytes(KVKey key) {
+        StorageEngine engine = storageEngine;
+        int valueLength = engine.getValueLength(key);
+        return valueLength != StorageEngine.NO_VALUE ? engine.getEntryBytes(valueLength) : 0;
+    }
+
+
+    private Object getKeyLock(KVKey key) {
+        return keyLocks[(key.hashCode() & Integer.MAX_VALUE) % keyLocks.length];
+    }
+
+
     /**
      * Attempts to insert key-value pair into key value store
      * @param key - Key of key-value pair to insert
      * @param value - Value of key-value pair to insert
-     * @throws KVStoreInvalidKeyOrValueFormatException - Thrown if key or value provided is null or empty
+     * @throws KVStoreInvalidKeyOrValueFormatException - Thrown if key or value provided is null or empty, or the key is too long
      * @throws KVStoreFullException - Thrown if key value store is full
      */
     public void put(String key, String value)
@@ -67,12 +743,15 @@ public class KVStoreController {
             throw new KVStoreInvalidKeyOrValueFormatException("Operation failed: Invalid format for key or value.");
         }
 
+        KVKey kvKey = toKVKey(key);
+        if(kvKey == null) {
+            throw new KVStoreInvalidKeyOrValueFormatException("Operation failed: Invalid format for key or value.");
+        }
+
         // Check if key value store is full. If full, throw exception.
-        if(isKVStoreFull()) {
+        if(put(kvKey, UTF8StringUtility.stringToBytesUTF8(value)) == KVStoreStatus.STORE_FULL) {
             throw new KVStoreFullException("Operation failed: Key value store is full");
         }
-
-        keyValueStore.put(key, value);
     }
 
 
@@ -83,13 +762,15 @@ public class KVStoreController {
      * @throws KVStoreKeyNotFoundException - Thrown if key does not exist in key value store
      */
     public String get(String key) throws KVStoreKeyNotFoundException {
+        KVKey kvKey = toKVKey(key);
+        byte[] value = kvKey != null ? get(kvKey) : null;
 
         // Check if key exists in key value store. If not, throw exception.
-        if(!keyValueStore.containsKey(key)) {
+        if(value == null) {
             throw new KVStoreKeyNotFoundException("Operation failed: Key does not exist in key value store");
         }
 
-        return keyValueStore.get(key);
+        return UTF8StringUtility.bytesUTF8ToString(value);
     }
 
 
@@ -99,13 +780,46 @@ public class KVStoreController {
      * @throws KVStoreKeyNotFoundException - Thrown if key does not exist in key value store
      */
     public void remove(String key) throws KVStoreKeyNotFoundException {
+        KVKey kvKey = toKVKey(key);
 
         // Check if key exists in key value store. If not, throw exception.
-        if(!keyValueStore.containsKey(key)) {
+        if(kvKey == null || remove(kvKey) == KVStoreStatus.KEY_NOT_FOUND) {
             throw new KVStoreKeyNotFoundException("Operation failed: Key does not exist in key value store");
         }
+    }
 
-        keyValueStore.remove(key);
+
+    /**
+     * Prints the key value store statistics
+     */
+    public void printStatistics() {
+        EvictionPolicy policy = evictionPolicy;
+        StorageEngine engine = storageEngine;
+        System.out.println("KV store: keys=" + getSize() + " usedBytes=" + getUsedBytes() + " maxBytes=" + maxBytes +
+                " storage=" + engine.getName() + " storageBytes=" + engine.getSizeBytes() +
+                " eviction=" + (policy != null ? policy.getClass().getSimpleName() : "reject") + " evictions=" + getEvictionCount() +
+                " expiring=" + expiryTimes.size() + " expired=" + getExpiredCount());
+        engine.printStatistics();
+        if(writeAheadLog != null) {
+            writeAheadLog.printStatistics();
+        }
+    }
+
+
+    /**
+     * Encodes a string key as UTF-8
+     * @param key - Key to encode
+     * @return - Key, or null if key is null or too long
+     */
+    private static KVKey toKVKey(String key) {
+        if(key == null) {
+            return null;
+        }
+        byte[] keyBytes = UTF8StringUtility.stringToBytesUTF8(key);
+        if(keyBytes.length > KVKey.KEY_SIZE_BYTES) {
+            return null;
+        }
+        return new KVKey(keyBytes);
     }
 
 
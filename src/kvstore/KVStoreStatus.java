@@ -0,0 +1,12 @@
+package kvstore;
+
+/**
+ * Outcome of a key value store operation
+ */
+public enum KVStoreStatus {
+    SUCCESS,
+    KEY_NOT_FOUND,
+    STORE_FULL,
+    INVALID_KEY_OR_VALUE,
+    LOG_FAILURE
+}
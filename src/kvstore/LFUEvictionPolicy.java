@@ -0,0 +1,81 @@
+package kvstore;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.TreeMap;
+
+/**
+ * Evicts the least frequently used key. Keys with the same use count are evicted in the order they
+ * reached that count. Keys are grouped by use count, so an operation only costs a lookup among the distinct counts.
+ */
+public class LFUEvictionPolicy implements EvictionPolicy {
+
+    private final HashMap<KVKey, Integer> counts = new HashMap<KVKey, Integer>();
+    private final TreeMap<Integer, LinkedHashSet<KVKey>> keysByCount = new TreeMap<Integer, LinkedHashSet<KVKey>>();
+
+
+    @Override
+    public synchronized void onInsert(KVKey key) {
+        if(counts.containsKey(key)) {
+            onAccess(key);
+            return;
+        }
+        counts.put(key, 1);
+        getKeys(1).add(key);
+    }
+
+
+    @Override
+    public synchronized void onAccess(KVKey key) {
+        Integer count = counts.get(key);
+        if(count == null) {
+            return;
+        }
+        removeFromCount(key, count);
+        // Stop counting at the maximum instead of overflowing
+        int newCount = count == Integer.MAX_VALUE ? count : count + 1;
+        counts.put(key, newCount);
+        getKeys(newCount).add(key);
+    }
+
+
+    @Override
+    public synchronized void onRemove(KVKey key) {
+        Integer count = counts.remove(key);
+        if(count != null) {
+            removeFromCount(key, count);
+        }
+    }
+
+
+    @Override
+    public synchronized KVKey selectVictim() {
+        if(keysByCount.isEmpty()) {
+            return null;
+        }
+        Iterator<KVKey> iterator = keysByCount.firstEntry().getValue().iterator();
+        KVKey victim = iterator.next();
+        onRemove(victim);
+        return victim;
+    }
+
+
+    private LinkedHashSet<KVKey> getKeys(int count) {
+        LinkedHashSet<KVKey> keys = keysByCount.get(count);
+        if(keys == null) {
+            keys = new LinkedHashSet<KVKey>();
+            keysByCount.put(count, keys);
+        }
+        return keys;
+    }
+
+
+    private void removeFromCount(KVKey key, int count) {
+        LinkedHashSet<KVKey> keys = keysByCount.get(count);
+        keys.remove(key);
+        if(keys.isEmpty()) {
+            keysByCount.remove(count);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package kvstore;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Evicts the least recently used key
+ */
+public class LRUEvictionPolicy implements EvictionPolicy {
+
+    // Access ordered, least recently used key first
+    private final LinkedHashMap<KVKey, Boolean> keys = new LinkedHashMap<KVKey, Boolean>(16, 0.75f, true);
+
+
+    @Override
+    public synchronized void onInsert(KVKey key) {
+        keys.put(key, Boolean.TRUE);
+    }
+
+
+    @Override
+    public synchronized void onAccess(KVKey key) {
+        keys.get(key);
+    }
+
+
+    @Override
+    public synchronized void onRemove(KVKey key) {
+        keys.remove(key);
+    }
+
+
+    @Override
+    public synchronized KVKey selectVictim() {
+        Iterator<KVKey> iterator = keys.keySet().iterator();
+        if(!iterator.hasNext()) {
+            return null;
+        }
+        KVKey victim = iterator.next();
+        iterator.remove();
+        return victim;
+    }
+}
@@ -0,0 +1,128 @@
+package kvstore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Keeps the entries in an LSMStore. Puts are blind writes, so the engine is not bounded by the capacity
+ * of the store and its entries are never evicted.
+ */
+public class LSMStorageEngine implements StorageEngine {
+
+    private final LSMStore store;
+
+
+    public LSMStorageEngine(LSMStore store) {
+        if(store == null) {
+            throw new IllegalArgumentException();
+        }
+        this.store = store;
+    }
+
+
+    public LSMStore getLSMStore() {
+        return store;
+    }
+
+
+    @Override
+    public String getName() {
+        return "lsm";
+    }
+
+
+    @Override
+    public boolean isCapacityLimited() {
+        return false;
+    }
+
+
+    /**
+     * Writes a key-value pair. The write replaces any older value without looking it up.
+     * @return - NO_VALUE, or NO_SPACE if the store rejects writes because its flushes fail
+     */
+    @Override
+    public int put(KVKey key, byte[] value) {
+        return store.put(key, value) ? NO_VALUE : NO_SPACE;
+    }
+
+
+    @Override
+    public byte[] get(KVKey key) {
+        ByteBuffer storedValue = store.get(key);
+        if(storedValue == null) {
+            return null;
+        }
+        byte[] value = new byte[storedValue.remaining()];
+        storedValue.get(value);
+        return value;
+    }
+
+
+    /**
+     * Gets the value of a key. Values in table files are returned as a view of their mapped file.
+     */
+    @Override
+    public ByteBuffer getBuffer(KVKey key) {
+        return store.get(key);
+    }
+
+
+    @Override
+    public int getValueLength(KVKey key) {
+        ByteBuffer value = store.get(key);
+        return value != null ? value.remaining() : NO_VALUE;
+    }
+
+
+    /**
+     * Removes a key. The bloom filters make the lookup of a missing key cheap, so removals of missing keys write nothing.
+     */
+    @Override
+    public int remove(KVKey key) {
+        ByteBuffer value = store.get(key);
+        if(value == null) {
+            return NO_VALUE;
+        }
+        return store.remove(key) ? value.remaining() : NO_SPACE;
+    }
+
+
+    @Override
+    public void scan(KVKey fromKey, KVKey toKey, EntryVisitor visitor) throws IOException {
+        store.scan(fromKey, toKey, visitor);
+    }
+
+
+    @Override
+    public void forEach(EntryVisitor visitor) throws IOException {
+        store.forEach(visitor);
+    }
+
+
+    @Override
+    public long size() {
+        return store.getEstimatedKeyCount();
+    }
+
+
+    @Override
+    public long getSizeBytes() {
+        return store.getSizeBytes();
+    }
+
+
+    /**
+     * Gets the heap an entry takes while it is in a memtable
+     */
+    @Override
+    public long getEntryBytes(int valueLength) {
+        return LSMStore.getMemtableEntryBytes(valueLength);
+    }
+
+
+    @Override
+    public void printStatistics() {
+        store.printStatistics();
+    }
+}
@@ -0,0 +1,834 @@
+package kvstore;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Log-structured merge tree for write heavy nodes. Puts and removes only go to a concurrent sorted memtable, so
+ * a write never reads the disk. A full memtable is frozen and flushed by a background thread into a sorted immutable
+ * SSTable on level 0. Once level 0 has LEVEL0_COMPACTION_TRIGGER tables, they are merged with the overlapping
+ * tables of level 1. Deeper levels hold tables with disjoint key ranges and LEVEL_SIZE_MULTIPLIER times the bytes of
+ * the level above, and a level over its size pushes one table at a time into the next level (leveled compaction).
+ * A lookup checks the memtables, then the level 0 tables from newest to oldest, then at most one table per level.
+ * Every table has a bloom filter, so a lookup of a missing key almost never reads a table file.
+ * Removals are written as tombstones and dropped when they are merged into the deepest level that holds data.
+ * Compacted tables stay mapped until lookups that started before the compaction let go of them. Once such tables
+ * take more disk space than the live tables, the garbage collector is asked to release them.
+ * The table files only hold the entries while the node runs, they are removed on startup. The write-ahead log
+ * and snapshots make the store durable.
+ */
+public class LSMStore {
+
+    public static final int DEFAULT_MEMTABLE_SIZE_BYTES = 32 * 1024 * 1024;
+    public static final long DEFAULT_TABLE_SIZE_BYTES = 64 * 1024 * 1024;
+    public static final int LEVEL0_COMPACTION_TRIGGER = 4;
+    public static final int LEVEL_SIZE_MULTIPLIER = 10;
+    public static final int LEVEL_COUNT = 7;
+
+    // Writers wait while this many frozen memtables are waiting to be flushed
+    public static final int MAX_IMMUTABLE_MEMTABLES = 4;
+
+    // While flushes fail, a waiting writer is rejected after this time and the flush is tried again after the delay
+    public static final long FAILED_FLUSH_STALL_MILLIS = 1000;
+    public static final long FAILED_FLUSH_RETRY_MILLIS = 1000;
+
+    // Value of a removed key in memtables and in the entries written to tables
+    static final byte[] TOMBSTONE = new byte[0];
+
+    // Heap taken by a skip list node (24 bytes) and its share of the index nodes (8 bytes)
+    private static final int SKIP_LIST_ENTRY_BYTES = 32;
+
+    // Header of an array and alignment of objects on the heap with compressed references
+    private static final int ARRAY_HEADER_BYTES = 16;
+    private static final int OBJECT_ALIGNMENT_BYTES = 8;
+    private static final String TABLE_FILE_PREFIX = "sstable-";
+
+    private final File directory;
+    private final int memtableSizeBytes;
+    private final long tableSizeBytes;
+
+    // Writers add to the memtable of the current state under the read lock, changes of the state take the write lock
+    private final ReentrantReadWriteLock stateLock;
+    private volatile State state;
+
+    // Flushes and compactions run one at a time
+    private final Object maintenanceLock = new Object();
+    private final Object flushMonitor = new Object();
+    private final ScheduledExecutorService maintenanceExecutor;
+    private final AtomicBoolean maintenanceScheduled;
+    private final AtomicLong nextTableId;
+    private final RetiredMappings retiredMappings;
+    private final int[] compactionCursors;
+
+    // Last error of a flush or compaction, cleared once one succeeds
+    private volatile IOException maintenanceFailure;
+
+    // Statistics
+    private final AtomicLong getCount;
+    private final AtomicLong tableReadCount;
+    private final AtomicLong bloomFilterSkipCount;
+    private final AtomicLong flushCount;
+    private final AtomicLong compactionCount;
+    private final AtomicLong compactedBytes;
+    private final AtomicLong writeStallCount;
+    private final AtomicLong failedMaintenanceCount;
+    private final AtomicLong rejectedWriteCount;
+
+
+    private static class Memtable {
+        private final ConcurrentSkipListMap<KVKey, byte[]> entries = new ConcurrentSkipListMap<KVKey, byte[]>();
+        private final AtomicLong sizeBytes = new AtomicLong();
+    }
+
+
+    /**
+     * Memtables and tables of the store. Never changed, a flush or compaction replaces the whole state.
+     */
+    private static class State {
+        private final Memtable memtable;
+        // Newest first
+        private final List<Memtable> immutableMemtables;
+        // Level 0 newest first, deeper levels sorted by key
+        private final List<List<SSTable>> levels;
+
+        private State(Memtable memtable, List<Memtable> immutableMemtables, List<List<SSTable>> levels) {
+            this.memtable = memtable;
+            this.immutableMemtables = immutableMemtables;
+            this.levels = levels;
+        }
+    }
+
+
+    public LSMStore(File directory) throws IOException {
+        this(directory, DEFAULT_MEMTABLE_SIZE_BYTES, DEFAULT_TABLE_SIZE_BYTES);
+    }
+
+
+    /**
+     * Creates a store and removes the table files left in the directory by a previous run
+     * @param directory - Directory for the table files (created if missing)
+     * @param memtableSizeBytes - Memory a memtable may take before it is flushed
+     * @param tableSizeBytes - Target size of a table file
+     * @throws IOException - if the directory cannot be created
+     */
+    public LSMStore(File directory, int memtableSizeBytes, long tableSizeBytes) throws IOException {
+        if(memtableSizeBytes <= 0 || tableSizeBytes <= 0) {
+            throw new IllegalArgumentException();
+        }
+        if(!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create table directory: " + directory);
+        }
+        File[] oldFiles = directory.listFiles();
+        if(oldFiles != null) {
+            for(File file : oldFiles) {
+                if(file.getName().startsWith(TABLE_FILE_PREFIX)) {
+                    file.delete();
+                }
+            }
+        }
+
+        this.directory = directory;
+        this.memtableSizeBytes = memtableSizeBytes;
+        this.tableSizeBytes = tableSizeBytes;
+        this.stateLock = new ReentrantReadWriteLock();
+        List<List<SSTable>> levels = new ArrayList<List<SSTable>>();
+        for(int i = 0; i < LEVEL_COUNT; i++) {
+            levels.add(Collections.<SSTable>emptyList());
+        }
+        this.state = new State(new Memtable(), Collections.<Memtable>emptyList(), Collections.unmodifiableList(levels));
+        this.maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "lsm-compaction");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.maintenanceScheduled = new AtomicBoolean();
+        this.nextTableId = new AtomicLong();
+        this.retiredMappings = new RetiredMappings();
+        this.compactionCursors = new int[LEVEL_COUNT];
+        this.getCount = new AtomicLong();
+        this.tableReadCount = new AtomicLong();
+        this.bloomFilterSkipCount = new AtomicLong();
+        this.flushCount = new AtomicLong();
+        this.compactionCount = new AtomicLong();
+        this.compactedBytes = new AtomicLong();
+        this.writeStallCount = new AtomicLong();
+        this.failedMaintenanceCount = new AtomicLong();
+        this.rejectedWriteCount = new AtomicLong();
+    }
+
+
+    /**
+     * Associates a value with a key
+     * @param key - Key
+     * @param value - Value (not copied, must not be changed afterwards)
+     * @return - False if the write was rejected because flushes fail and the memtables are full
+     */
+    public boolean put(KVKey key, byte[] value) {
+        if(value == null || value.length == 0) {
+            throw new IllegalArgumentException();
+        }
+        return write(key, value);
+    }
+
+
+    /**
+     * Removes a key. The removal is recorded even if the key is not stored.
+     * @param key - Key
+     * @return - False if the removal was rejected because flushes fail and the memtables are full
+     */
+    public boolean remove(KVKey key) {
+        return write(key, TOMBSTONE);
+    }
+
+
+    private boolean write(KVKey key, byte[] value) {
+        if(!awaitFlushCapacity()) {
+            return false;
+        }
+
+        Memtable memtable;
+        stateLock.readLock().lock();
+        try {
+            memtable = state.memtable;
+            byte[] replaced = memtable.entries.put(key, value);
+            memtable.sizeBytes.addAndGet(replaced == null ? getMemtableEntryBytes(value.length) : getArrayBytes(value.length) - getArrayBytes(replaced.length));
+        } finally {
+            stateLock.readLock().unlock();
+        }
+
+        if(memtable.sizeBytes.get() >= memtableSizeBytes) {
+            freezeMemtable(memtable);
+            scheduleMaintenance(0);
+        }
+        return true;
+    }
+
+
+    /**
+     * Holds writers back while too many frozen memtables wait for their flush, so memory stays bounded.
+     * While flushes fail, writers are rejected after FAILED_FLUSH_STALL_MILLIS instead of waiting for good.
+     * @return - False if the writer has to give up
+     */
+    private boolean awaitFlushCapacity() {
+        if(state.immutableMemtables.size() < MAX_IMMUTABLE_MEMTABLES) {
+            return true;
+        }
+        writeStallCount.incrementAndGet();
+        long failedSince = 0;
+        synchronized(flushMonitor) {
+            while(state.immutableMemtables.size() >= MAX_IMMUTABLE_MEMTABLES) {
+                if(maintenanceFailure != null) {
+                    long now = System.currentTimeMillis();
+                    if(failedSince == 0) {
+                        failedSince = now;
+                    } else if(now - failedSince >= FAILED_FLUSH_STALL_MILLIS) {
+                        rejectedWriteCount.incrementAndGet();
+                        return false;
+                    }
+                }
+                try {
+                    flushMonitor.wait(100);
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+
+    private void freezeMemtable(Memtable memtable) {
+        stateLock.writeLock().lock();
+        try {
+            State current = state;
+            if(current.memtable != memtable || memtable.entries.isEmpty()) {
+                return;
+            }
+            List<Memtable> immutableMemtables = new ArrayList<Memtable>();
+            immutableMemtables.add(memtable);
+            immutableMemtables.addAll(current.immutableMemtables);
+            state = new State(new Memtable(), Collections.unmodifiableList(immutableMemtables), current.levels);
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Runs a flush and compaction on the background thread unless one is already waiting to run
+     * @param delayMillis - Time to wait before running
+     */
+    private void scheduleMaintenance(long delayMillis) {
+        if(!maintenanceScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        maintenanceExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                maintenanceScheduled.set(false);
+                try {
+                    maintain();
+                } catch(IOException e) {
+                    e.printStackTrace();
+                    // The frozen memtables are kept, so the flush is simply tried again
+                    scheduleMaintenance(FAILED_FLUSH_RETRY_MILLIS);
+                }
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+
+    /**
+     * Freezes the memtable and flushes it, then compacts as needed. Blocks until done.
+     * @throws IOException - if a table cannot be written
+     */
+    public void flush() throws IOException {
+        freezeMemtable(state.memtable);
+        maintain();
+    }
+
+
+    private void maintain() throws IOException {
+        synchronized(maintenanceLock) {
+            try {
+                flushImmutableMemtables();
+                compactLevels();
+            } catch(IOException e) {
+                failedMaintenanceCount.incrementAndGet();
+                maintenanceFailure = e;
+                throw e;
+            }
+            maintenanceFailure = null;
+        }
+    }
+
+
+    private void flushImmutableMemtables() throws IOException {
+        while(true) {
+            List<Memtable> immutableMemtables = state.immutableMemtables;
+            if(immutableMemtables.isEmpty()) {
+                return;
+            }
+            Memtable oldest = immutableMemtables.get(immutableMemtables.size() - 1);
+            List<SSTable> tables = writeTables(iterator(oldest), oldest.entries.size());
+
+            stateLock.writeLock().lock();
+            try {
+                State current = state;
+                List<Memtable> remaining = new ArrayList<Memtable>(current.immutableMemtables);
+                remaining.remove(oldest);
+                List<List<SSTable>> levels = new ArrayList<List<SSTable>>(current.levels);
+                List<SSTable> level0 = new ArrayList<SSTable>(tables);
+                level0.addAll(levels.get(0));
+                levels.set(0, Collections.unmodifiableList(level0));
+                state = new State(current.memtable, Collections.unmodifiableList(remaining), Collections.unmodifiableList(levels));
+            } finally {
+                stateLock.writeLock().unlock();
+            }
+            flushCount.incrementAndGet();
+
+            synchronized(flushMonitor) {
+                flushMonitor.notifyAll();
+            }
+        }
+    }
+
+
+    private void compactLevels() throws IOException {
+        while(true) {
+            List<List<SSTable>> levels = state.levels;
+            if(levels.get(0).size() >= LEVEL0_COMPACTION_TRIGGER) {
+                compact(0, levels.get(0));
+                continue;
+            }
+
+            // The deepest level has no size limit
+            boolean compacted = false;
+            for(int level = 1; level < LEVEL_COUNT - 1 && !compacted; level++) {
+                List<SSTable> tables = levels.get(level);
+                if(getSizeBytes(tables) > getMaxLevelSizeBytes(level)) {
+                    // Take turns over the tables of the level, so all key ranges are pushed down over time
+                    SSTable table = tables.get(compactionCursors[level]++ % tables.size());
+                    compact(level, Collections.singletonList(table));
+                    compacted = true;
+                }
+            }
+            if(!compacted) {
+                return;
+            }
+        }
+    }
+
+
+    /**
+     * Merges tables of a level with the overlapping tables of the next level into new tables of the next level
+     * @param level - Level of the input tables
+     * @param inputs - Input tables, newest first
+     */
+    private void compact(int level, List<SSTable> inputs) throws IOException {
+        List<List<SSTable>> levels = state.levels;
+        KVKey firstKey = inputs.get(0).getFirstKey();
+        KVKey lastKey = inputs.get(0).getLastKey();
+        for(SSTable input : inputs) {
+            firstKey = input.getFirstKey().compareTo(firstKey) < 0 ? input.getFirstKey() : firstKey;
+            lastKey = input.getLastKey().compareTo(lastKey) > 0 ? input.getLastKey() : lastKey;
+        }
+        List<SSTable> overlapping = new ArrayList<SSTable>();
+        for(SSTable table : levels.get(level + 1)) {
+            if(table.getFirstKey().compareTo(lastKey) <= 0 && firstKey.compareTo(table.getLastKey()) <= 0) {
+                overlapping.add(table);
+            }
+        }
+
+        // Tombstones are only needed while older entries of their key may be in deeper levels
+        boolean deepest = true;
+        for(int i = level + 2; i < LEVEL_COUNT; i++) {
+            deepest &= levels.get(i).isEmpty();
+        }
+
+        List<SSTable.EntryIterator> sources = new ArrayList<SSTable.EntryIterator>();
+        long entryCount = 0;
+        long inputBytes = 0;
+        for(SSTable table : inputs) {
+            sources.add(table.iterator());
+            entryCount += table.getEntryCount();
+            inputBytes += table.getSizeBytes();
+        }
+        for(SSTable table : overlapping) {
+            sources.add(table.iterator());
+            entryCount += table.getEntryCount();
+            inputBytes += table.getSizeBytes();
+        }
+        List<SSTable> outputs = writeTables(new MergingIterator(sources, deepest), (int) Math.min(entryCount, Integer.MAX_VALUE));
+
+        stateLock.writeLock().lock();
+        try {
+            State current = state;
+            List<List<SSTable>> merged = new ArrayList<List<SSTable>>(current.levels);
+            List<SSTable> remaining = new ArrayList<SSTable>(merged.get(level));
+            remaining.removeAll(inputs);
+            merged.set(level, Collections.unmodifiableList(remaining));
+            List<SSTable> next = new ArrayList<SSTable>(merged.get(level + 1));
+            next.removeAll(overlapping);
+            next.addAll(outputs);
+            Collections.sort(next, new Comparator<SSTable>() {
+                @Override
+                public int compare(SSTable a, SSTable b) {
+                    return a.getFirstKey().compareTo(b.getFirstKey());
+                }
+            });
+            merged.set(level + 1, Collections.unmodifiableList(next));
+            state = new State(current.memtable, current.immutableMemtables, Collections.unmodifiableList(merged));
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+
+        // Lookups that still use the old state keep reading the old tables, their mappings stay valid
+        for(SSTable table : inputs) {
+            table.delete(retiredMappings);
+        }
+        for(SSTable table : overlapping) {
+            table.delete(retiredMappings);
+        }
+        compactionCount.incrementAndGet();
+        compactedBytes.addAndGet(inputBytes);
+        retiredMappings.releaseAbove(getTableBytes());
+    }
+
+
+    private List<SSTable> writeTables(SSTable.EntryIterator entries, int expectedEntryCount) throws IOException {
+        int expectedPerTable = (int) Math.min(expectedEntryCount, tableSizeBytes / KVKey.KEY_SIZE_BYTES + 1);
+        List<SSTable> tables = new ArrayList<SSTable>();
+        SSTable table;
+        while((table = SSTable.write(new File(directory, TABLE_FILE_PREFIX + nextTableId.getAndIncrement()), entries,
+                expectedPerTable, tableSizeBytes)) != null) {
+            tables.add(table);
+        }
+        return tables;
+    }
+
+
+    /**
+     * Gets the value of a key
+     * @param key - Key
+     * @return - Read-only value, a view of a mapped table file if the value was flushed, or null if the key is not stored
+     */
+    public ByteBuffer get(KVKey key) {
+        getCount.incrementAndGet();
+        State current = state;
+
+        byte[] value = current.memtable.entries.get(key);
+        for(int i = 0; value == null && i < current.immutableMemtables.size(); i++) {
+            value = current.immutableMemtables.get(i).entries.get(key);
+        }
+        if(value != null) {
+            return value == TOMBSTONE ? null : ByteBuffer.wrap(value).asReadOnlyBuffer();
+        }
+
+        for(SSTable table : current.levels.get(0)) {
+            ByteBuffer found = read(table, key);
+            if(found != null) {
+                return found == SSTable.REMOVED ? null : found;
+            }
+        }
+        for(int level = 1; level < LEVEL_COUNT; level++) {
+            SSTable table = findTable(current.levels.get(level), key);
+            ByteBuffer found = table != null ? read(table, key) : null;
+            if(found != null) {
+                return found == SSTable.REMOVED ? null : found;
+            }
+        }
+        return null;
+    }
+
+
+    private ByteBuffer read(SSTable table, KVKey key) {
+        if(!table.mightContain(key)) {
+            bloomFilterSkipCount.incrementAndGet();
+            return null;
+        }
+        tableReadCount.incrementAndGet();
+        return table.get(key);
+    }
+
+
+    /**
+     * Finds the table of a level below level 0 whose key range holds a key
+     */
+    private static SSTable findTable(List<SSTable> tables, KVKey key) {
+        int low = 0;
+        int high = tables.size() - 1;
+        while(low <= high) {
+            int middle = (low + high) >>> 1;
+            SSTable table = tables.get(middle);
+            if(table.getLastKey().compareTo(key) < 0) {
+                low = middle + 1;
+            } else if(table.getFirstKey().compareTo(key) > 0) {
+                high = middle - 1;
+            } else {
+                return table;
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * Visits the current value of every stored key in key order. Writers are not blocked,
+     * changes made during the iteration may or may not be seen.
+     * @param visitor - Receives the entries
+     * @throws IOException - if the visitor fails
+     */
+    public void forEach(EntryVisitor visitor) throws IOException {
+        scan(null, null, visitor);
+    }
+
+
+    /**
+     * Visits the current value of every stored key in a range in key order. Only the tables whose key range
+     * overlaps the range are read, starting near the first key of the range.
+     * @param fromKey - First key of the range, or null for no lower bound
+     * @param toKey - Key after the range (exclusive), or null for no upper bound
+     * @param visitor - Receives the entries
+     * @throws IOException - if the visitor fails
+     */
+    public void scan(KVKey fromKey, KVKey toKey, EntryVisitor visitor) throws IOException {
+        State current = state;
+        List<SSTable.EntryIterator> sources = new ArrayList<SSTable.EntryIterator>();
+        sources.add(iterator(current.memtable, fromKey));
+        for(Memtable memtable : current.immutableMemtables) {
+            sources.add(iterator(memtable, fromKey));
+        }
+        for(List<SSTable> level : current.levels) {
+            for(SSTable table : level) {
+                if(table.overlaps(fromKey, toKey)) {
+                    sources.add(table.iterator(fromKey));
+                }
+            }
+        }
+
+        MergingIterator entries = new MergingIterator(sources, true);
+        while(entries.next()) {
+            KVKey key = entries.key();
+            if(toKey != null && key.compareTo(toKey) >= 0) {
+                return;
+            }
+            if(fromKey == null || key.compareTo(fromKey) >= 0) {
+                visitor.visit(key, entries.value());
+            }
+        }
+    }
+
+
+    private static SSTable.EntryIterator iterator(Memtable memtable) {
+        return iterator(memtable, null);
+    }
+
+
+    private static SSTable.EntryIterator iterator(Memtable memtable, KVKey fromKey) {
+        final Iterator<Map.Entry<KVKey, byte[]>> entries =
+                (fromKey != null ? memtable.entries.tailMap(fromKey) : memtable.entries).entrySet().iterator();
+        return new SSTable.EntryIterator() {
+            private Map.Entry<KVKey, byte[]> entry;
+
+            @Override
+            public boolean next() {
+                if(!entries.hasNext()) {
+                    return false;
+                }
+                entry = entries.next();
+                return true;
+            }
+
+            @Override
+            public KVKey key() {
+                return entry.getKey();
+            }
+
+            @Override
+            public byte[] value() {
+                return entry.getValue();
+            }
+        };
+    }
+
+
+    /**
+     * Merges sorted sources into one sorted sequence. Of several entries with the same key only the one of the
+     * first source (the newest) is kept.
+     */
+    private static class MergingIterator implements SSTable.EntryIterator {
+        private final PriorityQueue<Source> queue;
+        private final boolean dropTombstones;
+        private KVKey key;
+        private byte[] value;
+
+        private static class Source {
+            private final SSTable.EntryIterator entries;
+            private final int rank;
+
+            private Source(SSTable.EntryIterator entries, int rank) {
+                this.entries = entries;
+                this.rank = rank;
+            }
+        }
+
+        private MergingIterator(List<SSTable.EntryIterator> sources, boolean dropTombstones) throws IOException {
+            this.dropTombstones = dropTombstones;
+            this.queue = new PriorityQueue<Source>(Math.max(1, sources.size()), new Comparator<Source>() {
+                @Override
+                public int compare(Source a, Source b) {
+                    int comparison = a.entries.key().compareTo(b.entries.key());
+                    return comparison != 0 ? comparison : a.rank - b.rank;
+                }
+            });
+            for(int i = 0; i < sources.size(); i++) {
+                advance(new Source(sources.get(i), i));
+            }
+        }
+
+        private void advance(Source source) throws IOException {
+            if(source.entries.next()) {
+                queue.add(source);
+            }
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            while(!queue.isEmpty()) {
+                Source newest = queue.poll();
+                key = newest.entries.key();
+                value = newest.entries.value();
+                advance(newest);
+                while(!queue.isEmpty() && queue.peek().entries.key().equals(key)) {
+                    advance(queue.poll());
+                }
+                if(!dropTombstones || value != TOMBSTONE) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public KVKey key() {
+            return key;
+        }
+
+        @Override
+        public byte[] value() {
+            return value;
+        }
+    }
+
+
+    private long getMaxLevelSizeBytes(int level) {
+        long size = tableSizeBytes * LEVEL_SIZE_MULTIPLIER;
+        for(int i = 1; i < level; i++) {
+            size *= LEVEL_SIZE_MULTIPLIER;
+        }
+        return size;
+    }
+
+
+    /**
+     * Gets the heap an entry takes in a memtable: skip list nodes, key and value array
+     * @param valueLength - Length of the value, 0 for a removal
+     * @return - Bytes
+     */
+    public static long getMemtableEntryBytes(int valueLength) {
+        return SKIP_LIST_ENTRY_BYTES + KVKey.HEAP_BYTES + getArrayBytes(valueLength);
+    }
+
+
+    private static long getArrayBytes(int length) {
+        return (ARRAY_HEADER_BYTES + length + OBJECT_ALIGNMENT_BYTES - 1) & -OBJECT_ALIGNMENT_BYTES;
+    }
+
+
+    private static long getSizeBytes(List<SSTable> tables) {
+        long size = 0;
+        for(SSTable table : tables) {
+            size += table.getSizeBytes();
+        }
+        return size;
+    }
+
+
+    /**
+     * Gets an upper bound of the number of stored keys. Keys in several memtables or tables and removed keys
+     * are counted more than once until they are merged.
+     * @return - Number of keys
+     */
+    public long getEstimatedKeyCount() {
+        State current = state;
+        long count = current.memtable.entries.size();
+        for(Memtable memtable : current.immutableMemtables) {
+            count += memtable.entries.size();
+        }
+        for(List<SSTable> level : current.levels) {
+            for(SSTable table : level) {
+                count += table.getEntryCount();
+            }
+        }
+        return count;
+    }
+
+
+    /**
+     * Gets the bytes of the memtables and table files
+     * @return - Bytes
+     */
+    public long getSizeBytes() {
+        State current = state;
+        long size = current.memtable.sizeBytes.get();
+        for(Memtable memtable : current.immutableMemtables) {
+            size += memtable.sizeBytes.get();
+        }
+        for(List<SSTable> level : current.levels) {
+            size += getSizeBytes(level);
+        }
+        return size;
+    }
+
+
+    /**
+     * Gets the disk space of the live table files
+     * @return - Bytes
+     */
+    public long getTableBytes() {
+        long size = 0;
+        for(List<SSTable> level : state.levels) {
+            size += getSizeBytes(level);
+        }
+        return size;
+    }
+
+
+    /**
+     * Gets the disk space of compacted table files that are still mapped
+     * @return - Bytes
+     */
+    public long getRetainedBytes() {
+        return retiredMappings.getRetainedBytes();
+    }
+
+
+    /**
+     * Checks if the last flush or compaction failed
+     * @return - True if the store is waiting to try again
+     */
+    public boolean isMaintenanceFailing() {
+        return maintenanceFailure != null;
+    }
+
+
+    public long getRejectedWriteCount() {
+        return rejectedWriteCount.get();
+    }
+
+
+    /**
+     * Gets the number of tables of a level
+     * @param level - Level
+     * @return - Number of tables
+     */
+    public int getTableCount(int level) {
+        return state.levels.get(level).size();
+    }
+
+
+    public long getTableReadCount() {
+        return tableReadCount.get();
+    }
+
+
+    public long getBloomFilterSkipCount() {
+        return bloomFilterSkipCount.get();
+    }
+
+
+    /**
+     * Stops the background flushes and compactions
+     */
+    public void stop() {
+        maintenanceExecutor.shutdown();
+    }
+
+
+    /**
+     * Prints the store statistics
+     */
+    public void printStatistics() {
+        State current = state;
+        StringBuilder tables = new StringBuilder();
+        for(List<SSTable> level : current.levels) {
+            tables.append(tables.length() == 0 ? "" : "/").append(level.size());
+        }
+        System.out.println("LSM store: directory=" + directory + " immutableMemtables=" + current.immutableMemtables.size() +
+                " tablesPerLevel=" + tables + " gets=" + getCount.get() + " tableReads=" + getTableReadCount() +
+                " bloomFilterSkips=" + getBloomFilterSkipCount() + " flushes=" + flushCount.get() + " compactions=" +
+                compactionCount.get() + " compactedBytes=" + compactedBytes.get() + " retainedBytes=" + getRetainedBytes() + " writeStalls=" + writeStallCount.get() +
+                " failedMaintenances=" + failedMaintenanceCount.get() + " rejectedWrites=" + getRejectedWriteCount());
+    }
+}
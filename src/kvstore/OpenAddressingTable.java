@@ -0,0 +1,505 @@
+package kvstore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Concurrent hash table from fixed size keys to byte array values, built for a small heap footprint.
+ * The table is split into segments with a lock each. A segment keeps its keys back to back in one flat array,
+ * the hash, value offset and value length of each slot in an int array and its values back to back in a byte array
+ * arena, so an entry costs its bytes and a few array slots instead of a map node, a key object, a key array and
+ * a value array.
+ * The arena is only appended to. A replaced or removed value is left in place and counted as garbage until the arena
+ * runs full, then the live values are copied to a new arena. A region of an arena is therefore never written twice
+ * and values can be read from it after the lock is released.
+ * Collisions are resolved by linear probing and removals shift the following entries back, so there are no tombstones.
+ * Reads are optimistic and only take the read lock of a segment if a write happened at the same time.
+ */
+public class OpenAddressingTable {
+
+    public static final int DEFAULT_SEGMENT_COUNT = 64;
+    public static final int INITIAL_SEGMENT_CAPACITY = 16;
+    public static final int INITIAL_ARENA_BYTES = 256;
+
+    // Length of an empty slot
+    private static final int EMPTY = -1;
+
+    private static final int SLOT_INTS = 3;
+
+    // Largest array the JVM allocates reliably
+    private static final int MAX_ARENA_BYTES = Integer.MAX_VALUE - 8;
+
+    private static final int KEY_SIZE_BYTES = KVKey.KEY_SIZE_BYTES;
+
+    private final Segment[] segments;
+
+
+    /**
+     * Entries of one segment. Replaced as a whole when the segment grows, so a reader always sees arrays of the same capacity.
+     */
+    private static class Table {
+        private final byte[] keys;
+        // Hash, value offset and value length of a slot next to each other, so a probe reads one cache line
+        private final int[] slots;
+        private final int mask;
+
+        private Table(int capacity) {
+            keys = new byte[capacity * KEY_SIZE_BYTES];
+            slots = new int[capacity * SLOT_INTS];
+            for(int i = 0; i < capacity; i++) {
+                slots[i * SLOT_INTS + 2] = EMPTY;
+            }
+            mask = capacity - 1;
+        }
+
+        private int getHash(int index) {
+            return slots[index * SLOT_INTS];
+        }
+
+        private int getValueOffset(int index) {
+            return slots[index * SLOT_INTS + 1];
+        }
+
+        private int getValueLength(int index) {
+            return slots[index * SLOT_INTS + 2];
+        }
+
+        private boolean isEmpty(int index) {
+            return getValueLength(index) == EMPTY;
+        }
+
+        private void setSlot(int index, int hash, int valueOffset, int valueLength) {
+            slots[index * SLOT_INTS] = hash;
+            setValue(index, valueOffset, valueLength);
+        }
+
+        private void setValue(int index, int valueOffset, int valueLength) {
+            slots[index * SLOT_INTS + 1] = valueOffset;
+            slots[index * SLOT_INTS + 2] = valueLength;
+        }
+
+        private int getCapacity() {
+            return mask + 1;
+        }
+    }
+
+
+    private static class Segment {
+        private final StampedLock lock = new StampedLock();
+        private volatile Table table = new Table(INITIAL_SEGMENT_CAPACITY);
+        private volatile byte[] arena = new byte[INITIAL_ARENA_BYTES];
+        private volatile int size;
+        // Bytes of the arena in use, live or garbage, and the garbage part of them
+        private int arenaUsedBytes;
+        private long garbageBytes;
+    }
+
+
+    public OpenAddressingTable() {
+        this(DEFAULT_SEGMENT_COUNT);
+    }
+
+
+    /**
+     * Creates a table
+     * @param segmentCount - Number of independently locked segments (a power of two)
+     */
+    public OpenAddressingTable(int segmentCount) {
+        if(segmentCount <= 0 || Integer.bitCount(segmentCount) != 1) {
+            throw new IllegalArgumentException();
+        }
+        segments = new Segment[segmentCount];
+        for(int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+
+    /**
+     * Gets the value of a key
+     * @param key - Key
+     * @return - Copy of the value, or null if the key is not in the table
+     */
+    public byte[] get(KVKey key) {
+        ByteBuffer value = getBuffer(key);
+        if(value == null) {
+            return null;
+        }
+        byte[] copy = new byte[value.remaining()];
+        value.get(copy);
+        return copy;
+    }
+
+
+    /**
+     * Gets the value of a key without copying it
+     * @param key - Key
+     * @return - Read-only view of the value in the arena, or null if the key is not in the table
+     */
+    public ByteBuffer getBuffer(KVKey key) {
+        int hash = spread(key.hashCode());
+        Segment segment = getSegment(hash);
+
+        long stamp = segment.lock.tryOptimisticRead();
+        if(stamp != 0) {
+            ByteBuffer value = null;
+            try {
+                value = find(segment, key.getBytes(), hash);
+            } catch(RuntimeException e) {
+                // Torn read during a concurrent write, retried below under the read lock
+            }
+            if(segment.lock.validate(stamp)) {
+                return value;
+            }
+        }
+
+        stamp = segment.lock.readLock();
+        try {
+            return find(segment, key.getBytes(), hash);
+        } finally {
+            segment.lock.unlockRead(stamp);
+        }
+    }
+
+
+    /**
+     * Gets the length of the value of a key
+     * @param key - Key
+     * @return - Value length, or StorageEngine.NO_VALUE if the key is not in the table
+     */
+    public int getValueLength(KVKey key) {
+        ByteBuffer value = getBuffer(key);
+        return value != null ? value.remaining() : StorageEngine.NO_VALUE;
+    }
+
+
+    /**
+     * Associates a value with a key
+     * @param key - Key
+     * @param value - Value (copied into the arena)
+     * @return - Length of the value that was replaced, or StorageEngine.NO_VALUE if the key was not in the table
+     */
+    public int put(KVKey key, byte[] value) {
+        if(value == null) {
+            throw new IllegalArgumentException();
+        }
+        int hash = spread(key.hashCode());
+        Segment segment = getSegment(hash);
+
+        long stamp = segment.lock.writeLock();
+        try {
+            Table table = segment.table;
+            byte[] keyBytes = key.getBytes();
+            int index = hash & table.mask;
+            while(!table.isEmpty(index)) {
+                if(table.getHash(index) == hash && keyEquals(table, index, keyBytes)) {
+                    int replacedLength = table.getValueLength(index);
+                    segment.garbageBytes += replacedLength;
+                    // Point the slot at no bytes first, so a compaction for the new value does not copy the old one
+                    table.setValue(index, 0, 0);
+                    table.setValue(index, append(segment, value), value.length);
+                    return replacedLength;
+                }
+                index = (index + 1) & table.mask;
+            }
+
+            int offset = append(segment, value);
+            System.arraycopy(keyBytes, 0, table.keys, index * KEY_SIZE_BYTES, KEY_SIZE_BYTES);
+            table.setSlot(index, hash, offset, value.length);
+            segment.size++;
+
+            // Keep the load factor at or below 3/4
+            if(segment.size * 4 > table.getCapacity() * 3) {
+                segment.table = resize(table);
+            }
+            return StorageEngine.NO_VALUE;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+
+    /**
+     * Removes a key
+     * @param key - Key
+     * @return - Length of the removed value, or StorageEngine.NO_VALUE if the key was not in the table
+     */
+    public int remove(KVKey key) {
+        int hash = spread(key.hashCode());
+        Segment segment = getSegment(hash);
+
+        long stamp = segment.lock.writeLock();
+        try {
+            Table table = segment.table;
+            int index = indexOf(table, key.getBytes(), hash);
+            if(index < 0) {
+                return StorageEngine.NO_VALUE;
+            }
+            int removedLength = table.getValueLength(index);
+            segment.garbageBytes += removedLength;
+            deleteAt(table, index);
+            segment.size--;
+
+            // Give the memory of removed values back once they take more than half of a large arena
+            if(segment.arena.length > INITIAL_ARENA_BYTES && segment.garbageBytes * 2 > segment.arena.length) {
+                compact(segment, 0);
+            }
+            return removedLength;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+
+    /**
+     * Visits all entries one segment at a time. The entries of a segment are copied under its read lock and visited
+     * after the lock is released, so writers are only held up while a segment is copied.
+     * Changes made during the iteration may or may not be seen.
+     * @param visitor - Receives the entries
+     * @throws IOException - if the visitor fails
+     */
+    public void forEach(EntryVisitor visitor) throws IOException {
+        for(Segment segment : segments) {
+            byte[] keys;
+            int[] valueOffsets;
+            int[] valueLengths;
+            byte[] arena;
+            int count = 0;
+
+            long stamp = segment.lock.readLock();
+            try {
+                Table table = segment.table;
+                arena = segment.arena;
+                keys = new byte[segment.size * KEY_SIZE_BYTES];
+                valueOffsets = new int[segment.size];
+                valueLengths = new int[segment.size];
+                for(int i = 0; i < table.getCapacity(); i++) {
+                    if(!table.isEmpty(i)) {
+                        System.arraycopy(table.keys, i * KEY_SIZE_BYTES, keys, count * KEY_SIZE_BYTES, KEY_SIZE_BYTES);
+                        valueOffsets[count] = table.getValueOffset(i);
+                        valueLengths[count++] = table.getValueLength(i);
+                    }
+                }
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+
+            // Regions of the arena are never overwritten, so the values can be copied without the lock
+            for(int i = 0; i < count; i++) {
+                int offset = i * KEY_SIZE_BYTES;
+                visitor.visit(new KVKey(Arrays.copyOfRange(keys, offset, offset + KEY_SIZE_BYTES)),
+                        Arrays.copyOfRange(arena, valueOffsets[i], valueOffsets[i] + valueLengths[i]));
+            }
+        }
+    }
+
+
+    /**
+     * Gets the number of keys in the table
+     * @return - Number of keys
+     */
+    public int size() {
+        int size = 0;
+        for(Segment segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+
+    /**
+     * Gets the total number of slots of all segments
+     * @return - Number of slots
+     */
+    public long getCapacity() {
+        long capacity = 0;
+        for(Segment segment : segments) {
+            capacity += segment.table.getCapacity();
+        }
+        return capacity;
+    }
+
+
+    /**
+     * Gets the total size of the value arenas of all segments, live values, garbage and free space
+     * @return - Arena bytes
+     */
+    public long getArenaBytes() {
+        long arenaBytes = 0;
+        for(Segment segment : segments) {
+            arenaBytes += segment.arena.length;
+        }
+        return arenaBytes;
+    }
+
+
+    /**
+     * Gets the heap taken by the slot arrays and arenas of all segments
+     * @return - Bytes
+     */
+    public long getMemoryBytes() {
+        long memoryBytes = 0;
+        for(Segment segment : segments) {
+            Table table = segment.table;
+            memoryBytes += table.keys.length + table.slots.length * 4L + segment.arena.length;
+        }
+        return memoryBytes;
+    }
+
+
+    /**
+     * Estimates the heap an entry takes in a table. The slots are counted at the lowest load a table has after it doubled (3/8),
+     * and the value twice, since a compacted arena gets half its live bytes as free space and removed values are only
+     * collected once they take half of the arena.
+     * @param valueLength - Length of the value
+     * @return - Bytes
+     */
+    public static long getEntryBytes(int valueLength) {
+        return (KEY_SIZE_BYTES + SLOT_INTS * 4) * 8 / 3 + 2L * valueLength;
+    }
+
+
+    private Segment getSegment(int hash) {
+        // The low bits pick the slot within a segment, so pick the segment with the high bits
+        return segments[(hash >>> 16) & (segments.length - 1)];
+    }
+
+
+    /**
+     * Looks up a key in the current table and arena of a segment
+     * @return - Read-only view of the value, or null if the key is not in the segment
+     */
+    private static ByteBuffer find(Segment segment, byte[] keyBytes, int hash) {
+        Table table = segment.table;
+        byte[] arena = segment.arena;
+        int index = indexOf(table, keyBytes, hash);
+        if(index < 0) {
+            return null;
+        }
+        return ByteBuffer.wrap(arena, table.getValueOffset(index), table.getValueLength(index)).slice().asReadOnlyBuffer();
+    }
+
+
+    /**
+     * Copies a value to the end of the arena of a segment, compacting or growing the arena if it is full.
+     * Must be called with the write lock.
+     * @return - Offset of the value in the arena
+     */
+    private static int append(Segment segment, byte[] value) {
+        if(segment.arenaUsedBytes + value.length > segment.arena.length) {
+            compact(segment, value.length);
+        }
+        int offset = segment.arenaUsedBytes;
+        System.arraycopy(value, 0, segment.arena, offset, value.length);
+        segment.arenaUsedBytes += value.length;
+        return offset;
+    }
+
+
+    /**
+     * Copies the live values of a segment to a new arena with room for half as much again and a value to append.
+     * The old arena is left unchanged for readers that still hold it. Must be called with the write lock.
+     */
+    private static void compact(Segment segment, int appendBytes) {
+        Table table = segment.table;
+        long liveBytes = segment.arenaUsedBytes - segment.garbageBytes;
+        long required = liveBytes + appendBytes;
+        if(required > MAX_ARENA_BYTES) {
+            throw new IllegalStateException("Segment arena cannot hold " + required + " bytes");
+        }
+        byte[] compacted = new byte[(int) Math.max(INITIAL_ARENA_BYTES, Math.min(required + required / 2, MAX_ARENA_BYTES))];
+        int used = 0;
+        for(int i = 0; i < table.getCapacity(); i++) {
+            if(!table.isEmpty(i)) {
+                int length = table.getValueLength(i);
+                System.arraycopy(segment.arena, table.getValueOffset(i), compacted, used, length);
+                table.setValue(i, used, length);
+                used += length;
+            }
+        }
+        segment.arena = compacted;
+        segment.arenaUsedBytes = used;
+        segment.garbageBytes = 0;
+    }
+
+
+    /**
+     * Finds the slot of a key
+     * @return - Slot index, or -1 if the key is not in the table
+     */
+    private static int indexOf(Table table, byte[] keyBytes, int hash) {
+        int index = hash & table.mask;
+        for(int probes = 0; probes <= table.mask; probes++) {
+            if(table.isEmpty(index)) {
+                return -1;
+            }
+            if(table.getHash(index) == hash && keyEquals(table, index, keyBytes)) {
+                return index;
+            }
+            index = (index + 1) & table.mask;
+        }
+        return -1;
+    }
+
+
+    private static boolean keyEquals(Table table, int index, byte[] keyBytes) {
+        int offset = index * KEY_SIZE_BYTES;
+        for(int i = 0; i < KEY_SIZE_BYTES; i++) {
+            if(table.keys[offset + i] != keyBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Empties a slot and moves following entries of the same probe run back into the gap
+     */
+    private static void deleteAt(Table table, int index) {
+        int gap = index;
+        int next = (gap + 1) & table.mask;
+        while(!table.isEmpty(next)) {
+            int home = table.getHash(next) & table.mask;
+            // The entry may fill the gap if its home slot does not lie cyclically between the gap and the entry
+            if(((next - home) & table.mask) >= ((next - gap) & table.mask)) {
+                System.arraycopy(table.keys, next * KEY_SIZE_BYTES, table.keys, gap * KEY_SIZE_BYTES, KEY_SIZE_BYTES);
+                table.setSlot(gap, table.getHash(next), table.getValueOffset(next), table.getValueLength(next));
+                gap = next;
+            }
+            next = (next + 1) & table.mask;
+        }
+        table.setValue(gap, 0, EMPTY);
+    }
+
+
+    private static Table resize(Table table) {
+        Table resized = new Table(table.getCapacity() * 2);
+        for(int i = 0; i < table.getCapacity(); i++) {
+            if(table.isEmpty(i)) {
+                continue;
+            }
+            int index = table.getHash(i) & resized.mask;
+            while(!resized.isEmpty(index)) {
+                index = (index + 1) & resized.mask;
+            }
+            System.arraycopy(table.keys, i * KEY_SIZE_BYTES, resized.keys, index * KEY_SIZE_BYTES, KEY_SIZE_BYTES);
+            resized.setSlot(index, table.getHash(i), table.getValueOffset(i), table.getValueLength(i));
+        }
+        return resized;
+    }
+
+
+    private static int spread(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x45d9f3b;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,138 @@
+package kvstore;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.MappedByteBuffer;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the disk space of files that were deleted while still memory mapped. The operating system only frees
+ * the space once the mapping is released, and a mapping is only released after the garbage collector finds that
+ * neither the buffer nor a view of it is used anymore. The bytes of a retired mapping are counted until then,
+ * so disk budgets and statistics see the space that is really taken.
+ */
+public class RetiredMappings {
+
+    // Least time between two garbage collection requests
+    public static final long GC_REQUEST_INTERVAL_MILLIS = 1000;
+
+    // Longest time to wait for released mappings after a garbage collection request
+    public static final long RELEASE_WAIT_MILLIS = 200;
+
+    private static class RetiredMapping extends PhantomReference<MappedByteBuffer> {
+        private final long sizeBytes;
+
+        private RetiredMapping(MappedByteBuffer buffer, long sizeBytes, ReferenceQueue<MappedByteBuffer> queue) {
+            super(buffer, queue);
+            this.sizeBytes = sizeBytes;
+        }
+    }
+
+    private final ReferenceQueue<MappedByteBuffer> releasedQueue;
+
+    // Keeps the references reachable until they are enqueued
+    private final Set<RetiredMapping> retired;
+    private final AtomicLong retainedBytes;
+    private final AtomicLong lastGCRequestMillis;
+
+    // Statistics
+    private final AtomicLong retiredCount;
+    private final AtomicLong gcRequestCount;
+
+
+    public RetiredMappings() {
+        this.releasedQueue = new ReferenceQueue<MappedByteBuffer>();
+        this.retired = ConcurrentHashMap.newKeySet();
+        this.retainedBytes = new AtomicLong();
+        this.lastGCRequestMillis = new AtomicLong();
+        this.retiredCount = new AtomicLong();
+        this.gcRequestCount = new AtomicLong();
+    }
+
+
+    /**
+     * Counts the space of a mapping whose file was deleted until the mapping is released
+     * @param buffer - Mapping of the deleted file
+     * @param sizeBytes - Disk space of the file
+     */
+    public void retire(MappedByteBuffer buffer, long sizeBytes) {
+        retired.add(new RetiredMapping(buffer, sizeBytes, releasedQueue));
+        retainedBytes.addAndGet(sizeBytes);
+        retiredCount.incrementAndGet();
+    }
+
+
+    /**
+     * Gets the disk space of deleted files whose mappings are still alive
+     * @return - Bytes
+     */
+    public long getRetainedBytes() {
+        Reference<? extends MappedByteBuffer> released;
+        while((released = releasedQueue.poll()) != null) {
+            account(released);
+        }
+        return retainedBytes.get();
+    }
+
+
+    private void account(Reference<? extends MappedByteBuffer> released) {
+        RetiredMapping mapping = (RetiredMapping) released;
+        if(retired.remove(mapping)) {
+            retainedBytes.addAndGet(-mapping.sizeBytes);
+        }
+    }
+
+
+    /**
+     * Asks the garbage collector to release the retired mappings if they take more than a limit.
+     * Requests are sent at most once per GC_REQUEST_INTERVAL_MILLIS, after a request this waits up to
+     * RELEASE_WAIT_MILLIS for the mappings to be released.
+     * @param limitBytes - Retained bytes that are tolerated
+     * @return - Retained bytes afterwards
+     */
+    public long releaseAbove(long limitBytes) {
+        long retainedBytes = getRetainedBytes();
+        if(retainedBytes <= limitBytes) {
+            return retainedBytes;
+        }
+        long now = System.currentTimeMillis();
+        long last = lastGCRequestMillis.get();
+        if(now - last < GC_REQUEST_INTERVAL_MILLIS || !lastGCRequestMillis.compareAndSet(last, now)) {
+            return retainedBytes;
+        }
+        gcRequestCount.incrementAndGet();
+        System.gc();
+
+        // Released buffers are queued by the reference handler thread shortly after the collection
+        long deadline = now + RELEASE_WAIT_MILLIS;
+        while((retainedBytes = getRetainedBytes()) > limitBytes) {
+            long waitMillis = deadline - System.currentTimeMillis();
+            if(waitMillis <= 0) {
+                break;
+            }
+            try {
+                Reference<? extends MappedByteBuffer> released = releasedQueue.remove(waitMillis);
+                if(released != null) {
+                    account(released);
+                }
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return retainedBytes;
+    }
+
+
+    public long getRetiredCount() {
+        return retiredCount.get();
+    }
+
+
+    public long getGCRequestCount() {
+        return gcRequestCount.get();
+    }
+}
@@ -0,0 +1,87 @@
+package kvstore;
+
+import utility.HashUtility;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Partitions the keys of the store into one bucket per ring ID, the position HashUtility.simpleHash gives a key
+ * and the nodes route on. The keys of an interval of the ring can then be found by reading the buckets of the
+ * interval, without hashing every key of the store. The index does not hold values, the storage engine does.
+ * Buckets are concurrent sets, so keys can be added and removed while a bucket is read.
+ */
+public class RingIndex {
+
+    private final Set<KVKey>[] buckets;
+
+
+    /**
+     * Creates an empty index
+     * @param ringSize - Number of ring IDs, the range passed to HashUtility.simpleHash
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public RingIndex(int ringSize) {
+        if(ringSize <= 0) {
+            throw new IllegalArgumentException();
+        }
+        buckets = new Set[ringSize];
+        for(int i = 0; i < ringSize; i++) {
+            buckets[i] = ConcurrentHashMap.newKeySet();
+        }
+    }
+
+
+    /**
+     * Gets the ring ID of a key. Equal to the ID the request handlers compute from the key of a request.
+     * @param key - Key
+     * @return - Ring ID in [0, ringSize)
+     */
+    public int getRingID(KVKey key) {
+        return HashUtility.simpleHash(key.getBytes(), 0, KVKey.KEY_SIZE_BYTES, buckets.length);
+    }
+
+
+    /**
+     * Adds a key to the bucket of its ring ID. Adding a key that is already there has no effect.
+     * @param key - Key
+     */
+    public void add(KVKey key) {
+        buckets[getRingID(key)].add(key);
+    }
+
+
+    /**
+     * Removes a key from the bucket of its ring ID
+     * @param key - Key
+     */
+    public void remove(KVKey key) {
+        buckets[getRingID(key)].remove(key);
+    }
+
+
+    /**
+     * Gets the keys with a ring ID. Iterating over them does not block writers, keys added or removed
+     * meanwhile may or may not be seen.
+     * @param ringID - Ring ID
+     * @return - Live view of the bucket (must not be changed)
+     */
+    public Set<KVKey> getKeys(int ringID) {
+        return buckets[ringID];
+    }
+
+
+    /**
+     * Gets the ring ID after another one, wrapping around the end of the ring
+     * @param ringID - Ring ID
+     * @return - Next ring ID
+     */
+    public int next(int ringID) {
+        return ringID + 1 < buckets.length ? ringID + 1 : 0;
+    }
+
+
+    public int getRingSize() {
+        return buckets.length;
+    }
+}
@@ -0,0 +1,344 @@
+package kvstore;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Immutable sorted table of an LSMStore, held in a memory mapped file.
+ * Entry format (little endian): key (32) | value length (4, -1 for a removed key) | value.
+ * Every INDEX_INTERVAL-th key is kept on the heap with its offset, so a lookup binary searches these keys and then
+ * scans at most INDEX_INTERVAL entries of the file. A bloom filter of all keys answers most lookups of keys
+ * that are not in the table without reading the file.
+ */
+public class SSTable {
+
+    public static final int INDEX_INTERVAL = 16;
+
+    // Returned by get for a key that was removed
+    public static final ByteBuffer REMOVED = ByteBuffer.allocate(0).asReadOnlyBuffer();
+
+    private static final int ENTRY_HEADER_SIZE_BYTES = KVKey.KEY_SIZE_BYTES + 4;
+    private static final int TOMBSTONE_LENGTH = -1;
+
+    private final File file;
+    private final MappedByteBuffer buffer;
+    private final int entryCount;
+    private final KVKey firstKey;
+    private final KVKey lastKey;
+    private final byte[] indexKeys;
+    private final int[] indexOffsets;
+    private final BloomFilter bloomFilter;
+
+
+    /**
+     * Sorted entries to write into a table. A removed key has the value LSMStore.TOMBSTONE.
+     */
+    public interface EntryIterator {
+        /**
+         * Moves to the next entry
+         * @return - False if there are no more entries
+         */
+        boolean next() throws IOException;
+
+        KVKey key();
+
+        byte[] value();
+    }
+
+
+    private SSTable(File file, MappedByteBuffer buffer, int entryCount, byte[] indexKeys, int[] indexOffsets,
+                    BloomFilter bloomFilter, KVKey firstKey, KVKey lastKey) {
+        this.file = file;
+        this.buffer = buffer;
+        this.entryCount = entryCount;
+        this.indexKeys = indexKeys;
+        this.indexOffsets = indexOffsets;
+        this.bloomFilter = bloomFilter;
+        this.firstKey = firstKey;
+        this.lastKey = lastKey;
+    }
+
+
+    /**
+     * Writes entries into a new table until they run out or the table reaches its target size
+     * @param file - File of the table
+     * @param entries - Sorted entries, positioned before the first entry to write. Left on the last written entry,
+     *                  so the next table continues with the entry after it.
+     * @param expectedEntryCount - Upper bound of the number of entries, sizes the bloom filter
+     * @param targetSizeBytes - The table is closed once it holds at least this many bytes
+     * @return - Table, or null if there were no entries
+     * @throws IOException - if the table cannot be written
+     */
+    public static SSTable write(File file, EntryIterator entries, int expectedEntryCount, long targetSizeBytes)
+            throws IOException {
+        if(!entries.next()) {
+            return null;
+        }
+
+        BloomFilter bloomFilter = new BloomFilter(expectedEntryCount, BloomFilter.DEFAULT_BITS_PER_KEY);
+        byte[] indexKeys = new byte[16 * KVKey.KEY_SIZE_BYTES];
+        int[] indexOffsets = new int[16];
+        int count = 0;
+        long offset = 0;
+        KVKey firstKey = entries.key();
+        KVKey lastKey;
+
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+        ByteBuffer header = ByteBuffer.allocate(ENTRY_HEADER_SIZE_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            while(true) {
+                KVKey key = entries.key();
+                byte[] value = entries.value();
+                if(count % INDEX_INTERVAL == 0) {
+                    int slot = count / INDEX_INTERVAL;
+                    if(slot == indexOffsets.length) {
+                        indexOffsets = Arrays.copyOf(indexOffsets, slot * 2);
+                        indexKeys = Arrays.copyOf(indexKeys, slot * 2 * KVKey.KEY_SIZE_BYTES);
+                    }
+                    System.arraycopy(key.getBytes(), 0, indexKeys, slot * KVKey.KEY_SIZE_BYTES, KVKey.KEY_SIZE_BYTES);
+                    indexOffsets[slot] = (int) offset;
+                }
+                bloomFilter.add(key);
+
+                boolean removed = value == LSMStore.TOMBSTONE;
+                header.clear();
+                header.put(key.getBytes()).putInt(removed ? TOMBSTONE_LENGTH : value.length);
+                out.write(header.array(), 0, ENTRY_HEADER_SIZE_BYTES);
+                if(!removed) {
+                    out.write(value);
+                }
+                offset += ENTRY_HEADER_SIZE_BYTES + (removed ? 0 : value.length);
+                count++;
+                lastKey = key;
+
+                if(offset >= targetSizeBytes || offset > Integer.MAX_VALUE / 2 || !entries.next()) {
+                    break;
+                }
+            }
+        } finally {
+            out.close();
+        }
+
+        int indexSize = (count + INDEX_INTERVAL - 1) / INDEX_INTERVAL;
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, offset);
+            return new SSTable(file, buffer, count, Arrays.copyOf(indexKeys, indexSize * KVKey.KEY_SIZE_BYTES),
+                    Arrays.copyOf(indexOffsets, indexSize), bloomFilter, firstKey, lastKey);
+        } finally {
+            // The mapping stays valid after the file is closed
+            channel.close();
+        }
+    }
+
+
+    /**
+     * Checks if the table may hold a key without reading the file
+     * @param key - Key
+     * @return - False if the key is certainly not in the table
+     */
+    public boolean mightContain(KVKey key) {
+        return key.compareTo(firstKey) >= 0 && key.compareTo(lastKey) <= 0 && bloomFilter.mightContain(key);
+    }
+
+
+    /**
+     * Looks up a key in the file. Call mightContain first to skip most tables without the key.
+     * @param key - Key
+     * @return - View of the value in the mapped file, REMOVED if the table holds a removal of the key,
+     *           or null if the key is not in the table
+     */
+    public ByteBuffer get(KVKey key) {
+        ByteBuffer entries = duplicate();
+        int offset = indexOffsets[findIndexSlot(key)];
+        byte[] keyBytes = key.getBytes();
+        for(int i = 0; i < INDEX_INTERVAL && offset < entries.limit(); i++) {
+            int comparison = compareKeyAt(entries, offset, keyBytes);
+            int valueLength = entries.getInt(offset + KVKey.KEY_SIZE_BYTES);
+            if(comparison == 0) {
+                if(valueLength == TOMBSTONE_LENGTH) {
+                    return REMOVED;
+                }
+                entries.limit(offset + ENTRY_HEADER_SIZE_BYTES + valueLength);
+                entries.position(offset + ENTRY_HEADER_SIZE_BYTES);
+                return entries.slice().asReadOnlyBuffer();
+            }
+            if(comparison > 0) {
+                return null;
+            }
+            offset += ENTRY_HEADER_SIZE_BYTES + Math.max(valueLength, 0);
+        }
+        return null;
+    }
+
+
+    /**
+     * Iterates over all entries in key order
+     * @return - Iterator, positioned before the first entry
+     */
+    public EntryIterator iterator() {
+        return iterator(null);
+    }
+
+
+    /**
+     * Iterates over the entries in key order, starting near a key
+     * @param fromKey - Key to start at, or null to start at the first entry
+     * @return - Iterator, positioned before the entry of the last sampled key that is not greater than fromKey,
+     *           so up to INDEX_INTERVAL - 1 entries before fromKey may come first
+     */
+    public EntryIterator iterator(KVKey fromKey) {
+        final ByteBuffer entries = duplicate();
+        if(fromKey != null) {
+            entries.position(indexOffsets[findIndexSlot(fromKey)]);
+        }
+        return new EntryIterator() {
+            private KVKey key;
+            private byte[] value;
+
+            @Override
+            public boolean next() {
+                if(!entries.hasRemaining()) {
+                    return false;
+                }
+                byte[] keyBytes = new byte[KVKey.KEY_SIZE_BYTES];
+                entries.get(keyBytes);
+                key = new KVKey(keyBytes);
+                int valueLength = entries.getInt();
+                if(valueLength == TOMBSTONE_LENGTH) {
+                    value = LSMStore.TOMBSTONE;
+                } else {
+                    value = new byte[valueLength];
+                    entries.get(value);
+                }
+                return true;
+            }
+
+            @Override
+            public KVKey key() {
+                return key;
+            }
+
+            @Override
+            public byte[] value() {
+                return value;
+            }
+        };
+    }
+
+
+    /**
+     * Finds the last sampled key that is not greater than a key
+     */
+    private int findIndexSlot(KVKey key) {
+        int low = 0;
+        int high = indexOffsets.length - 1;
+        while(low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if(compareIndexKey(middle, key) <= 0) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+
+    private ByteBuffer duplicate() {
+        return buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+
+    private int compareIndexKey(int slot, KVKey key) {
+        byte[] keyBytes = key.getBytes();
+        int offset = slot * KVKey.KEY_SIZE_BYTES;
+        for(int i = 0; i < KVKey.KEY_SIZE_BYTES; i++) {
+            int difference = (indexKeys[offset + i] & 0xff) - (keyBytes[i] & 0xff);
+            if(difference != 0) {
+                return difference;
+            }
+        }
+        return 0;
+    }
+
+
+    private static int compareKeyAt(ByteBuffer entries, int offset, byte[] keyBytes) {
+        for(int i = 0; i < KVKey.KEY_SIZE_BYTES; i++) {
+            int difference = (entries.get(offset + i) & 0xff) - (keyBytes[i] & 0xff);
+            if(difference != 0) {
+                return difference;
+            }
+        }
+        return 0;
+    }
+
+
+    /**
+     * Deletes the file. Readers that still use the table can finish, the mapping stays valid.
+     * @param retiredMappings - Counts the space of the file until the mapping is released
+     */
+    public void delete(RetiredMappings retiredMappings) {
+        file.delete();
+        retiredMappings.retire(buffer, buffer.capacity());
+    }
+
+
+    public KVKey getFirstKey() {
+        return firstKey;
+    }
+
+
+    public KVKey getLastKey() {
+        return lastKey;
+    }
+
+
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+
+    /**
+     * Gets the size of the file
+     * @return - Bytes
+     */
+    public long getSizeBytes() {
+        return buffer.capacity();
+    }
+
+
+    public File getFile() {
+        return file;
+    }
+
+
+    /**
+     * Checks if the key ranges of two tables overlap
+     * @param other - Other table
+     * @return - True if a key could be in both tables
+     */
+    public boolean overlaps(SSTable other) {
+        return firstKey.compareTo(other.lastKey) <= 0 && other.firstKey.compareTo(lastKey) <= 0;
+    }
+
+
+    /**
+     * Checks if the table may hold keys of a range
+     * @param fromKey - First key of the range, or null for no lower bound
+     * @param toKey - Key after the range (exclusive), or null for no upper bound
+     * @return - True if the key ranges overlap
+     */
+    public boolean overlaps(KVKey fromKey, KVKey toKey) {
+        return (fromKey == null || lastKey.compareTo(fromKey) >= 0) && (toKey == null || firstKey.compareTo(toKey) < 0);
+    }
+}
@@ -0,0 +1,418 @@
+package kvstore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps values in memory mapped segment files, so the values of the key value store can be larger than the heap
+ * and are paged in by the operating system when they are used. Records are appended to the active segment and
+ * never changed: a put writes a new record and leaves the old one dead. A background compaction copies the live
+ * records of segments that are mostly dead to the active segment and deletes the old segment files.
+ * A segment id is never reused and a mapping stays valid after its file is deleted, so a view of a value can be
+ * read without a lock even if its record is moved by a compaction at the same time. The disk space of a deleted
+ * segment is only freed once its mapping is released by the garbage collector, so it counts against the disk budget
+ * until then.
+ * Record format (little endian): key (32) | value length (4) | value. A handle is the segment id << 32 | record offset.
+ * The segment files only hold the values while the node runs, they are removed on startup. The write-ahead log
+ * and snapshots make the store durable.
+ */
+public class SegmentStore implements ValueStorage {
+
+    public static final int DEFAULT_SEGMENT_SIZE_BYTES = 64 * 1024 * 1024;
+    public static final long DEFAULT_COMPACTION_INTERVAL_MILLIS = 1000;
+
+    // A sealed segment is compacted once its live records take up at most this share of it
+    public static final int COMPACTION_THRESHOLD_PERCENT = 50;
+
+    private static final int RECORD_HEADER_SIZE_BYTES = KVKey.KEY_SIZE_BYTES + 4;
+    private static final String SEGMENT_FILE_PREFIX = "segment-";
+
+    private final File directory;
+    private final int segmentSizeBytes;
+    private final long maxBytes;
+    private final ConcurrentHashMap<Integer, Segment> segments;
+    private final RetiredMappings retiredMappings;
+
+    // Guards the active segment and the segment ids
+    private final Object appendLock = new Object();
+    private Segment activeSegment;
+    private int nextSegmentId;
+
+    private ScheduledExecutorService compactionScheduler;
+
+    // Statistics
+    private final AtomicLong segmentBytes;
+    private final AtomicLong liveBytes;
+    private final AtomicLong compactedSegmentCount;
+    private final AtomicLong movedRecordCount;
+    private final AtomicLong allocationFailureCount;
+
+
+    /**
+     * Moves the live records of a segment that is being compacted
+     */
+    public interface Relocator {
+        /**
+         * Called for every record of a segment that is being compacted. If the handle is still the current one
+         * of the key, the record has to be moved with move and the key pointed to the new handle.
+         * @param key - Key of the record
+         * @param handle - Handle of the record
+         */
+        void relocate(KVKey key, long handle);
+    }
+
+
+    private static class Segment {
+        private final int id;
+        private final File file;
+        private final MappedByteBuffer buffer;
+        private final AtomicLong liveBytes = new AtomicLong();
+        // Guarded by appendLock until the segment is sealed
+        private int writeOffset;
+        private volatile boolean sealed;
+
+        private Segment(int id, File file, MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        /**
+         * Gets a little endian view of the segment with its own position
+         */
+        private ByteBuffer duplicate() {
+            return buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+
+    /**
+     * Creates a store and removes the segment files left in the directory by a previous run
+     * @param directory - Directory for the segment files (created if missing)
+     * @param segmentSizeBytes - Size of a segment file, which bounds the size of a value
+     * @param maxBytes - Disk budget. Segments are created until their total size, including deleted segments
+     *                   that are still mapped, would exceed it.
+     * @throws IOException - if the directory cannot be created
+     */
+    public SegmentStore(File directory, int segmentSizeBytes, long maxBytes) throws IOException {
+        if(segmentSizeBytes <= RECORD_HEADER_SIZE_BYTES || maxBytes < segmentSizeBytes) {
+            throw new IllegalArgumentException();
+        }
+        if(!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create segment directory: " + directory);
+        }
+        File[] oldFiles = directory.listFiles();
+        if(oldFiles != null) {
+            for(File file : oldFiles) {
+                if(file.getName().startsWith(SEGMENT_FILE_PREFIX)) {
+                    file.delete();
+                }
+            }
+        }
+
+        this.directory = directory;
+        this.segmentSizeBytes = segmentSizeBytes;
+        this.maxBytes = maxBytes;
+        this.segments = new ConcurrentHashMap<Integer, Segment>();
+        this.retiredMappings = new RetiredMappings();
+        this.segmentBytes = new AtomicLong();
+        this.liveBytes = new AtomicLong();
+        this.compactedSegmentCount = new AtomicLong();
+        this.movedRecordCount = new AtomicLong();
+        this.allocationFailureCount = new AtomicLong();
+    }
+
+
+    /**
+     * Appends a record
+     * @param key - Key of the value
+     * @param value - Value (at most the segment size minus the record header)
+     * @return - Handle of the value, or NO_HANDLE if the disk budget is exhausted
+     */
+    @Override
+    public long allocate(KVKey key, byte[] value) {
+        return append(key, value, maxBytes);
+    }
+
+
+    /**
+     * Copies a record to the active segment for a compaction. The copy may use one segment more than
+     * the disk budget, so that a full store can still be compacted.
+     * @param handle - Handle of the record
+     * @return - Handle of the copy, or NO_HANDLE if there is no space. The old record is not freed.
+     */
+    public long move(long handle) {
+        ByteBuffer record = getSegment(handle).duplicate();
+        record.position(getOffset(handle));
+        byte[] key = new byte[KVKey.KEY_SIZE_BYTES];
+        record.get(key);
+        byte[] value = new byte[record.getInt()];
+        record.get(value);
+
+        long moved = append(new KVKey(key), value, maxBytes + segmentSizeBytes);
+        if(moved != NO_HANDLE) {
+            movedRecordCount.incrementAndGet();
+        }
+        return moved;
+    }
+
+
+    private long append(KVKey key, byte[] value, long limitBytes) {
+        int recordSize = RECORD_HEADER_SIZE_BYTES + value.length;
+        if(recordSize > segmentSizeBytes) {
+            throw new IllegalArgumentException();
+        }
+
+        Segment segment;
+        int offset;
+        synchronized(appendLock) {
+            if(activeSegment == null || activeSegment.writeOffset + recordSize > segmentSizeBytes) {
+                // Deleted segments that are still mapped take disk space until the garbage collector releases them
+                long availableBytes = limitBytes - segmentBytes.get() - segmentSizeBytes;
+                if(availableBytes < 0 || retiredMappings.getRetainedBytes() > availableBytes &&
+                        retiredMappings.releaseAbove(availableBytes) > availableBytes) {
+                    allocationFailureCount.incrementAndGet();
+                    return NO_HANDLE;
+                }
+                Segment created;
+                try {
+                    created = createSegment(nextSegmentId++);
+                } catch(IOException e) {
+                    e.printStackTrace();
+                    allocationFailureCount.incrementAndGet();
+                    return NO_HANDLE;
+                }
+                if(activeSegment != null) {
+                    activeSegment.sealed = true;
+                }
+                activeSegment = created;
+            }
+
+            segment = activeSegment;
+            offset = segment.writeOffset;
+            ByteBuffer record = segment.duplicate();
+            record.position(offset);
+            record.put(key.getBytes()).putInt(value.length).put(value);
+            segment.writeOffset += recordSize;
+            segment.liveBytes.addAndGet(recordSize);
+        }
+        liveBytes.addAndGet(recordSize);
+        return ((long) segment.id << 32) | offset;
+    }
+
+
+    private Segment createSegment(int id) throws IOException {
+        File file = new File(directory, SEGMENT_FILE_PREFIX + id);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(segmentSizeBytes);
+            Segment segment = new Segment(id, file, raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSizeBytes));
+            segments.put(id, segment);
+            segmentBytes.addAndGet(segmentSizeBytes);
+            return segment;
+        } finally {
+            // The mapping stays valid after the file is closed
+            raf.close();
+        }
+    }
+
+
+    @Override
+    public byte[] read(long handle) {
+        ByteBuffer value = view(handle);
+        byte[] copy = new byte[value.remaining()];
+        value.get(copy);
+        return copy;
+    }
+
+
+    /**
+     * Gets a view of a value in its mapped segment, no bytes are copied
+     * @param handle - Handle returned by allocate
+     * @return - Value
+     */
+    @Override
+    public ByteBuffer view(long handle) {
+        ByteBuffer value = getSegment(handle).duplicate();
+        int offset = getOffset(handle);
+        int length = value.getInt(offset + KVKey.KEY_SIZE_BYTES);
+        value.limit(offset + RECORD_HEADER_SIZE_BYTES + length);
+        value.position(offset + RECORD_HEADER_SIZE_BYTES);
+        return value.slice().asReadOnlyBuffer();
+    }
+
+
+    @Override
+    public int getValueLength(long handle) {
+        return getSegment(handle).duplicate().getInt(getOffset(handle) + KVKey.KEY_SIZE_BYTES);
+    }
+
+
+    /**
+     * Gets the size of the record a value is stored in, key and length included
+     * @param valueLength - Length of the value
+     * @return - Bytes
+     */
+    @Override
+    public long getStoredBytes(int valueLength) {
+        return RECORD_HEADER_SIZE_BYTES + valueLength;
+    }
+
+
+    /**
+     * Marks a record dead. Its space is reclaimed when its segment is compacted.
+     * @param handle - Handle returned by allocate
+     */
+    @Override
+    public void free(long handle) {
+        int recordSize = RECORD_HEADER_SIZE_BYTES + getValueLength(handle);
+        getSegment(handle).liveBytes.addAndGet(-recordSize);
+        liveBytes.addAndGet(-recordSize);
+    }
+
+
+    /**
+     * Compacts every interval on a background thread
+     * @param relocator - Moves the live records of the compacted segments
+     * @param intervalMillis - Time between compactions
+     */
+    public synchronized void startCompaction(final Relocator relocator, long intervalMillis) {
+        if(relocator == null || intervalMillis <= 0 || compactionScheduler != null) {
+            throw new IllegalArgumentException();
+        }
+        compactionScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "segment-compaction");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        compactionScheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                compact(relocator);
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+
+    /**
+     * Compacts all sealed segments whose live records take up at most COMPACTION_THRESHOLD_PERCENT of them
+     * @param relocator - Moves the live records of the compacted segments
+     * @return - Number of deleted segments
+     */
+    public int compact(Relocator relocator) {
+        int deleted = 0;
+        for(Segment segment : segments.values()) {
+            if(segment.sealed && segment.liveBytes.get() * 100 <= (long) segment.writeOffset * COMPACTION_THRESHOLD_PERCENT) {
+                if(compactSegment(segment, relocator)) {
+                    deleted++;
+                }
+            }
+        }
+        return deleted;
+    }
+
+
+    private boolean compactSegment(Segment segment, Relocator relocator) {
+        ByteBuffer records = segment.duplicate();
+        int offset = 0;
+        while(offset < segment.writeOffset && segment.liveBytes.get() > 0) {
+            records.position(offset);
+            byte[] key = new byte[KVKey.KEY_SIZE_BYTES];
+            records.get(key);
+            int valueLength = records.getInt();
+            relocator.relocate(new KVKey(key), ((long) segment.id << 32) | offset);
+            offset += RECORD_HEADER_SIZE_BYTES + valueLength;
+        }
+
+        // Records that could not be moved keep the segment alive until the next compaction
+        if(segment.liveBytes.get() > 0) {
+            return false;
+        }
+        segments.remove(segment.id);
+        segmentBytes.addAndGet(-segmentSizeBytes);
+        segment.file.delete();
+        retiredMappings.retire(segment.buffer, segmentSizeBytes);
+        compactedSegmentCount.incrementAndGet();
+        return true;
+    }
+
+
+    /**
+     * Stops compacting
+     */
+    public synchronized void stopCompaction() {
+        if(compactionScheduler != null) {
+            compactionScheduler.shutdown();
+        }
+    }
+
+
+    private Segment getSegment(long handle) {
+        return segments.get((int) (handle >>> 32));
+    }
+
+
+    private static int getOffset(long handle) {
+        return (int) handle;
+    }
+
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+
+    /**
+     * Gets the disk space taken by segment files
+     * @return - Bytes
+     */
+    public long getSegmentBytes() {
+        return segmentBytes.get();
+    }
+
+
+    /**
+     * Gets the disk space of deleted segment files that are still mapped
+     * @return - Bytes
+     */
+    public long getRetainedBytes() {
+        return retiredMappings.getRetainedBytes();
+    }
+
+
+    /**
+     * Gets the space taken by live records
+     * @return - Bytes
+     */
+    public long getLiveBytes() {
+        return liveBytes.get();
+    }
+
+
+    public long getCompactedSegmentCount() {
+        return compactedSegmentCount.get();
+    }
+
+
+    @Override
+    public void printStatistics() {
+        System.out.println("Segment store: directory=" + directory + " segments=" + getSegmentCount() + " segmentBytes=" +
+                getSegmentBytes() + " retainedBytes=" + getRetainedBytes() + " liveBytes=" + getLiveBytes() + " maxBytes=" + maxBytes + " compactedSegments=" +
+                getCompactedSegmentCount() + " movedRecords=" + movedRecordCount.get() + " allocationFailures=" +
+                allocationFailureCount.get() + " gcRequests=" + retiredMappings.getGCRequestCount());
+    }
+}
@@ -0,0 +1,301 @@
+package kvstore;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Allocates values in off-heap slabs. Every slab is a direct buffer of SLAB_SIZE_BYTES that is cut into
+ * chunks of one size class (powers of two from MIN_CHUNK_SIZE_BYTES to SLAB_SIZE_BYTES). Freed chunks are kept in
+ * a free list per size class and reused, slabs are never given back. An allocation fails once the free list
+ * of its class is empty and a new slab would exceed the off-heap budget.
+ * A value is referred to by a handle that packs its slab, its offset in the slab and its length into a long.
+ */
+public class SlabAllocator implements ValueStorage {
+
+    public static final int SLAB_SIZE_BYTES = 1 << 20;
+    public static final int MIN_CHUNK_SIZE_BYTES = 64;
+
+    // Handle layout: slab index (bits 40-62) | offset in slab (bits 20-39) | length (bits 0-19)
+    private static final int OFFSET_SHIFT = 20;
+    private static final int SLAB_SHIFT = 40;
+    private static final long FIELD_MASK = (1L << 20) - 1;
+    private static final int MAX_SLAB_COUNT = 1 << 23;
+
+    // Slabs are added rarely and read on every access
+    private final CopyOnWriteArrayList<ByteBuffer> slabs;
+    private final SizeClass[] sizeClasses;
+    private final long maxBytes;
+
+    // Statistics
+    private final AtomicLong slabBytes;
+    private final AtomicLong allocatedChunkBytes;
+    private final AtomicLong allocatedValueBytes;
+    private final AtomicLong allocationFailureCount;
+
+
+    /**
+     * Chunks of one size: a free list of chunk positions (slab index << OFFSET_SHIFT | offset) and the slab that is
+     * still being cut
+     */
+    private static class SizeClass {
+        private final int chunkSize;
+        private long[] freeChunks = new long[16];
+        private int freeChunkCount;
+        private int currentSlab = -1;
+        private int nextOffset = SLAB_SIZE_BYTES;
+
+        private SizeClass(int chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+    }
+
+
+    /**
+     * Creates an allocator
+     * @param maxBytes - Off-heap budget. Slabs are allocated until their total size would exceed it.
+     */
+    public SlabAllocator(long maxBytes) {
+        if(maxBytes < SLAB_SIZE_BYTES) {
+            throw new IllegalArgumentException();
+        }
+
+        int classCount = Integer.numberOfTrailingZeros(SLAB_SIZE_BYTES / MIN_CHUNK_SIZE_BYTES) + 1;
+        this.sizeClasses = new SizeClass[classCount];
+        for(int i = 0; i < classCount; i++) {
+            sizeClasses[i] = new SizeClass(MIN_CHUNK_SIZE_BYTES << i);
+        }
+        this.slabs = new CopyOnWriteArrayList<ByteBuffer>();
+        this.maxBytes = maxBytes;
+        this.slabBytes = new AtomicLong();
+        this.allocatedChunkBytes = new AtomicLong();
+        this.allocatedValueBytes = new AtomicLong();
+        this.allocationFailureCount = new AtomicLong();
+    }
+
+
+    /**
+     * Allocates a chunk and copies a value into it
+     * @param value - Value to store (1 to SLAB_SIZE_BYTES - 1 bytes)
+     * @return - Handle of the value, or NO_HANDLE if the off-heap budget is exhausted
+     */
+    public long allocate(byte[] value) {
+        if(value.length == 0 || value.length > FIELD_MASK) {
+            throw new IllegalArgumentException();
+        }
+
+        SizeClass sizeClass = sizeClasses[getSizeClassIndex(value.length)];
+        long position;
+        synchronized(sizeClass) {
+            if(sizeClass.freeChunkCount > 0) {
+                position = sizeClass.freeChunks[--sizeClass.freeChunkCount];
+            } else {
+                if(sizeClass.nextOffset + sizeClass.chunkSize > SLAB_SIZE_BYTES) {
+                    int slabIndex = addSlab();
+                    if(slabIndex < 0) {
+                        allocationFailureCount.incrementAndGet();
+                        return NO_HANDLE;
+                    }
+                    sizeClass.currentSlab = slabIndex;
+                    sizeClass.nextOffset = 0;
+                }
+                position = ((long) sizeClass.currentSlab << OFFSET_SHIFT) | sizeClass.nextOffset;
+                sizeClass.nextOffset += sizeClass.chunkSize;
+            }
+        }
+        allocatedChunkBytes.addAndGet(sizeClass.chunkSize);
+        allocatedValueBytes.addAndGet(value.length);
+
+        long handle = (position << OFFSET_SHIFT) | value.length;
+        ByteBuffer chunk = getSlab(handle);
+        chunk.position(getOffset(handle));
+        chunk.put(value);
+        return handle;
+    }
+
+
+    @Override
+    public long allocate(KVKey key, byte[] value) {
+        return allocate(value);
+    }
+
+
+    /**
+     * Copies a value out of its chunk
+     * @param handle - Handle returned by allocate
+     * @return - Value
+     */
+    @Override
+    public byte[] read(long handle) {
+        byte[] value = new byte[getLength(handle)];
+        ByteBuffer chunk = getSlab(handle);
+        chunk.position(getOffset(handle));
+        chunk.get(value);
+        return value;
+    }
+
+
+    /**
+     * Gets a copy of a value, the chunk may be reused as soon as the handle is freed
+     * @param handle - Handle returned by allocate
+     * @return - Value
+     */
+    @Override
+    public ByteBuffer view(long handle) {
+        return ByteBuffer.wrap(read(handle)).asReadOnlyBuffer();
+    }
+
+
+    @Override
+    public int getValueLength(long handle) {
+        return getLength(handle);
+    }
+
+
+    /**
+     * Gets the chunk size of the size class a value of this length is stored in
+     * @param valueLength - Length of the value
+     * @return - Bytes
+     */
+    @Override
+    public long getStoredBytes(int valueLength) {
+        return (long) MIN_CHUNK_SIZE_BYTES << getSizeClassIndex(valueLength);
+    }
+
+
+    /**
+     * Returns the chunk of a value to the free list of its size class. The handle must not be used afterwards.
+     * @param handle - Handle returned by allocate
+     */
+    @Override
+    public void free(long handle) {
+        int length = getLength(handle);
+        SizeClass sizeClass = sizeClasses[getSizeClassIndex(length)];
+        synchronized(sizeClass) {
+            if(sizeClass.freeChunkCount == sizeClass.freeChunks.length) {
+                long[] freeChunks = new long[sizeClass.freeChunks.length * 2];
+                System.arraycopy(sizeClass.freeChunks, 0, freeChunks, 0, sizeClass.freeChunkCount);
+                sizeClass.freeChunks = freeChunks;
+            }
+            sizeClass.freeChunks[sizeClass.freeChunkCount++] = handle >>> OFFSET_SHIFT;
+        }
+        allocatedChunkBytes.addAndGet(-sizeClass.chunkSize);
+        allocatedValueBytes.addAndGet(-length);
+    }
+
+
+    /**
+     * Gets the length of the value a handle refers to
+     * @param handle - Handle returned by allocate
+     * @return - Length in bytes
+     */
+    public static int getLength(long handle) {
+        return (int) (handle & FIELD_MASK);
+    }
+
+
+    private static int getOffset(long handle) {
+        return (int) ((handle >>> OFFSET_SHIFT) & FIELD_MASK);
+    }
+
+
+    private static int getSizeClassIndex(int length) {
+        if(length <= MIN_CHUNK_SIZE_BYTES) {
+            return 0;
+        }
+        // Smallest power of two that holds the length, relative to the smallest chunk size
+        return 32 - Integer.numberOfLeadingZeros(length - 1) - Integer.numberOfTrailingZeros(MIN_CHUNK_SIZE_BYTES);
+    }
+
+
+    /**
+     * Gets a view of the slab a handle refers to. Views have their own position, so values can be copied
+     * concurrently.
+     */
+    private ByteBuffer getSlab(long handle) {
+        return slabs.get((int) (handle >>> SLAB_SHIFT)).duplicate();
+    }
+
+
+    /**
+     * Allocates a new slab if the budget allows it
+     * @return - Index of the slab, or -1 if the budget is exhausted
+     */
+    private int addSlab() {
+        synchronized(slabs) {
+            if(slabBytes.get() + SLAB_SIZE_BYTES > maxBytes || slabs.size() >= MAX_SLAB_COUNT) {
+                return -1;
+            }
+            slabs.add(ByteBuffer.allocateDirect(SLAB_SIZE_BYTES));
+            slabBytes.addAndGet(SLAB_SIZE_BYTES);
+            return slabs.size() - 1;
+        }
+    }
+
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+
+    /**
+     * Gets the off-heap memory taken by slabs
+     * @return - Bytes
+     */
+    public long getSlabBytes() {
+        return slabBytes.get();
+    }
+
+
+    /**
+     * Gets the memory taken by allocated chunks
+     * @return - Bytes
+     */
+    public long getAllocatedChunkBytes() {
+        return allocatedChunkBytes.get();
+    }
+
+
+    /**
+     * Gets the total length of the stored values
+     * @return - Bytes
+     */
+    public long getAllocatedValueBytes() {
+        return allocatedValueBytes.get();
+    }
+
+
+    public long getAllocationFailureCount() {
+        return allocationFailureCount.get();
+    }
+
+
+    /**
+     * Gets the share of slab memory that is held by allocated chunks
+     * @return - Utilization between 0 and 1
+     */
+    public double getUtilization() {
+        long slabs = getSlabBytes();
+        return slabs == 0 ? 0 : (double) getAllocatedChunkBytes() / slabs;
+    }
+
+
+    /**
+     * Gets the share of allocated chunk memory that is not used by values because chunks are rounded up to their size class
+     * @return - Internal fragmentation between 0 and 1
+     */
+    public double getFragmentation() {
+        long chunks = getAllocatedChunkBytes();
+        return chunks == 0 ? 0 : 1 - (double) getAllocatedValueBytes() / chunks;
+    }
+
+
+    /**
+     * Prints the slab statistics
+     */
+    @Override
+    public void printStatistics() {
+        System.out.println(String.format("Off-heap slabs: slabBytes=%d maxBytes=%d utilization=%.2f fragmentation=%.2f allocationFailures=%d",
+                getSlabBytes(), getMaxBytes(), getUtilization(), getFragmentation(), getAllocationFailureCount()));
+    }
+}
@@ -0,0 +1,358 @@
+package kvstore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Writes the contents of the key value store to a snapshot file in the background and loads it on startup.
+ * A snapshot is taken while writers keep going: the write-ahead log is marked, the entries are visited one segment
+ * at a time and written to a temporary file that atomically replaces the previous snapshot. The log records before the
+ * mark are then dropped. Every change they hold is visible to the snapshot, and replaying the log tail on top of the
+ * snapshot gives each key its last value again, so a restart only replays the records since the last snapshot.
+ * Snapshot format (little endian): magic (4) | version (4) | entries | -1 (4) | entry count (8) | CRC32 of the previous bytes (4),
+ * where an entry is value length (4) | key (32) | expiry time (8, KVStoreController.NO_EXPIRY if it does not expire) | value.
+ * Version 1 snapshots, whose entries have no expiry time, are still loaded. Snapshots are read through memory mapped windows.
+ */
+public class SnapshotManager {
+
+    public static final long DEFAULT_SNAPSHOT_INTERVAL_MILLIS = 5 * 60 * 1000;
+
+    private static final int MAGIC = 0x4e53564b;
+    private static final int VERSION = 2;
+    private static final int VERSION_WITHOUT_EXPIRY = 1;
+    private static final int END_OF_ENTRIES = -1;
+    private static final int HEADER_SIZE_BYTES = 8;
+    private static final int TRAILER_SIZE_BYTES = 4 + 8 + 4;
+    private static final int WRITE_BUFFER_SIZE_BYTES = 1 << 20;
+    private static final long MAP_WINDOW_SIZE_BYTES = 256 * 1024 * 1024;
+
+    private final KVStoreController kvStoreController;
+    private final File file;
+    private final WriteAheadLog writeAheadLog;
+    private ScheduledExecutorService snapshotScheduler;
+
+    // Statistics
+    private final AtomicLong snapshotCount;
+    private final AtomicLong lastSnapshotEntryCount;
+    private final AtomicLong lastSnapshotMillis;
+    private final AtomicLong lastSnapshotBytes;
+
+
+    /**
+     * Creates a manager
+     * @param kvStoreController - Store to snapshot
+     * @param file - Snapshot file
+     * @param writeAheadLog - Log to truncate after each snapshot, or null if the store is not logged
+     */
+    public SnapshotManager(KVStoreController kvStoreController, File file, WriteAheadLog writeAheadLog) {
+        if(kvStoreController == null || file == null) {
+            throw new IllegalArgumentException();
+        }
+        this.kvStoreController = kvStoreController;
+        this.file = file;
+        this.writeAheadLog = writeAheadLog;
+        this.snapshotCount = new AtomicLong();
+        this.lastSnapshotEntryCount = new AtomicLong();
+        this.lastSnapshotMillis = new AtomicLong();
+        this.lastSnapshotBytes = new AtomicLong();
+    }
+
+
+    /**
+     * Puts the entries of the snapshot file into the store. Must be called before the write-ahead log is replayed.
+     * Entries that expired since the snapshot was taken are skipped.
+     * @return - Number of loaded entries, 0 if there is no snapshot yet
+     * @throws IOException - if the snapshot cannot be read or is corrupt, or if an entry cannot be restored because
+     *                       the store is full or had to evict entries to take it. Starting without these entries
+     *                       would lose them for good once the next snapshot truncates the log.
+     */
+    public int load() throws IOException {
+        if(!file.exists()) {
+            return 0;
+        }
+
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if(size < HEADER_SIZE_BYTES + TRAILER_SIZE_BYTES) {
+                throw new IOException("Snapshot is truncated: " + file);
+            }
+            verifyChecksum(channel, size);
+
+            MappedReader reader = new MappedReader(channel, size);
+            int version;
+            if(reader.getInt() != MAGIC || ((version = reader.getInt()) != VERSION && version != VERSION_WITHOUT_EXPIRY)) {
+                throw new IOException("Not a snapshot: " + file);
+            }
+            long now = System.currentTimeMillis();
+            long evictionCount = kvStoreController.getEvictionCount();
+            int count = 0;
+            int loadedCount = 0;
+            int valueLength;
+            while((valueLength = reader.getInt()) != END_OF_ENTRIES) {
+                if(valueLength <= 0) {
+                    throw new IOException("Snapshot is corrupt: " + file);
+                }
+                byte[] key = reader.getBytes(KVKey.KEY_SIZE_BYTES);
+                long expiryMillis = version == VERSION ? reader.getLong() : KVStoreController.NO_EXPIRY;
+                byte[] value = reader.getBytes(valueLength);
+                count++;
+                if(expiryMillis == KVStoreController.NO_EXPIRY || expiryMillis > now) {
+                    KVStoreStatus status = kvStoreController.put(new KVKey(key), value, expiryMillis);
+                    if(status != KVStoreStatus.SUCCESS) {
+                        throw new IOException("Snapshot entry " + count + " could not be restored (" + status + "): " + file);
+                    }
+                    if(kvStoreController.getEvictionCount() != evictionCount) {
+                        throw new IOException("Snapshot does not fit in the store, entries were evicted: " + file);
+                    }
+                    loadedCount++;
+                }
+            }
+            if(reader.getLong() != count) {
+                throw new IOException("Snapshot is corrupt: " + file);
+            }
+            return loadedCount;
+        } finally {
+            channel.close();
+        }
+    }
+
+
+    /**
+     * Writes a snapshot of the store and drops the log records it covers
+     * @return - Number of entries in the snapshot
+     * @throws IOException - if the snapshot cannot be written, in which case the previous snapshot and the log are kept
+     */
+    public synchronized int takeSnapshot() throws IOException {
+        long start = System.currentTimeMillis();
+        long logPosition = writeAheadLog != null ? writeAheadLog.mark() : 0;
+
+        File snapshotFile = new File(file.getPath() + ".tmp");
+        final SnapshotWriter writer = new SnapshotWriter(snapshotFile);
+        try {
+            kvStoreController.forEachEntry(new EntryVisitor() {
+                @Override
+                public void visit(KVKey key, byte[] value) throws IOException {
+                    writer.writeEntry(key, value, kvStoreController.getExpiryMillis(key));
+                }
+            });
+            writer.finish();
+        } catch(IOException e) {
+            writer.close();
+            snapshotFile.delete();
+            throw e;
+        }
+        writer.close();
+        Files.move(snapshotFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        WriteAheadLog.syncDirectory(file);
+
+        // The snapshot is durable, so the log only has to keep what came after the mark
+        if(writeAheadLog != null) {
+            writeAheadLog.truncateBefore(logPosition);
+        }
+
+        snapshotCount.incrementAndGet();
+        lastSnapshotEntryCount.set(writer.count);
+        lastSnapshotBytes.set(file.length());
+        lastSnapshotMillis.set(System.currentTimeMillis() - start);
+        return writer.count;
+    }
+
+
+    /**
+     * Takes a snapshot every interval on a background thread
+     * @param intervalMillis - Time between the end of a snapshot and the start of the next
+     */
+    public synchronized void start(long intervalMillis) {
+        if(intervalMillis <= 0 || snapshotScheduler != null) {
+            throw new IllegalArgumentException();
+        }
+        snapshotScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "snapshot");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        snapshotScheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    takeSnapshot();
+                    printStatistics();
+                } catch(IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+
+    /**
+     * Stops taking snapshots
+     */
+    public synchronized void stop() {
+        if(snapshotScheduler != null) {
+            snapshotScheduler.shutdown();
+        }
+    }
+
+
+    private void verifyChecksum(FileChannel channel, long size) throws IOException {
+        long checksumPosition = size - 4;
+        CRC32 crc = new CRC32();
+        for(long position = 0; position < checksumPosition; position += MAP_WINDOW_SIZE_BYTES) {
+            crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position,
+                    Math.min(MAP_WINDOW_SIZE_BYTES, checksumPosition - position)));
+        }
+        MappedByteBuffer checksum = channel.map(FileChannel.MapMode.READ_ONLY, checksumPosition, 4);
+        if((int) crc.getValue() != checksum.order(ByteOrder.LITTLE_ENDIAN).getInt()) {
+            throw new IOException("Snapshot checksum mismatch: " + file);
+        }
+    }
+
+
+    /**
+     * Reads a file through a memory mapped window that is moved forward when a read would cross its end
+     */
+    private static class MappedReader {
+        private final FileChannel channel;
+        private final long size;
+        private long windowPosition;
+        private MappedByteBuffer window;
+
+        private MappedReader(FileChannel channel, long size) throws IOException {
+            this.channel = channel;
+            this.size = size;
+            map(0);
+        }
+
+        private int getInt() throws IOException {
+            ensure(4);
+            return window.getInt();
+        }
+
+        private long getLong() throws IOException {
+            ensure(8);
+            return window.getLong();
+        }
+
+        private byte[] getBytes(int length) throws IOException {
+            ensure(length);
+            byte[] bytes = new byte[length];
+            window.get(bytes);
+            return bytes;
+        }
+
+        private void ensure(int length) throws IOException {
+            if(window.remaining() >= length) {
+                return;
+            }
+            long position = windowPosition + window.position();
+            if(position + length > size) {
+                throw new IOException("Snapshot is truncated");
+            }
+            map(position);
+        }
+
+        private void map(long position) throws IOException {
+            windowPosition = position;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_WINDOW_SIZE_BYTES, size - position));
+            window.order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+
+    /**
+     * Writes a snapshot file through a buffer and computes its checksum on the way
+     */
+    private static class SnapshotWriter {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private final CRC32 crc;
+        private int count;
+
+        private SnapshotWriter(File file) throws IOException {
+            channel = new RandomAccessFile(file, "rw").getChannel();
+            channel.truncate(0);
+            buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            crc = new CRC32();
+            buffer.putInt(MAGIC).putInt(VERSION);
+        }
+
+        private void writeEntry(KVKey key, byte[] value, long expiryMillis) throws IOException {
+            if(buffer.remaining() < 4 + KVKey.KEY_SIZE_BYTES + 8) {
+                flush();
+            }
+            buffer.putInt(value.length).put(key.getBytes()).putLong(expiryMillis);
+            int written = 0;
+            while(written < value.length) {
+                if(!buffer.hasRemaining()) {
+                    flush();
+                }
+                int length = Math.min(buffer.remaining(), value.length - written);
+                buffer.put(value, written, length);
+                written += length;
+            }
+            count++;
+        }
+
+        private void finish() throws IOException {
+            if(buffer.remaining() < 4 + 8) {
+                flush();
+            }
+            buffer.putInt(END_OF_ENTRIES).putLong(count);
+            flush();
+            buffer.putInt((int) crc.getValue());
+            flush();
+            channel.force(false);
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer.array(), 0, buffer.limit());
+            while(buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void close() throws IOException {
+            channel.close();
+        }
+    }
+
+
+    public File getFile() {
+        return file;
+    }
+
+
+    public long getSnapshotCount() {
+        return snapshotCount.get();
+    }
+
+
+    /**
+     * Prints the snapshot statistics
+     */
+    public void printStatistics() {
+        System.out.println("Snapshots: file=" + file + " snapshots=" + getSnapshotCount() + " lastEntries=" +
+                lastSnapshotEntryCount.get() + " lastBytes=" + lastSnapshotBytes.get() + " lastMillis=" + lastSnapshotMillis.get());
+    }
+}
@@ -0,0 +1,124 @@
+package kvstore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Holds the entries of the key value store. The KVStoreController selects one engine at startup and keeps
+ * the write-ahead log, capacity accounting and eviction on top of it, so engines only store entries.
+ * The controller serializes the puts and removes of a key. Gets may run at the same time as writes of the same key.
+ */
+public interface StorageEngine {
+
+    // Returned instead of a value length if the key was not stored
+    int NO_VALUE = -1;
+
+    // Returned by put if the engine has no room for the value
+    int NO_SPACE = -2;
+
+
+    /**
+     * Gets the name of the engine shown in the statistics
+     * @return - Name
+     */
+    String getName();
+
+
+    /**
+     * Checks if the entries count against the capacity of the store and can be evicted.
+     * Engines that are only bounded by their own storage are not counted.
+     * @return - True if the capacity applies
+     */
+    boolean isCapacityLimited();
+
+
+    /**
+     * Associates a value with a key
+     * @param key - Key
+     * @param value - Value (not copied, must not be changed afterwards)
+     * @return - Length of the replaced value, NO_VALUE if the key was not stored, or NO_SPACE.
+     *           An engine without capacity limit may return NO_VALUE without looking up the replaced value.
+     */
+    int put(KVKey key, byte[] value);
+
+
+    /**
+     * Gets the value of a key
+     * @param key - Key
+     * @return - Value (not necessarily a copy, must not be changed), or null if the key is not stored
+     */
+    byte[] get(KVKey key);
+
+
+    /**
+     * Gets the value of a key without copying it where the engine allows
+     * @param key - Key
+     * @return - Read-only value, or null if the key is not stored
+     */
+    ByteBuffer getBuffer(KVKey key);
+
+
+    /**
+     * Gets the length of the value of a key
+     * @param key - Key
+     * @return - Length in bytes, or NO_VALUE if the key is not stored
+     */
+    int getValueLength(KVKey key);
+
+
+    /**
+     * Removes a key
+     * @param key - Key
+     * @return - Length of the removed value, NO_VALUE if the key was not stored, or NO_SPACE if the engine
+     *           cannot record the removal
+     */
+    int remove(KVKey key);
+
+
+    /**
+     * Visits the entries with keys in a range. Engines that keep their keys sorted visit them in key order.
+     * Writers are not blocked, changes made during the scan may or may not be seen.
+     * @param fromKey - First key of the range, or null for no lower bound
+     * @param toKey - Key after the range (exclusive), or null for no upper bound
+     * @param visitor - Receives the entries
+     * @throws IOException - if the visitor fails
+     */
+    void scan(KVKey fromKey, KVKey toKey, EntryVisitor visitor) throws IOException;
+
+
+    /**
+     * Visits all entries, for example to write a snapshot. Writers are not blocked,
+     * changes made during the iteration may or may not be seen.
+     * @param visitor - Receives the entries
+     * @throws IOException - if the visitor fails
+     */
+    void forEach(EntryVisitor visitor) throws IOException;
+
+
+    /**
+     * Gets the number of stored keys
+     * @return - Number of keys, an upper bound for engines that keep overwritten entries for a while
+     */
+    long size();
+
+
+    /**
+     * Gets the bytes taken by the stored entries in memory or on disk
+     * @return - Bytes
+     */
+    long getSizeBytes();
+
+
+    /**
+     * Gets the memory an entry takes in the engine, including the structures that hold it
+     * @param valueLength - Length of the value
+     * @return - Bytes
+     */
+    long getEntryBytes(int valueLength);
+
+
+    /**
+     * Prints the engine statistics
+     */
+    void printStatistics();
+}
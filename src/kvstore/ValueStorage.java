@@ -0,0 +1,66 @@
+package kvstore;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Keeps the values of the key value store outside the heap table and refers to each value by a handle.
+ * The key value store keeps the handles in an index and only uses a handle while it holds the lock of its key.
+ */
+public interface ValueStorage {
+
+    long NO_HANDLE = -1;
+
+
+    /**
+     * Stores a value
+     * @param key - Key of the value
+     * @param value - Value (copied)
+     * @return - Handle of the value, or NO_HANDLE if the storage is full
+     */
+    long allocate(KVKey key, byte[] value);
+
+
+    /**
+     * Copies a value out of the storage
+     * @param handle - Handle returned by allocate
+     * @return - Value
+     */
+    byte[] read(long handle);
+
+
+    /**
+     * Gets a read-only view of a value that stays valid after the handle is freed
+     * @param handle - Handle returned by allocate
+     * @return - Value, positioned at its first byte
+     */
+    ByteBuffer view(long handle);
+
+
+    /**
+     * Gets the length of a value
+     * @param handle - Handle returned by allocate
+     * @return - Length in bytes
+     */
+    int getValueLength(long handle);
+
+
+    /**
+     * Gets the space a value takes in the storage
+     * @param valueLength - Length of the value
+     * @return - Bytes
+     */
+    long getStoredBytes(int valueLength);
+
+
+    /**
+     * Releases the space of a value. The handle must not be used afterwards.
+     * @param handle - Handle returned by allocate
+     */
+    void free(long handle);
+
+
+    /**
+     * Prints the storage statistics
+     */
+    void printStatistics();
+}
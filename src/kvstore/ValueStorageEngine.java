@@ -0,0 +1,239 @@
+package kvstore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the values in a ValueStorage (off-heap slabs or memory mapped segment files) and only the key and
+ * a handle of each value on the heap. A value is only read while the lock of its key is held, so its space
+ * cannot be freed and reused in the meantime.
+ * The engine is bounded by the budget of its storage, not by the heap capacity of the store: puts fail with
+ * NO_SPACE once the storage is full, and the entries are not evicted.
+ */
+public class ValueStorageEngine implements StorageEngine {
+
+    private static final int LOCK_STRIPE_COUNT = 64;
+
+    // Heap taken by an entry of the handle index besides its key: hash map node (32 bytes), its share of the table (8 bytes) and the boxed handle (16 bytes)
+    private static final int HANDLE_INDEX_ENTRY_BYTES = 56;
+
+    private final ValueStorage storage;
+    private final ConcurrentMap<KVKey, Long> handleIndex;
+    private final Object[] keyLocks;
+    private final AtomicLong sizeBytes;
+
+    // Moves live values out of segments that are compacted, null unless the storage is a SegmentStore
+    private final SegmentStore.Relocator segmentRelocator;
+
+
+    /**
+     * Creates an engine
+     * @param storage - Storage of the values. Puts fail with NO_SPACE once it is full.
+     */
+    public ValueStorageEngine(ValueStorage storage) {
+        if(storage == null) {
+            throw new IllegalArgumentException();
+        }
+        this.storage = storage;
+        this.handleIndex = new ConcurrentHashMap<KVKey, Long>();
+        this.keyLocks = new Object[LOCK_STRIPE_COUNT];
+        for(int i = 0; i < keyLocks.length; i++) {
+            keyLocks[i] = new Object();
+        }
+        this.sizeBytes = new AtomicLong();
+
+        if(storage instanceof SegmentStore) {
+            final SegmentStore segmentStore = (SegmentStore) storage;
+            segmentRelocator = new SegmentStore.Relocator() {
+                @Override
+                public void relocate(KVKey key, long handle) {
+                    synchronized(getKeyLock(key)) {
+                        Long current = handleIndex.get(key);
+                        if(current == null || current != handle) {
+                            return;
+                        }
+                        long moved = segmentStore.move(handle);
+                        if(moved != ValueStorage.NO_HANDLE) {
+                            handleIndex.put(key, moved);
+                            segmentStore.free(handle);
+                        }
+                    }
+                }
+            };
+        } else {
+            segmentRelocator = null;
+        }
+    }
+
+
+    /**
+     * Compacts the segment files in the background
+     * @param intervalMillis - Time between compactions
+     * @throws IllegalStateException - Thrown if the storage is not a SegmentStore
+     */
+    public void startCompaction(long intervalMillis) {
+        getSegmentStore().startCompaction(segmentRelocator, intervalMillis);
+    }
+
+
+    /**
+     * Compacts the segment files now instead of waiting for the background compaction
+     * @return - Number of deleted segments
+     * @throws IllegalStateException - Thrown if the storage is not a SegmentStore
+     */
+    public int compact() {
+        return getSegmentStore().compact(segmentRelocator);
+    }
+
+
+    private SegmentStore getSegmentStore() {
+        if(!(storage instanceof SegmentStore)) {
+            throw new IllegalStateException();
+        }
+        return (SegmentStore) storage;
+    }
+
+
+    public ValueStorage getValueStorage() {
+        return storage;
+    }
+
+
+    @Override
+    public String getName() {
+        if(storage instanceof SlabAllocator) {
+            return "offheap";
+        }
+        return storage instanceof SegmentStore ? "segments" : storage.getClass().getSimpleName();
+    }
+
+
+    @Override
+    public boolean isCapacityLimited() {
+        return false;
+    }
+
+
+    @Override
+    public int put(KVKey key, byte[] value) {
+        long handle = storage.allocate(key, value);
+        if(handle == ValueStorage.NO_HANDLE) {
+            return NO_SPACE;
+        }
+
+        synchronized(getKeyLock(key)) {
+            Long replacedHandle = handleIndex.put(key, handle);
+            if(replacedHandle == null) {
+                sizeBytes.addAndGet(KVKey.KEY_SIZE_BYTES + value.length);
+                return NO_VALUE;
+            }
+            int replacedLength = storage.getValueLength(replacedHandle);
+            storage.free(replacedHandle);
+            sizeBytes.addAndGet(value.length - replacedLength);
+            return replacedLength;
+        }
+    }
+
+
+    @Override
+    public byte[] get(KVKey key) {
+        synchronized(getKeyLock(key)) {
+            Long handle = handleIndex.get(key);
+            return handle != null ? storage.read(handle) : null;
+        }
+    }
+
+
+    /**
+     * Gets the value of a key. Values in segment files are returned as a view of their mapped segment.
+     */
+    @Override
+    public ByteBuffer getBuffer(KVKey key) {
+        synchronized(getKeyLock(key)) {
+            Long handle = handleIndex.get(key);
+            return handle != null ? storage.view(handle) : null;
+        }
+    }
+
+
+    @Override
+    public int getValueLength(KVKey key) {
+        synchronized(getKeyLock(key)) {
+            Long handle = handleIndex.get(key);
+            return handle != null ? storage.getValueLength(handle) : NO_VALUE;
+        }
+    }
+
+
+    @Override
+    public int remove(KVKey key) {
+        synchronized(getKeyLock(key)) {
+            Long handle = handleIndex.remove(key);
+            if(handle == null) {
+                return NO_VALUE;
+            }
+            int length = storage.getValueLength(handle);
+            storage.free(handle);
+            sizeBytes.addAndGet(-(KVKey.KEY_SIZE_BYTES + length));
+            return length;
+        }
+    }
+
+
+    /**
+     * Visits the entries with keys in a range. The index is not sorted, so every key is checked.
+     */
+    @Override
+    public void scan(KVKey fromKey, KVKey toKey, EntryVisitor visitor) throws IOException {
+        for(KVKey key : handleIndex.keySet()) {
+            if(!key.isInRange(fromKey, toKey)) {
+                continue;
+            }
+            byte[] value = get(key);
+            if(value != null) {
+                visitor.visit(key, value);
+            }
+        }
+    }
+
+
+    @Override
+    public void forEach(EntryVisitor visitor) throws IOException {
+        scan(null, null, visitor);
+    }
+
+
+    @Override
+    public long size() {
+        return handleIndex.size();
+    }
+
+
+    @Override
+    public long getSizeBytes() {
+        return sizeBytes.get();
+    }
+
+
+    /**
+     * Gets the heap an entry takes in the handle index plus the space its value takes in the storage
+     */
+    @Override
+    public long getEntryBytes(int valueLength) {
+        return HANDLE_INDEX_ENTRY_BYTES + KVKey.HEAP_BYTES + storage.getStoredBytes(valueLength);
+    }
+
+
+    private Object getKeyLock(KVKey key) {
+        return keyLocks[(key.hashCode() & Integer.MAX_VALUE) % keyLocks.length];
+    }
+
+
+    @Override
+    public void printStatistics() {
+        storage.printStatistics();
+    }
+}
@@ -0,0 +1,202 @@
+package kvstore;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Window TinyLFU eviction. New keys enter a small LRU window (WINDOW_PERCENT of the keys) and then
+ * move into the main area, an LRU with a probation and a protected segment (keys used again while on probation
+ * are protected). When a key has to be evicted, the oldest window key competes with the oldest main key
+ * and the one with the lower estimated use frequency is evicted. Frequencies are estimated by a count-min
+ * sketch that is halved periodically, so keys that were popular long ago lose their advantage.
+ */
+public class WTinyLFUEvictionPolicy implements EvictionPolicy {
+
+    public static final int DEFAULT_EXPECTED_KEY_COUNT = 65536;
+    public static final int WINDOW_PERCENT = 1;
+    public static final int PROTECTED_PERCENT = 80;
+
+    // Least recently used key first
+    private final LinkedHashMap<KVKey, Boolean> window = new LinkedHashMap<KVKey, Boolean>(16, 0.75f, true);
+    private final LinkedHashMap<KVKey, Boolean> probation = new LinkedHashMap<KVKey, Boolean>(16, 0.75f, true);
+    private final LinkedHashMap<KVKey, Boolean> protectedKeys = new LinkedHashMap<KVKey, Boolean>(16, 0.75f, true);
+
+    private final FrequencySketch sketch;
+
+
+    /**
+     * Count-min sketch with four rows of counters that saturate at 15
+     */
+    private static class FrequencySketch {
+        private static final int ROW_COUNT = 4;
+        private static final int MAX_COUNT = 15;
+        private static final int[] SEEDS = {0x97cb3127, 0x5d0e3f4b, 0x2c1b3c6d, 0x7f4a7c15};
+
+        private final byte[][] rows;
+        private final int mask;
+        private final int resetSampleSize;
+        private int sampleSize;
+
+        private FrequencySketch(int expectedKeyCount) {
+            int width = Integer.highestOneBit(Math.max(expectedKeyCount, 16) - 1) << 1;
+            rows = new byte[ROW_COUNT][width];
+            mask = width - 1;
+            resetSampleSize = 10 * width;
+        }
+
+        private void increment(KVKey key) {
+            int hash = spread(key.hashCode());
+            for(int i = 0; i < ROW_COUNT; i++) {
+                int index = indexOf(hash, i);
+                if(rows[i][index] < MAX_COUNT) {
+                    rows[i][index]++;
+                }
+            }
+            if(++sampleSize >= resetSampleSize) {
+                halve();
+            }
+        }
+
+        private int frequency(KVKey key) {
+            int hash = spread(key.hashCode());
+            int frequency = MAX_COUNT;
+            for(int i = 0; i < ROW_COUNT; i++) {
+                frequency = Math.min(frequency, rows[i][indexOf(hash, i)]);
+            }
+            return frequency;
+        }
+
+        private void halve() {
+            for(byte[] row : rows) {
+                for(int i = 0; i < row.length; i++) {
+                    row[i] >>= 1;
+                }
+            }
+            sampleSize /= 2;
+        }
+
+        private int indexOf(int hash, int row) {
+            int h = (hash ^ SEEDS[row]) * SEEDS[row];
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        private static int spread(int hash) {
+            hash ^= hash >>> 17;
+            hash *= 0xed5ad4bb;
+            return hash ^ (hash >>> 11);
+        }
+    }
+
+
+    public WTinyLFUEvictionPolicy() {
+        this(DEFAULT_EXPECTED_KEY_COUNT);
+    }
+
+
+    /**
+     * Creates the policy
+     * @param expectedKeyCount - Number of keys the store is expected to hold, sizes the frequency sketch
+     */
+    public WTinyLFUEvictionPolicy(int expectedKeyCount) {
+        if(expectedKeyCount <= 0) {
+            throw new IllegalArgumentException();
+        }
+        sketch = new FrequencySketch(expectedKeyCount);
+    }
+
+
+    @Override
+    public synchronized void onInsert(KVKey key) {
+        if(window.containsKey(key) || probation.containsKey(key) || protectedKeys.containsKey(key)) {
+            onAccess(key);
+            return;
+        }
+        sketch.increment(key);
+        window.put(key, Boolean.TRUE);
+
+        // Move the oldest window keys into the main area while the window is over its share
+        int windowSize = Math.max(1, getKeyCount() * WINDOW_PERCENT / 100);
+        while(window.size() > windowSize) {
+            probation.put(removeEldest(window), Boolean.TRUE);
+        }
+    }
+
+
+    @Override
+    public synchronized void onAccess(KVKey key) {
+        sketch.increment(key);
+        if(window.get(key) != null || protectedKeys.get(key) != null) {
+            return;
+        }
+        if(probation.remove(key) != null) {
+            protectedKeys.put(key, Boolean.TRUE);
+            int protectedSize = Math.max(1, (getKeyCount() - window.size()) * PROTECTED_PERCENT / 100);
+            while(protectedKeys.size() > protectedSize) {
+                probation.put(removeEldest(protectedKeys), Boolean.TRUE);
+            }
+        }
+    }
+
+
+    @Override
+    public synchronized void onRemove(KVKey key) {
+        if(window.remove(key) == null && probation.remove(key) == null) {
+            protectedKeys.remove(key);
+        }
+    }
+
+
+    @Override
+    public synchronized KVKey selectVictim() {
+        KVKey candidate = getEldest(window);
+        KVKey victim = getEldest(probation);
+        if(victim == null) {
+            victim = getEldest(protectedKeys);
+        }
+        if(candidate == null || victim == null) {
+            KVKey evicted = candidate != null ? candidate : victim;
+            if(evicted != null) {
+                onRemove(evicted);
+            }
+            return evicted;
+        }
+
+        // Admit the window key into the main area only if it is used more often than the key it replaces
+        onRemove(candidate);
+        if(sketch.frequency(candidate) > sketch.frequency(victim)) {
+            onRemove(victim);
+            probation.put(candidate, Boolean.TRUE);
+            return victim;
+        }
+        return candidate;
+    }
+
+
+    /**
+     * Gets the estimated use frequency of a key
+     * @param key - Key
+     * @return - Frequency between 0 and 15
+     */
+    public synchronized int getFrequency(KVKey key) {
+        return sketch.frequency(key);
+    }
+
+
+    private int getKeyCount() {
+        return window.size() + probation.size() + protectedKeys.size();
+    }
+
+
+    private static KVKey getEldest(LinkedHashMap<KVKey, Boolean> segment) {
+        Iterator<KVKey> iterator = segment.keySet().iterator();
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+
+
+    private static KVKey removeEldest(LinkedHashMap<KVKey, Boolean> segment) {
+        Iterator<KVKey> iterator = segment.keySet().iterator();
+        KVKey eldest = iterator.next();
+        iterator.remove();
+        return eldest;
+    }
+}
@@ -0,0 +1,440 @@
+package kvstore;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the PUT and REMOVE operations applied to the key value store.
+ * Records are collected in memory and written and synced to disk together every sync interval (group commit).
+ * Writers that need their record on disk wait for the next sync, so one sync serves all records of an interval.
+ * Record format (little endian): type (1) | key (32) | value length (4) | value | CRC32 of the previous fields (4).
+ * A PUT of an entry that expires carries the expiry time (8, epoch milliseconds) in front of the value.
+ * Replay stops at the first incomplete or corrupt record, which is what a crash in the middle of a write leaves behind,
+ * and the log is truncated there.
+ * Once a snapshot holds the state up to a mark, the records before the mark are dropped by rewriting the tail
+ * of the log into a new file that replaces the log.
+ */
+public class WriteAheadLog implements Closeable {
+
+    public static final long DEFAULT_SYNC_INTERVAL_MILLIS = 10;
+
+    public static final byte RECORD_PUT = 1;
+    public static final byte RECORD_REMOVE = 2;
+    public static final byte RECORD_PUT_EXPIRING = 3;
+
+    private static final int EXPIRY_SIZE_BYTES = 8;
+
+    private static final int RECORD_HEADER_SIZE_BYTES = 1 + KVKey.KEY_SIZE_BYTES + 4;
+    private static final int CHECKSUM_SIZE_BYTES = 4;
+
+    private final File file;
+    private final long syncIntervalMillis;
+    private final ScheduledExecutorService syncScheduler;
+
+    // Only one thread writes at a time, so records reach the file in sequence order. Guards channel.
+    private final Object fileLock = new Object();
+    private FileChannel channel;
+
+    // Records appended since the last sync, guarded by this
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private long appendedSequence;
+    private long syncedSequence;
+    private boolean failed;
+    private boolean closed;
+
+    // Statistics
+    private final AtomicLong syncCount;
+    private final AtomicLong syncedBytes;
+    private final AtomicLong truncatedBytes;
+
+
+    /**
+     * Receives the records of the log during replay
+     */
+    public interface RecordHandler {
+        /**
+         * @param key - Key
+         * @param value - Value
+         * @param expiryMillis - Time the entry expires at, or KVStoreController.NO_EXPIRY
+         */
+        void put(KVKey key, byte[] value, long expiryMillis);
+
+        void remove(KVKey key);
+    }
+
+
+    /**
+     * Opens or creates a log and starts syncing it
+     * @param file - Log file
+     * @param syncIntervalMillis - Time between syncs
+     * @throws IOException - if the file cannot be opened
+     */
+    public WriteAheadLog(File file, long syncIntervalMillis) throws IOException {
+        if(syncIntervalMillis <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.file = file;
+        this.channel = new RandomAccessFile(file, "rw").getChannel();
+        this.syncIntervalMillis = syncIntervalMillis;
+        this.syncCount = new AtomicLong();
+        this.syncedBytes = new AtomicLong();
+        this.truncatedBytes = new AtomicLong();
+
+        this.syncScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "wal-sync");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        syncScheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                sync();
+            }
+        }, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+
+    /**
+     * Reads all valid records from the start of the log, then truncates anything after the last valid record
+     * so new records are appended behind it
+     * @param handler - Receives the records in log order
+     * @return - Number of replayed records
+     * @throws IOException - if the log cannot be read
+     */
+    public int replay(RecordHandler handler) throws IOException {
+        synchronized(fileLock) {
+            return replayRecords(handler);
+        }
+    }
+
+
+    private int replayRecords(RecordHandler handler) throws IOException {
+        channel.position(0);
+        InputStream in = new BufferedInputStream(Channels.newInputStream(channel), 1 << 16);
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        byte[] checksumBytes = new byte[CHECKSUM_SIZE_BYTES];
+        CRC32 crc = new CRC32();
+        long validLength = 0;
+        int count = 0;
+
+        try {
+            while(true) {
+                readFully(in, header.array(), RECORD_HEADER_SIZE_BYTES);
+                byte type = header.get(0);
+                int valueLength = header.getInt(1 + KVKey.KEY_SIZE_BYTES);
+                if((type != RECORD_PUT && type != RECORD_REMOVE && type != RECORD_PUT_EXPIRING) || valueLength < 0 ||
+                        valueLength > channel.size() || (type == RECORD_PUT_EXPIRING && valueLength < EXPIRY_SIZE_BYTES)) {
+                    break;
+                }
+                byte[] value = new byte[valueLength];
+                readFully(in, value, valueLength);
+                readFully(in, checksumBytes, CHECKSUM_SIZE_BYTES);
+
+                crc.reset();
+                crc.update(header.array(), 0, RECORD_HEADER_SIZE_BYTES);
+                crc.update(value, 0, valueLength);
+                if((int) crc.getValue() != ByteBuffer.wrap(checksumBytes).order(ByteOrder.LITTLE_ENDIAN).getInt()) {
+                    break;
+                }
+
+                byte[] key = new byte[KVKey.KEY_SIZE_BYTES];
+                System.arraycopy(header.array(), 1, key, 0, KVKey.KEY_SIZE_BYTES);
+                if(type == RECORD_PUT) {
+                    handler.put(new KVKey(key), value, KVStoreController.NO_EXPIRY);
+                } else if(type == RECORD_PUT_EXPIRING) {
+                    long expiryMillis = ByteBuffer.wrap(value).order(ByteOrder.LITTLE_ENDIAN).getLong();
+                    handler.put(new KVKey(key), Arrays.copyOfRange(value, EXPIRY_SIZE_BYTES, valueLength), expiryMillis);
+                } else {
+                    handler.remove(new KVKey(key));
+                }
+                validLength += RECORD_HEADER_SIZE_BYTES + valueLength + CHECKSUM_SIZE_BYTES;
+                count++;
+            }
+        } catch(EOFException e) {
+            // End of the log or a record cut short by a crash
+        }
+
+        channel.truncate(validLength);
+        channel.position(validLength);
+        return count;
+    }
+
+
+    /**
+     * Appends a PUT record
+     * @param key - Key
+     * @param value - Value
+     * @return - Sequence number to wait for with awaitSync
+     */
+    public long appendPut(KVKey key, byte[] value) {
+        return append(RECORD_PUT, key, value);
+    }
+
+
+    /**
+     * Appends a PUT record of an entry that may expire
+     * @param key - Key
+     * @param value - Value
+     * @param expiryMillis - Time the entry expires at, or KVStoreController.NO_EXPIRY
+     * @return - Sequence number to wait for with awaitSync
+     */
+    public long appendPut(KVKey key, byte[] value, long expiryMillis) {
+        if(expiryMillis == KVStoreController.NO_EXPIRY) {
+            return append(RECORD_PUT, key, value);
+        }
+        ByteBuffer record = ByteBuffer.allocate(EXPIRY_SIZE_BYTES + value.length).order(ByteOrder.LITTLE_ENDIAN);
+        record.putLong(expiryMillis).put(value);
+        return append(RECORD_PUT_EXPIRING, key, record.array());
+    }
+
+
+    /**
+     * Appends a REMOVE record
+     * @param key - Key
+     * @return - Sequence number to wait for with awaitSync
+     */
+    public long appendRemove(KVKey key) {
+        return append(RECORD_REMOVE, key, null);
+    }
+
+
+    private long append(byte type, KVKey key, byte[] value) {
+        int valueLength = value != null ? value.length : 0;
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(type).put(key.getBytes()).putInt(valueLength);
+
+        CRC32 crc = new CRC32();
+        crc.update(header.array(), 0, RECORD_HEADER_SIZE_BYTES);
+        if(value != null) {
+            crc.update(value, 0, valueLength);
+        }
+        ByteBuffer checksum = ByteBuffer.allocate(CHECKSUM_SIZE_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        checksum.putInt((int) crc.getValue());
+
+        synchronized(this) {
+            pending.write(header.array(), 0, RECORD_HEADER_SIZE_BYTES);
+            if(value != null) {
+                pending.write(value, 0, valueLength);
+            }
+            pending.write(checksum.array(), 0, CHECKSUM_SIZE_BYTES);
+            return ++appendedSequence;
+        }
+    }
+
+
+    /**
+     * Waits until a record is synced to disk
+     * @param sequence - Sequence number returned by append
+     * @return - False if the log failed or was closed before the record was synced
+     */
+    public synchronized boolean awaitSync(long sequence) {
+        boolean interrupted = false;
+        while(syncedSequence < sequence && !failed && !closed) {
+            try {
+                wait();
+            } catch(InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if(interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return syncedSequence >= sequence;
+    }
+
+
+    /**
+     * Writes all appended records to the log file and syncs it
+     */
+    public void sync() {
+        synchronized(fileLock) {
+            ByteArrayOutputStream records;
+            long sequence;
+            synchronized(this) {
+                if(pending.size() == 0 || failed || !channel.isOpen()) {
+                    return;
+                }
+                records = pending;
+                sequence = appendedSequence;
+                pending = new ByteArrayOutputStream();
+            }
+
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(records.toByteArray());
+                while(buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+                syncCount.incrementAndGet();
+                syncedBytes.addAndGet(records.size());
+            } catch(IOException e) {
+                e.printStackTrace();
+                synchronized(this) {
+                    failed = true;
+                    notifyAll();
+                }
+                return;
+            }
+
+            synchronized(this) {
+                syncedSequence = sequence;
+                notifyAll();
+            }
+        }
+    }
+
+
+    /**
+     * Syncs the remaining records and closes the log
+     * @throws IOException - if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        syncScheduler.shutdown();
+        sync();
+        synchronized(this) {
+            closed = true;
+            notifyAll();
+        }
+        synchronized(fileLock) {
+            channel.close();
+        }
+    }
+
+
+    /**
+     * Syncs all appended records and gets the position behind them. Every record before the position was appended,
+     * and so its operation applied to the store, before this method returned.
+     * @return - Position in the log
+     * @throws IOException - if the log failed or is closed
+     */
+    public long mark() throws IOException {
+        sync();
+        synchronized(fileLock) {
+            synchronized(this) {
+                if(failed || closed) {
+                    throw new IOException("Write-ahead log is not writable: " + file);
+                }
+            }
+            return channel.position();
+        }
+    }
+
+
+    /**
+     * Drops the records before a mark. The records after it are copied into a new file that then atomically
+     * replaces the log, so a crash leaves either the old or the new log behind.
+     * @param position - Position returned by mark
+     * @throws IOException - if the new log cannot be written, in which case the old log is kept
+     */
+    public void truncateBefore(long position) throws IOException {
+        synchronized(fileLock) {
+            File tailFile = new File(file.getPath() + ".tmp");
+            FileChannel tail = new RandomAccessFile(tailFile, "rw").getChannel();
+            try {
+                tail.truncate(0);
+                long size = channel.size();
+                long copied = position;
+                while(copied < size) {
+                    copied += channel.transferTo(copied, size - copied, tail);
+                }
+                tail.force(false);
+                Files.move(tailFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                syncDirectory(file);
+            } catch(IOException e) {
+                tail.close();
+                tailFile.delete();
+                throw e;
+            }
+
+            channel.close();
+            channel = tail;
+            truncatedBytes.addAndGet(position);
+        }
+    }
+
+
+    /**
+     * Syncs the directory of a file so that a rename of the file survives a crash
+     * @param file - File that was renamed
+     * @throws IOException - if the directory cannot be synced
+     */
+    static void syncDirectory(File file) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        FileChannel directoryChannel = FileChannel.open(directory.toPath(), StandardOpenOption.READ);
+        try {
+            directoryChannel.force(true);
+        } finally {
+            directoryChannel.close();
+        }
+    }
+
+
+    private static void readFully(InputStream in, byte[] buffer, int length) throws IOException {
+        int read = 0;
+        while(read < length) {
+            int count = in.read(buffer, read, length - read);
+            if(count < 0) {
+                throw new EOFException();
+            }
+            read += count;
+        }
+    }
+
+
+    public File getFile() {
+        return file;
+    }
+
+
+    public long getSyncIntervalMillis() {
+        return syncIntervalMillis;
+    }
+
+
+    public long getSyncCount() {
+        return syncCount.get();
+    }
+
+
+    /**
+     * Gets the number of bytes dropped from the start of the log by truncateBefore
+     * @return - Bytes
+     */
+    public long getTruncatedBytes() {
+        return truncatedBytes.get();
+    }
+
+
+    /**
+     * Prints the log statistics
+     */
+    public void printStatistics() {
+        long syncs = getSyncCount();
+        System.out.println("Write-ahead log: file=" + file + " syncs=" + syncs + " syncedBytes=" + syncedBytes.get() +
+                " averageBytesPerSync=" + (syncs == 0 ? 0 : syncedBytes.get() / syncs) + " truncatedBytes=" + getTruncatedBytes());
+    }
+}
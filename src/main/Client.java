@@ -57,10 +57,11 @@ public class Client {
         System.out.println("-------------------------------------------------------------------------------------------------");
         System.out.println("HELP - USAGE INFORMATION");
         System.out.println("-------------------------------------------------------------------------------------------------");
-        System.out.println("put <Key> <Value> -- Attempt to put key and value in server store");
+        System.out.println("put <Key> <Value> [<TTL>] -- Attempt to put key and value in server store");
         System.out.println("                  -- <Key> - MAX Chars. = 32");
         System.out.println("                  -- <Value> MAX Chars. = 15000");
-        System.out.println("                  -- Example Usage: put key value");
+        System.out.println("                  -- <TTL> - Seconds until the value expires (optional)");
+        System.out.println("                  -- Example Usage: put key value 60");
         System.out.println("-------------------------------------------------------------------------------------------------");
         System.out.println("get <Key>         -- Attempts to get value of corresponding key from server store");
         System.out.println("                  -- <Key> - MAX Chars. = 32");
@@ -210,17 +211,22 @@ public class Client {
      * Builds a PUT request message and sends to server, and waits for reply.
      * @param key - Key of key-value pair to put in server store
      * @param value - Value of key-value pair to put in server store
+     * @param timeToLiveSeconds - Seconds until the value expires, 0 if it does not expire
      * @throws java.io.IOException
      * @throws message.InvalidMessageException
      */
-    public static void put(byte[] key, byte[] value) throws IOException, InvalidMessageException {
+    public static void put(byte[] key, byte[] value, int timeToLiveSeconds) throws IOException, InvalidMessageException {
         byte[] messageHeader;
         byte[] msg;
         byte[] payload;
 
         messageHeader = Header.buildMessageHeader((short)0);
 
-        payload = Payload.buildStandardRequestPayload(RequestCodes.PUT, key, value);
+        if(timeToLiveSeconds > 0) {
+            payload = Payload.buildStandardRequestPayload(RequestCodes.PUT_WITH_TTL, key, value, timeToLiveSeconds);
+        } else {
+            payload = Payload.buildStandardRequestPayload(RequestCodes.PUT, key, value);
+        }
 
         msg = Message.buildMessage(messageHeader, payload);
 
@@ -453,12 +459,13 @@ public class Client {
                 if(command[0].equals("-h")) {
                     printHelpUsage();
                 } else if(command[0].equals("put")) {
-                    if(command.length != 3) {
+                    if(command.length != 3 && command.length != 4) {
                         System.out.println("ERROR: Incorrect usage of 'put'. Type -h for usage information.");
                     } else {
 
                         String key = command[1];
                         String value = command[2];
+                        int timeToLiveSeconds = 0;
 
                         if(key.length() > 32) {
                             System.out.println("ERROR: Key size exceeds maximum size of 32 characters. Type -h for usage information.");
@@ -470,10 +477,22 @@ public class Client {
                             continue;
                         }
 
+                        if(command.length == 4) {
+                            try {
+                                timeToLiveSeconds = Integer.parseInt(command[3]);
+                            } catch(NumberFormatException e) {
+                                timeToLiveSeconds = -1;
+                            }
+                            if(timeToLiveSeconds <= 0) {
+                                System.out.println("ERROR: TTL must be a positive number of seconds. Type -h for usage information.");
+                                continue;
+                            }
+                        }
+
                         try {
                             System.out.println("KEY ID: " + HashUtility.simpleHash(key, HashUtility.DEFAULT_HASH_RANGE));
                             put(convertKeyToByteRepresentation(
-                                    key), UTF8StringUtility.stringToBytesUTF8(value));
+                                    key), UTF8StringUtility.stringToBytesUTF8(value), timeToLiveSeconds);
                         } catch(InvalidMessageException e) {
                             System.out.println("ERROR: Client-side error. Operation could not complete successfully.");
                         }
@@ -1,17 +1,41 @@
 package main;
 
+import cache.CacheController;
+import kvstore.HeapStorageEngine;
+import kvstore.KVStoreController;
+import kvstore.LFUEvictionPolicy;
+import kvstore.LRUEvictionPolicy;
+import kvstore.LSMStorageEngine;
+import kvstore.LSMStore;
+import kvstore.SegmentStore;
+import kvstore.SlabAllocator;
+import kvstore.SnapshotManager;
+import kvstore.StorageEngine;
+import kvstore.ValueStorageEngine;
+import kvstore.WTinyLFUEvictionPolicy;
+import kvstore.WriteAheadLog;
+import message.BufferPool;
+import message.RoutingStatistics;
 import nodelist.Node;
 import nodelist.NodeListController;
 import protocol.JoinInitiator;
+import protocol.MessageHandlerPool;
+import protocol.PendingRequestTable;
 import protocol.PredecessorCheckInitiator;
 import protocol.SuccessorCheckInitiator;
+import protocol.UDPChannelReceive;
 import protocol.UDPReceive;
+import protocol.UDPSend;
 import utility.HashUtility;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
-import java.net.SocketException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
 import java.net.UnknownHostException;
+import java.nio.channels.DatagramChannel;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
@@ -24,10 +48,48 @@ public class Server {
     public static int contactNodePort = -1;
     public static int localPort = -1;
     public static int nodeID = -1;
+    public static int handlerWorkerCount = MessageHandlerPool.DEFAULT_WORKER_COUNT;
+    public static int handlerQueueDepth = MessageHandlerPool.DEFAULT_QUEUE_DEPTH;
+
+    // Handler thread modes
+    public final static String THREAD_MODE_PLATFORM = "platform";
+    public final static String THREAD_MODE_VIRTUAL = "virtual";
+
+    // Receive modes
+    public final static String RECEIVE_MODE_NIO = "nio";
+    public final static String RECEIVE_MODE_BLOCKING = "blocking";
+
+    // Reply modes for client requests forwarded by this node
+    public final static String REPLY_MODE_RELAY = "relay";
+    public final static String REPLY_MODE_DIRECT = "direct";
+
+    // Eviction modes of the key value store
+    public final static String EVICTION_MODE_REJECT = "reject";
+    public final static String EVICTION_MODE_LRU = "lru";
+    public final static String EVICTION_MODE_LFU = "lfu";
+    public final static String EVICTION_MODE_WTINYLFU = "wtinylfu";
+
+    // Disk budget of the segment storage
+    public final static long DEFAULT_DISK_MEGABYTES = 10 * 1024;
 
     // Package private variables
     static String contactNodeString = null;
-    static DatagramSocket socket;
+    static String receiveMode = RECEIVE_MODE_NIO;
+    static String threadMode = THREAD_MODE_PLATFORM;
+    static String replyMode = REPLY_MODE_RELAY;
+    static int shardCount = 1;
+    static long offHeapMegabytes = 0;
+    static long capacityMegabytes = KVStoreController.DEFAULT_MAX_BYTES / (1024 * 1024);
+    static String evictionMode = EVICTION_MODE_REJECT;
+    static String logPath = null;
+    static long logSyncIntervalMillis = WriteAheadLog.DEFAULT_SYNC_INTERVAL_MILLIS;
+    static String snapshotPath = null;
+    static long snapshotIntervalSeconds = SnapshotManager.DEFAULT_SNAPSHOT_INTERVAL_MILLIS / 1000;
+    static String segmentDirectory = null;
+    static long diskMegabytes = DEFAULT_DISK_MEGABYTES;
+    static String lsmDirectory = null;
+    static DatagramSocket[] sockets;
+    static DatagramChannel[] channels;
 
     public static void main(String[] args) {
 
@@ -59,19 +121,45 @@ public class Server {
             }
         }
 
-        // Create socket based on whether local port was set or not
+        // Create sockets or channels based on receive mode and whether local port was set or not.
+        // With more than one shard, every socket is bound to the same port with SO_REUSEPORT.
         try {
-            if(localPort >= 0) {
-                socket = new DatagramSocket(localPort);
+            if(receiveMode.equals(RECEIVE_MODE_NIO)) {
+                channels = new DatagramChannel[shardCount];
+                for(int i = 0; i < shardCount; i++) {
+                    channels[i] = DatagramChannel.open();
+                    if(shardCount > 1) {
+                        channels[i].setOption(StandardSocketOptions.SO_REUSEPORT, true);
+                    }
+                    channels[i].bind(new InetSocketAddress(localPort >= 0 ? localPort : 0));
+                    localPort = ((InetSocketAddress) channels[i].getLocalAddress()).getPort();
+                }
             } else {
-                socket = new DatagramSocket();
-                localPort = socket.getLocalPort();
+                sockets = new DatagramSocket[shardCount];
+                for(int i = 0; i < shardCount; i++) {
+                    sockets[i] = new DatagramSocket(null);
+                    if(shardCount > 1) {
+                        sockets[i].setOption(StandardSocketOptions.SO_REUSEPORT, true);
+                    }
+                    sockets[i].bind(new InetSocketAddress(localPort >= 0 ? localPort : 0));
+                    localPort = sockets[i].getLocalPort();
+                }
             }
-        } catch(SocketException e) {
+        } catch(UnsupportedOperationException e) {
+            System.err.println("ERROR: SO_REUSEPORT is not supported on this platform. Use a single shard.");
+            printUsageMessageAndExit();
+        } catch(IOException e) {
             System.err.println("ERROR: Could not bind to local port");
             printUsageMessageAndExit();
         }
 
+        // Send all outbound packets from the node's bound port
+        if(channels != null) {
+            UDPSend.setSharedChannel(channels[0]);
+        } else {
+            UDPSend.setSharedSocket(sockets[0]);
+        }
+
         // Create self node
         NodeListController nlc = NodeListController.getInstance();
         try {
@@ -80,10 +168,125 @@ public class Server {
             System.err.println("ERROR: Could not create self node");
         }
 
-        // Create receiving thread and scheduler for it
-        UDPReceive receiverThread = new UDPReceive(socket);
-        ScheduledExecutorService UDPReceiveScheduler = Executors.newScheduledThreadPool(1);
-        final ScheduledFuture<?> receiverThreadHandle = UDPReceiveScheduler.scheduleWithFixedDelay(receiverThread, 0, 10, TimeUnit.MILLISECONDS);
+        /* Set up the key value store: capacity, eviction policy and the storage engine. The capacity and eviction
+           only apply to the heap, the other engines are bounded by their own storage budget */
+        KVStoreController.setMaxBytes(capacityMegabytes * 1024 * 1024);
+        KVStoreController kvStoreController = KVStoreController.getInstance();
+        if(evictionMode.equals(EVICTION_MODE_LRU)) {
+            kvStoreController.setEvictionPolicy(new LRUEvictionPolicy());
+        } else if(evictionMode.equals(EVICTION_MODE_LFU)) {
+            kvStoreController.setEvictionPolicy(new LFUEvictionPolicy());
+        } else if(evictionMode.equals(EVICTION_MODE_WTINYLFU)) {
+            kvStoreController.setEvictionPolicy(new WTinyLFUEvictionPolicy());
+        }
+        try {
+            kvStoreController.setStorageEngine(createStorageEngine());
+        } catch(IOException e) {
+            System.err.println("ERROR: Could not create the storage engine");
+            printUsageMessageAndExit();
+        }
+
+        /* Recover the local state from the last snapshot and the write-ahead log written since, then log all further
+           changes, syncing the log on exit, and take snapshots periodically */
+        try {
+            WriteAheadLog log = null;
+            if(logPath != null) {
+                log = new WriteAheadLog(new File(logPath), logSyncIntervalMillis);
+            }
+            SnapshotManager snapshotManager = null;
+            if(snapshotPath != null) {
+                snapshotManager = new SnapshotManager(kvStoreController, new File(snapshotPath), log);
+                long start = System.currentTimeMillis();
+                int entryCount = snapshotManager.load();
+                System.out.println("Loaded " + entryCount + " entries from " + snapshotPath + " in " +
+                        (System.currentTimeMillis() - start) + " ms");
+            }
+            if(log != null) {
+                long start = System.currentTimeMillis();
+                int recordCount = kvStoreController.enableWriteAheadLog(log);
+                System.out.println("Replayed " + recordCount + " records from " + logPath + " in " +
+                        (System.currentTimeMillis() - start) + " ms");
+                final WriteAheadLog logToClose = log;
+                Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            logToClose.close();
+                        } catch(IOException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                }));
+            }
+            if(snapshotManager != null) {
+                snapshotManager.start(snapshotIntervalSeconds * 1000);
+            }
+        } catch(IOException e) {
+            e.printStackTrace();
+            System.err.println("ERROR: Could not recover the key value store");
+            printUsageMessageAndExit();
+        }
+
+        // Create a message handler pool for every shard and a scheduler for printing their statistics
+        final MessageHandlerPool[] handlerPools = new MessageHandlerPool[shardCount];
+        for(int i = 0; i < shardCount; i++) {
+            handlerPools[i] = new MessageHandlerPool(handlerWorkerCount, handlerQueueDepth,
+                    threadMode.equals(THREAD_MODE_VIRTUAL));
+        }
+        ScheduledExecutorService statisticsScheduler = Executors.newScheduledThreadPool(1);
+        statisticsScheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                for(int i = 0; i < handlerPools.length; i++) {
+                    System.out.print("[Shard " + i + "] ");
+                    handlerPools[i].printStatistics();
+                }
+                System.out.println("Dropped outbound packets: " + UDPSend.getDroppedPacketCount());
+                BufferPool.getInstance().reclaimLeakedLeases();
+                BufferPool.getInstance().printStatistics();
+                RoutingStatistics.printStatistics();
+                PendingRequestTable.getInstance().printStatistics();
+                CacheController.getInstance().printStatistics();
+                KVStoreController.getInstance().printStatistics();
+            }
+        }, 60, 60, TimeUnit.SECONDS);
+
+        // Let the nodes that own the keys answer forwarded client requests directly, and expire requests they never completed
+        PendingRequestTable.getInstance().setDirectReplyEnabled(replyMode.equals(REPLY_MODE_DIRECT));
+        statisticsScheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                PendingRequestTable.getInstance().removeAllExpiredEntries();
+            }
+        }, PendingRequestTable.REQUEST_TIMEOUT, PendingRequestTable.REQUEST_TIMEOUT, TimeUnit.MILLISECONDS);
+
+        // Remove the key value pairs whose time to live has passed, reads already skip them
+        statisticsScheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                KVStoreController.getInstance().removeAllExpiredEntries();
+            }
+        }, KVStoreController.EXPIRY_WHEEL_TICK_MILLIS, KVStoreController.EXPIRY_WHEEL_TICK_MILLIS, TimeUnit.MILLISECONDS);
+
+        // Forget the unique IDs of serviced requests and their responses once they expire, also while no requests arrive
+        statisticsScheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                CacheController.getInstance().removeAllExpiredEntries();
+            }
+        }, CacheController.TICK_MILLIS, CacheController.TICK_MILLIS, TimeUnit.MILLISECONDS);
+
+        // Create a receiving thread for every shard and a scheduler for them
+        ScheduledExecutorService UDPReceiveScheduler = Executors.newScheduledThreadPool(shardCount);
+        for(int i = 0; i < shardCount; i++) {
+            UDPReceive receiverThread;
+            if(channels != null) {
+                receiverThread = new UDPChannelReceive(channels[i], handlerPools[i]);
+            } else {
+                receiverThread = new UDPReceive(sockets[i], handlerPools[i]);
+            }
+            UDPReceiveScheduler.scheduleWithFixedDelay(receiverThread, 0, 10, TimeUnit.MILLISECONDS);
+        }
 
         // Create join initiator thread and scheduler for it
         JoinInitiator joinInitiatorThread = new JoinInitiator();
@@ -171,6 +374,176 @@ public class Server {
                     }
 
                 }
+                // Receive mode argument
+                else if(args[i].equals("-i")) {
+                    String mode = args[i + 1];
+                    if(mode.equals(RECEIVE_MODE_NIO) || mode.equals(RECEIVE_MODE_BLOCKING)) {
+                        receiveMode = mode;
+                    } else {
+                        System.err.println("ERROR: Invalid receive mode specified. Must be nio or blocking.");
+                        throw new IllegalArgumentException();
+                    }
+                }
+                // Handler thread mode argument
+                else if(args[i].equals("-t")) {
+                    String mode = args[i + 1];
+                    if(mode.equals(THREAD_MODE_PLATFORM) || mode.equals(THREAD_MODE_VIRTUAL)) {
+                        threadMode = mode;
+                    } else {
+                        System.err.println("ERROR: Invalid thread mode specified. Must be platform or virtual.");
+                        throw new IllegalArgumentException();
+                    }
+                }
+                // Reply mode argument
+                else if(args[i].equals("-r")) {
+                    String mode = args[i + 1];
+                    if(mode.equals(REPLY_MODE_RELAY) || mode.equals(REPLY_MODE_DIRECT)) {
+                        replyMode = mode;
+                    } else {
+                        System.err.println("ERROR: Invalid reply mode specified. Must be relay or direct.");
+                        throw new IllegalArgumentException();
+                    }
+                }
+                // Receive shard count argument
+                else if(args[i].equals("-s")) {
+                    try {
+                        shardCount = Integer.parseInt(args[i + 1]);
+                        if(shardCount <= 0) {
+                            throw new Exception();
+                        }
+                    } catch(Exception e) {
+                        System.err.println("ERROR: Invalid shard count specified. Must be > 0.");
+                        throw new IllegalArgumentException();
+                    }
+                }
+                // Handler worker count argument
+                else if(args[i].equals("-w")) {
+                    try {
+                        handlerWorkerCount = Integer.parseInt(args[i + 1]);
+                        if(handlerWorkerCount <= 0) {
+                            throw new Exception();
+                        }
+                    } catch(Exception e) {
+                        System.err.println("ERROR: Invalid handler worker count specified. Must be > 0.");
+                        throw new IllegalArgumentException();
+                    }
+                }
+                // Handler queue depth argument
+                else if(args[i].equals("-q")) {
+                    try {
+                        handlerQueueDepth = Integer.parseInt(args[i + 1]);
+                        if(handlerQueueDepth <= 0) {
+                            throw new Exception();
+                        }
+                    } catch(Exception e) {
+                        System.err.println("ERROR: Invalid handler queue depth specified. Must be > 0.");
+                        throw new IllegalArgumentException();
+                    }
+                }
+                // Off-heap value storage argument
+                else if(args[i].equals("-o")) {
+                    try {
+                        offHeapMegabytes = Long.parseLong(args[i + 1]);
+                        if(offHeapMegabytes <= 0) {
+                            throw new Exception();
+                        }
+                    } catch(Exception e) {
+                        System.err.println("ERROR: Invalid off-heap storage size specified. Must be > 0 megabytes.");
+                        throw new IllegalArgumentException();
+                    }
+                }
+                // Key value store capacity argument
+                else if(args[i].equals("-m")) {
+                    try {
+                        capacityMegabytes = Long.parseLong(args[i + 1]);
+                        if(capacityMegabytes <= 0) {
+                            throw new Exception();
+                        }
+                    } catch(Exception e) {
+                        System.err.println("ERROR: Invalid capacity specified. Must be > 0 megabytes.");
+                        throw new IllegalArgumentException();
+                    }
+                }
+                // Eviction mode argument
+                else if(args[i].equals("-e")) {
+                    String mode = args[i + 1];
+                    if(mode.equals(EVICTION_MODE_REJECT) || mode.equals(EVICTION_MODE_LRU) || mode.equals(EVICTION_MODE_LFU) ||
+                            mode.equals(EVICTION_MODE_WTINYLFU)) {
+                        evictionMode = mode;
+                    } else {
+                        System.err.println("ERROR: Invalid eviction mode specified. Must be reject, lru, lfu or wtinylfu.");
+                        throw new IllegalArgumentException();
+                    }
+                }
+                // Write-ahead log file argument
+                else if(args[i].equals("-l")) {
+                    logPath = args[i + 1];
+                    if(logPath.isEmpty()) {
+                        System.err.println("ERROR: Invalid write-ahead log file specified");
+                        throw new IllegalArgumentException();
+                    }
+                }
+                // Write-ahead log sync interval argument
+                else if(args[i].equals("-g")) {
+                    try {
+                        logSyncIntervalMillis = Long.parseLong(args[i + 1]);
+                        if(logSyncIntervalMillis <= 0) {
+                            throw new Exception();
+                        }
+                    } catch(Exception e) {
+                        System.err.println("ERROR: Invalid write-ahead log sync interval specified. Must be > 0 milliseconds.");
+                        throw new IllegalArgumentException();
+                    }
+                }
+                // Snapshot file argument
+                else if(args[i].equals("-f")) {
+                    snapshotPath = args[i + 1];
+                    if(snapshotPath.isEmpty()) {
+                        System.err.println("ERROR: Invalid snapshot file specified");
+                        throw new IllegalArgumentException();
+                    }
+                }
+                // Snapshot interval argument
+                else if(args[i].equals("-v")) {
+                    try {
+                        snapshotIntervalSeconds = Long.parseLong(args[i + 1]);
+                        if(snapshotIntervalSeconds <= 0) {
+                            throw new Exception();
+                        }
+                    } catch(Exception e) {
+                        System.err.println("ERROR: Invalid snapshot interval specified. Must be > 0 seconds.");
+                        throw new IllegalArgumentException();
+                    }
+                }
+                // Segment storage directory argument
+                else if(args[i].equals("-d")) {
+                    segmentDirectory = args[i + 1];
+                    if(segmentDirectory.isEmpty()) {
+                        System.err.println("ERROR: Invalid segment directory specified");
+                        throw new IllegalArgumentException();
+                    }
+                }
+                // Segment storage disk budget argument
+                else if(args[i].equals("-b")) {
+                    try {
+                        diskMegabytes = Long.parseLong(args[i + 1]);
+                        if(diskMegabytes * 1024 * 1024 < SegmentStore.DEFAULT_SEGMENT_SIZE_BYTES) {
+                            throw new Exception();
+                        }
+                    } catch(Exception e) {
+                        System.err.println("ERROR: Invalid disk budget specified. Must be at least one segment (" +
+                                SegmentStore.DEFAULT_SEGMENT_SIZE_BYTES / (1024 * 1024) + " megabytes).");
+                        throw new IllegalArgumentException();
+                    }
+                }
+                // LSM storage directory argument
+                else if(args[i].equals("-k")) {
+                    lsmDirectory = args[i + 1];
+                    if(lsmDirectory.isEmpty()) {
+                        System.err.println("ERROR: Invalid LSM directory specified");
+                        throw new IllegalArgumentException();
+                    }
+                }
                 // Unrecognized flag
                 else {
                     throw new IllegalArgumentException();
@@ -178,7 +551,35 @@ public class Server {
             }
         }
 
+        // Values are kept either in off-heap slabs, in segment files or in an LSM tree
+        int storageCount = (offHeapMegabytes > 0 ? 1 : 0) + (segmentDirectory != null ? 1 : 0) + (lsmDirectory != null ? 1 : 0);
+        if(storageCount > 1) {
+            System.err.println("ERROR: Off-heap, segment and LSM storage cannot be combined");
+            throw new IllegalArgumentException();
+        }
+
+    }
+
 
+    /**
+     * Creates the storage engine chosen by the arguments: off-heap slabs, segment files, an LSM tree or the heap
+     * @return - Engine
+     * @throws IOException - if the directory of an on-disk engine cannot be used
+     */
+    static StorageEngine createStorageEngine() throws IOException {
+        if(offHeapMegabytes > 0) {
+            return new ValueStorageEngine(new SlabAllocator(offHeapMegabytes * 1024 * 1024));
+        }
+        if(segmentDirectory != null) {
+            ValueStorageEngine engine = new ValueStorageEngine(new SegmentStore(new File(segmentDirectory),
+                    SegmentStore.DEFAULT_SEGMENT_SIZE_BYTES, diskMegabytes * 1024 * 1024));
+            engine.startCompaction(SegmentStore.DEFAULT_COMPACTION_INTERVAL_MILLIS);
+            return engine;
+        }
+        if(lsmDirectory != null) {
+            return new LSMStorageEngine(new LSMStore(new File(lsmDirectory)));
+        }
+        return new HeapStorageEngine();
     }
 
 
@@ -186,7 +587,11 @@ public class Server {
      * Prints usage message and exits the program
      */
     private static void printUsageMessageAndExit() {
-        System.err.println("usage: [-c contact_node:port] [-p local_receiving_port] [-n node_ID]");
+        System.err.println("usage: [-c contact_node:port] [-p local_receiving_port] [-n node_ID] [-i nio|blocking] [-s receive_shards]" +
+                " [-w handler_workers_per_shard] [-q handler_queue_depth_per_shard] [-t platform|virtual] [-r relay|direct]" +
+                " [-o offheap_storage_megabytes] [-m capacity_megabytes] [-e reject|lru|lfu|wtinylfu]" +
+                " [-l write_ahead_log_file] [-g log_sync_interval_ms] [-f snapshot_file] [-v snapshot_interval_seconds]" +
+                " [-d segment_directory] [-b disk_budget_megabytes] [-k lsm_directory]");
         System.exit(-1);
     }
 
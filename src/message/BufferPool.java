@@ -0,0 +1,293 @@
+package message;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Size-classed pool of byte arrays used for receiving, encoding and sending messages.
+ * A leased array is at least as large as requested and must be released exactly once after it
+ * is no longer used. Arrays larger than the largest size class are allocated and not pooled.
+ * Every size class remembers the arrays it leased in a fixed table of slots, probed by identity hash with
+ * compare-and-set, so lease and release take no lock and allocate nothing. Releasing an array the pool did not lease,
+ * or releasing one twice, is ignored instead of handing the array to two leases. A lease that finds no free slot near
+ * its home slot is served unpooled and never returns to the pool.
+ * Leases that are not released within LEAK_TIMEOUT are counted as leaked by reclaimLeakedLeases and forgotten,
+ * so a lost array does not stay outstanding forever.
+ */
+public class BufferPool {
+
+    // Largest datagram this node receives or sends
+    public final static int MAX_BUFFER_SIZE = 17000;
+
+    public final static int[] SIZE_CLASSES = {128, 1024, 4096, MAX_BUFFER_SIZE};
+    public final static int DEFAULT_MAX_BUFFERS_PER_CLASS = 512;
+
+    // Time after which a lease that was not released is counted as leaked
+    public final static long LEAK_TIMEOUT = 60000;
+
+    // Slots of a lease table probed from the home slot of an array
+    private final static int MAX_PROBES = 16;
+
+    private static BufferPool singletonInstance;
+
+    private final ArrayBlockingQueue<byte[]>[] freeBuffers;
+
+    // Per size class, the leased arrays that are not released yet and the time each slot was taken
+    private final AtomicReferenceArray<byte[]>[] leasedBuffers;
+    private final AtomicLongArray[] leaseTimes;
+
+    // Statistics
+    private final AtomicLong hitCount;
+    private final AtomicLong missCount;
+    private final AtomicLong outstandingLeaseCount;
+    private final AtomicLong ignoredReleaseCount;
+    private final AtomicLong untrackedLeaseCount;
+    private final AtomicLong leakedLeaseCount;
+
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    protected BufferPool(int maxBuffersPerClass) {
+        if(maxBuffersPerClass <= 0) {
+            throw new IllegalArgumentException();
+        }
+
+        // Room for four times as many leases as free arrays, so probes rarely run into taken slots
+        int leaseSlots = Integer.highestOneBit(Math.max(maxBuffersPerClass, MAX_PROBES) * 4 - 1) << 1;
+        freeBuffers = new ArrayBlockingQueue[SIZE_CLASSES.length];
+        leasedBuffers = new AtomicReferenceArray[SIZE_CLASSES.length];
+        leaseTimes = new AtomicLongArray[SIZE_CLASSES.length];
+        for(int i = 0; i < SIZE_CLASSES.length; i++) {
+            freeBuffers[i] = new ArrayBlockingQueue<byte[]>(maxBuffersPerClass);
+            leasedBuffers[i] = new AtomicReferenceArray<byte[]>(leaseSlots);
+            leaseTimes[i] = new AtomicLongArray(leaseSlots);
+        }
+
+        hitCount = new AtomicLong();
+        missCount = new AtomicLong();
+        outstandingLeaseCount = new AtomicLong();
+        ignoredReleaseCount = new AtomicLong();
+        untrackedLeaseCount = new AtomicLong();
+        leakedLeaseCount = new AtomicLong();
+    }
+
+
+    public static synchronized BufferPool getInstance() {
+        if(singletonInstance == null) {
+            singletonInstance = new BufferPool(DEFAULT_MAX_BUFFERS_PER_CLASS);
+        }
+
+        return singletonInstance;
+    }
+
+
+    /**
+     * Leases an array from the pool
+     * @param minimumSize - Minimum size of the array in bytes
+     * @return - Array of the smallest size class that fits, or an unpooled array of the exact size
+     */
+    public byte[] lease(int minimumSize) {
+        int sizeClass = getSizeClassIndex(minimumSize);
+        if(sizeClass < 0) {
+            missCount.incrementAndGet();
+            return new byte[minimumSize];
+        }
+
+        byte[] buffer = freeBuffers[sizeClass].poll();
+        if(buffer != null) {
+            hitCount.incrementAndGet();
+        } else {
+            missCount.incrementAndGet();
+            buffer = new byte[SIZE_CLASSES[sizeClass]];
+        }
+
+        AtomicReferenceArray<byte[]> leased = leasedBuffers[sizeClass];
+        int mask = leased.length() - 1;
+        int home = homeSlot(buffer, mask);
+        for(int probe = 0; probe < MAX_PROBES; probe++) {
+            int slot = (home + probe) & mask;
+            if(leased.get(slot) == null) {
+                // Stamped before the slot is taken, so a leak check never sees the time of an earlier lease
+                leaseTimes[sizeClass].set(slot, System.currentTimeMillis());
+                if(leased.compareAndSet(slot, null, buffer)) {
+                    outstandingLeaseCount.incrementAndGet();
+                    return buffer;
+                }
+            }
+        }
+
+        // Not tracked, so its release is ignored and the array is left to the garbage collector
+        untrackedLeaseCount.incrementAndGet();
+        return buffer;
+    }
+
+
+    /**
+     * Returns a leased array to the pool. Arrays that were not leased from the pool, were already released or
+     * do not match a size class are left to the garbage collector.
+     * @param buffer - Array to return (may be null)
+     */
+    public void release(byte[] buffer) {
+        if(buffer == null) {
+            return;
+        }
+
+        int sizeClass = getSizeClassIndex(buffer.length);
+        if(sizeClass < 0 || SIZE_CLASSES[sizeClass] != buffer.length) {
+            return;
+        }
+
+        AtomicReferenceArray<byte[]> leased = leasedBuffers[sizeClass];
+        int mask = leased.length() - 1;
+        int home = homeSlot(buffer, mask);
+        for(int probe = 0; probe < MAX_PROBES; probe++) {
+            int slot = (home + probe) & mask;
+            if(leased.get(slot) == buffer && leased.compareAndSet(slot, buffer, null)) {
+                outstandingLeaseCount.decrementAndGet();
+                // Drop the array if the size class already holds enough free arrays
+                freeBuffers[sizeClass].offer(buffer);
+                return;
+            }
+        }
+        ignoredReleaseCount.incrementAndGet();
+    }
+
+
+    /**
+     * Forgets the leases that were not released within LEAK_TIMEOUT and counts them as leaked.
+     * A leaked array that is released later is ignored.
+     * @return - Number of leases counted as leaked
+     */
+    public int reclaimLeakedLeases() {
+        return reclaimLeakedLeases(System.currentTimeMillis());
+    }
+
+
+    /**
+     * Forgets the leases that were not released within LEAK_TIMEOUT of a time and counts them as leaked
+     * @param now - Current time
+     * @return - Number of leases counted as leaked
+     */
+    protected int reclaimLeakedLeases(long now) {
+        int reclaimed = 0;
+        for(int sizeClass = 0; sizeClass < SIZE_CLASSES.length; sizeClass++) {
+            AtomicReferenceArray<byte[]> leased = leasedBuffers[sizeClass];
+            for(int slot = 0; slot < leased.length(); slot++) {
+                byte[] buffer = leased.get(slot);
+                if(buffer != null && now - leaseTimes[sizeClass].get(slot) >= LEAK_TIMEOUT &&
+                        leased.compareAndSet(slot, buffer, null)) {
+                    outstandingLeaseCount.decrementAndGet();
+                    reclaimed++;
+                }
+            }
+        }
+        leakedLeaseCount.addAndGet(reclaimed);
+        return reclaimed;
+    }
+
+
+    private static int homeSlot(byte[] buffer, int mask) {
+        int hash = System.identityHashCode(buffer);
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+
+    /**
+     * Gets the index of the smallest size class that fits the given size
+     * @param size - Size in bytes
+     * @return - Index into SIZE_CLASSES, or -1 if the size is larger than all size classes
+     */
+    private static int getSizeClassIndex(int size) {
+        for(int i = 0; i < SIZE_CLASSES.length; i++) {
+            if(size <= SIZE_CLASSES[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+
+    /**
+     * Gets the number of released arrays that were not leased from the pool or were released twice
+     * @return - Ignored release count
+     */
+    public long getIgnoredReleaseCount() {
+        return ignoredReleaseCount.get();
+    }
+
+
+    /**
+     * Gets the number of leases that found no free slot in the lease table and were served unpooled
+     * @return - Untracked lease count
+     */
+    public long getUntrackedLeaseCount() {
+        return untrackedLeaseCount.get();
+    }
+
+
+    /**
+     * Gets the number of leases that were not released within LEAK_TIMEOUT
+     * @return - Leaked lease count
+     */
+    public long getLeakedLeaseCount() {
+        return leakedLeaseCount.get();
+    }
+
+
+    /**
+     * Gets the fraction of leases that were served from the pool
+     * @return - Hit rate between 0 and 1
+     */
+    public double getHitRate() {
+        long hits = hitCount.get();
+        long total = hits + missCount.get();
+        if(total == 0) {
+            return 0;
+        }
+        return (double) hits / total;
+    }
+
+
+    /**
+     * Gets the number of pooled arrays that have been leased and not released
+     * @return - Outstanding lease count
+     */
+    public long getOutstandingLeaseCount() {
+        return outstandingLeaseCount.get();
+    }
+
+
+    /**
+     * Gets the number of free arrays held by the pool
+     * @return - Free buffer count
+     */
+    public int getFreeBufferCount() {
+        int count = 0;
+        for(ArrayBlockingQueue<byte[]> queue : freeBuffers) {
+            count += queue.size();
+        }
+        return count;
+    }
+
+
+    /**
+     * Prints the pool statistics
+     */
+    public void printStatistics() {
+        System.out.println("Buffer pool: hits=" + getHitCount() + " misses=" + getMissCount() +
+                " hitRate=" + String.format("%.3f", getHitRate()) + " outstanding=" + getOutstandingLeaseCount() +
+                " free=" + getFreeBufferCount() + " ignoredReleases=" + getIgnoredReleaseCount() +
+                " untracked=" + getUntrackedLeaseCount() + " leaked=" + getLeakedLeaseCount());
+    }
+}
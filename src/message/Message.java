@@ -1,5 +1,7 @@
 package message;
 
+import java.net.DatagramPacket;
+import java.net.InetAddress;
 import java.util.Arrays;
 
 /**
@@ -34,6 +36,29 @@ public class Message {
     }
 
 
+    /**
+     * Builds a packet holding a message with a header and payload. The message is written into an array leased
+     * from the buffer pool, which should be released once the packet has been sent.
+     * @param header - Header to add to message (cannot be null)
+     * @param payload - Payload to add to message (cannot be null)
+     * @param address - Destination address
+     * @param port - Destination port
+     * @return - Packet with the message as its data
+     * @throws message.InvalidMessageException
+     */
+    public static DatagramPacket buildPacket(byte[] header, byte[] payload, InetAddress address, int port) throws InvalidMessageException {
+
+        if(header == null || payload == null) {
+            throw new InvalidMessageException("Invalid header or payload");
+        }
+
+        MessageWriter writer = MessageWriter.lease(header.length + payload.length);
+        writer.writeBytes(header, 0, header.length);
+        writer.writeBytes(payload, 0, payload.length);
+        return writer.toPacket(address, port);
+    }
+
+
     /**
      * Builds a message with a header
      * @param header - Header to add to message (cannot be null)
@@ -78,6 +103,16 @@ public class Message {
     }
 
 
+    /**
+     * Extracts payload from a received packet. Only the received bytes are copied, not the whole receive buffer.
+     * @param packet - Packet to extract payload from
+     * @return - Byte array representing payload
+     */
+    public static byte[] extractPayload(DatagramPacket packet) {
+        return Arrays.copyOfRange(packet.getData(), packet.getOffset() + Header.HEADER_SIZE_BYTES, packet.getOffset() + packet.getLength());
+    }
+
+
     /**
      * Gets bytes in specified range from a message
      * @param message - Message to get bytes from
@@ -0,0 +1,195 @@
+package message;
+
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Flyweight view over a received message (header + payload). The header and payload are read
+ * in place from the received buffer instead of being copied out with Message.extractHeader/extractPayload.
+ * A view is not thread safe, handlers keep one view per thread (see createPerThread) and point it at every message they decode.
+ */
+public class MessageView {
+
+    private ByteBuffer buffer;
+    private int offset;
+    private int length;
+
+    private final PayloadView payload = new PayloadView();
+    private final PayloadView forwardedPayload = new PayloadView();
+
+
+    /**
+     * Points the view at the data of a received packet
+     * @param packet - Received packet
+     * @return - This view
+     * @throws InvalidMessageException - if the packet is too short to hold a header and a command
+     */
+    public MessageView wrap(DatagramPacket packet) throws InvalidMessageException {
+        return wrap(ByteBuffer.wrap(packet.getData()).order(ByteOrder.LITTLE_ENDIAN), packet.getOffset(), packet.getLength());
+    }
+
+
+    /**
+     * Points the view at a message
+     * @param buffer - Buffer holding the message
+     * @param offset - Absolute index of the first message byte in the buffer
+     * @param length - Length of the message in bytes
+     * @return - This view
+     * @throws InvalidMessageException - if the message is too short to hold a header and a command
+     */
+    public MessageView wrap(ByteBuffer buffer, int offset, int length) throws InvalidMessageException {
+        if(length <= Header.HEADER_SIZE_BYTES) {
+            throw new InvalidMessageException("Invalid message");
+        }
+        payload.wrap(buffer, offset + Header.HEADER_SIZE_BYTES, length - Header.HEADER_SIZE_BYTES);
+        this.buffer = payload.getBuffer();
+        this.offset = offset;
+        this.length = length;
+        return this;
+    }
+
+
+    /**
+     * Creates views that are owned by the thread using them
+     * @return - Holder of one view per thread
+     */
+    public static ThreadLocal<MessageView> createPerThread() {
+        return new ThreadLocal<MessageView>() {
+            @Override
+            protected MessageView initialValue() {
+                return new MessageView();
+            }
+        };
+    }
+
+
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+
+    public int getOffset() {
+        return offset;
+    }
+
+
+    public int getLength() {
+        return length;
+    }
+
+
+    /**
+     * Copies the header into a new array. Only needed where the header is kept, responses and forwarded requests
+     * are written with MessageWriter.writeHeader(getBuffer(), getOffset(), Header.HEADER_SIZE_BYTES).
+     * @return - Header as bytes
+     */
+    public byte[] getHeader() {
+        byte[] header = new byte[Header.HEADER_SIZE_BYTES];
+        for(int i = 0; i < Header.HEADER_SIZE_BYTES; i++) {
+            header[i] = buffer.get(offset + i);
+        }
+        return header;
+    }
+
+
+    /**
+     * Compares the header of the message with another header without copying it
+     * @param header - Header to compare with
+     * @return - True if the headers are equal
+     */
+    public boolean headerEquals(byte[] header) {
+        if(header == null || header.length != Header.HEADER_SIZE_BYTES) {
+            return false;
+        }
+        for(int i = 0; i < Header.HEADER_SIZE_BYTES; i++) {
+            if(header[i] != buffer.get(offset + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Rewrites the command and increments the hop count of a client forwarding message in place, and builds
+     * a packet over the received message bytes, so a message that is passed on to another node is not decoded or copied again
+     * @param command - Command to send the message with
+     * @param address - Destination address
+     * @param port - Destination port
+     * @return - Packet sharing the buffer of the received message
+     * @throws InvalidMessageException
+     */
+    public DatagramPacket toRelayPacket(byte command, InetAddress address, int port) throws InvalidMessageException {
+        payload.setCommand(command);
+        int hopCount = payload.getHopCount() + 1;
+        payload.setHopCount(hopCount);
+        RoutingStatistics.recordRelayed(length);
+        if(buffer.hasArray()) {
+            return new DatagramPacket(buffer.array(), buffer.arrayOffset() + offset, length, address, port);
+        }
+        byte[] message = new byte[length];
+        for(int i = 0; i < length; i++) {
+            message[i] = buffer.get(offset + i);
+        }
+        return new DatagramPacket(message, length, address, port);
+    }
+
+
+    /**
+     * Moves the header in front of the payload carried by a regular forwarding message and builds a packet
+     * over the moved header and that payload, addressed to the return address of the forwarding message
+     * @return - Packet sharing the buffer of the received message
+     * @throws InvalidMessageException
+     * @throws UnknownHostException
+     */
+    public DatagramPacket toUnwrappedPacket() throws InvalidMessageException, UnknownHostException {
+        InetAddress address = payload.getReturnAddress();
+        int port = payload.getReturnPort();
+        PayloadView forwarded = getRegularForwardPayload();
+        int unwrappedOffset = forwarded.getOffset() - Header.HEADER_SIZE_BYTES;
+        int unwrappedLength = Header.HEADER_SIZE_BYTES + forwarded.getLength();
+        if(buffer.hasArray()) {
+            byte[] data = buffer.array();
+            System.arraycopy(data, buffer.arrayOffset() + offset, data, buffer.arrayOffset() + unwrappedOffset, Header.HEADER_SIZE_BYTES);
+            return new DatagramPacket(data, buffer.arrayOffset() + unwrappedOffset, unwrappedLength, address, port);
+        }
+        byte[] message = new byte[unwrappedLength];
+        for(int i = 0; i < Header.HEADER_SIZE_BYTES; i++) {
+            message[i] = buffer.get(offset + i);
+        }
+        forwarded.copyTo(message, Header.HEADER_SIZE_BYTES);
+        return new DatagramPacket(message, unwrappedLength, address, port);
+    }
+
+
+    /**
+     * Gets a view of the payload
+     * @return - Payload view (owned by this message view)
+     */
+    public PayloadView getPayload() {
+        return payload;
+    }
+
+
+    /**
+     * Gets a view of the payload carried by a client forwarding payload
+     * @return - Forwarded payload view (owned by this message view)
+     * @throws InvalidMessageException
+     */
+    public PayloadView getClientForwardPayload() throws InvalidMessageException {
+        return payload.getClientForwardPayload(forwardedPayload);
+    }
+
+
+    /**
+     * Gets a view of the payload carried by a regular forwarding payload
+     * @return - Forwarded payload view (owned by this message view)
+     * @throws InvalidMessageException
+     */
+    public PayloadView getRegularForwardPayload() throws InvalidMessageException {
+        return payload.getRegularForwardPayload(forwardedPayload);
+    }
+}
@@ -0,0 +1,514 @@
+package message;
+
+import command.ResponseCodes;
+
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes a message (header + payload) field by field into a caller supplied buffer in one pass.
+ * The layout is the same as the one produced by the Payload builders followed by Message.buildMessage,
+ * but no intermediate payload arrays are created.
+ * A writer is not thread safe.
+ */
+public class MessageWriter {
+
+    private byte[] buffer;
+    private int position;
+
+
+    public MessageWriter(byte[] buffer) {
+        wrap(buffer);
+    }
+
+
+    /**
+     * Points the writer at the start of a buffer
+     * @param buffer - Buffer to write into
+     * @return - This writer
+     */
+    public MessageWriter wrap(byte[] buffer) {
+        this.buffer = buffer;
+        this.position = 0;
+        return this;
+    }
+
+
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+
+    /**
+     * Gets the number of bytes written so far
+     * @return - Length of the message in bytes
+     */
+    public int getLength() {
+        return position;
+    }
+
+
+    /**
+     * Builds a packet over the written bytes. The buffer is not copied.
+     * @param address - Destination address
+     * @param port - Destination port
+     * @return - Packet holding the message
+     */
+    public DatagramPacket toPacket(InetAddress address, int port) {
+        return new DatagramPacket(buffer, 0, position, address, port);
+    }
+
+
+    private void ensureCapacity(int length) throws InvalidMessageException {
+        if(buffer == null || length < 0 || position + length > buffer.length) {
+            throw new InvalidMessageException("Message does not fit in buffer");
+        }
+    }
+
+
+    public MessageWriter writeHeader(byte[] header) throws InvalidMessageException {
+        if(header == null || header.length != Header.HEADER_SIZE_BYTES) {
+            throw new InvalidMessageException("Invalid header");
+        }
+        return writeBytes(header, 0, header.length);
+    }
+
+
+    /**
+     * Writes a header straight from the buffer of a received message
+     * @param source - Buffer holding the header
+     * @param offset - Absolute index of the header in the buffer
+     * @param length - Length of the header in bytes
+     * @return - This writer
+     * @throws InvalidMessageException
+     */
+    public MessageWriter writeHeader(ByteBuffer source, int offset, int length) throws InvalidMessageException {
+        if(source == null || length != Header.HEADER_SIZE_BYTES || offset < 0 || offset + length > source.limit()) {
+            throw new InvalidMessageException("Invalid header");
+        }
+        ensureCapacity(length);
+        if(source.hasArray()) {
+            System.arraycopy(source.array(), source.arrayOffset() + offset, buffer, position, length);
+        } else {
+            for(int i = 0; i < length; i++) {
+                buffer[position + i] = source.get(offset + i);
+            }
+        }
+        position += length;
+        return this;
+    }
+
+
+    public MessageWriter writeCommand(byte command) throws InvalidMessageException {
+        ensureCapacity(Payload.COMMAND_CODE_SIZE_BYTES);
+        buffer[position++] = command;
+        return this;
+    }
+
+
+    /**
+     * Writes a key. Keys shorter than KEY_SIZE_BYTES are padded with zeros.
+     * @param key - Key
+     * @return - This writer
+     * @throws InvalidMessageException
+     */
+    public MessageWriter writeKey(byte[] key) throws InvalidMessageException {
+        ensureCapacity(Payload.KEY_SIZE_BYTES);
+        int length = Math.min(key.length, Payload.KEY_SIZE_BYTES);
+        System.arraycopy(key, 0, buffer, position, length);
+        for(int i = length; i < Payload.KEY_SIZE_BYTES; i++) {
+            buffer[position + i] = 0;
+        }
+        position += Payload.KEY_SIZE_BYTES;
+        return this;
+    }
+
+
+    /**
+     * Writes a value length followed by the value. Values longer than MAX_VALUE_SIZE_BYTES are truncated.
+     * @param value - Value
+     * @return - This writer
+     * @throws InvalidMessageException
+     */
+    public MessageWriter writeValue(byte[] value) throws InvalidMessageException {
+        int length = Math.min(value.length, Payload.MAX_VALUE_SIZE_BYTES);
+        writeShort((short) length);
+        return writeBytes(value, 0, length);
+    }
+
+
+    /**
+     * Writes a value length followed by the remaining bytes of a buffer, which are copied straight into the message.
+     * Values longer than MAX_VALUE_SIZE_BYTES are truncated. The position of the buffer is not changed.
+     * @param value - Value
+     * @return - This writer
+     * @throws InvalidMessageException
+     */
+    public MessageWriter writeValue(ByteBuffer value) throws InvalidMessageException {
+        int length = Math.min(value.remaining(), Payload.MAX_VALUE_SIZE_BYTES);
+        writeShort((short) length);
+        ensureCapacity(length);
+        value.duplicate().get(buffer, position, length);
+        position += length;
+        return this;
+    }
+
+
+    public MessageWriter writeAddress(InetAddress address) throws InvalidMessageException {
+        return writeBytes(address.getAddress(), 0, Payload.IP_SIZE_BYTES);
+    }
+
+
+    public MessageWriter writeShort(short value) throws InvalidMessageException {
+        ensureCapacity(2);
+        buffer[position++] = (byte) value;
+        buffer[position++] = (byte) (value >> 8);
+        return this;
+    }
+
+
+    public MessageWriter writeInt(int value) throws InvalidMessageException {
+        ensureCapacity(4);
+        buffer[position++] = (byte) value;
+        buffer[position++] = (byte) (value >> 8);
+        buffer[position++] = (byte) (value >> 16);
+        buffer[position++] = (byte) (value >> 24);
+        return this;
+    }
+
+
+    public MessageWriter writeBytes(byte[] source, int offset, int length) throws InvalidMessageException {
+        ensureCapacity(length);
+        System.arraycopy(source, offset, buffer, position, length);
+        position += length;
+        return this;
+    }
+
+
+    /**
+     * Copies the bytes of a payload view
+     * @param payload - Payload to copy
+     * @return - This writer
+     * @throws InvalidMessageException
+     */
+    public MessageWriter writePayload(PayloadView payload) throws InvalidMessageException {
+        ensureCapacity(payload.getLength());
+        payload.copyTo(buffer, position);
+        position += payload.getLength();
+        return this;
+    }
+
+
+    /**
+     * Writes a standard request payload (same layout as Payload.buildStandardRequestPayload)
+     * @param requestCode - Request code
+     * @param key - Key
+     * @param value - Value or null for requests without a value
+     * @return - This writer
+     * @throws InvalidMessageException
+     */
+    public MessageWriter writeStandardRequest(byte requestCode, byte[] key, byte[] value) throws InvalidMessageException {
+        writeCommand(requestCode);
+        writeKey(key);
+        if(value != null) {
+            writeValue(value);
+        }
+        return this;
+    }
+
+
+    /**
+     * Writes a standard response payload (same layout as Payload.buildStandardResponsePayload)
+     * @param responseCode - Response code
+     * @param value - Value
+     * @return - This writer
+     * @throws InvalidMessageException
+     */
+    public MessageWriter writeStandardResponse(byte responseCode, byte[] value) throws InvalidMessageException {
+        writeCommand(responseCode);
+        return writeValue(value);
+    }
+
+
+    /**
+     * Writes the part of a forwarding payload that comes before the forwarded payload
+     * (same layout as Payload.buildForwardingRequestPayload)
+     * @param requestCode - Request code
+     * @param returnAddress - Return address
+     * @param returnPort - Return port
+     * @param forwardedPayloadLength - Length of the payload that is written next
+     * @return - This writer
+     * @throws InvalidMessageException
+     */
+    public MessageWriter writeForwardingRequest(byte requestCode, InetAddress returnAddress, int returnPort, int forwardedPayloadLength) throws InvalidMessageException {
+        writeCommand(requestCode);
+        writeAddress(returnAddress);
+        writeInt(returnPort);
+        return writeInt(forwardedPayloadLength);
+    }
+
+
+    /**
+     * Writes the part of a client forwarding payload that comes before the forwarded payload, with a hop count of 1 and no flags
+     * (same layout as Payload.buildClientForwardingRequestPayload)
+     * @param requestCode - Request code
+     * @param returnAddress - Return address
+     * @param returnPort - Return port
+     * @param clientAddress - Client address
+     * @param clientPort - Client port
+     * @param ringID - Ring ID of the key in the forwarded payload
+     * @param forwardedPayloadLength - Length of the payload that is written next
+     * @return - This writer
+     * @throws InvalidMessageException
+     */
+    public MessageWriter writeClientForwardingRequest(byte requestCode, InetAddress returnAddress, int returnPort, InetAddress clientAddress,
+                                                      int clientPort, int ringID, int forwardedPayloadLength) throws InvalidMessageException {
+        writeCommand(requestCode);
+        writeAddress(returnAddress);
+        writeInt(returnPort);
+        writeAddress(clientAddress);
+        writeInt(clientPort);
+        writeInt(ringID);
+        writeCommand((byte) 1);
+        writeCommand((byte) 0);
+        return writeInt(forwardedPayloadLength);
+    }
+
+
+    /**
+     * Writes a node list payload (same layout as Payload.buildPayloadWithNodeList)
+     * @param command - Command
+     * @param nodeList - Serialized node list
+     * @return - This writer
+     * @throws InvalidMessageException
+     */
+    public MessageWriter writePayloadWithNodeList(byte command, byte[] nodeList) throws InvalidMessageException {
+        writeCommand(command);
+        writeInt(nodeList.length);
+        return writeBytes(nodeList, 0, nodeList.length);
+    }
+
+
+    /**
+     * Creates a writer over an array leased from the buffer pool
+     * @param messageLength - Length of the message that will be written
+     * @return - Writer
+     */
+    public static MessageWriter lease(int messageLength) {
+        return new MessageWriter(BufferPool.getInstance().lease(messageLength));
+    }
+
+
+    /**
+     * Builds a pooled packet holding a client forwarding request
+     * @param header - Header
+     * @param requestCode - Request code
+     * @param returnAddress - Return address
+     * @param returnPort - Return port
+     * @param clientAddress - Client address
+     * @param clientPort - Client port
+     * @param ringID - Ring ID of the key in the payload to forward
+     * @param payloadToForward - Payload to forward
+     * @param destinationAddress - Destination address
+     * @param destinationPort - Destination port
+     * @return - Packet to send
+     * @throws InvalidMessageException
+     */
+    public static DatagramPacket buildClientForwardingRequestPacket(byte[] header, byte requestCode, InetAddress returnAddress, int returnPort,
+                                                                    InetAddress clientAddress, int clientPort, int ringID, PayloadView payloadToForward,
+                                                                    InetAddress destinationAddress, int destinationPort) throws InvalidMessageException {
+        MessageWriter writer = lease(Header.HEADER_SIZE_BYTES + Payload.CLIENT_FORWARD_PAYLOAD_START_INDEX + payloadToForward.getLength());
+        writer.writeHeader(header);
+        return writeClientForwardingRequestPacket(writer, requestCode, returnAddress, returnPort, clientAddress, clientPort, ringID, payloadToForward,
+                destinationAddress, destinationPort);
+    }
+
+
+    /**
+     * Builds a pooled packet holding a client forwarding request. The header is copied straight from the received request.
+     * @param request - Received request whose header is used
+     * @param requestCode - Request code
+     * @param returnAddress - Return address
+     * @param returnPort - Return port
+     * @param clientAddress - Client address
+     * @param clientPort - Client port
+     * @param ringID - Ring ID of the key in the payload to forward
+     * @param payloadToForward - Payload to forward
+     * @param destinationAddress - Destination address
+     * @param destinationPort - Destination port
+     * @return - Packet to send
+     * @throws InvalidMessageException
+     */
+    public static DatagramPacket buildClientForwardingRequestPacket(MessageView request, byte requestCode, InetAddress returnAddress, int returnPort,
+                                                                    InetAddress clientAddress, int clientPort, int ringID, PayloadView payloadToForward,
+                                                                    InetAddress destinationAddress, int destinationPort) throws InvalidMessageException {
+        MessageWriter writer = lease(Header.HEADER_SIZE_BYTES + Payload.CLIENT_FORWARD_PAYLOAD_START_INDEX + payloadToForward.getLength());
+        writer.writeHeader(request.getBuffer(), request.getOffset(), Header.HEADER_SIZE_BYTES);
+        return writeClientForwardingRequestPacket(writer, requestCode, returnAddress, returnPort, clientAddress, clientPort, ringID, payloadToForward,
+                destinationAddress, destinationPort);
+    }
+
+
+    private static DatagramPacket writeClientForwardingRequestPacket(MessageWriter writer, byte requestCode, InetAddress returnAddress, int returnPort,
+                                                                     InetAddress clientAddress, int clientPort, int ringID, PayloadView payloadToForward,
+                                                                     InetAddress destinationAddress, int destinationPort) throws InvalidMessageException {
+        writer.writeClientForwardingRequest(requestCode, returnAddress, returnPort, clientAddress, clientPort, ringID, payloadToForward.getLength());
+        writer.writePayload(payloadToForward);
+        RoutingStatistics.recordRelayed(writer.getLength());
+        return writer.toPacket(destinationAddress, destinationPort);
+    }
+
+
+    /**
+     * Builds a pooled packet holding a client forwarding response that carries a response code only
+     * @param header - Header
+     * @param responseCode - Response code for the client
+     * @param clientAddress - Client address
+     * @param clientPort - Client port
+     * @param destinationAddress - Destination address (node that answers the client)
+     * @param destinationPort - Destination port
+     * @return - Packet to send
+     * @throws InvalidMessageException
+     */
+    public static DatagramPacket buildClientForwardingResponsePacket(byte[] header, byte responseCode, InetAddress clientAddress, int clientPort,
+                                                                     InetAddress destinationAddress, int destinationPort) throws InvalidMessageException {
+        return buildClientForwardingResponsePacket(header, responseCode, (byte[]) null, clientAddress, clientPort, destinationAddress, destinationPort);
+    }
+
+
+    /**
+     * Builds a pooled packet holding a client forwarding response
+     * @param header - Header
+     * @param responseCode - Response code for the client
+     * @param value - Value for the client or null if the response only carries a response code
+     * @param clientAddress - Client address
+     * @param clientPort - Client port
+     * @param destinationAddress - Destination address (node that answers the client)
+     * @param destinationPort - Destination port
+     * @return - Packet to send
+     * @throws InvalidMessageException
+     */
+    public static DatagramPacket buildClientForwardingResponsePacket(byte[] header, byte responseCode, byte[] value, InetAddress clientAddress, int clientPort,
+                                                                     InetAddress destinationAddress, int destinationPort) throws InvalidMessageException {
+        int responseLength = Payload.COMMAND_CODE_SIZE_BYTES;
+        if(value != null) {
+            responseLength += Payload.VALUE_LENGTH_SIZE_BYTES + Math.min(value.length, Payload.MAX_VALUE_SIZE_BYTES);
+        }
+
+        MessageWriter writer = lease(Header.HEADER_SIZE_BYTES + Payload.REGULAR_FORWARD_PAYLOAD_START_INDEX + responseLength);
+        writer.writeHeader(header);
+        writer.writeForwardingRequest(ResponseCodes.CLIENT_FWD_RESPONSE, clientAddress, clientPort, responseLength);
+        if(value != null) {
+            writer.writeStandardResponse(responseCode, value);
+        } else {
+            writer.writeCommand(responseCode);
+        }
+        return writer.toPacket(destinationAddress, destinationPort);
+    }
+
+
+    /**
+     * Builds a pooled packet holding a client forwarding response with a value that is copied straight from its buffer,
+     * such as a view of a value in a memory mapped segment
+     * @param header - Header
+     * @param responseCode - Response code for the client
+     * @param value - Value for the client or null if the response only carries a response code
+     * @param clientAddress - Client address
+     * @param clientPort - Client port
+     * @param destinationAddress - Destination address (node that answers the client)
+     * @param destinationPort - Destination port
+     * @return - Packet to send
+     * @throws InvalidMessageException
+     */
+    public static DatagramPacket buildClientForwardingResponsePacket(byte[] header, byte responseCode, ByteBuffer value, InetAddress clientAddress, int clientPort,
+                                                                     InetAddress destinationAddress, int destinationPort) throws InvalidMessageException {
+        int responseLength = getResponseLength(value);
+        MessageWriter writer = lease(Header.HEADER_SIZE_BYTES + Payload.REGULAR_FORWARD_PAYLOAD_START_INDEX + responseLength);
+        writer.writeHeader(header);
+        return writeClientForwardingResponsePacket(writer, responseCode, value, responseLength, clientAddress, clientPort, destinationAddress, destinationPort);
+    }
+
+
+    /**
+     * Builds a pooled packet holding a client forwarding response that carries a response code only.
+     * The header is copied straight from the received request.
+     * @param request - Received request whose header is used
+     * @param responseCode - Response code for the client
+     * @param clientAddress - Client address
+     * @param clientPort - Client port
+     * @param destinationAddress - Destination address (node that answers the client)
+     * @param destinationPort - Destination port
+     * @return - Packet to send
+     * @throws InvalidMessageException
+     */
+    public static DatagramPacket buildClientForwardingResponsePacket(MessageView request, byte responseCode, InetAddress clientAddress, int clientPort,
+                                                                     InetAddress destinationAddress, int destinationPort) throws InvalidMessageException {
+        return buildClientForwardingResponsePacket(request, responseCode, (ByteBuffer) null, clientAddress, clientPort, destinationAddress, destinationPort);
+    }
+
+
+    /**
+     * Builds a pooled packet holding a client forwarding response with a value that is copied straight from its buffer.
+     * The header is copied straight from the received request.
+     * @param request - Received request whose header is used
+     * @param responseCode - Response code for the client
+     * @param value - Value for the client or null if the response only carries a response code
+     * @param clientAddress - Client address
+     * @param clientPort - Client port
+     * @param destinationAddress - Destination address (node that answers the client)
+     * @param destinationPort - Destination port
+     * @return - Packet to send
+     * @throws InvalidMessageException
+     */
+    public static DatagramPacket buildClientForwardingResponsePacket(MessageView request, byte responseCode, ByteBuffer value, InetAddress clientAddress, int clientPort,
+                                                                     InetAddress destinationAddress, int destinationPort) throws InvalidMessageException {
+        int responseLength = getResponseLength(value);
+        MessageWriter writer = lease(Header.HEADER_SIZE_BYTES + Payload.REGULAR_FORWARD_PAYLOAD_START_INDEX + responseLength);
+        writer.writeHeader(request.getBuffer(), request.getOffset(), Header.HEADER_SIZE_BYTES);
+        return writeClientForwardingResponsePacket(writer, responseCode, value, responseLength, clientAddress, clientPort, destinationAddress, destinationPort);
+    }
+
+
+    private static int getResponseLength(ByteBuffer value) {
+        int responseLength = Payload.COMMAND_CODE_SIZE_BYTES;
+        if(value != null) {
+            responseLength += Payload.VALUE_LENGTH_SIZE_BYTES + Math.min(value.remaining(), Payload.MAX_VALUE_SIZE_BYTES);
+        }
+        return responseLength;
+    }
+
+
+    private static DatagramPacket writeClientForwardingResponsePacket(MessageWriter writer, byte responseCode, ByteBuffer value, int responseLength,
+                                                                      InetAddress clientAddress, int clientPort, InetAddress destinationAddress,
+                                                                      int destinationPort) throws InvalidMessageException {
+        writer.writeForwardingRequest(ResponseCodes.CLIENT_FWD_RESPONSE, clientAddress, clientPort, responseLength);
+        writer.writeCommand(responseCode);
+        if(value != null) {
+            writer.writeValue(value);
+        }
+        return writer.toPacket(destinationAddress, destinationPort);
+    }
+
+
+    /**
+     * Builds a pooled packet holding a client forwarding response around an already encoded response,
+     * such as the stored response of a request that was serviced before
+     * @param header - Header
+     * @param response - Encoded response for the client (response code and optional value)
+     * @param clientAddress - Client address
+     * @param clientPort - Client port
+     * @param destinationAddress - Destination address (node that answers the client)
+     * @param destinationPort - Destination port
+     * @return - Packet to send
+     * @throws InvalidMessageException
+     */
+    public static DatagramPacket buildClientForwardingResponsePacket(byte[] header, byte[] response, InetAddress clientAddress, int clientPort,
+                                                                     InetAddress destinationAddress, int destinationPort) throws InvalidMessageException {
+        MessageWriter writer = lease(Header.HEADER_SIZE_BYTES + Payload.REGULAR_FORWARD_PAYLOAD_START_INDEX + response.length);
+        writer.writeHeader(header);
+        writer.writeForwardingRequest(ResponseCodes.CLIENT_FWD_RESPONSE, clientAddress, clientPort, response.length);
+        writer.writeBytes(response, 0, response.length);
+        return writer.toPacket(destinationAddress, destinationPort);
+    }
+}
@@ -17,7 +17,7 @@ public class Payload {
         COMMAND, KEY, REQUEST_VALUE_LENGTH,
         REQUEST_VALUE, RESPONSE_VALUE_LENGTH,
         RESPONSE_VALUE, IP_ADDRESS, PORT,
-        CLIENT_IP_ADDRESS, CLIENT_PORT,
+        CLIENT_IP_ADDRESS, CLIENT_PORT, RING_ID, HOP_COUNT, FORWARDING_FLAGS,
         REGULAR_FORWARD_PAYLOAD_LENGTH, REGULAR_FORWARD_PAYLOAD,
         CLIENT_FORWARD_PAYLOAD_LENGTH, CLIENT_FORWARD_PAYLOAD,
         NODE_LIST_LENGTH, NODE_LIST
@@ -33,6 +33,16 @@ public class Payload {
     public static final int ACTUAL_PAYLOAD_LENGTH_SIZE_BYTES = 4;
     public static final int NODE_LIST_LENGTH_SIZE_BYTES = 4;
     public static final int CUSTOM_VALUE_LENGTH_SIZE_BYTES = 4;
+    public static final int RING_ID_SIZE_BYTES = 4;
+    public static final int HOP_COUNT_SIZE_BYTES = 1;
+    public static final int FORWARDING_FLAGS_SIZE_BYTES = 1;
+    public static final int TIME_TO_LIVE_SIZE_BYTES = 4;
+
+    // Client requests that have been relayed this many times are answered with a failure instead of being relayed again
+    public static final int MAX_HOP_COUNT = 64;
+
+    // Forwarding flags - The node that owns the key answers the client directly and notifies the return node with CLIENT_FWD_COMPLETE
+    public static final byte FLAG_DIRECT_REPLY = 0x01;
 
     // Start indexes - Standard Request payload
     public final static int REQUEST_CODE_START_INDEX = 0;
@@ -45,13 +55,17 @@ public class Payload {
     public final static int RESPONSE_VALUE_LENGTH_START_INDEX = RESPONSE_CODE_START_INDEX + COMMAND_CODE_SIZE_BYTES;
     public final static int RESPONSE_VALUE_START_INDEX = RESPONSE_VALUE_LENGTH_START_INDEX + VALUE_LENGTH_SIZE_BYTES;
 
-    // Start indexes - Forwarding messages (includes client IP:Port and return node IP:Port)
+    // Start indexes - Forwarding messages (includes client IP:Port, return node IP:Port, the ring ID of the key, the hop count and flags)
+    // The routing fields have a fixed size and are rewritten in place by every hop, so the forwarded payload is never nested again
     public final static int CLIENT_FORWARD_REQUEST_START_INDEX = 0;
     public final static int CLIENT_FORWARD_RETURN_IP_START_INDEX = CLIENT_FORWARD_REQUEST_START_INDEX + COMMAND_CODE_SIZE_BYTES;
     public final static int CLIENT_FORWARD_RETURN_PORT_START_INDEX = CLIENT_FORWARD_RETURN_IP_START_INDEX + IP_SIZE_BYTES;
     public final static int CLIENT_FORWARD_CLIENT_IP_START_INDEX = CLIENT_FORWARD_RETURN_PORT_START_INDEX + PORT_SIZE_BYTES;
     public final static int CLIENT_FORWARD_CLIENT_PORT_START_INDEX = CLIENT_FORWARD_CLIENT_IP_START_INDEX + IP_SIZE_BYTES;
-    public final static int CLIENT_FORWARD_PAYLOAD_LENGTH_START_INDEX = CLIENT_FORWARD_CLIENT_PORT_START_INDEX + PORT_SIZE_BYTES;
+    public final static int CLIENT_FORWARD_RING_ID_START_INDEX = CLIENT_FORWARD_CLIENT_PORT_START_INDEX + PORT_SIZE_BYTES;
+    public final static int CLIENT_FORWARD_HOP_COUNT_START_INDEX = CLIENT_FORWARD_RING_ID_START_INDEX + RING_ID_SIZE_BYTES;
+    public final static int CLIENT_FORWARD_FLAGS_START_INDEX = CLIENT_FORWARD_HOP_COUNT_START_INDEX + HOP_COUNT_SIZE_BYTES;
+    public final static int CLIENT_FORWARD_PAYLOAD_LENGTH_START_INDEX = CLIENT_FORWARD_FLAGS_START_INDEX + FORWARDING_FLAGS_SIZE_BYTES;
     public final static int CLIENT_FORWARD_PAYLOAD_START_INDEX = CLIENT_FORWARD_PAYLOAD_LENGTH_START_INDEX + ACTUAL_PAYLOAD_LENGTH_SIZE_BYTES;
 
     // Start indexes - Forwarding messages (includes return node IP:Port)
@@ -118,6 +132,22 @@ public class Payload {
     }
 
 
+    /**
+     * Builds a request payload with a request code, key, value and the time to live of the value
+     * @param requestCode - request command (PUT_WITH_TTL or REPLICA_PUT)
+     * @param key - key
+     * @param value - value associated with key (Max. length = 15000 bytes)
+     * @param timeToLiveSeconds - seconds until the value expires, 0 if it does not expire
+     * @return - byte array representing request payload
+     */
+    public static byte[] buildStandardRequestPayload(byte requestCode, byte[] key, byte[] value, int timeToLiveSeconds) {
+        byte[] standardPayload = buildStandardRequestPayload(requestCode, key, value);
+        byte[] requestPayload = Arrays.copyOf(standardPayload, standardPayload.length + TIME_TO_LIVE_SIZE_BYTES);
+        ByteBuffer.wrap(requestPayload).order(ByteOrder.LITTLE_ENDIAN).putInt(standardPayload.length, timeToLiveSeconds);
+        return requestPayload;
+    }
+
+
     /**
      * Builds a response payload with response code and value
      * @param responseCode - response code
@@ -166,17 +196,18 @@ public class Payload {
 
 
     /**
-     * Builds a client forwarding request payload
+     * Builds a client forwarding request payload for the first hop (hop count 1, no flags)
      * @param requestCode
      * @param returnAddress
      * @param returnPort
      * @param clientAddress
      * @param clientPort
+     * @param ringID - Ring ID of the key in the forwarded request
      * @param requestPayloadToForward
      * @return
      */
-    public static byte[] buildClientForwardingRequestPayload(byte requestCode, InetAddress returnAddress, int returnPort, InetAddress clientAddress, int clientPort, byte[] requestPayloadToForward) {
-        byte[] requestPayload = new byte[COMMAND_CODE_SIZE_BYTES + IP_SIZE_BYTES + PORT_SIZE_BYTES + IP_SIZE_BYTES + PORT_SIZE_BYTES + ACTUAL_PAYLOAD_LENGTH_SIZE_BYTES + requestPayloadToForward.length];
+    public static byte[] buildClientForwardingRequestPayload(byte requestCode, InetAddress returnAddress, int returnPort, InetAddress clientAddress, int clientPort, int ringID, byte[] requestPayloadToForward) {
+        byte[] requestPayload = new byte[COMMAND_CODE_SIZE_BYTES + IP_SIZE_BYTES + PORT_SIZE_BYTES + IP_SIZE_BYTES + PORT_SIZE_BYTES + RING_ID_SIZE_BYTES + HOP_COUNT_SIZE_BYTES + FORWARDING_FLAGS_SIZE_BYTES + ACTUAL_PAYLOAD_LENGTH_SIZE_BYTES + requestPayloadToForward.length];
         // Add request code
         requestPayload[0] = requestCode;
         // Add return IP
@@ -185,15 +216,18 @@ public class Payload {
         // Add client IP
         byte[] clientIPAsBytes = clientAddress.getAddress();
         System.arraycopy(clientIPAsBytes, 0, requestPayload, CLIENT_FORWARD_CLIENT_IP_START_INDEX, IP_SIZE_BYTES);
+        // Add hop count
+        requestPayload[CLIENT_FORWARD_HOP_COUNT_START_INDEX] = 1;
         // Add request payload to forward
         System.arraycopy(requestPayloadToForward, 0, requestPayload, CLIENT_FORWARD_PAYLOAD_START_INDEX, requestPayloadToForward.length);
-        // Add request payload length, return port and client port
+        // Add request payload length, return port, client port and ring ID
         int valueLength = requestPayloadToForward.length;
         ByteBuffer buffer = ByteBuffer.wrap(requestPayload);
         buffer.order(ByteOrder.LITTLE_ENDIAN);
         buffer.putInt(CLIENT_FORWARD_PAYLOAD_LENGTH_START_INDEX, valueLength);
         buffer.putInt(CLIENT_FORWARD_RETURN_PORT_START_INDEX, returnPort);
         buffer.putInt(CLIENT_FORWARD_CLIENT_PORT_START_INDEX, clientPort);
+        buffer.putInt(CLIENT_FORWARD_RING_ID_START_INDEX, ringID);
         return buffer.array();
     }
 
@@ -272,6 +306,15 @@ public class Payload {
                 case CLIENT_PORT:
                     elementToReturn = Arrays.copyOfRange(payload, CLIENT_FORWARD_CLIENT_PORT_START_INDEX, CLIENT_FORWARD_CLIENT_PORT_START_INDEX + PORT_SIZE_BYTES);
                     break;
+                case RING_ID:
+                    elementToReturn = Arrays.copyOfRange(payload, CLIENT_FORWARD_RING_ID_START_INDEX, CLIENT_FORWARD_RING_ID_START_INDEX + RING_ID_SIZE_BYTES);
+                    break;
+                case HOP_COUNT:
+                    elementToReturn = Arrays.copyOfRange(payload, CLIENT_FORWARD_HOP_COUNT_START_INDEX, CLIENT_FORWARD_HOP_COUNT_START_INDEX + HOP_COUNT_SIZE_BYTES);
+                    break;
+                case FORWARDING_FLAGS:
+                    elementToReturn = Arrays.copyOfRange(payload, CLIENT_FORWARD_FLAGS_START_INDEX, CLIENT_FORWARD_FLAGS_START_INDEX + FORWARDING_FLAGS_SIZE_BYTES);
+                    break;
                 case REGULAR_FORWARD_PAYLOAD_LENGTH:
                     elementToReturn = Arrays.copyOfRange(payload, REGULAR_FORWARD_PAYLOAD_LENGTH_START_INDEX, REGULAR_FORWARD_PAYLOAD_LENGTH_START_INDEX + ACTUAL_PAYLOAD_LENGTH_SIZE_BYTES);
                     break;
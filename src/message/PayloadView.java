@@ -0,0 +1,379 @@
+package message;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import utility.HashUtility;
+
+/**
+ * Flyweight view over a payload. Elements are read in place using the same offsets as Payload,
+ * so no bytes are copied when the view is moved to a payload or when fixed size elements are read.
+ * A view can be re-pointed at another payload at any time and is not thread safe.
+ */
+public class PayloadView {
+
+    private ByteBuffer buffer;
+    private int offset;
+    private int length;
+
+
+    /**
+     * Points the view at a payload
+     * @param buffer - Buffer holding the payload
+     * @param offset - Absolute index of the first payload byte in the buffer
+     * @param length - Length of the payload in bytes
+     * @return - This view
+     * @throws InvalidMessageException - if the range does not lie inside the buffer
+     */
+    public PayloadView wrap(ByteBuffer buffer, int offset, int length) throws InvalidMessageException {
+        if(buffer == null || offset < 0 || length < 0 || offset + length > buffer.limit()) {
+            throw new InvalidMessageException("Invalid payload");
+        }
+        this.buffer = buffer.order() == ByteOrder.LITTLE_ENDIAN ? buffer : buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        this.offset = offset;
+        this.length = length;
+        return this;
+    }
+
+
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+
+    public int getOffset() {
+        return offset;
+    }
+
+
+    public int getLength() {
+        return length;
+    }
+
+
+    /**
+     * Checks that an element lies within the payload
+     * @param elementStart - Start index of element relative to payload
+     * @param elementLength - Length of element
+     * @throws InvalidMessageException
+     */
+    private void checkRange(int elementStart, int elementLength) throws InvalidMessageException {
+        if(elementStart < 0 || elementLength < 0 || elementStart + elementLength > length) {
+            throw new InvalidMessageException("Invalid payload");
+        }
+    }
+
+
+    public byte getCommand() throws InvalidMessageException {
+        checkRange(Payload.REQUEST_CODE_START_INDEX, Payload.COMMAND_CODE_SIZE_BYTES);
+        return buffer.get(offset + Payload.REQUEST_CODE_START_INDEX);
+    }
+
+
+    /**
+     * Overwrites the command byte in place
+     * @param command - New command
+     * @throws InvalidMessageException
+     */
+    public void setCommand(byte command) throws InvalidMessageException {
+        checkRange(Payload.REQUEST_CODE_START_INDEX, Payload.COMMAND_CODE_SIZE_BYTES);
+        buffer.put(offset + Payload.REQUEST_CODE_START_INDEX, command);
+    }
+
+
+    /**
+     * Gets the absolute index of the key in the buffer
+     * @return - Index of the key
+     * @throws InvalidMessageException
+     */
+    public int getKeyOffset() throws InvalidMessageException {
+        checkRange(Payload.KEY_START_INDEX, Payload.KEY_SIZE_BYTES);
+        return offset + Payload.KEY_START_INDEX;
+    }
+
+
+    /**
+     * Copies the key into the destination array
+     * @param destination - Array of at least KEY_SIZE_BYTES
+     * @throws InvalidMessageException
+     */
+    public void copyKey(byte[] destination) throws InvalidMessageException {
+        copyBytes(getKeyOffset(), destination, 0, Payload.KEY_SIZE_BYTES);
+    }
+
+
+    /**
+     * Copies the key into a new array
+     * @return - Key as bytes
+     * @throws InvalidMessageException
+     */
+    public byte[] getKey() throws InvalidMessageException {
+        byte[] key = new byte[Payload.KEY_SIZE_BYTES];
+        copyKey(key);
+        return key;
+    }
+
+
+    /**
+     * Decodes the key as a UTF-8 string
+     * @return - Key as string
+     * @throws InvalidMessageException
+     */
+    public String getKeyAsString() throws InvalidMessageException {
+        return decodeUTF8(getKeyOffset(), Payload.KEY_SIZE_BYTES);
+    }
+
+
+    /**
+     * Hashes the key in place. Equal to HashUtility.simpleHash(getKeyAsString(), range).
+     * @param range - Range of hash value to produce
+     * @return - Hash value of the key
+     * @throws InvalidMessageException
+     */
+    public int getKeyHash(int range) throws InvalidMessageException {
+        int keyOffset = getKeyOffset();
+        if(buffer.hasArray()) {
+            return HashUtility.simpleHash(buffer.array(), buffer.arrayOffset() + keyOffset, Payload.KEY_SIZE_BYTES, range);
+        }
+        byte[] key = new byte[Payload.KEY_SIZE_BYTES];
+        copyKey(key);
+        return HashUtility.simpleHash(key, 0, key.length, range);
+    }
+
+
+    /**
+     * Gets the request value length
+     * @return - Value length in bytes
+     * @throws InvalidMessageException
+     * @throws BadValueLengthException - if the length is not in (0, MAX_VALUE_SIZE_BYTES]
+     */
+    public int getRequestValueLength() throws InvalidMessageException, BadValueLengthException {
+        checkRange(Payload.REQUEST_VALUE_LENGTH_START_INDEX, Payload.VALUE_LENGTH_SIZE_BYTES);
+        short valueLength = buffer.getShort(offset + Payload.REQUEST_VALUE_LENGTH_START_INDEX);
+        if(valueLength <= 0 || valueLength > Payload.MAX_VALUE_SIZE_BYTES) {
+            throw new BadValueLengthException();
+        }
+        return valueLength;
+    }
+
+
+    /**
+     * Gets the absolute index of the request value in the buffer
+     * @return - Index of the value
+     * @throws InvalidMessageException
+     */
+    public int getRequestValueOffset() throws InvalidMessageException {
+        checkRange(Payload.REQUEST_VALUE_START_INDEX, 0);
+        return offset + Payload.REQUEST_VALUE_START_INDEX;
+    }
+
+
+    /**
+     * Copies the request value into a new array. Bytes missing at the end of a truncated payload are zero.
+     * @return - Value as bytes
+     * @throws InvalidMessageException
+     * @throws BadValueLengthException
+     */
+    public byte[] getRequestValue() throws InvalidMessageException, BadValueLengthException {
+        int valueLength = getRequestValueLength();
+        int valueOffset = getRequestValueOffset();
+        byte[] value = new byte[valueLength];
+        copyBytes(valueOffset, value, 0, Math.min(valueLength, offset + length - valueOffset));
+        return value;
+    }
+
+
+    /**
+     * Decodes the request value as a UTF-8 string
+     * @return - Value as string
+     * @throws InvalidMessageException
+     * @throws BadValueLengthException
+     */
+    public String getRequestValueAsString() throws InvalidMessageException, BadValueLengthException {
+        int valueLength = getRequestValueLength();
+        int valueOffset = getRequestValueOffset();
+        if(valueOffset + valueLength > offset + length) {
+            return new String(getRequestValue(), StandardCharsets.UTF_8);
+        }
+        return decodeUTF8(valueOffset, valueLength);
+    }
+
+
+    /**
+     * Gets the time to live carried after the request value of a PUT_WITH_TTL or REPLICA_PUT payload
+     * @return - Seconds until the value expires, 0 if the payload carries none
+     * @throws InvalidMessageException
+     * @throws BadValueLengthException
+     */
+    public int getTimeToLive() throws InvalidMessageException, BadValueLengthException {
+        int timeToLiveIndex = Payload.REQUEST_VALUE_START_INDEX + getRequestValueLength();
+        if(timeToLiveIndex + Payload.TIME_TO_LIVE_SIZE_BYTES > length) {
+            return 0;
+        }
+        return getInt(timeToLiveIndex);
+    }
+
+
+    public InetAddress getReturnAddress() throws InvalidMessageException, UnknownHostException {
+        return getAddress(Payload.REGULAR_FORWARD_RETURN_IP_START_INDEX);
+    }
+
+
+    public int getReturnPort() throws InvalidMessageException {
+        return getInt(Payload.REGULAR_FORWARD_RETURN_PORT_START_INDEX);
+    }
+
+
+    public InetAddress getClientAddress() throws InvalidMessageException, UnknownHostException {
+        return getAddress(Payload.CLIENT_FORWARD_CLIENT_IP_START_INDEX);
+    }
+
+
+    public int getClientPort() throws InvalidMessageException {
+        return getInt(Payload.CLIENT_FORWARD_CLIENT_PORT_START_INDEX);
+    }
+
+
+    /**
+     * Gets the ring ID of the key carried by a client forwarding payload
+     * @return - Ring ID computed by the node that received the request from the client
+     * @throws InvalidMessageException
+     */
+    public int getRingID() throws InvalidMessageException {
+        return getInt(Payload.CLIENT_FORWARD_RING_ID_START_INDEX);
+    }
+
+
+    /**
+     * Gets the number of times a client forwarding payload has been sent between nodes
+     * @return - Hop count
+     * @throws InvalidMessageException
+     */
+    public int getHopCount() throws InvalidMessageException {
+        checkRange(Payload.CLIENT_FORWARD_HOP_COUNT_START_INDEX, Payload.HOP_COUNT_SIZE_BYTES);
+        return buffer.get(offset + Payload.CLIENT_FORWARD_HOP_COUNT_START_INDEX) & 0xFF;
+    }
+
+
+    /**
+     * Overwrites the hop count of a client forwarding payload in place
+     * @param hopCount - Hop count (at most 255)
+     * @throws InvalidMessageException
+     */
+    public void setHopCount(int hopCount) throws InvalidMessageException {
+        checkRange(Payload.CLIENT_FORWARD_HOP_COUNT_START_INDEX, Payload.HOP_COUNT_SIZE_BYTES);
+        buffer.put(offset + Payload.CLIENT_FORWARD_HOP_COUNT_START_INDEX, (byte) Math.min(hopCount, 0xFF));
+    }
+
+
+    /**
+     * Gets the flags of a client forwarding payload
+     * @return - Flags (see Payload.FLAG_DIRECT_REPLY)
+     * @throws InvalidMessageException
+     */
+    public byte getForwardingFlags() throws InvalidMessageException {
+        checkRange(Payload.CLIENT_FORWARD_FLAGS_START_INDEX, Payload.FORWARDING_FLAGS_SIZE_BYTES);
+        return buffer.get(offset + Payload.CLIENT_FORWARD_FLAGS_START_INDEX);
+    }
+
+
+    /**
+     * Overwrites the flags of a client forwarding payload in place
+     * @param flags - Flags
+     * @throws InvalidMessageException
+     */
+    public void setForwardingFlags(byte flags) throws InvalidMessageException {
+        checkRange(Payload.CLIENT_FORWARD_FLAGS_START_INDEX, Payload.FORWARDING_FLAGS_SIZE_BYTES);
+        buffer.put(offset + Payload.CLIENT_FORWARD_FLAGS_START_INDEX, flags);
+    }
+
+
+    /**
+     * Points another view at the payload carried by a regular forwarding payload
+     * @param destination - View to point at the forwarded payload
+     * @return - Destination view
+     * @throws InvalidMessageException
+     */
+    public PayloadView getRegularForwardPayload(PayloadView destination) throws InvalidMessageException {
+        return getNestedPayload(Payload.REGULAR_FORWARD_PAYLOAD_LENGTH_START_INDEX, Payload.REGULAR_FORWARD_PAYLOAD_START_INDEX, destination);
+    }
+
+
+    /**
+     * Points another view at the payload carried by a client forwarding payload
+     * @param destination - View to point at the forwarded payload
+     * @return - Destination view
+     * @throws InvalidMessageException
+     */
+    public PayloadView getClientForwardPayload(PayloadView destination) throws InvalidMessageException {
+        return getNestedPayload(Payload.CLIENT_FORWARD_PAYLOAD_LENGTH_START_INDEX, Payload.CLIENT_FORWARD_PAYLOAD_START_INDEX, destination);
+    }
+
+
+    /**
+     * Copies the payload into a new array
+     * @return - Payload as bytes
+     */
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[length];
+        copyTo(bytes, 0);
+        return bytes;
+    }
+
+
+    /**
+     * Copies the payload into an existing array
+     * @param destination - Array to copy into
+     * @param destinationIndex - Index in the array to copy to
+     */
+    public void copyTo(byte[] destination, int destinationIndex) {
+        copyBytes(offset, destination, destinationIndex, length);
+    }
+
+
+    private PayloadView getNestedPayload(int lengthIndex, int payloadIndex, PayloadView destination) throws InvalidMessageException {
+        int nestedLength = getInt(lengthIndex);
+        checkRange(payloadIndex, 0);
+        // Forwarded payloads may have been truncated to the datagram size
+        nestedLength = Math.max(0, Math.min(nestedLength, length - payloadIndex));
+        return destination.wrap(buffer, offset + payloadIndex, nestedLength);
+    }
+
+
+    private int getInt(int elementStart) throws InvalidMessageException {
+        checkRange(elementStart, Payload.ACTUAL_PAYLOAD_LENGTH_SIZE_BYTES);
+        return buffer.getInt(offset + elementStart);
+    }
+
+
+    private InetAddress getAddress(int elementStart) throws InvalidMessageException, UnknownHostException {
+        checkRange(elementStart, Payload.IP_SIZE_BYTES);
+        byte[] ip = new byte[Payload.IP_SIZE_BYTES];
+        copyBytes(offset + elementStart, ip, 0, Payload.IP_SIZE_BYTES);
+        return InetAddress.getByAddress(ip);
+    }
+
+
+    private void copyBytes(int absoluteIndex, byte[] destination, int destinationIndex, int count) {
+        if(buffer.hasArray()) {
+            System.arraycopy(buffer.array(), buffer.arrayOffset() + absoluteIndex, destination, destinationIndex, count);
+        } else {
+            for(int i = 0; i < count; i++) {
+                destination[destinationIndex + i] = buffer.get(absoluteIndex + i);
+            }
+        }
+    }
+
+
+    private String decodeUTF8(int absoluteIndex, int count) {
+        if(buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + absoluteIndex, count, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[count];
+        copyBytes(absoluteIndex, bytes, 0, count);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
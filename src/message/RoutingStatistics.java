@@ -0,0 +1,129 @@
+package message;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters for client requests that are routed between nodes in client forwarding messages
+ */
+public class RoutingStatistics {
+
+    // Number of forwarded requests received per hop count (hop counts above MAX_HOP_COUNT share the last slot)
+    private static final AtomicLongArray receivedHopCounts = new AtomicLongArray(Payload.MAX_HOP_COUNT + 1);
+
+    private static final AtomicLong relayedCount = new AtomicLong();
+    private static final AtomicLong relayedBytes = new AtomicLong();
+    private static final AtomicLong hopLimitExceededCount = new AtomicLong();
+
+
+    /**
+     * Records a forwarded request received by this node
+     * @param hopCount - Hop count of the request
+     */
+    public static void recordReceived(int hopCount) {
+        receivedHopCounts.incrementAndGet(Math.max(0, Math.min(hopCount, Payload.MAX_HOP_COUNT)));
+    }
+
+
+    /**
+     * Records a request sent to another node
+     * @param messageLength - Length of the sent message (header + payload) in bytes
+     */
+    public static void recordRelayed(int messageLength) {
+        relayedCount.incrementAndGet();
+        relayedBytes.addAndGet(messageLength);
+    }
+
+
+    /**
+     * Records a request that was answered with a failure because it reached MAX_HOP_COUNT
+     */
+    public static void recordHopLimitExceeded() {
+        hopLimitExceededCount.incrementAndGet();
+    }
+
+
+    /**
+     * Gets the number of received forwarded requests with a hop count
+     * @param hopCount - Hop count between 0 and MAX_HOP_COUNT
+     * @return - Number of requests
+     */
+    public static long getReceivedCount(int hopCount) {
+        return receivedHopCounts.get(hopCount);
+    }
+
+
+    public static long getReceivedCount() {
+        long count = 0;
+        for(int i = 0; i < receivedHopCounts.length(); i++) {
+            count += receivedHopCounts.get(i);
+        }
+        return count;
+    }
+
+
+    /**
+     * Gets the average hop count of received forwarded requests
+     * @return - Average hop count or 0 if no requests have been received
+     */
+    public static double getAverageHopCount() {
+        long count = 0;
+        long hops = 0;
+        for(int i = 0; i < receivedHopCounts.length(); i++) {
+            long received = receivedHopCounts.get(i);
+            count += received;
+            hops += received * i;
+        }
+        if(count == 0) {
+            return 0;
+        }
+        return (double) hops / count;
+    }
+
+
+    /**
+     * Gets the highest hop count of received forwarded requests
+     * @return - Highest hop count or 0 if no requests have been received
+     */
+    public static int getMaxHopCount() {
+        for(int i = receivedHopCounts.length() - 1; i > 0; i--) {
+            if(receivedHopCounts.get(i) > 0) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+
+    public static long getRelayedCount() {
+        return relayedCount.get();
+    }
+
+
+    /**
+     * Gets the average size of messages sent to other nodes
+     * @return - Average message size in bytes or 0 if no messages have been sent
+     */
+    public static long getAverageRelayedMessageSize() {
+        long count = relayedCount.get();
+        if(count == 0) {
+            return 0;
+        }
+        return relayedBytes.get() / count;
+    }
+
+
+    public static long getHopLimitExceededCount() {
+        return hopLimitExceededCount.get();
+    }
+
+
+    /**
+     * Prints the routing statistics
+     */
+    public static void printStatistics() {
+        System.out.println("Routing: received=" + getReceivedCount() + " avgHops=" + String.format("%.2f", getAverageHopCount()) +
+                " maxHops=" + getMaxHopCount() + " relayed=" + getRelayedCount() + " avgRelayedBytes=" + getAverageRelayedMessageSize() +
+                " hopLimitExceeded=" + getHopLimitExceededCount());
+    }
+}
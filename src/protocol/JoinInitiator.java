@@ -5,9 +5,11 @@ import command.JOINHandler;
 import command.RequestCodes;
 import command.ResponseCodes;
 import main.Server;
+import message.BufferPool;
 import message.Header;
 import message.InvalidMessageException;
 import message.Message;
+import message.MessageView;
 import message.Payload;
 import nodelist.Node;
 import nodelist.NodeListController;
@@ -18,7 +20,6 @@ import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.SocketTimeoutException;
 import java.util.ArrayList;
-import java.util.Arrays;
 
 public class JoinInitiator implements Runnable {
 
@@ -47,6 +48,7 @@ public class JoinInitiator implements Runnable {
             while(true) {
 
                 DatagramSocket socket = null;
+                byte[] receiveBuffer = null;
                 if(!isJoined && Server.contactNodeAddress != null && Server.contactNodePort >= 0) {
                     try {
                         socket = new DatagramSocket();
@@ -54,19 +56,17 @@ public class JoinInitiator implements Runnable {
                         byte[] header = Header.buildMessageHeader();
                         byte[] message = Message.buildMessage(header, payload);
                         DatagramPacket packet = new DatagramPacket(message, message.length, Server.contactNodeAddress, Server.contactNodePort);
-                        byte[] receiveBuffer = new byte[17000];
+                        receiveBuffer = BufferPool.getInstance().lease(BufferPool.MAX_BUFFER_SIZE);
                         DatagramPacket receivePacket = new DatagramPacket(receiveBuffer, receiveBuffer.length);
 
                         try {
                             socket.send(packet);
                             socket.receive(receivePacket);
-                            byte[] data = receivePacket.getData();
-                            byte[] extractedHeader = Message.extractHeader(data);
-                            byte[] extractedPayload = Message.extractPayload(data);
+                            MessageView messageView = new MessageView().wrap(receivePacket);
 
                             // Compare unique IDs
-                            if(Arrays.equals(header, extractedHeader)) {
-                                if(extractedPayload[0] == ResponseCodes.JOIN_REP) {
+                            if(messageView.headerEquals(header)) {
+                                if(messageView.getPayload().getCommand() == ResponseCodes.JOIN_REP) {
 //                                    System.out.println("Join Response message received");
                                     JOINHandler.handleJOINResponse(receivePacket);
                                 }
@@ -81,6 +81,7 @@ public class JoinInitiator implements Runnable {
                         if(socket != null) {
                             socket.close();
                         }
+                        BufferPool.getInstance().release(receiveBuffer);
                     }
                 }
 
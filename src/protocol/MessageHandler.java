@@ -1,38 +1,87 @@
 package protocol;
 
 import command.*;
-import message.Header;
+import message.BadValueLengthException;
+import message.BufferPool;
 import message.InvalidMessageException;
 import message.Message;
+import message.MessageView;
+import message.MessageWriter;
 import message.Payload;
+import message.PayloadView;
 
 import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 
 public class MessageHandler implements Runnable {
 
+    // Views that decode the incoming and outgoing messages of each thread
+    private static final ThreadLocal<MessageView> incomingViews = MessageView.createPerThread();
+    private static final ThreadLocal<MessageView> outgoingViews = MessageView.createPerThread();
+
     private DatagramPacket incomingPacket = null;
 
+    // Notice for the return node of a forwarded request that was answered directly
+    private DatagramPacket completionPacket = null;
+
     public MessageHandler(DatagramPacket incomingPacket) {
         this.incomingPacket = incomingPacket;
     }
 
 
     protected DatagramPacket handleUNKNOWN() throws InvalidMessageException {
-        byte[] message = incomingPacket.getData();
-        byte[] header = Message.getBytesInRange(message, 0, Header.HEADER_SIZE_BYTES);
+        byte[] header = incomingViews.get().wrap(incomingPacket).getHeader();
         byte[] responsePayload = null;
 
         responsePayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.UNRECOGNIZED_COMMAND);
-        message = Message.buildMessage(header, responsePayload);
-        return new DatagramPacket(message, message.length, incomingPacket.getAddress(), incomingPacket.getPort());
+        return Message.buildPacket(header, responsePayload, incomingPacket.getAddress(), incomingPacket.getPort());
+    }
+
+
+    /**
+     * Builds a system overload response for a message that could not be handled.
+     * Client requests are answered directly, forwarded client requests are answered through the node
+     * that received them from the client, and messages between nodes are dropped.
+     * @return - Packet to send or null if no response should be sent
+     * @throws InvalidMessageException
+     * @throws BadValueLengthException
+     * @throws UnknownHostException
+     */
+    protected DatagramPacket handleOVERLOAD() throws InvalidMessageException, BadValueLengthException, UnknownHostException {
+        MessageView messageView = incomingViews.get().wrap(incomingPacket);
+        PayloadView payload = messageView.getPayload();
+
+        switch(payload.getCommand()) {
+            case RequestCodes.GET:
+            case RequestCodes.PUT:
+            case RequestCodes.PUT_WITH_TTL:
+            case RequestCodes.REMOVE:
+                byte[] stdPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.SYSTEM_OVERLOAD);
+                return Message.buildPacket(messageView.getHeader(), stdPayload, incomingPacket.getAddress(), incomingPacket.getPort());
+
+            case RequestCodes.FWD_GET:
+            case RequestCodes.FWD_PUT:
+            case RequestCodes.FWD_REMOVE:
+            case RequestCodes.POTENTIAL_IMS_GET:
+            case RequestCodes.POTENTIAL_IMS_PUT:
+            case RequestCodes.POTENTIAL_IMS_REMOVE:
+                InetAddress returnAddress = payload.getReturnAddress();
+                int returnPort = payload.getReturnPort();
+                InetAddress clientAddress = payload.getClientAddress();
+                int clientPort = payload.getClientPort();
+                return MessageWriter.buildClientForwardingResponsePacket(messageView, ResponseCodes.SYSTEM_OVERLOAD, clientAddress, clientPort,
+                        returnAddress, returnPort);
+
+            default:
+                return null;
+        }
     }
 
 
     protected DatagramPacket handleMessage() throws Exception {
         DatagramPacket packetToSend = null;
-        byte[] data = incomingPacket.getData();
-        byte[] payload = Message.extractPayload(data);
-        byte command = payload[0];
+        byte command = incomingViews.get().wrap(incomingPacket).getPayload().getCommand();
         switch(command) {
             case RequestCodes.GET:
 //                System.out.println("GET message received");
@@ -55,6 +104,7 @@ public class MessageHandler implements Runnable {
                 break;
 
             case RequestCodes.PUT:
+            case RequestCodes.PUT_WITH_TTL:
 //                System.out.println("PUT message received");
                 packetToSend = PUTHandler.handleClientPUT(incomingPacket);
                 break;
@@ -144,18 +194,69 @@ public class MessageHandler implements Runnable {
 
 
 
+    /**
+     * Sets up direct replies for client requests. A client request that this node forwards is flagged
+     * and recorded in the pending request table if direct replies are enabled. A response to a flagged
+     * forwarded request is sent straight to the client instead of to the return node, and the return node
+     * gets a CLIENT_FWD_COMPLETE notice.
+     * @param packetToSend - Packet built for the incoming packet (may be null)
+     * @return - Packet to send
+     * @throws InvalidMessageException
+     * @throws UnknownHostException
+     */
+    protected DatagramPacket applyDirectReply(DatagramPacket packetToSend) throws InvalidMessageException, UnknownHostException {
+        if(packetToSend == null) {
+            return null;
+        }
+
+        PayloadView incomingPayload = incomingViews.get().wrap(incomingPacket).getPayload();
+        MessageView outgoingView = outgoingViews.get().wrap(packetToSend);
+        byte incomingCommand = incomingPayload.getCommand();
+        byte outgoingCommand = outgoingView.getPayload().getCommand();
+
+        if(RequestCodes.isClientRequestCode(incomingCommand) && RequestCodes.isForwardedClientRequestCode(outgoingCommand)) {
+            PendingRequestTable pendingRequestTable = PendingRequestTable.getInstance();
+            if(pendingRequestTable.isDirectReplyEnabled()) {
+                outgoingView.getPayload().setForwardingFlags(Payload.FLAG_DIRECT_REPLY);
+                pendingRequestTable.add(outgoingView.getHeader(), incomingPacket.getAddress(), incomingPacket.getPort());
+            }
+        } else if(RequestCodes.isForwardedClientRequestCode(incomingCommand) && outgoingCommand == ResponseCodes.CLIENT_FWD_RESPONSE &&
+                (incomingPayload.getForwardingFlags() & Payload.FLAG_DIRECT_REPLY) != 0) {
+            byte[] completionPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.CLIENT_FWD_COMPLETE);
+            completionPacket = Message.buildPacket(outgoingView.getHeader(), completionPayload, packetToSend.getAddress(), packetToSend.getPort());
+            return outgoingView.toUnwrappedPacket();
+        }
+
+        return packetToSend;
+    }
+
+
     @Override
     public void run() {
         if(incomingPacket != null) {
             DatagramPacket packetToSend = null;
             try {
                 packetToSend = handleMessage();
+                packetToSend = applyDirectReply(packetToSend);
             } catch(Exception e) {
                 e.printStackTrace();
             }
             if(packetToSend != null) {
                 UDPSend.sendPacket(packetToSend);
             }
+            if(completionPacket != null) {
+                UDPSend.sendPacket(completionPacket);
+            }
+
+            // Return the receive buffer and the response buffers to the pool
+            BufferPool bufferPool = BufferPool.getInstance();
+            bufferPool.release(incomingPacket.getData());
+            if(packetToSend != null && packetToSend.getData() != incomingPacket.getData()) {
+                bufferPool.release(packetToSend.getData());
+            }
+            if(completionPacket != null) {
+                bufferPool.release(completionPacket.getData());
+            }
         }
     }
 }
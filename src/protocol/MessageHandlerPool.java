@@ -0,0 +1,229 @@
+package protocol;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of worker threads that run message handlers. Work is rejected instead of queued
+ * once the queue is full so that the receiver can answer with a system overload response.
+ *
+ * In virtual thread mode every handler runs on its own virtual thread and the queue depth limits
+ * the number of handlers in flight instead.
+ */
+public class MessageHandlerPool {
+
+    public final static int DEFAULT_WORKER_COUNT = Runtime.getRuntime().availableProcessors() * 4;
+    public final static int DEFAULT_QUEUE_DEPTH = 1024;
+
+    private final ExecutorService executor;
+    private final int workerCount;
+    private final int maxQueueDepth;
+    private final boolean virtualThreads;
+
+    // Only used in virtual thread mode
+    private final Semaphore inFlightPermits;
+
+    // Statistics
+    private final AtomicLong rejectedCount;
+    private final AtomicLong handledCount;
+    private final AtomicLong totalHandlerNanos;
+    private final AtomicLong maxHandlerNanos;
+
+
+    public MessageHandlerPool(int workerCount, int maxQueueDepth) {
+        this(workerCount, maxQueueDepth, false);
+    }
+
+
+    /**
+     * Creates a handler pool
+     * @param workerCount - Number of platform worker threads (unused in virtual thread mode)
+     * @param maxQueueDepth - Max. number of queued handlers, or handlers in flight in virtual thread mode
+     * @param useVirtualThreads - True to run each handler on a virtual thread. Falls back to platform
+     *                          threads if the runtime does not support virtual threads.
+     */
+    public MessageHandlerPool(int workerCount, int maxQueueDepth, boolean useVirtualThreads) {
+        if(workerCount <= 0 || maxQueueDepth <= 0) {
+            throw new IllegalArgumentException();
+        }
+
+        this.workerCount = workerCount;
+        this.maxQueueDepth = maxQueueDepth;
+
+        ExecutorService virtualThreadExecutor = null;
+        if(useVirtualThreads) {
+            virtualThreadExecutor = createVirtualThreadExecutor();
+            if(virtualThreadExecutor == null) {
+                System.err.println("WARNING: Virtual threads are not supported by this runtime. Using platform threads.");
+            }
+        }
+
+        if(virtualThreadExecutor != null) {
+            executor = virtualThreadExecutor;
+            virtualThreads = true;
+            inFlightPermits = new Semaphore(maxQueueDepth);
+        } else {
+            executor = new ThreadPoolExecutor(workerCount, workerCount, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(maxQueueDepth), new ThreadPoolExecutor.AbortPolicy());
+            virtualThreads = false;
+            inFlightPermits = null;
+        }
+
+        rejectedCount = new AtomicLong();
+        handledCount = new AtomicLong();
+        totalHandlerNanos = new AtomicLong();
+        maxHandlerNanos = new AtomicLong();
+    }
+
+
+    /**
+     * Attempts to queue a handler for execution
+     * @param handler - Handler to run
+     * @return - True if the handler was accepted, false if the pool is saturated
+     */
+    public boolean submit(final Runnable handler) {
+        if(inFlightPermits != null && !inFlightPermits.tryAcquire()) {
+            rejectedCount.incrementAndGet();
+            return false;
+        }
+
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    long start = System.nanoTime();
+                    try {
+                        handler.run();
+                    } finally {
+                        recordLatency(System.nanoTime() - start);
+                        if(inFlightPermits != null) {
+                            inFlightPermits.release();
+                        }
+                    }
+                }
+            });
+            return true;
+        } catch(RejectedExecutionException e) {
+            if(inFlightPermits != null) {
+                inFlightPermits.release();
+            }
+            rejectedCount.incrementAndGet();
+            return false;
+        }
+    }
+
+
+    /**
+     * Creates an executor that starts a new virtual thread for each task
+     * @return - Executor, or null if virtual threads are not available
+     */
+    private static ExecutorService createVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch(Exception e) {
+            return null;
+        }
+    }
+
+
+    private void recordLatency(long nanos) {
+        handledCount.incrementAndGet();
+        totalHandlerNanos.addAndGet(nanos);
+        long max = maxHandlerNanos.get();
+        while(nanos > max && !maxHandlerNanos.compareAndSet(max, nanos)) {
+            max = maxHandlerNanos.get();
+        }
+    }
+
+
+    /**
+     * Gets the number of handlers waiting for a worker, or the number of handlers in flight in virtual thread mode
+     * @return - Current queue depth
+     */
+    public int getQueueDepth() {
+        if(virtualThreads) {
+            return maxQueueDepth - inFlightPermits.availablePermits();
+        }
+        return ((ThreadPoolExecutor) executor).getQueue().size();
+    }
+
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+
+    public boolean isUsingVirtualThreads() {
+        return virtualThreads;
+    }
+
+
+    public int getActiveWorkerCount() {
+        if(virtualThreads) {
+            return getQueueDepth();
+        }
+        return ((ThreadPoolExecutor) executor).getActiveCount();
+    }
+
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+
+    public long getHandledCount() {
+        return handledCount.get();
+    }
+
+
+    /**
+     * Gets the average time spent running a handler
+     * @return - Average handler latency in microseconds
+     */
+    public long getAverageHandlerLatencyMicros() {
+        long handled = handledCount.get();
+        if(handled == 0) {
+            return 0;
+        }
+        return TimeUnit.NANOSECONDS.toMicros(totalHandlerNanos.get() / handled);
+    }
+
+
+    /**
+     * Gets the longest time spent running a handler
+     * @return - Max handler latency in microseconds
+     */
+    public long getMaxHandlerLatencyMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxHandlerNanos.get());
+    }
+
+
+    /**
+     * Prints the pool statistics
+     */
+    public void printStatistics() {
+        System.out.println("Handler pool: " + (virtualThreads ? "virtual threads" : "workers=" + workerCount) +
+                " active=" + getActiveWorkerCount() + " queue=" + getQueueDepth() + "/" + maxQueueDepth +
+                " handled=" + getHandledCount() + " rejected=" + getRejectedCount() +
+                " avgLatencyUs=" + getAverageHandlerLatencyMicros() + " maxLatencyUs=" + getMaxHandlerLatencyMicros());
+    }
+
+
+    /**
+     * Stops accepting new handlers
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
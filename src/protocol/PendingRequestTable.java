@@ -0,0 +1,195 @@
+package protocol;
+
+import command.ResponseCodes;
+import message.BufferPool;
+import message.Message;
+import message.Payload;
+
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of client requests that this node forwarded with the direct reply flag set.
+ * The node that owns the key answers the client itself and only sends a CLIENT_FWD_COMPLETE
+ * notice back, so all that is kept per request is the time it was forwarded and the client address.
+ * Requests that are not completed within REQUEST_TIMEOUT are counted as timed out and the client is sent
+ * SYSTEM_OVERLOAD, so it retries instead of waiting for an answer the owning node may never have sent.
+ * If only the notice was lost, the client already has its answer and ignores the second response to the request.
+ */
+public class PendingRequestTable {
+
+    public static final long REQUEST_TIMEOUT = 5000;
+    public static final int DEFAULT_MAX_PENDING_REQUESTS = 65536;
+
+    private static PendingRequestTable singletonInstance;
+
+    private static class PendingRequest {
+        private final long forwardedMillis;
+        private final InetAddress clientAddress;
+        private final int clientPort;
+
+        private PendingRequest(long forwardedMillis, InetAddress clientAddress, int clientPort) {
+            this.forwardedMillis = forwardedMillis;
+            this.clientAddress = clientAddress;
+            this.clientPort = clientPort;
+        }
+    }
+
+    private final ConcurrentHashMap<ByteBuffer, PendingRequest> pendingRequests;
+    private final int maxPendingRequests;
+    private volatile boolean directReplyEnabled;
+
+    // Statistics
+    private final AtomicLong completedCount;
+    private final AtomicLong timedOutCount;
+    private final AtomicLong untrackedCount;
+
+
+    protected PendingRequestTable(int maxPendingRequests) {
+        if(maxPendingRequests <= 0) {
+            throw new IllegalArgumentException();
+        }
+
+        this.pendingRequests = new ConcurrentHashMap<ByteBuffer, PendingRequest>();
+        this.maxPendingRequests = maxPendingRequests;
+        this.completedCount = new AtomicLong();
+        this.timedOutCount = new AtomicLong();
+        this.untrackedCount = new AtomicLong();
+    }
+
+
+    public static synchronized PendingRequestTable getInstance() {
+        if(singletonInstance == null) {
+            singletonInstance = new PendingRequestTable(DEFAULT_MAX_PENDING_REQUESTS);
+        }
+
+        return singletonInstance;
+    }
+
+
+    /**
+     * Sets whether client requests forwarded by this node ask the owning node to answer the client directly
+     * @param enabled - True to enable direct replies
+     */
+    public void setDirectReplyEnabled(boolean enabled) {
+        directReplyEnabled = enabled;
+    }
+
+
+    public boolean isDirectReplyEnabled() {
+        return directReplyEnabled;
+    }
+
+
+    /**
+     * Records a request that was forwarded with the direct reply flag set.
+     * Requests are not recorded once the table holds maxPendingRequests entries.
+     * @param uniqueID - Unique ID of the request
+     * @param clientAddress - Address of the client that sent the request
+     * @param clientPort - Port of the client that sent the request
+     */
+    public void add(byte[] uniqueID, InetAddress clientAddress, int clientPort) {
+        if(pendingRequests.size() >= maxPendingRequests) {
+            untrackedCount.incrementAndGet();
+            return;
+        }
+        pendingRequests.put(ByteBuffer.wrap(uniqueID), new PendingRequest(System.currentTimeMillis(), clientAddress, clientPort));
+    }
+
+
+    /**
+     * Removes a request after the owning node reported that the client was answered
+     * @param uniqueID - Unique ID of the request
+     * @return - True if the request was pending
+     */
+    public boolean complete(byte[] uniqueID) {
+        if(pendingRequests.remove(ByteBuffer.wrap(uniqueID)) != null) {
+            completedCount.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+
+    public boolean isPending(byte[] uniqueID) {
+        return pendingRequests.containsKey(ByteBuffer.wrap(uniqueID));
+    }
+
+
+    /**
+     * Removes all requests that were not completed within REQUEST_TIMEOUT and tells their clients to retry
+     * @return - Number of removed requests
+     */
+    public int removeAllExpiredEntries() {
+        return removeAllExpiredEntries(System.currentTimeMillis());
+    }
+
+
+    /**
+     * Removes all requests that were not completed within REQUEST_TIMEOUT of a time and tells their clients to retry
+     * @param now - Current time
+     * @return - Number of removed requests
+     */
+    protected int removeAllExpiredEntries(long now) {
+        int removed = 0;
+        Iterator<Map.Entry<ByteBuffer, PendingRequest>> iterator = pendingRequests.entrySet().iterator();
+        while(iterator.hasNext()) {
+            Map.Entry<ByteBuffer, PendingRequest> entry = iterator.next();
+            PendingRequest request = entry.getValue();
+            // Only the thread that removes the entry answers, a concurrent complete wins otherwise
+            if(now - request.forwardedMillis >= REQUEST_TIMEOUT && pendingRequests.remove(entry.getKey(), request)) {
+                sendTimeoutResponse(entry.getKey().array(), request.clientAddress, request.clientPort);
+                removed++;
+            }
+        }
+        timedOutCount.addAndGet(removed);
+        return removed;
+    }
+
+
+    /**
+     * Answers the client of a timed out request with SYSTEM_OVERLOAD
+     * @param uniqueID - Unique ID of the request
+     * @param clientAddress - Address of the client
+     * @param clientPort - Port of the client
+     */
+    protected void sendTimeoutResponse(byte[] uniqueID, InetAddress clientAddress, int clientPort) {
+        try {
+            byte[] payload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.SYSTEM_OVERLOAD);
+            DatagramPacket packet = Message.buildPacket(uniqueID, payload, clientAddress, clientPort);
+            UDPSend.sendPacket(packet);
+            BufferPool.getInstance().release(packet.getData());
+        } catch(Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+
+    public int getPendingCount() {
+        return pendingRequests.size();
+    }
+
+
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+
+
+    public long getTimedOutCount() {
+        return timedOutCount.get();
+    }
+
+
+    /**
+     * Prints the pending request statistics
+     */
+    public void printStatistics() {
+        System.out.println("Direct replies: " + (directReplyEnabled ? "enabled" : "disabled") + " pending=" + getPendingCount() +
+                " completed=" + getCompletedCount() + " timedOut=" + getTimedOutCount() + " untracked=" + untrackedCount.get());
+    }
+}
@@ -3,8 +3,10 @@ package protocol;
 import command.CHECKALIVEHandler;
 import command.RequestCodes;
 import command.ResponseCodes;
+import message.BufferPool;
 import message.Header;
 import message.Message;
+import message.MessageView;
 import message.Payload;
 import nodelist.Node;
 import nodelist.NodeListController;
@@ -13,7 +15,6 @@ import nodelist.RemovedNodeList;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.SocketTimeoutException;
-import java.util.Arrays;
 
 public class PredecessorCheckInitiator implements Runnable {
 
@@ -30,6 +31,7 @@ public class PredecessorCheckInitiator implements Runnable {
             while(true) {
 
                 DatagramSocket socket = null;
+                byte[] receiveBuffer = null;
                 Node predecessor = nlc.getPredecessor();
                 if(predecessor != null && JoinInitiator.isJoined) {
 
@@ -39,6 +41,7 @@ public class PredecessorCheckInitiator implements Runnable {
                     try {
                         socket = new DatagramSocket();
                         socket.setSoTimeout(1000);
+                        receiveBuffer = BufferPool.getInstance().lease(BufferPool.MAX_BUFFER_SIZE);
                         byte[] header = Header.buildMessageHeader();
                         byte[] message = Message.buildMessage(header, payload);
                         DatagramPacket packet = new DatagramPacket(message, message.length, predecessor.getHostname(), predecessor.getReceivingPort());
@@ -49,17 +52,14 @@ public class PredecessorCheckInitiator implements Runnable {
                             try {
                                 socket.send(packet);
 
-                                byte[] receiveBuffer = new byte[17000];
                                 DatagramPacket receivePacket = new DatagramPacket(receiveBuffer, receiveBuffer.length);
 
                                 socket.receive(receivePacket);
-                                byte[] data = receivePacket.getData();
-                                byte[] extractedHeader = Message.extractHeader(data);
-                                byte[] extractedPayload = Message.extractPayload(data);
+                                MessageView messageView = new MessageView().wrap(receivePacket);
 
                                 // Compare unique IDs
-                                if(Arrays.equals(header, extractedHeader)) {
-                                    if(extractedPayload[0] == ResponseCodes.PRED_ALIVE_REP) {
+                                if(messageView.headerEquals(header)) {
+                                    if(messageView.getPayload().getCommand() == ResponseCodes.PRED_ALIVE_REP) {
                                         aliveReply = true;
                                         break;
                                     }
@@ -82,6 +82,7 @@ public class PredecessorCheckInitiator implements Runnable {
                         if(socket != null) {
                             socket.close();
                         }
+                        BufferPool.getInstance().release(receiveBuffer);
 
                     }
                 }
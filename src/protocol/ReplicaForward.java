@@ -6,7 +6,6 @@ import message.Message;
 import message.Payload;
 import nodelist.Node;
 import nodelist.NodeListController;
-import utility.UTF8StringUtility;
 
 import java.net.DatagramPacket;
 import java.net.InetAddress;
@@ -22,11 +21,9 @@ public class ReplicaForward {
      * @param uniqueID - Unique ID of message
      * @param key - Key for removal
      */
-    public static void forwardREMOVEToReplica(byte[] uniqueID, String key) {
+    public static void forwardREMOVEToReplica(byte[] uniqueID, byte[] key) {
 
-        byte[] keyToBytes = UTF8StringUtility.stringToBytesUTF8(key);
-
-        byte[] payload = Payload.buildStandardRequestPayload(RequestCodes.REPLICA_REMOVE, keyToBytes);
+        byte[] payload = Payload.buildStandardRequestPayload(RequestCodes.REPLICA_REMOVE, key);
         try {
             byte[] messageToSend = Message.buildMessage(uniqueID, payload);
             sendMessageToReplicas(messageToSend);
@@ -41,13 +38,14 @@ public class ReplicaForward {
      * @param uniqueID - Unique ID of message
      * @param key - Key of <key, value> pair to put
      * @param value - Value of <key, value> pair to put
+     * @param timeToLiveSeconds - Seconds until the value expires, 0 or less if it does not expire
      */
-    public static void forwardPUTtoReplica(byte[] uniqueID, String key, String value) {
-
-        byte[] keyToBytes = UTF8StringUtility.stringToBytesUTF8(key);
-        byte[] valueToBytes = UTF8StringUtility.stringToBytesUTF8(value);
+    public static void forwardPUTtoReplica(byte[] uniqueID, byte[] key, byte[] value, int timeToLiveSeconds) {
 
-        byte[] payload = Payload.buildStandardRequestPayload(RequestCodes.REPLICA_PUT, keyToBytes, valueToBytes);
+        // Values that do not expire are sent without a time to live
+        byte[] payload = timeToLiveSeconds > 0
+                ? Payload.buildStandardRequestPayload(RequestCodes.REPLICA_PUT, key, value, timeToLiveSeconds)
+                : Payload.buildStandardRequestPayload(RequestCodes.REPLICA_PUT, key, value);
         try {
             byte[] messageToSend = Message.buildMessage(uniqueID, payload);
             sendMessageToReplicas(messageToSend);
@@ -3,8 +3,10 @@ package protocol;
 import command.CHECKALIVEHandler;
 import command.RequestCodes;
 import command.ResponseCodes;
+import message.BufferPool;
 import message.Header;
 import message.Message;
+import message.MessageView;
 import message.Payload;
 import nodelist.Node;
 import nodelist.NodeListController;
@@ -12,7 +14,6 @@ import nodelist.NodeListController;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.SocketTimeoutException;
-import java.util.Arrays;
 
 public class SuccessorCheckInitiator implements Runnable {
 
@@ -30,6 +31,7 @@ public class SuccessorCheckInitiator implements Runnable {
             while(true) {
 
                 DatagramSocket socket = null;
+                byte[] receiveBuffer = null;
                 Node firstSuccessor = nlc.getFirstSuccessor();
                 if(firstSuccessor != null && JoinInitiator.isJoined) {
 
@@ -39,6 +41,7 @@ public class SuccessorCheckInitiator implements Runnable {
                     try {
                         socket = new DatagramSocket();
                         socket.setSoTimeout(1000);
+                        receiveBuffer = BufferPool.getInstance().lease(BufferPool.MAX_BUFFER_SIZE);
                         byte[] header = Header.buildMessageHeader();
                         byte[] message = Message.buildMessage(header, payload);
                         DatagramPacket packet = new DatagramPacket(message, message.length, firstSuccessor.getHostname(), firstSuccessor.getReceivingPort());
@@ -48,17 +51,14 @@ public class SuccessorCheckInitiator implements Runnable {
                             try {
                                 socket.send(packet);
 
-                                byte[] receiveBuffer = new byte[17000];
                                 DatagramPacket receivePacket = new DatagramPacket(receiveBuffer, receiveBuffer.length);
 
                                 socket.receive(receivePacket);
-                                byte[] data = receivePacket.getData();
-                                byte[] extractedHeader = Message.extractHeader(data);
-                                byte[] extractedPayload = Message.extractPayload(data);
+                                MessageView messageView = new MessageView().wrap(receivePacket);
 
                                 // Compare unique IDs
-                                if(Arrays.equals(header, extractedHeader)) {
-                                    if(extractedPayload[0] == ResponseCodes.SUCC_ALIVE_REP) {
+                                if(messageView.headerEquals(header)) {
+                                    if(messageView.getPayload().getCommand() == ResponseCodes.SUCC_ALIVE_REP) {
                                         CHECKALIVEHandler.handleSuccessorAliveResponse(receivePacket);
                                         aliveReply = true;
                                         break;
@@ -82,6 +82,7 @@ public class SuccessorCheckInitiator implements Runnable {
                         if(socket != null) {
                             socket.close();
                         }
+                        BufferPool.getInstance().release(receiveBuffer);
 
                     }
                 }
@@ -0,0 +1,119 @@
+package protocol;
+
+import message.BufferPool;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+
+/**
+ * Selector driven receiving thread. Drains all datagrams that are queued on the channel
+ * on every wakeup into a reusable direct buffer and dispatches them the same way as UDPReceive.
+ */
+public class UDPChannelReceive extends UDPReceive {
+
+    // Maximum number of datagrams drained per wakeup before going back to the selector
+    private final static int MAX_DATAGRAMS_PER_WAKEUP = 256;
+
+    private DatagramChannel channel;
+    private Selector selector;
+    private final ByteBuffer receiveBuffer;
+
+    public UDPChannelReceive(DatagramChannel channel, MessageHandlerPool handlerPool) {
+        super(handlerPool);
+        this.channel = channel;
+        this.receiveBuffer = ByteBuffer.allocateDirect(MAX_BUFFER_SIZE);
+    }
+
+
+    @Override
+    public void run() {
+        try {
+            channel.configureBlocking(false);
+            selector = Selector.open();
+            channel.register(selector, SelectionKey.OP_READ);
+
+            System.out.println("UDPChannelReceive is running");
+            System.out.println("Receiving on port " + ((InetSocketAddress) channel.getLocalAddress()).getPort());
+
+            while(true) {
+                selector.select();
+
+                Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while(iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+
+                    if(key.isValid() && key.isReadable()) {
+                        drainChannel();
+                    }
+                }
+            }
+        } catch(Exception ex) {
+            ex.printStackTrace();
+        } finally {
+            close();
+        }
+    }
+
+
+    /**
+     * Receives datagrams from the channel until it is empty or the burst limit is reached
+     * @throws Exception
+     */
+    private void drainChannel() throws Exception {
+        for(int i = 0; i < MAX_DATAGRAMS_PER_WAKEUP; i++) {
+            receiveBuffer.clear();
+            SocketAddress sender = channel.receive(receiveBuffer);
+            if(sender == null) {
+                // Nothing left to read
+                return;
+            }
+            receiveBuffer.flip();
+
+            // Message handlers run on other threads, so they get their own copy of the datagram in a pooled array
+            int length = receiveBuffer.remaining();
+            byte[] data = BufferPool.getInstance().lease(length);
+            receiveBuffer.get(data, 0, length);
+            DatagramPacket receivePacket = new DatagramPacket(data, length, sender);
+
+            try {
+                handleReceivedPacket(receivePacket);
+            } catch(Exception e) {
+                // A malformed datagram must not stop the receive loop
+                e.printStackTrace();
+            }
+        }
+    }
+
+
+    @Override
+    protected void send(DatagramPacket packet) throws IOException {
+        if(packet != null) {
+            channel.send(ByteBuffer.wrap(packet.getData(), packet.getOffset(), packet.getLength()), packet.getSocketAddress());
+        }
+    }
+
+
+    @Override
+    protected void close() {
+        try {
+            if(selector != null) {
+                selector.close();
+                selector = null;
+            }
+            if(channel != null) {
+                channel.close();
+                channel = null;
+            }
+        } catch(IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -4,14 +4,16 @@ import command.NODELISTHandler;
 import command.RequestCodes;
 import command.ResponseCodes;
 import main.Server;
+import message.BufferPool;
+import message.Header;
 import message.Message;
+import message.MessageView;
 import message.Payload;
+import message.PayloadView;
 
+import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
-import java.net.InetAddress;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 
 /**
  * Thread that is responsible for receiving incoming UDP packets
@@ -19,10 +21,27 @@ import java.nio.ByteOrder;
 public class UDPReceive implements Runnable {
 
     private DatagramSocket socket;
-    private final static int MAX_BUFFER_SIZE = 17000;
+    protected final static int MAX_BUFFER_SIZE = BufferPool.MAX_BUFFER_SIZE;
+
+    protected MessageHandlerPool handlerPool;
+
+    // View that decodes every received packet on the receiving thread
+    private final MessageView messageView = new MessageView();
 
     public UDPReceive(DatagramSocket socket) {
+        this(socket, new MessageHandlerPool(MessageHandlerPool.DEFAULT_WORKER_COUNT, MessageHandlerPool.DEFAULT_QUEUE_DEPTH));
+    }
+
+
+    public UDPReceive(DatagramSocket socket, MessageHandlerPool handlerPool) {
         this.socket = socket;
+        this.handlerPool = handlerPool;
+    }
+
+
+    protected UDPReceive(MessageHandlerPool handlerPool) {
+        this.socket = null;
+        this.handlerPool = handlerPool;
     }
 
     @Override
@@ -40,70 +59,139 @@ public class UDPReceive implements Runnable {
 
             while(true) {
 
-                byte[] receiveData = new byte[MAX_BUFFER_SIZE];
+                byte[] receiveData = BufferPool.getInstance().lease(MAX_BUFFER_SIZE);
                 DatagramPacket receivePacket = new DatagramPacket(receiveData, receiveData.length);
                 socket.receive(receivePacket);
 
-                byte[] message = receivePacket.getData();
-                byte[] header = Message.extractHeader(message);
-                byte[] payload = Message.extractPayload(message);
-
-                byte[] clientPayload;
-                byte[] messageToSend;
-                DatagramPacket packet;
-                byte command = payload[0];
-                switch(command) {
-                    case ResponseCodes.CLIENT_FWD_RESPONSE:
-                        clientPayload = Payload.getPayloadElement(Payload.Element.REGULAR_FORWARD_PAYLOAD, payload);
-                        InetAddress clientAddress = InetAddress.getByAddress(Payload.getPayloadElement(Payload.Element.IP_ADDRESS, payload));
-                        int clientPort = ByteBuffer.wrap(
-                                Payload.getPayloadElement(Payload.Element.PORT, payload)).order(
-                                ByteOrder.LITTLE_ENDIAN).getInt();
-                        messageToSend = Message.buildMessage(header, clientPayload);
-                        packet = new DatagramPacket(messageToSend, messageToSend.length, clientAddress, clientPort);
-                        socket.send(packet);
-                        break;
-                    case RequestCodes.SHUTDOWN:
-                        System.out.println("SHUTDOWN command received");
-                        clientPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.OPERATION_SUCCESS);
-                        messageToSend = Message.buildMessage(header, clientPayload);
-                        packet = new DatagramPacket(messageToSend, messageToSend.length, receivePacket.getAddress(), receivePacket.getPort());
-                        socket.send(packet);
-                        socket.close();
-                        System.exit(0);
-                        break;
-                    case RequestCodes.NODE_LIST_REQUEST:
-                        System.out.println("NODELIST command received");
-                        packet = NODELISTHandler.handleNODELISTRequest(receivePacket);
-                        socket.send(packet);
-                        break;
-                    default:
-                        if(RequestCodes.isRecognizedRequestCode(command) || ResponseCodes.isRecognizedResponseCode(command)) {
-                            // Start new message handler thread
-                            Thread messageHandlerThread = new Thread(new MessageHandler(receivePacket));
-                            messageHandlerThread.start();
-                        } else {
-                            System.out.println("??? command received");
-                            clientPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.UNRECOGNIZED_COMMAND);
-                            messageToSend = Message.buildMessage(header, clientPayload);
-                            packet = new DatagramPacket(messageToSend, messageToSend.length, receivePacket.getAddress(), receivePacket.getPort());
-                            socket.send(packet);
-                        }
-                        break;
-                }
+                handleReceivedPacket(receivePacket);
 
             }
         } catch(Exception ex) {
             ex.printStackTrace();
         } finally {
-            if(socket != null) {
-                socket.close();
-                socket = null;
+            close();
+        }
+
+
+
+
+    }
+
+
+    /**
+     * Handles a single received packet. Responses to the client are sent directly from the receiving thread,
+     * all other recognized messages are passed on to the message handler pool. If the pool is saturated the
+     * sender is told that the system is overloaded.
+     * @param receivePacket - Packet that was received
+     * @throws Exception
+     */
+    protected void handleReceivedPacket(DatagramPacket receivePacket) throws Exception {
+        boolean passedToHandler = false;
+        try {
+            passedToHandler = dispatchReceivedPacket(receivePacket);
+        } finally {
+            // Message handlers release the receive buffer once they are done with it
+            if(!passedToHandler) {
+                BufferPool.getInstance().release(receivePacket.getData());
             }
         }
+    }
+
+
+    /**
+     * Answers or queues a received packet
+     * @param receivePacket - Packet that was received
+     * @return - True if the packet was passed on to a message handler
+     * @throws Exception
+     */
+    private boolean dispatchReceivedPacket(DatagramPacket receivePacket) throws Exception {
+
+        // Drop packets that are too short to hold a header and a command
+        if(receivePacket.getLength() <= Header.HEADER_SIZE_BYTES) {
+            return false;
+        }
+
+        messageView.wrap(receivePacket);
+        PayloadView payload = messageView.getPayload();
+
+        byte[] clientPayload;
+        DatagramPacket packet;
+        byte command = payload.getCommand();
+        switch(command) {
+            case ResponseCodes.CLIENT_FWD_RESPONSE:
+                // Send the response to the client from the receive buffer, which is released below
+                send(messageView.toUnwrappedPacket());
+                break;
+            case ResponseCodes.CLIENT_FWD_COMPLETE:
+                PendingRequestTable.getInstance().complete(messageView.getHeader());
+                break;
+            case RequestCodes.SHUTDOWN:
+                System.out.println("SHUTDOWN command received");
+                clientPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.OPERATION_SUCCESS);
+                packet = Message.buildPacket(messageView.getHeader(), clientPayload, receivePacket.getAddress(), receivePacket.getPort());
+                send(packet);
+                close();
+                System.exit(0);
+                break;
+            case RequestCodes.NODE_LIST_REQUEST:
+                System.out.println("NODELIST command received");
+                packet = NODELISTHandler.handleNODELISTRequest(receivePacket);
+                sendAndRelease(packet);
+                break;
+            default:
+                if(RequestCodes.isRecognizedRequestCode(command) || ResponseCodes.isRecognizedResponseCode(command)) {
+                    // Queue message handler. If the pool is saturated, respond with system overload.
+                    MessageHandler messageHandler = new MessageHandler(receivePacket);
+                    if(handlerPool.submit(messageHandler)) {
+                        return true;
+                    }
+                    sendAndRelease(messageHandler.handleOVERLOAD());
+                } else {
+                    System.out.println("??? command received");
+                    clientPayload = Payload.buildPayloadWithOnlyCommand(ResponseCodes.UNRECOGNIZED_COMMAND);
+                    packet = Message.buildPacket(messageView.getHeader(), clientPayload, receivePacket.getAddress(), receivePacket.getPort());
+                    sendAndRelease(packet);
+                }
+                break;
+        }
+        return false;
+    }
 
 
+    /**
+     * Sends a packet built with Message.buildPacket and returns its buffer to the pool
+     * @param packet - Packet to send (may be null)
+     * @throws IOException
+     */
+    private void sendAndRelease(DatagramPacket packet) throws IOException {
+        if(packet == null) {
+            return;
+        }
+        try {
+            send(packet);
+        } finally {
+            BufferPool.getInstance().release(packet.getData());
+        }
+    }
 
 
+    /**
+     * Sends a packet from the receiving socket
+     * @param packet - Packet to send
+     * @throws IOException
+     */
+    protected void send(DatagramPacket packet) throws IOException {
+        socket.send(packet);
+    }
+
+
+    /**
+     * Closes the receiving socket
+     */
+    protected void close() {
+        if(socket != null) {
+            socket.close();
+            socket = null;
+        }
     }
 }
@@ -1,32 +1,103 @@
 package protocol;
 
+import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class UDPSend {
 
+    // Number of attempts for a send on a non-blocking channel with a full send buffer
+    private final static int MAX_SEND_ATTEMPTS = 3;
+
+    // Node's bound receive channel or socket. Both are safe for concurrent sends.
+    private static volatile DatagramChannel sharedChannel = null;
+    private static volatile DatagramSocket sharedSocket = null;
+
+    private static final AtomicLong droppedPacketCount = new AtomicLong();
+
+
+    /**
+     * Sets the channel that all outbound packets are sent from
+     * @param channel - Bound receive channel of this node
+     */
+    public static void setSharedChannel(DatagramChannel channel) {
+        sharedChannel = channel;
+    }
+
+
+    /**
+     * Sets the socket that all outbound packets are sent from
+     * @param socket - Bound receive socket of this node
+     */
+    public static void setSharedSocket(DatagramSocket socket) {
+        sharedSocket = socket;
+    }
+
+
+    /**
+     * Gets the number of packets that could not be sent because the send buffer was full
+     * @return - Dropped packet count
+     */
+    public static long getDroppedPacketCount() {
+        return droppedPacketCount.get();
+    }
+
+
     /**
      * Sends the packet to the respective destination as set in the input packet
      * @param packetToSend - Datagram packet to send
      */
     public static void sendPacket(DatagramPacket packetToSend) {
-        DatagramSocket socket = null;
-        try {
-            socket = new DatagramSocket();
+        // Only send packet if not null
+        if(packetToSend == null) {
+            return;
+        }
 
-            // Only send packet if not null
-            if(packetToSend != null) {
-//                System.out.println("Sending packet to " + packetToSend.getAddress() + ":" + packetToSend.getPort());
-                socket.send(packetToSend);
+        try {
+            DatagramChannel channel = sharedChannel;
+            if(channel != null) {
+                sendOnChannel(channel, packetToSend);
+            } else {
+                getSharedSocket().send(packetToSend);
             }
-
         } catch(Exception e) {
             e.printStackTrace();
-        } finally {
-            if(socket != null) {
-                socket.close();
+        }
+    }
+
+
+    private static void sendOnChannel(DatagramChannel channel, DatagramPacket packetToSend) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(packetToSend.getData(), packetToSend.getOffset(), packetToSend.getLength());
+        for(int i = 0; i < MAX_SEND_ATTEMPTS; i++) {
+            // A non-blocking channel sends nothing if the socket send buffer is full
+            if(channel.send(buffer, packetToSend.getSocketAddress()) > 0) {
+                return;
+            }
+            Thread.yield();
+        }
+        droppedPacketCount.incrementAndGet();
+    }
+
+
+    /**
+     * Gets the shared socket, creating an unbound one if the node has not registered its receive socket
+     * @return - Shared socket
+     * @throws IOException
+     */
+    private static DatagramSocket getSharedSocket() throws IOException {
+        DatagramSocket socket = sharedSocket;
+        if(socket == null) {
+            synchronized(UDPSend.class) {
+                if(sharedSocket == null) {
+                    sharedSocket = new DatagramSocket();
+                }
+                socket = sharedSocket;
             }
         }
+        return socket;
     }
 
 }
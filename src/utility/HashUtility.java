@@ -1,5 +1,7 @@
 package utility;
 
+import java.nio.charset.StandardCharsets;
+
 public class HashUtility {
 
     public final static int DEFAULT_HASH_RANGE = 550;
@@ -49,5 +51,33 @@ public class HashUtility {
         return Math.abs(sum) % range;
     }
 
-}
 
+    /**
+     * Same as simpleHash(String, range) applied to the UTF-8 decoding of the bytes, without decoding them
+     * when they are all ASCII (each ASCII byte decodes to one char of the same value)
+     * @param bytes - UTF-8 encoded string
+     * @param offset - Index of the first byte
+     * @param length - Number of bytes
+     * @param range - Range of hash value to produce
+     * @return - Hash value of the decoded string in specified range
+     * @throws IllegalArgumentException - if bytes are null or empty, or range <= 0
+     */
+    public static int simpleHash(byte[] bytes, int offset, int length, int range) throws IllegalArgumentException {
+
+        if(bytes == null || length <= 0 || range <= 0) {
+            throw new IllegalArgumentException();
+        }
+
+        int i, sum;
+        for (sum = 0, i = offset; i < offset + length; i++) {
+            if(bytes[i] < 0) {
+                // Multi-byte or malformed sequence -> hash the decoded string
+                return simpleHash(new String(bytes, offset, length, StandardCharsets.UTF_8), range);
+            }
+            sum += bytes[i];
+        }
+
+        return Math.abs(sum) % range;
+    }
+
+}
@@ -0,0 +1,150 @@
+package cache;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CacheControllerTest {
+
+    private static byte[] uniqueID(Random random) {
+        byte[] uniqueID = new byte[CacheEntry.UNIQUE_ID_SIZE_BYTES];
+        random.nextBytes(uniqueID);
+        return uniqueID;
+    }
+
+
+    @Test
+    public void testDuplicateIsDetected() {
+        CacheController cacheController = new CacheController(10);
+        byte[] uniqueID = uniqueID(new Random());
+
+        assertFalse(cacheController.isUniqueIDInCache(uniqueID));
+        assertTrue(cacheController.addIfAbsent(uniqueID));
+        assertTrue(cacheController.isUniqueIDInCache(uniqueID.clone()));
+        assertFalse(cacheController.addIfAbsent(uniqueID.clone()));
+        assertEquals(1, cacheController.getDuplicateCount());
+    }
+
+
+    @Test
+    public void testHoldsManyIDs() {
+        CacheController cacheController = new CacheController(CacheController.DEFAULT_CACHE_SIZE);
+        Random random = new Random(7);
+        byte[][] uniqueIDs = new byte[100000][];
+        for(int i = 0; i < uniqueIDs.length; i++) {
+            uniqueIDs[i] = uniqueID(random);
+            assertTrue(cacheController.addIfAbsent(uniqueIDs[i]));
+        }
+        assertEquals(uniqueIDs.length, cacheController.getEntryCount());
+        for(byte[] uniqueID : uniqueIDs) {
+            assertFalse(cacheController.addIfAbsent(uniqueID));
+        }
+    }
+
+
+    @Test
+    public void testExpiredEntriesAreRemovedWithoutNewRequests() {
+        CacheController cacheController = new CacheController(10);
+        byte[] uniqueID = uniqueID(new Random(5));
+        assertTrue(cacheController.addIfAbsent(uniqueID));
+        cacheController.setResponse(uniqueID, new byte[] {0x00});
+
+        cacheController.removeExpiredEntries(System.currentTimeMillis() + CacheEntry.VALID_PERIOD + 2 * CacheController.TICK_MILLIS);
+        assertEquals(0, cacheController.getEntryCount());
+        assertEquals(0, cacheController.getResponseBytes());
+    }
+
+
+    @Test
+    public void testFullCacheStopsRemembering() {
+        CacheController cacheController = new CacheController(2);
+        Random random = new Random(11);
+        for(int i = 0; i < 3; i++) {
+            assertTrue(cacheController.addIfAbsent(uniqueID(random)));
+        }
+        assertEquals(2, cacheController.getEntryCount());
+        assertEquals(1, cacheController.getOverflowCount());
+    }
+
+
+    @Test
+    public void testStoredResponseIsReplayed() {
+        CacheController cacheController = new CacheController(10);
+        byte[] uniqueID = uniqueID(new Random(3));
+        byte[] response = new byte[] {0x00};
+
+        assertTrue(cacheController.addIfAbsent(uniqueID));
+        assertNull(cacheController.getResponse(uniqueID));
+        cacheController.setResponse(uniqueID, response);
+
+        assertFalse(cacheController.addIfAbsent(uniqueID.clone()));
+        assertArrayEquals(response, cacheController.getResponse(uniqueID.clone()));
+        assertEquals(1, cacheController.getReplayCount());
+        assertEquals(response.length + CacheController.RESPONSE_OVERHEAD_BYTES, cacheController.getResponseBytes());
+    }
+
+
+    @Test
+    public void testOldestResponsesAreEvictedOverBudget() {
+        int responseSize = 100;
+        CacheController cacheController = new CacheController(10, 2 * (responseSize + CacheController.RESPONSE_OVERHEAD_BYTES));
+        Random random = new Random(5);
+        byte[][] uniqueIDs = new byte[3][];
+        for(int i = 0; i < uniqueIDs.length; i++) {
+            uniqueIDs[i] = uniqueID(random);
+            assertTrue(cacheController.addIfAbsent(uniqueIDs[i]));
+            cacheController.setResponse(uniqueIDs[i], new byte[responseSize]);
+        }
+
+        assertNull(cacheController.getResponse(uniqueIDs[0]));
+        assertNotNull(cacheController.getResponse(uniqueIDs[1]));
+        assertNotNull(cacheController.getResponse(uniqueIDs[2]));
+        assertEquals(1, cacheController.getEvictedResponseCount());
+        assertEquals(2 * (responseSize + CacheController.RESPONSE_OVERHEAD_BYTES), cacheController.getResponseBytes());
+
+        // The ID is still remembered after its response was evicted
+        assertFalse(cacheController.addIfAbsent(uniqueIDs[0]));
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidUniqueID() {
+        new CacheController(1).addIfAbsent(new byte[3]);
+    }
+
+
+    @Test
+    public void testWheelReturnsItemsAfterDeadline() {
+        TimingWheel<String> wheel = new TimingWheel<String>(10, 100, 0);
+        wheel.schedule("a", 250);
+        wheel.schedule("b", 450);
+
+        ArrayList<String> expired = new ArrayList<String>();
+        assertTrue(wheel.advance(250, expired));
+        assertTrue(expired.isEmpty());
+
+        assertTrue(wheel.advance(300, expired));
+        assertEquals(1, expired.size());
+        assertEquals("a", expired.get(0));
+
+        expired.clear();
+        assertFalse(wheel.isAdvanceDue(399));
+        assertTrue(wheel.advance(5000, expired));
+        assertEquals(1, expired.size());
+        assertEquals("b", expired.get(0));
+    }
+
+
+    @Test
+    public void testWheelReturnsPastDeadlinesOnNextAdvance() {
+        TimingWheel<String> wheel = new TimingWheel<String>(10, 100, 1000);
+        wheel.schedule("late", 100);
+
+        ArrayList<String> expired = new ArrayList<String>();
+        wheel.advance(1100, expired);
+        assertEquals(1, expired.size());
+    }
+}
@@ -0,0 +1,63 @@
+package cache;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+public class HierarchicalTimingWheelTest {
+
+    @Test
+    public void testItemsOnUpperLevelsExpireAtTheirTick() {
+        // 4 slots on 3 levels cover 64 ticks
+        HierarchicalTimingWheel<Long> wheel = new HierarchicalTimingWheel<Long>(4, 3, 10, 0);
+        for(long deadline = 0; deadline < 640; deadline += 10) {
+            wheel.schedule(deadline, deadline);
+        }
+
+        ArrayList<Long> expired = new ArrayList<Long>();
+        for(long now = 10; now <= 640; now += 10) {
+            assertTrue(wheel.advance(now, expired));
+            assertEquals(1, expired.size());
+            assertEquals(now - 10, (long) expired.get(0));
+            expired.clear();
+        }
+    }
+
+
+    @Test
+    public void testDeadlinesBeyondTheTopLevelAreKept() {
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<String>(4, 2, 10, 0);
+        wheel.schedule("far", 1000);
+        wheel.schedule("near", 30);
+
+        ArrayList<String> expired = new ArrayList<String>();
+        wheel.advance(990, expired);
+        assertEquals(1, expired.size());
+        assertEquals("near", expired.get(0));
+
+        expired.clear();
+        wheel.advance(1010, expired);
+        assertEquals(1, expired.size());
+        assertEquals("far", expired.get(0));
+    }
+
+
+    @Test
+    public void testPastDeadlinesAreReturnedOnNextAdvance() {
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<String>(8, 2, 100, 5000);
+        wheel.schedule("late", 100);
+        assertFalse(wheel.isAdvanceDue(5099));
+
+        ArrayList<String> expired = new ArrayList<String>();
+        assertTrue(wheel.advance(5100, expired));
+        assertEquals(1, expired.size());
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSlotCountMustBePowerOfTwo() {
+        new HierarchicalTimingWheel<String>(10, 2, 100, 0);
+    }
+}
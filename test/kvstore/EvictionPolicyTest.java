@@ -0,0 +1,82 @@
+package kvstore;
+
+import org.junit.Test;
+
+import static kvstore.KVTestUtility.key;
+import static kvstore.KVTestUtility.number;
+import static org.junit.Assert.*;
+
+public class EvictionPolicyTest {
+
+    @Test
+    public void testLRUEvictsLeastRecentlyUsed() {
+        EvictionPolicy policy = new LRUEvictionPolicy();
+        policy.onInsert(key(1));
+        policy.onInsert(key(2));
+        policy.onInsert(key(3));
+        policy.onAccess(key(1));
+
+        assertEquals(key(2), policy.selectVictim());
+        assertEquals(key(3), policy.selectVictim());
+        assertEquals(key(1), policy.selectVictim());
+        assertNull(policy.selectVictim());
+    }
+
+
+    @Test
+    public void testLFUEvictsLeastFrequentlyUsed() {
+        EvictionPolicy policy = new LFUEvictionPolicy();
+        policy.onInsert(key(1));
+        policy.onInsert(key(2));
+        policy.onInsert(key(3));
+        policy.onAccess(key(1));
+        policy.onAccess(key(1));
+        policy.onAccess(key(2));
+
+        assertEquals(key(3), policy.selectVictim());
+        assertEquals(key(2), policy.selectVictim());
+        policy.onRemove(key(1));
+        assertNull(policy.selectVictim());
+    }
+
+
+    @Test
+    public void testWTinyLFUKeepsFrequentKeysAgainstScans() {
+        WTinyLFUEvictionPolicy policy = new WTinyLFUEvictionPolicy(1024);
+        for(int i = 0; i < 100; i++) {
+            policy.onInsert(key(i));
+        }
+        // Keys 0-9 are popular
+        for(int round = 0; round < 5; round++) {
+            for(int i = 0; i < 10; i++) {
+                policy.onAccess(key(i));
+            }
+        }
+
+        // A scan of new keys must not push the popular keys out
+        for(int i = 1000; i < 1500; i++) {
+            policy.onInsert(key(i));
+            KVKey victim = policy.selectVictim();
+            assertNotNull(victim);
+            int evicted = number(victim);
+            assertTrue("evicted popular key " + evicted, evicted >= 10);
+        }
+    }
+
+
+    @Test
+    public void testStoreEvictsToStayWithinBytes() {
+        long maxBytes = 10 * OpenAddressingTable.getEntryBytes(100);
+        KVStoreController kvStoreController = new KVStoreController(Integer.MAX_VALUE, maxBytes);
+        kvStoreController.setEvictionPolicy(new LRUEvictionPolicy());
+        for(int i = 0; i < 20; i++) {
+            assertEquals(KVStoreStatus.SUCCESS, kvStoreController.put(key(i), new byte[100]));
+        }
+
+        assertEquals(10, kvStoreController.getSize());
+        assertEquals(maxBytes, kvStoreController.getUsedBytes());
+        assertEquals(10, kvStoreController.getEvictionCount());
+        assertNull(kvStoreController.get(key(9)));
+        assertNotNull(kvStoreController.get(key(10)));
+    }
+}
@@ -2,7 +2,13 @@ package kvstore;
 
 import org.junit.Test;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 public class KVStoreControllerTest {
@@ -192,4 +198,211 @@ public class KVStoreControllerTest {
     }
 
 
-}
\ No newline at end of file
+    @Test
+    public void testPutAndGetBytes() {
+        KVStoreController kvStoreController = new KVStoreController(2);
+        byte[] value = new byte[] {(byte) 0xff, 0x00, 0x7f};
+        assertEquals(KVStoreStatus.SUCCESS, kvStoreController.put(new KVKey(new byte[] {1, 2}), value));
+        assertArrayEquals(value, kvStoreController.get(new KVKey(new byte[] {1, 2})));
+        assertNull(kvStoreController.get(new KVKey(new byte[] {1, 3})));
+    }
+
+
+    @Test
+    public void testPaddedKeyMatchesShortKey() throws Exception {
+        KVStoreController kvStoreController = new KVStoreController(2);
+        kvStoreController.put("key", "value");
+        byte[] paddedKey = new byte[KVKey.KEY_SIZE_BYTES];
+        System.arraycopy("key".getBytes(StandardCharsets.UTF_8), 0, paddedKey, 0, 3);
+        assertArrayEquals("value".getBytes(StandardCharsets.UTF_8), kvStoreController.get(new KVKey(paddedKey)));
+    }
+
+
+    @Test
+    public void testBytesStatus() {
+        KVStoreController kvStoreController = new KVStoreController(1);
+        assertEquals(KVStoreStatus.INVALID_KEY_OR_VALUE, kvStoreController.put(new KVKey(new byte[] {1}), new byte[0]));
+        assertEquals(KVStoreStatus.SUCCESS, kvStoreController.put(new KVKey(new byte[] {1}), new byte[] {1}));
+        assertEquals(KVStoreStatus.STORE_FULL, kvStoreController.put(new KVKey(new byte[] {2}), new byte[] {1}));
+        assertEquals(KVStoreStatus.SUCCESS, kvStoreController.remove(new KVKey(new byte[] {1})));
+        assertEquals(KVStoreStatus.KEY_NOT_FOUND, kvStoreController.remove(new KVKey(new byte[] {1})));
+    }
+
+
+    @Test(expected = KVStoreInvalidKeyOrValueFormatException.class)
+    public void testPutWithTooLongKey() throws Exception {
+        KVStoreController kvStoreController = new KVStoreController(2);
+        kvStoreController.put("0123456789012345678901234567890123456789", "value");
+    }
+
+
+    @Test
+    public void testOffHeapStore() {
+        KVStoreController kvStoreController = new KVStoreController(10);
+        SlabAllocator slabAllocator = new SlabAllocator(SlabAllocator.SLAB_SIZE_BYTES);
+        kvStoreController.setStorageEngine(new ValueStorageEngine(slabAllocator));
+        KVKey key = new KVKey(new byte[] {1});
+
+        assertEquals(KVStoreStatus.SUCCESS, kvStoreController.put(key, new byte[] {1, 2, 3}));
+        assertEquals(KVStoreStatus.SUCCESS, kvStoreController.put(key, new byte[] {4, 5}));
+        assertArrayEquals(new byte[] {4, 5}, kvStoreController.get(new KVKey(new byte[] {1})));
+        assertEquals(1, kvStoreController.getSize());
+        assertEquals(SlabAllocator.MIN_CHUNK_SIZE_BYTES, slabAllocator.getAllocatedChunkBytes());
+
+        assertEquals(KVStoreStatus.SUCCESS, kvStoreController.remove(key));
+        assertNull(kvStoreController.get(key));
+        assertEquals(0, slabAllocator.getAllocatedChunkBytes());
+    }
+
+
+    @Test
+    public void testOffHeapStoreReportsOutOfSpace() {
+        KVStoreController kvStoreController = new KVStoreController(1000);
+        kvStoreController.setStorageEngine(new ValueStorageEngine(new SlabAllocator(SlabAllocator.SLAB_SIZE_BYTES)));
+        int chunkCount = SlabAllocator.SLAB_SIZE_BYTES / 16384;
+        for(int i = 0; i < chunkCount; i++) {
+            assertEquals(KVStoreStatus.SUCCESS, kvStoreController.put(new KVKey(new byte[] {(byte) i}), new byte[15000]));
+        }
+        assertEquals(KVStoreStatus.STORE_FULL, kvStoreController.put(new KVKey(new byte[] {(byte) 200}), new byte[15000]));
+    }
+
+
+    @Test
+    public void testOffHeapStoreIsNotBoundedByKeyCount() {
+        // The store admits 10 keys, the slab holds 64 values before it runs out of space
+        KVStoreController kvStoreController = new KVStoreController(10);
+        kvStoreController.setStorageEngine(new ValueStorageEngine(new SlabAllocator(SlabAllocator.SLAB_SIZE_BYTES)));
+        int chunkCount = SlabAllocator.SLAB_SIZE_BYTES / 16384;
+        for(int i = 0; i < chunkCount; i++) {
+            assertEquals(KVStoreStatus.SUCCESS, kvStoreController.put(new KVKey(new byte[] {(byte) i}), new byte[15000]));
+        }
+        assertEquals(chunkCount, kvStoreController.getSize());
+        assertEquals(KVStoreStatus.STORE_FULL, kvStoreController.put(new KVKey(new byte[] {(byte) 200}), new byte[15000]));
+    }
+
+
+    @Test
+    public void testOffHeapStoreIsNotBoundedByHeapCapacity() {
+        // The heap capacity holds 10 entries, the slabs more than 100
+        KVStoreController kvStoreController = new KVStoreController(Integer.MAX_VALUE, OpenAddressingTable.getEntryBytes(15000) * 10);
+        kvStoreController.setStorageEngine(new ValueStorageEngine(new SlabAllocator(SlabAllocator.SLAB_SIZE_BYTES * 2L)));
+        for(int i = 0; i < 100; i++) {
+            assertEquals(KVStoreStatus.SUCCESS, kvStoreController.put(new KVKey(new byte[] {(byte) i}), new byte[15000]));
+        }
+        assertEquals(100, kvStoreController.getSize());
+        assertEquals(false, kvStoreController.isKVStoreFull());
+    }
+
+
+    @Test
+    public void testCapacityIsCountedInBytes() {
+        KVStoreController kvStoreController = new KVStoreController(Integer.MAX_VALUE, OpenAddressingTable.getEntryBytes(15000));
+        assertEquals(KVStoreStatus.SUCCESS, kvStoreController.put(new KVKey(new byte[] {1}), new byte[15000]));
+        assertEquals(KVStoreStatus.STORE_FULL, kvStoreController.put(new KVKey(new byte[] {2}), new byte[1]));
+
+        assertEquals(KVStoreStatus.SUCCESS, kvStoreController.put(new KVKey(new byte[] {1}), new byte[10]));
+        assertEquals(OpenAddressingTable.getEntryBytes(10), kvStoreController.getUsedBytes());
+        assertEquals(KVStoreStatus.SUCCESS, kvStoreController.put(new KVKey(new byte[] {2}), new byte[1]));
+
+        assertEquals(KVStoreStatus.SUCCESS, kvStoreController.remove(new KVKey(new byte[] {1})));
+        assertEquals(OpenAddressingTable.getEntryBytes(1), kvStoreController.getUsedBytes());
+    }
+
+
+    @Test
+    public void testExpiredEntryIsRemovedOnRead() {
+        KVStoreController kvStoreController = new KVStoreController(100);
+        KVKey key = new KVKey(new byte[] {1});
+        long now = System.currentTimeMillis();
+        assertEquals(KVStoreStatus.SUCCESS, kvStoreController.put(key, new byte[] {1}, now - 1));
+        assertEquals(1, kvStoreController.getSize());
+
+        assertNull(kvStoreController.get(key));
+        assertNull(kvStoreController.getValueBuffer(key));
+        assertEquals(0, kvStoreController.getSize());
+        assertEquals(0, kvStoreController.getUsedBytes());
+        assertEquals(1, kvStoreController.getExpiredCount());
+    }
+
+
+    @Test
+    public void testExpiredEntriesAreRemovedByTimingWheel() {
+        KVStoreController kvStoreController = new KVStoreController(10000);
+        long now = System.currentTimeMillis();
+        for(int i = 0; i < 1000; i++) {
+            // Spread over all levels of the wheel, from a second to about a week
+            long expiryMillis = now + 1000 + (long) i * i * 600;
+            assertEquals(KVStoreStatus.SUCCESS, kvStoreController.put(new KVKey(new byte[] {(byte) i, (byte) (i >> 8)}),
+                    new byte[] {1}, expiryMillis));
+        }
+        assertEquals(KVStoreStatus.SUCCESS, kvStoreController.put(new KVKey(new byte[] {1, 2, 3}), new byte[] {1}));
+
+        assertEquals(0, kvStoreController.removeExpiredEntries(now + 500));
+        assertEquals(1001, kvStoreController.getSize());
+        assertEquals(32, kvStoreController.removeExpiredEntries(now + 1000 + 31 * 31 * 600 + 100));
+        assertEquals(969, kvStoreController.getSize());
+        assertEquals(968, kvStoreController.removeExpiredEntries(now + 1000 + 999L * 999 * 600 + 100));
+        assertEquals(1, kvStoreController.getSize());
+        assertArrayEquals(new byte[] {1}, kvStoreController.get(new KVKey(new byte[] {1, 2, 3})));
+    }
+
+
+    @Test
+    public void testOverwriteReplacesExpiry() {
+        KVStoreController kvStoreController = new KVStoreController(100);
+        KVKey key = new KVKey(new byte[] {1});
+        long now = System.currentTimeMillis();
+        assertEquals(KVStoreStatus.SUCCESS, kvStoreController.put(key, new byte[] {1}, now + 1000));
+        assertEquals(now + 1000, kvStoreController.getExpiryMillis(key));
+        assertEquals(KVStoreStatus.SUCCESS, kvStoreController.put(key, new byte[] {2}));
+        assertEquals(KVStoreController.NO_EXPIRY, kvStoreController.getExpiryMillis(key));
+
+        // The wheel still holds the key, but the entry no longer expires
+        assertEquals(0, kvStoreController.removeExpiredEntries(now + 5000));
+        assertArrayEquals(new byte[] {2}, kvStoreController.get(key));
+        assertEquals(0, kvStoreController.getExpiredCount());
+    }
+
+
+    @Test
+    public void testRingIntervalIsVisitedAndRemoved() throws Exception {
+        KVStoreController kvStoreController = new KVStoreController(10000);
+        kvStoreController.setStorageEngine(new LSMStorageEngine(new LSMStore(Files.createTempDirectory("ring").toFile())));
+        for(int i = 0; i < 1000; i++) {
+            assertEquals(KVStoreStatus.SUCCESS, kvStoreController.put(new KVKey(new byte[] {(byte) i, (byte) (i >> 8)}), new byte[] {1}));
+        }
+        assertEquals(KVStoreStatus.SUCCESS, kvStoreController.remove(new KVKey(new byte[] {0})));
+
+        // The interval (500, 100] wraps around the end of the ring
+        final int[] visitedCount = {0};
+        final KVStoreController store = kvStoreController;
+        kvStoreController.forEachEntryInRingInterval(500, 100, new EntryVisitor() {
+            @Override
+            public void visit(KVKey key, byte[] value) {
+                int ringID = store.getRingID(key);
+                assertTrue(ringID > 500 || ringID <= 100);
+                visitedCount[0]++;
+            }
+        });
+        final int[] expectedCount = {0};
+        kvStoreController.forEachEntry(new EntryVisitor() {
+            @Override
+            public void visit(KVKey key, byte[] value) {
+                int ringID = store.getRingID(key);
+                if(ringID > 500 || ringID <= 100) {
+                    expectedCount[0]++;
+                }
+            }
+        });
+        assertTrue(expectedCount[0] > 0);
+        assertEquals(expectedCount[0], visitedCount[0]);
+        assertEquals(expectedCount[0], kvStoreController.getRingIntervalSize(500, 100));
+
+        assertEquals(expectedCount[0], kvStoreController.removeRingInterval(500, 100));
+        assertEquals(0, kvStoreController.getRingIntervalSize(500, 100));
+        assertEquals(999 - expectedCount[0], kvStoreController.getRingIntervalSize(0, 0));
+        ((LSMStorageEngine) kvStoreController.getStorageEngine()).getLSMStore().stop();
+    }
+
+
+}
@@ -0,0 +1,27 @@
+package kvstore;
+
+/**
+ * Helpers shared by the key value store tests
+ */
+public class KVTestUtility {
+
+    /**
+     * Creates a distinct key for a number. The bytes are big endian, so keys of non-negative numbers sort like the numbers.
+     * @param i - Number
+     * @return - Key
+     */
+    public static KVKey key(int i) {
+        return new KVKey(new byte[] {(byte) (i >> 24), (byte) (i >> 16), (byte) (i >> 8), (byte) i});
+    }
+
+
+    /**
+     * Gets the number a key was created for
+     * @param key - Key created by key(int)
+     * @return - Number
+     */
+    public static int number(KVKey key) {
+        byte[] bytes = key.getBytes();
+        return (bytes[0] & 0xff) << 24 | (bytes[1] & 0xff) << 16 | (bytes[2] & 0xff) << 8 | (bytes[3] & 0xff);
+    }
+}
@@ -0,0 +1,199 @@
+package kvstore;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static kvstore.KVTestUtility.key;
+import static org.junit.Assert.*;
+
+public class LSMStoreTest {
+
+    // Holds the files of each test and deletes them afterwards
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static final int MEMTABLE_SIZE_BYTES = 4096;
+    private static final long TABLE_SIZE_BYTES = 2048;
+
+    private static byte[] value(ByteBuffer buffer) {
+        if(buffer == null) {
+            return null;
+        }
+        byte[] value = new byte[buffer.remaining()];
+        buffer.duplicate().get(value);
+        return value;
+    }
+
+
+    private LSMStore createStore() throws Exception {
+        return new LSMStore(temporaryFolder.newFolder(), MEMTABLE_SIZE_BYTES, TABLE_SIZE_BYTES);
+    }
+
+
+    @Test
+    public void testPutGetAndRemoveInMemtable() throws Exception {
+        LSMStore store = createStore();
+        store.put(key(1), new byte[] {1});
+        store.put(key(1), new byte[] {2});
+        assertArrayEquals(new byte[] {2}, value(store.get(key(1))));
+        assertNull(store.get(key(2)));
+
+        store.remove(key(1));
+        assertNull(store.get(key(1)));
+        store.stop();
+    }
+
+
+    @Test
+    public void testValuesSurviveFlushesAndCompactions() throws Exception {
+        LSMStore store = createStore();
+        for(int round = 0; round < 3; round++) {
+            for(int i = 0; i < 1000; i++) {
+                store.put(key(i), new byte[] {(byte) i, (byte) round});
+            }
+            store.flush();
+        }
+        assertTrue(store.getTableCount(0) < LSMStore.LEVEL0_COMPACTION_TRIGGER);
+        assertTrue(store.getTableCount(1) > 0);
+
+        for(int i = 0; i < 1000; i++) {
+            assertArrayEquals(new byte[] {(byte) i, 2}, value(store.get(key(i))));
+        }
+        store.stop();
+    }
+
+
+    @Test
+    public void testCompactedTablesAreCountedUntilUnmapped() throws Exception {
+        LSMStore store = createStore();
+        for(int i = 0; i < 1000; i++) {
+            store.put(key(i), new byte[] {(byte) i, 0});
+        }
+        store.flush();
+        ByteBuffer view = store.get(key(7));
+
+        for(int round = 1; round < 4; round++) {
+            for(int i = 0; i < 1000; i++) {
+                store.put(key(i), new byte[] {(byte) i, (byte) round});
+            }
+            store.flush();
+        }
+
+        // The view keeps its compacted table mapped
+        assertTrue(store.getRetainedBytes() > 0);
+        assertArrayEquals(new byte[] {7, 0}, value(view));
+
+        view = null;
+        for(int attempt = 0; attempt < 20 && store.getRetainedBytes() > 0; attempt++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        assertEquals(0, store.getRetainedBytes());
+        store.stop();
+    }
+
+
+    @Test
+    public void testWritesAreRejectedWhileFlushesFailAndResumeAfterRetry() throws Exception {
+        File directory = temporaryFolder.newFolder();
+        LSMStore store = new LSMStore(directory, MEMTABLE_SIZE_BYTES, TABLE_SIZE_BYTES);
+
+        // A file in place of the directory makes every flush fail
+        assertTrue(directory.delete());
+        assertTrue(directory.createNewFile());
+        int written = 0;
+        while(store.put(key(written), new byte[] {1})) {
+            written++;
+            assertTrue(written < 100000);
+        }
+        assertTrue(store.isMaintenanceFailing());
+        assertEquals(1, store.getRejectedWriteCount());
+
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdirs());
+        for(int attempt = 0; attempt < 50 && store.isMaintenanceFailing(); attempt++) {
+            Thread.sleep(100);
+        }
+        assertFalse(store.isMaintenanceFailing());
+        assertTrue(store.put(key(written), new byte[] {1}));
+        for(int i = 0; i <= written; i++) {
+            assertArrayEquals(new byte[] {1}, value(store.get(key(i))));
+        }
+        store.stop();
+    }
+
+
+    @Test
+    public void testTombstoneHidesOlderValueInTables() throws Exception {
+        LSMStore store = createStore();
+        for(int i = 0; i < 100; i++) {
+            store.put(key(i), new byte[] {(byte) i});
+        }
+        store.flush();
+        store.remove(key(5));
+        assertNull(store.get(key(5)));
+
+        // The removal is flushed into a newer table than the value
+        store.flush();
+        assertNull(store.get(key(5)));
+        assertArrayEquals(new byte[] {6}, value(store.get(key(6))));
+        store.stop();
+    }
+
+
+    @Test
+    public void testBloomFiltersSkipMissingKeys() throws Exception {
+        LSMStore store = createStore();
+        for(int i = 0; i < 1000; i += 2) {
+            store.put(key(i), new byte[] {(byte) i});
+        }
+        store.flush();
+
+        long reads = store.getTableReadCount();
+        for(int i = 1; i < 1000; i += 2) {
+            assertNull(store.get(key(i)));
+        }
+        assertTrue(store.getTableReadCount() - reads < 50);
+        assertTrue(store.getBloomFilterSkipCount() > 0);
+        store.stop();
+    }
+
+
+    @Test
+    public void testForEachVisitsCurrentValuesInKeyOrder() throws Exception {
+        LSMStore store = createStore();
+        for(int i = 0; i < 300; i++) {
+            store.put(key(i), new byte[] {(byte) i, 0});
+        }
+        store.flush();
+        for(int i = 0; i < 300; i += 3) {
+            store.put(key(i), new byte[] {(byte) i, 1});
+        }
+        store.remove(key(1));
+
+        final List<KVKey> keys = new ArrayList<KVKey>();
+        final List<byte[]> values = new ArrayList<byte[]>();
+        store.forEach(new EntryVisitor() {
+            @Override
+            public void visit(KVKey key, byte[] value) throws IOException {
+                keys.add(key);
+                values.add(value);
+            }
+        });
+        assertEquals(299, keys.size());
+        for(int i = 1; i < keys.size(); i++) {
+            assertTrue(keys.get(i - 1).compareTo(keys.get(i)) < 0);
+        }
+        assertEquals(key(3), keys.get(2));
+        assertArrayEquals(new byte[] {3, 1}, values.get(2));
+        assertArrayEquals(new byte[] {4, 0}, values.get(3));
+        store.stop();
+    }
+}
@@ -0,0 +1,199 @@
+package kvstore;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static kvstore.KVTestUtility.key;
+import static org.junit.Assert.*;
+
+public class OpenAddressingTableTest {
+
+    @Test
+    public void testPutGetRemove() {
+        OpenAddressingTable table = new OpenAddressingTable();
+        byte[] value = {1, 2, 3};
+
+        assertEquals(StorageEngine.NO_VALUE, table.put(key(1), value));
+        value[0] = 9;
+        assertArrayEquals(new byte[] {1, 2, 3}, table.get(key(1)));
+        assertEquals(3, table.put(key(1), new byte[] {4}));
+        assertEquals(1, table.size());
+        assertEquals(1, table.getValueLength(key(1)));
+
+        assertEquals(1, table.remove(key(1)));
+        assertNull(table.get(key(1)));
+        assertEquals(StorageEngine.NO_VALUE, table.remove(key(1)));
+        assertTrue(table.isEmpty());
+    }
+
+
+    @Test
+    public void testMatchesHashMapUnderRandomOperations() {
+        // A single small segment forces long probe runs, growth and back shifts on removal
+        OpenAddressingTable table = new OpenAddressingTable(1);
+        HashMap<Integer, byte[]> expected = new HashMap<Integer, byte[]>();
+        Random random = new Random(9);
+        for(int i = 0; i < 200000; i++) {
+            int k = random.nextInt(5000);
+            if(random.nextInt(3) == 0) {
+                assertEquals(length(expected.remove(k)), table.remove(key(k)));
+            } else {
+                // Values of different lengths make the arena compact and grow
+                byte[] value = new byte[random.nextInt(40)];
+                random.nextBytes(value);
+                assertEquals(length(expected.put(k, value)), table.put(key(k), value));
+            }
+        }
+
+        assertEquals(expected.size(), table.size());
+        for(int k = 0; k < 5000; k++) {
+            assertArrayEquals(expected.get(k), table.get(key(k)));
+        }
+    }
+
+
+    private static int length(byte[] value) {
+        return value != null ? value.length : StorageEngine.NO_VALUE;
+    }
+
+
+    @Test
+    public void testBufferStaysValidAfterOverwriteAndCompaction() {
+        OpenAddressingTable table = new OpenAddressingTable(1);
+        table.put(key(1), new byte[] {1, 2, 3});
+        ByteBuffer buffer = table.getBuffer(key(1));
+
+        for(int i = 0; i < 1000; i++) {
+            table.put(key(1), new byte[100]);
+        }
+        table.remove(key(1));
+
+        assertEquals(3, buffer.remaining());
+        assertEquals(1, buffer.get(0));
+        assertEquals(3, buffer.get(2));
+        assertTrue(buffer.isReadOnly());
+    }
+
+
+    @Test
+    public void testArenaShrinksAfterRemovals() {
+        OpenAddressingTable table = new OpenAddressingTable(1);
+        for(int i = 0; i < 1000; i++) {
+            table.put(key(i), new byte[100]);
+        }
+        long fullArenaBytes = table.getArenaBytes();
+        for(int i = 0; i < 990; i++) {
+            table.remove(key(i));
+        }
+
+        assertTrue(table.getArenaBytes() < fullArenaBytes / 10);
+        for(int i = 990; i < 1000; i++) {
+            assertArrayEquals(new byte[100], table.get(key(i)));
+        }
+    }
+
+
+    @Test
+    public void testEntryBytesCoverMemory() {
+        OpenAddressingTable table = new OpenAddressingTable();
+        Map<Integer, Integer> valueLengths = new HashMap<Integer, Integer>();
+        Random random = new Random(7);
+        for(int i = 0; i < 100000; i++) {
+            int k = random.nextInt(20000);
+            if(random.nextInt(4) == 0) {
+                table.remove(key(k));
+                valueLengths.remove(k);
+            } else {
+                int length = 1 + random.nextInt(500);
+                table.put(key(k), new byte[length]);
+                valueLengths.put(k, length);
+            }
+        }
+
+        long entryBytes = 0;
+        for(int length : valueLengths.values()) {
+            entryBytes += OpenAddressingTable.getEntryBytes(length);
+        }
+        long emptyBytes = OpenAddressingTable.DEFAULT_SEGMENT_COUNT *
+                (OpenAddressingTable.INITIAL_SEGMENT_CAPACITY * (KVKey.KEY_SIZE_BYTES + 12L) + OpenAddressingTable.INITIAL_ARENA_BYTES);
+        assertTrue(table.getMemoryBytes() + " > " + entryBytes, table.getMemoryBytes() <= entryBytes + emptyBytes);
+    }
+
+
+    @Test
+    public void testReadersSeeStableKeysDuringWrites() throws Exception {
+        final OpenAddressingTable table = new OpenAddressingTable(4);
+        final byte[] stable = new byte[] {42};
+        for(int i = 0; i < 1000; i++) {
+            table.put(key(i), stable);
+        }
+
+        final AtomicBoolean failed = new AtomicBoolean();
+        ArrayList<Thread> threads = new ArrayList<Thread>();
+        threads.add(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                // Keys above 1000 are added and removed, growing the segments and shifting entries
+                for(int round = 0; round < 20; round++) {
+                    for(int i = 1000; i < 20000; i++) {
+                        table.put(key(i), new byte[] {1});
+                    }
+                    for(int i = 1000; i < 20000; i++) {
+                        table.remove(key(i));
+                    }
+                }
+            }
+        }));
+        for(int t = 0; t < 2; t++) {
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for(int round = 0; round < 200; round++) {
+                        for(int i = 0; i < 1000; i++) {
+                            if(!Arrays.equals(stable, table.get(key(i)))) {
+                                failed.set(true);
+                            }
+                        }
+                    }
+                }
+            }));
+        }
+        for(Thread thread : threads) {
+            thread.start();
+        }
+        for(Thread thread : threads) {
+            thread.join();
+        }
+
+        assertFalse(failed.get());
+        assertEquals(1000, table.size());
+    }
+
+
+    @Test
+    public void testForEachVisitsAllEntries() throws Exception {
+        OpenAddressingTable table = new OpenAddressingTable();
+        for(int i = 0; i < 1000; i++) {
+            table.put(key(i), new byte[] {(byte) i});
+        }
+
+        final Map<KVKey, byte[]> visited = new HashMap<KVKey, byte[]>();
+        table.forEach(new EntryVisitor() {
+            @Override
+            public void visit(KVKey key, byte[] value) {
+                assertNull(visited.put(key, value));
+            }
+        });
+        assertEquals(1000, visited.size());
+        for(int i = 0; i < 1000; i++) {
+            assertArrayEquals(new byte[] {(byte) i}, visited.get(key(i)));
+        }
+    }
+}
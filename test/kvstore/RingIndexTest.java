@@ -0,0 +1,35 @@
+package kvstore;
+
+import org.junit.Test;
+import utility.HashUtility;
+import utility.UTF8StringUtility;
+
+import static org.junit.Assert.*;
+
+public class RingIndexTest {
+
+    @Test
+    public void testRingIDMatchesRequestHash() {
+        RingIndex ringIndex = new RingIndex(HashUtility.DEFAULT_HASH_RANGE);
+        String[] keys = {"a", "key", "some longer key 1234567890", "schl\u00fcssel"};
+        for(String key : keys) {
+            assertEquals(HashUtility.simpleHash(key, HashUtility.DEFAULT_HASH_RANGE),
+                    ringIndex.getRingID(new KVKey(UTF8StringUtility.stringToBytesUTF8(key))));
+        }
+    }
+
+
+    @Test
+    public void testKeysAreBucketedByRingID() {
+        RingIndex ringIndex = new RingIndex(10);
+        KVKey key = new KVKey(new byte[] {5});
+        ringIndex.add(key);
+        ringIndex.add(key);
+        assertEquals(1, ringIndex.getKeys(5).size());
+        assertTrue(ringIndex.getKeys(5).contains(key));
+
+        ringIndex.remove(key);
+        assertTrue(ringIndex.getKeys(5).isEmpty());
+        assertEquals(0, ringIndex.next(9));
+    }
+}
@@ -0,0 +1,154 @@
+package kvstore;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import static kvstore.KVTestUtility.key;
+import static org.junit.Assert.*;
+
+public class SegmentStoreTest {
+
+    // Holds the files of each test and deletes them afterwards
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static final int SEGMENT_SIZE_BYTES = 4096;
+
+    @Test
+    public void testAllocateReadAndFree() throws Exception {
+        SegmentStore store = new SegmentStore(temporaryFolder.newFolder(), SEGMENT_SIZE_BYTES, SEGMENT_SIZE_BYTES * 4);
+        long handle = store.allocate(key(1), new byte[] {1, 2, 3});
+        assertNotEquals(ValueStorage.NO_HANDLE, handle);
+        assertArrayEquals(new byte[] {1, 2, 3}, store.read(handle));
+        assertEquals(3, store.getValueLength(handle));
+
+        ByteBuffer view = store.view(handle);
+        assertTrue(view.isReadOnly());
+        assertEquals(3, view.remaining());
+        assertEquals(2, view.get(1));
+
+        store.free(handle);
+        assertEquals(0, store.getLiveBytes());
+        // The record is only dead, so an old view still holds the value
+        assertEquals(3, view.get(2));
+    }
+
+
+    @Test
+    public void testStoreReportsOutOfSpace() throws Exception {
+        SegmentStore store = new SegmentStore(temporaryFolder.newFolder(), SEGMENT_SIZE_BYTES, SEGMENT_SIZE_BYTES * 2);
+        assertNotEquals(ValueStorage.NO_HANDLE, store.allocate(key(1), new byte[3000]));
+        assertNotEquals(ValueStorage.NO_HANDLE, store.allocate(key(2), new byte[3000]));
+        assertEquals(ValueStorage.NO_HANDLE, store.allocate(key(3), new byte[3000]));
+    }
+
+
+    @Test
+    public void testCompactionMovesLiveRecordsAndDeletesSegments() throws Exception {
+        File directory = temporaryFolder.newFolder();
+        final SegmentStore store = new SegmentStore(directory, SEGMENT_SIZE_BYTES, SEGMENT_SIZE_BYTES * 8);
+        final Map<KVKey, Long> index = new HashMap<KVKey, Long>();
+
+        // Fill several segments, then overwrite most keys so the old segments are mostly dead
+        for(int i = 0; i < 100; i++) {
+            index.put(key(i), store.allocate(key(i), new byte[] {(byte) i, 0}));
+        }
+        for(int i = 0; i < 90; i++) {
+            long handle = store.allocate(key(i), new byte[] {(byte) i, 1});
+            store.free(index.put(key(i), handle));
+        }
+        int segmentCount = store.getSegmentCount();
+
+        int deleted = store.compact(new SegmentStore.Relocator() {
+            @Override
+            public void relocate(KVKey key, long handle) {
+                if(index.get(key) == handle) {
+                    long moved = store.move(handle);
+                    index.put(key, moved);
+                    store.free(handle);
+                }
+            }
+        });
+        assertTrue(deleted > 0);
+        assertEquals(segmentCount - deleted, store.getSegmentCount());
+        assertEquals(store.getSegmentCount(), directory.listFiles().length);
+
+        for(int i = 0; i < 100; i++) {
+            assertArrayEquals(new byte[] {(byte) i, (byte) (i < 90 ? 1 : 0)}, store.read(index.get(key(i))));
+        }
+    }
+
+
+    @Test
+    public void testDeletedSegmentCountsAgainstBudgetUntilUnmapped() throws Exception {
+        final SegmentStore store = new SegmentStore(temporaryFolder.newFolder(), SEGMENT_SIZE_BYTES, SEGMENT_SIZE_BYTES * 2);
+        long dead = store.allocate(key(1), new byte[3000]);
+        assertNotEquals(ValueStorage.NO_HANDLE, store.allocate(key(2), new byte[3000]));
+        ByteBuffer view = store.view(dead);
+        store.free(dead);
+        assertEquals(1, store.compact(new SegmentStore.Relocator() {
+            @Override
+            public void relocate(KVKey key, long handle) {
+            }
+        }));
+
+        // The view keeps the deleted segment mapped, so its space is still taken
+        assertEquals(SEGMENT_SIZE_BYTES, store.getRetainedBytes());
+        assertEquals(ValueStorage.NO_HANDLE, store.allocate(key(3), new byte[3000]));
+        assertEquals(0, view.get(0));
+
+        view = null;
+        long handle = ValueStorage.NO_HANDLE;
+        for(int attempt = 0; attempt < 20 && handle == ValueStorage.NO_HANDLE; attempt++) {
+            Thread.sleep(RetiredMappings.GC_REQUEST_INTERVAL_MILLIS / 4);
+            handle = store.allocate(key(3), new byte[3000]);
+        }
+        assertNotEquals(ValueStorage.NO_HANDLE, handle);
+        assertEquals(0, store.getRetainedBytes());
+    }
+
+
+    @Test
+    public void testSegmentStorageInStore() throws Exception {
+        KVStoreController kvStoreController = new KVStoreController(1000);
+        ValueStorageEngine engine = new ValueStorageEngine(new SegmentStore(temporaryFolder.newFolder(), SEGMENT_SIZE_BYTES, SEGMENT_SIZE_BYTES * 4));
+        kvStoreController.setStorageEngine(engine);
+
+        // Overwrite the same keys far beyond the disk budget, compacting in between
+        for(int round = 0; round < 20; round++) {
+            for(int i = 0; i < 20; i++) {
+                assertEquals(KVStoreStatus.SUCCESS, kvStoreController.put(key(i), new byte[] {(byte) i, (byte) round}));
+            }
+            engine.compact();
+        }
+        assertEquals(20, kvStoreController.getSize());
+        assertArrayEquals(new byte[] {5, 19}, kvStoreController.get(key(5)));
+        ByteBuffer value = kvStoreController.getValueBuffer(key(6));
+        assertEquals(2, value.remaining());
+        assertEquals(19, value.get(1));
+
+        assertEquals(KVStoreStatus.SUCCESS, kvStoreController.remove(key(5)));
+        assertNull(kvStoreController.get(key(5)));
+        assertNull(kvStoreController.getValueBuffer(key(5)));
+    }
+
+
+    @Test
+    public void testStoreHoldsMoreThanHeapCapacity() throws Exception {
+        // The heap capacity holds 10 values, the segments 4 times as many
+        KVStoreController kvStoreController = new KVStoreController(Integer.MAX_VALUE, OpenAddressingTable.getEntryBytes(3000) * 10);
+        kvStoreController.setStorageEngine(new ValueStorageEngine(new SegmentStore(temporaryFolder.newFolder(), SEGMENT_SIZE_BYTES * 8,
+                SEGMENT_SIZE_BYTES * 8 * 5)));
+        for(int i = 0; i < 40; i++) {
+            assertEquals(KVStoreStatus.SUCCESS, kvStoreController.put(key(i), new byte[3000]));
+        }
+        assertEquals(40, kvStoreController.getSize());
+        assertEquals(3000, kvStoreController.get(key(0)).length);
+    }
+}
@@ -0,0 +1,63 @@
+package kvstore;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SlabAllocatorTest {
+
+    private static byte[] value(Random random, int length) {
+        byte[] value = new byte[length];
+        random.nextBytes(value);
+        return value;
+    }
+
+
+    @Test
+    public void testReadReturnsAllocatedValue() {
+        SlabAllocator allocator = new SlabAllocator(4 * SlabAllocator.SLAB_SIZE_BYTES);
+        Random random = new Random(1);
+        byte[] small = value(random, 10);
+        byte[] large = value(random, 15000);
+
+        long smallHandle = allocator.allocate(small);
+        long largeHandle = allocator.allocate(large);
+        assertArrayEquals(small, allocator.read(smallHandle));
+        assertArrayEquals(large, allocator.read(largeHandle));
+        assertEquals(15000, SlabAllocator.getLength(largeHandle));
+        assertEquals(2 * SlabAllocator.SLAB_SIZE_BYTES, allocator.getSlabBytes());
+        assertEquals(SlabAllocator.MIN_CHUNK_SIZE_BYTES + 16384, allocator.getAllocatedChunkBytes());
+    }
+
+
+    @Test
+    public void testFreedChunkIsReused() {
+        SlabAllocator allocator = new SlabAllocator(SlabAllocator.SLAB_SIZE_BYTES);
+        Random random = new Random(2);
+        long handle = allocator.allocate(value(random, 100));
+        allocator.free(handle);
+        assertEquals(0, allocator.getAllocatedChunkBytes());
+
+        byte[] value = value(random, 120);
+        long reusedHandle = allocator.allocate(value);
+        assertEquals(handle >>> 20, reusedHandle >>> 20);
+        assertArrayEquals(value, allocator.read(reusedHandle));
+    }
+
+
+    @Test
+    public void testAllocationFailsWhenBudgetIsExhausted() {
+        SlabAllocator allocator = new SlabAllocator(SlabAllocator.SLAB_SIZE_BYTES);
+        Random random = new Random(3);
+        int chunkCount = SlabAllocator.SLAB_SIZE_BYTES / 16384;
+        for(int i = 0; i < chunkCount; i++) {
+            assertNotEquals(SlabAllocator.NO_HANDLE, allocator.allocate(value(random, 15000)));
+        }
+        assertEquals(SlabAllocator.NO_HANDLE, allocator.allocate(value(random, 15000)));
+        assertEquals(SlabAllocator.NO_HANDLE, allocator.allocate(value(random, 10)));
+        assertEquals(2, allocator.getAllocationFailureCount());
+        assertEquals(1.0, allocator.getUtilization(), 0.0001);
+    }
+}
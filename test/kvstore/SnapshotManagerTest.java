@@ -0,0 +1,129 @@
+package kvstore;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static kvstore.KVTestUtility.key;
+import static org.junit.Assert.*;
+
+public class SnapshotManagerTest {
+
+    // Holds the files of each test and deletes them afterwards
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File createFile(String suffix) {
+        return new File(temporaryFolder.getRoot(), "store" + suffix);
+    }
+
+
+    @Test
+    public void testStoreIsRecoveredFromSnapshotAndLogTail() throws Exception {
+        File snapshotFile = createFile(".snapshot");
+        File logFile = createFile(".log");
+
+        KVStoreController kvStoreController = new KVStoreController(10000);
+        WriteAheadLog log = new WriteAheadLog(logFile, 1);
+        SnapshotManager snapshotManager = new SnapshotManager(kvStoreController, snapshotFile, log);
+        assertEquals(0, snapshotManager.load());
+        kvStoreController.enableWriteAheadLog(log);
+        for(int i = 0; i < 1000; i++) {
+            assertEquals(KVStoreStatus.SUCCESS, kvStoreController.put(key(i), new byte[] {(byte) i, 1}));
+        }
+        long logLength = logFile.length();
+
+        assertEquals(1000, snapshotManager.takeSnapshot());
+        assertEquals(0, logFile.length());
+        assertEquals(logLength, log.getTruncatedBytes());
+
+        // Changes after the snapshot are only in the log
+        assertEquals(KVStoreStatus.SUCCESS, kvStoreController.put(key(1), new byte[] {9}));
+        assertEquals(KVStoreStatus.SUCCESS, kvStoreController.remove(key(2)));
+        assertEquals(KVStoreStatus.SUCCESS, kvStoreController.put(key(5000), new byte[] {7}));
+        log.close();
+
+        KVStoreController recovered = new KVStoreController(10000);
+        WriteAheadLog reopened = new WriteAheadLog(logFile, 1);
+        assertEquals(1000, new SnapshotManager(recovered, snapshotFile, reopened).load());
+        assertEquals(3, recovered.enableWriteAheadLog(reopened));
+        reopened.close();
+
+        assertEquals(1000, recovered.getSize());
+        assertArrayEquals(new byte[] {9}, recovered.get(key(1)));
+        assertNull(recovered.get(key(2)));
+        assertArrayEquals(new byte[] {7}, recovered.get(key(5000)));
+        assertArrayEquals(new byte[] {(byte) 999, 1}, recovered.get(key(999)));
+    }
+
+
+    @Test
+    public void testSnapshotKeepsExpiry() throws Exception {
+        File snapshotFile = createFile(".snapshot");
+        long now = System.currentTimeMillis();
+        KVStoreController kvStoreController = new KVStoreController(100);
+        assertEquals(KVStoreStatus.SUCCESS, kvStoreController.put(key(1), new byte[] {1}, now + 60000));
+        assertEquals(KVStoreStatus.SUCCESS, kvStoreController.put(key(2), new byte[] {2}));
+        assertEquals(KVStoreStatus.SUCCESS, kvStoreController.put(key(3), new byte[] {3}, now + 200));
+        assertEquals(3, new SnapshotManager(kvStoreController, snapshotFile, null).takeSnapshot());
+
+        // The third entry expires between the snapshot and the restart
+        Thread.sleep(300);
+        KVStoreController recovered = new KVStoreController(100);
+        assertEquals(2, new SnapshotManager(recovered, snapshotFile, null).load());
+        assertEquals(now + 60000, recovered.getExpiryMillis(key(1)));
+        assertEquals(KVStoreController.NO_EXPIRY, recovered.getExpiryMillis(key(2)));
+        assertNull(recovered.get(key(3)));
+    }
+
+
+    @Test
+    public void testOffHeapStoreSnapshot() throws Exception {
+        File snapshotFile = createFile(".snapshot");
+        KVStoreController kvStoreController = new KVStoreController(1000);
+        kvStoreController.setStorageEngine(new ValueStorageEngine(new SlabAllocator(SlabAllocator.SLAB_SIZE_BYTES * 4)));
+        for(int i = 0; i < 100; i++) {
+            kvStoreController.put(key(i), new byte[i + 1]);
+        }
+        assertEquals(100, new SnapshotManager(kvStoreController, snapshotFile, null).takeSnapshot());
+
+        KVStoreController recovered = new KVStoreController(1000);
+        assertEquals(100, new SnapshotManager(recovered, snapshotFile, null).load());
+        for(int i = 0; i < 100; i++) {
+            assertEquals(i + 1, recovered.get(key(i)).length);
+        }
+    }
+
+
+    @Test(expected = IOException.class)
+    public void testSnapshotLargerThanStoreIsRejected() throws Exception {
+        File snapshotFile = createFile(".snapshot");
+        KVStoreController kvStoreController = new KVStoreController(100);
+        for(int i = 0; i < 20; i++) {
+            kvStoreController.put(key(i), new byte[] {1});
+        }
+        assertEquals(20, new SnapshotManager(kvStoreController, snapshotFile, null).takeSnapshot());
+
+        new SnapshotManager(new KVStoreController(10), snapshotFile, null).load();
+    }
+
+
+    @Test(expected = IOException.class)
+    public void testCorruptSnapshotIsRejected() throws Exception {
+        File snapshotFile = createFile(".snapshot");
+        KVStoreController kvStoreController = new KVStoreController(100);
+        kvStoreController.put(key(1), new byte[] {1, 2, 3});
+        new SnapshotManager(kvStoreController, snapshotFile, null).takeSnapshot();
+
+        RandomAccessFile raf = new RandomAccessFile(snapshotFile, "rw");
+        raf.seek(10);
+        raf.write(0x55);
+        raf.close();
+
+        new SnapshotManager(new KVStoreController(100), snapshotFile, null).load();
+    }
+}
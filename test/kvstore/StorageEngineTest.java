@@ -0,0 +1,101 @@
+package kvstore;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static kvstore.KVTestUtility.key;
+import static org.junit.Assert.*;
+
+public class StorageEngineTest {
+
+    // Holds the files of each test and deletes them afterwards
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private List<StorageEngine> createEngines() throws Exception {
+        List<StorageEngine> engines = new ArrayList<StorageEngine>();
+        engines.add(new HeapStorageEngine());
+        engines.add(new ValueStorageEngine(new SlabAllocator(SlabAllocator.SLAB_SIZE_BYTES * 4)));
+        engines.add(new ValueStorageEngine(new SegmentStore(temporaryFolder.newFolder("segments"), 1 << 16, 1 << 20)));
+        engines.add(new LSMStorageEngine(new LSMStore(temporaryFolder.newFolder("lsm"), 4096, 2048)));
+        return engines;
+    }
+
+
+    private static List<KVKey> scan(StorageEngine engine, KVKey fromKey, KVKey toKey) throws IOException {
+        final List<KVKey> keys = new ArrayList<KVKey>();
+        engine.scan(fromKey, toKey, new EntryVisitor() {
+            @Override
+            public void visit(KVKey key, byte[] value) {
+                keys.add(key);
+            }
+        });
+        return keys;
+    }
+
+
+    @Test
+    public void testEntryBytesIncludeStorageOverhead() throws Exception {
+        // Off-heap values are rounded up to the chunk size of their size class
+        StorageEngine offHeap = new ValueStorageEngine(new SlabAllocator(SlabAllocator.SLAB_SIZE_BYTES));
+        assertEquals(offHeap.getEntryBytes(1), offHeap.getEntryBytes(SlabAllocator.MIN_CHUNK_SIZE_BYTES));
+        assertEquals(SlabAllocator.MIN_CHUNK_SIZE_BYTES, offHeap.getEntryBytes(SlabAllocator.MIN_CHUNK_SIZE_BYTES + 1) - offHeap.getEntryBytes(1));
+
+        // Heap values are counted with the free space and garbage of their arena
+        StorageEngine heap = new HeapStorageEngine();
+        assertEquals(2000, heap.getEntryBytes(1000) - heap.getEntryBytes(0));
+        assertTrue(heap.getEntryBytes(0) > KVKey.KEY_SIZE_BYTES);
+    }
+
+
+    @Test
+    public void testPutGetAndRemove() throws Exception {
+        for(StorageEngine engine : createEngines()) {
+            String name = engine.getName();
+            assertEquals(name, StorageEngine.NO_VALUE, engine.put(key(1), new byte[] {1, 2, 3}));
+            int replaced = engine.put(key(1), new byte[] {4, 5});
+            assertTrue(name, replaced == 3 || !engine.isCapacityLimited() && replaced == StorageEngine.NO_VALUE);
+            assertArrayEquals(name, new byte[] {4, 5}, engine.get(key(1)));
+            assertEquals(name, 2, engine.getBuffer(key(1)).remaining());
+            assertEquals(name, 2, engine.getValueLength(key(1)));
+            assertNull(name, engine.get(key(2)));
+            assertEquals(name, StorageEngine.NO_VALUE, engine.getValueLength(key(2)));
+
+            assertEquals(name, 2, engine.remove(key(1)));
+            assertEquals(name, StorageEngine.NO_VALUE, engine.remove(key(1)));
+            assertNull(name, engine.get(key(1)));
+            assertNull(name, engine.getBuffer(key(1)));
+        }
+    }
+
+
+    @Test
+    public void testScanVisitsKeysInRange() throws Exception {
+        for(StorageEngine engine : createEngines()) {
+            String name = engine.getName();
+            for(int i = 0; i < 500; i++) {
+                engine.put(key(i), new byte[] {(byte) i, 0, 0, 0});
+            }
+            engine.remove(key(120));
+            if(engine instanceof LSMStorageEngine) {
+                ((LSMStorageEngine) engine).getLSMStore().flush();
+                engine.put(key(130), new byte[] {1});
+            }
+
+            List<KVKey> keys = scan(engine, key(100), key(200));
+            assertEquals(name, 99, keys.size());
+            for(KVKey key : keys) {
+                assertTrue(name, key.isInRange(key(100), key(200)));
+            }
+            assertFalse(name, keys.contains(key(120)));
+            assertEquals(name, 499, scan(engine, null, null).size());
+            assertEquals(name, 10, scan(engine, key(490), null).size());
+        }
+    }
+}
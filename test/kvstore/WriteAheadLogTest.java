@@ -0,0 +1,144 @@
+package kvstore;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static kvstore.KVTestUtility.key;
+import static org.junit.Assert.*;
+
+public class WriteAheadLogTest {
+
+    // Holds the files of each test and deletes them afterwards
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static WriteAheadLog.RecordHandler ignoreRecords() {
+        return new WriteAheadLog.RecordHandler() {
+            @Override
+            public void put(KVKey key, byte[] value, long expiryMillis) {
+            }
+
+            @Override
+            public void remove(KVKey key) {
+            }
+        };
+    }
+
+
+    private File createLogFile() throws Exception {
+        return temporaryFolder.newFile();
+    }
+
+
+    @Test
+    public void testStoreIsRecoveredFromLog() throws Exception {
+        File file = createLogFile();
+
+        KVStoreController kvStoreController = new KVStoreController(100);
+        WriteAheadLog log = new WriteAheadLog(file, 1);
+        assertEquals(0, kvStoreController.enableWriteAheadLog(log));
+        assertEquals(KVStoreStatus.SUCCESS, kvStoreController.put(key(1), new byte[] {1}));
+        assertEquals(KVStoreStatus.SUCCESS, kvStoreController.put(key(2), new byte[] {2}));
+        assertEquals(KVStoreStatus.SUCCESS, kvStoreController.put(key(1), new byte[] {3}));
+        assertEquals(KVStoreStatus.SUCCESS, kvStoreController.remove(key(2)));
+        log.close();
+
+        KVStoreController recovered = new KVStoreController(100);
+        WriteAheadLog reopened = new WriteAheadLog(file, 1);
+        assertEquals(4, recovered.enableWriteAheadLog(reopened));
+        assertArrayEquals(new byte[] {3}, recovered.get(key(1)));
+        assertNull(recovered.get(key(2)));
+        assertEquals(1, recovered.getSize());
+        reopened.close();
+    }
+
+
+    @Test
+    public void testTornRecordIsDropped() throws Exception {
+        File file = createLogFile();
+        WriteAheadLog log = new WriteAheadLog(file, 1);
+        log.replay(ignoreRecords());
+        log.awaitSync(log.appendPut(key(1), new byte[] {1, 2, 3}));
+        log.awaitSync(log.appendPut(key(2), new byte[] {4, 5, 6}));
+        log.close();
+
+        // Cut the last record short as a crash during its write would
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        long fullLength = raf.length();
+        raf.setLength(fullLength - 2);
+        raf.close();
+
+        KVStoreController recovered = new KVStoreController(10);
+        WriteAheadLog reopened = new WriteAheadLog(file, 1);
+        assertEquals(1, recovered.enableWriteAheadLog(reopened));
+        assertNotNull(recovered.get(key(1)));
+        assertNull(recovered.get(key(2)));
+        assertEquals(fullLength / 2, file.length());
+
+        // New records are appended behind the last valid one
+        assertEquals(KVStoreStatus.SUCCESS, recovered.put(key(3), new byte[] {7}));
+        reopened.close();
+        WriteAheadLog appended = new WriteAheadLog(file, 1);
+        assertEquals(2, appended.replay(ignoreRecords()));
+        appended.close();
+    }
+
+
+    @Test
+    public void testRejectedPutsFailRecoveryAndKeepTheLog() throws Exception {
+        File file = createLogFile();
+        WriteAheadLog log = new WriteAheadLog(file, 1);
+        log.replay(ignoreRecords());
+        for(int i = 0; i < 5; i++) {
+            log.awaitSync(log.appendPut(key(i), new byte[] {1}));
+        }
+        log.close();
+
+        KVStoreController recovered = new KVStoreController(3);
+        WriteAheadLog reopened = new WriteAheadLog(file, 1);
+        try {
+            recovered.enableWriteAheadLog(reopened);
+            fail();
+        } catch(IOException e) {
+            // Expected, the store holds only 3 of the 5 logged pairs
+        }
+        assertNull(recovered.getWriteAheadLog());
+        reopened.close();
+
+        // All records are still in the log for a larger store
+        KVStoreController larger = new KVStoreController(10);
+        WriteAheadLog again = new WriteAheadLog(file, 1);
+        assertEquals(5, larger.enableWriteAheadLog(again));
+        assertEquals(5, larger.getSize());
+        again.close();
+    }
+
+
+    @Test
+    public void testExpiryIsRecoveredFromLog() throws Exception {
+        File file = createLogFile();
+        long expiryMillis = System.currentTimeMillis() + 60000;
+
+        KVStoreController kvStoreController = new KVStoreController(100);
+        WriteAheadLog log = new WriteAheadLog(file, 1);
+        kvStoreController.enableWriteAheadLog(log);
+        assertEquals(KVStoreStatus.SUCCESS, kvStoreController.put(key(1), new byte[] {1, 2}, expiryMillis));
+        assertEquals(KVStoreStatus.SUCCESS, kvStoreController.put(key(2), new byte[] {3}, System.currentTimeMillis() - 1));
+        assertEquals(KVStoreStatus.SUCCESS, kvStoreController.put(key(3), new byte[] {4}));
+        log.close();
+
+        KVStoreController recovered = new KVStoreController(100);
+        WriteAheadLog reopened = new WriteAheadLog(file, 1);
+        assertEquals(3, recovered.enableWriteAheadLog(reopened));
+        assertArrayEquals(new byte[] {1, 2}, recovered.get(key(1)));
+        assertEquals(expiryMillis, recovered.getExpiryMillis(key(1)));
+        assertNull(recovered.get(key(2)));
+        assertEquals(KVStoreController.NO_EXPIRY, recovered.getExpiryMillis(key(3)));
+        reopened.close();
+    }
+}
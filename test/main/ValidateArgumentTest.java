@@ -106,4 +106,207 @@ public class ValidateArgumentTest {
 
 
 
-}
\ No newline at end of file
+    @Test
+    public void testValidateArgsWithValidReceiveMode() throws Exception {
+        String[] args = {"-i", "blocking"};
+        Server.validateArgs(args);
+        assertEquals(Server.RECEIVE_MODE_BLOCKING, Server.receiveMode);
+
+        String[] args2 = {"-i", "nio"};
+        Server.validateArgs(args2);
+        assertEquals(Server.RECEIVE_MODE_NIO, Server.receiveMode);
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testValidateArgsWithInvalidReceiveMode() throws Exception {
+        String[] args = {"-i", "epoll"};
+        Server.validateArgs(args);
+    }
+
+
+    @Test
+    public void testValidateArgsWithValidHandlerPoolSize() throws Exception {
+        String[] args = {"-w", "8", "-q", "256"};
+        Server.validateArgs(args);
+        assertEquals(8, Server.handlerWorkerCount);
+        assertEquals(256, Server.handlerQueueDepth);
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testValidateArgsWithInvalidHandlerWorkerCount() throws Exception {
+        String[] args = {"-w", "0"};
+        Server.validateArgs(args);
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testValidateArgsWithInvalidHandlerQueueDepth() throws Exception {
+        String[] args = {"-q", "abc"};
+        Server.validateArgs(args);
+    }
+
+
+    @Test
+    public void testValidateArgsWithValidThreadMode() throws Exception {
+        String[] args = {"-t", "virtual"};
+        Server.validateArgs(args);
+        assertEquals(Server.THREAD_MODE_VIRTUAL, Server.threadMode);
+
+        String[] args2 = {"-t", "platform"};
+        Server.validateArgs(args2);
+        assertEquals(Server.THREAD_MODE_PLATFORM, Server.threadMode);
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testValidateArgsWithInvalidThreadMode() throws Exception {
+        String[] args = {"-t", "green"};
+        Server.validateArgs(args);
+    }
+
+
+    @Test
+    public void testValidateArgsWithValidShardCount() throws Exception {
+        String[] args = {"-s", "4"};
+        Server.validateArgs(args);
+        assertEquals(4, Server.shardCount);
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testValidateArgsWithInvalidShardCount() throws Exception {
+        String[] args = {"-s", "-2"};
+        Server.validateArgs(args);
+    }
+
+
+    @Test
+    public void testValidateArgsWithValidReplyMode() throws Exception {
+        String[] args = {"-r", "direct"};
+        Server.validateArgs(args);
+        assertEquals(Server.REPLY_MODE_DIRECT, Server.replyMode);
+
+        String[] args2 = {"-r", "relay"};
+        Server.validateArgs(args2);
+        assertEquals(Server.REPLY_MODE_RELAY, Server.replyMode);
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testValidateArgsWithInvalidReplyMode() throws Exception {
+        String[] args = {"-r", "broadcast"};
+        Server.validateArgs(args);
+    }
+
+
+    @Test
+    public void testValidateArgsWithValidOffHeapSize() throws Exception {
+        String[] args = {"-o", "256"};
+        Server.validateArgs(args);
+        assertEquals(256, Server.offHeapMegabytes);
+        Server.offHeapMegabytes = 0;
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testValidateArgsWithInvalidOffHeapSize() throws Exception {
+        String[] args = {"-o", "0"};
+        Server.validateArgs(args);
+    }
+
+
+    @Test
+    public void testValidateArgsWithValidCapacityAndEvictionMode() throws Exception {
+        String[] args = {"-m", "512", "-e", "wtinylfu"};
+        Server.validateArgs(args);
+        assertEquals(512, Server.capacityMegabytes);
+        assertEquals(Server.EVICTION_MODE_WTINYLFU, Server.evictionMode);
+        Server.evictionMode = Server.EVICTION_MODE_REJECT;
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testValidateArgsWithInvalidEvictionMode() throws Exception {
+        String[] args = {"-e", "random"};
+        Server.validateArgs(args);
+    }
+
+
+    @Test
+    public void testValidateArgsWithValidWriteAheadLog() throws Exception {
+        String[] args = {"-l", "node.wal", "-g", "50"};
+        Server.validateArgs(args);
+        assertEquals("node.wal", Server.logPath);
+        assertEquals(50, Server.logSyncIntervalMillis);
+        Server.logPath = null;
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testValidateArgsWithInvalidLogSyncInterval() throws Exception {
+        String[] args = {"-g", "0"};
+        Server.validateArgs(args);
+    }
+
+
+    @Test
+    public void testValidateArgsWithValidSnapshot() throws Exception {
+        String[] args = {"-f", "node.snapshot", "-v", "60"};
+        Server.validateArgs(args);
+        assertEquals("node.snapshot", Server.snapshotPath);
+        assertEquals(60, Server.snapshotIntervalSeconds);
+        Server.snapshotPath = null;
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testValidateArgsWithInvalidSnapshotInterval() throws Exception {
+        String[] args = {"-v", "-5"};
+        Server.validateArgs(args);
+    }
+
+
+    @Test
+    public void testValidateArgsWithValidSegmentStorage() throws Exception {
+        String[] args = {"-d", "segments", "-b", "1024"};
+        Server.validateArgs(args);
+        assertEquals("segments", Server.segmentDirectory);
+        assertEquals(1024, Server.diskMegabytes);
+        Server.segmentDirectory = null;
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testValidateArgsWithOffHeapAndSegmentStorage() throws Exception {
+        try {
+            Server.validateArgs(new String[] {"-o", "64", "-d", "segments"});
+        } finally {
+            Server.offHeapMegabytes = 0;
+            Server.segmentDirectory = null;
+        }
+    }
+
+
+    @Test
+    public void testValidateArgsWithValidLSMStorage() throws Exception {
+        String[] args = {"-k", "tables"};
+        Server.validateArgs(args);
+        assertEquals("tables", Server.lsmDirectory);
+        Server.lsmDirectory = null;
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testValidateArgsWithSegmentAndLSMStorage() throws Exception {
+        try {
+            Server.validateArgs(new String[] {"-d", "segments", "-k", "tables"});
+        } finally {
+            Server.segmentDirectory = null;
+            Server.lsmDirectory = null;
+        }
+    }
+
+
+}
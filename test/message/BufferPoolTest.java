@@ -0,0 +1,142 @@
+package message;
+
+import org.junit.Test;
+
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class BufferPoolTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxBuffersPerClass() {
+        new BufferPool(0);
+    }
+
+    @Test
+    public void testLeaseReturnsSmallestSizeClass() {
+        BufferPool pool = new BufferPool(4);
+        assertEquals(BufferPool.SIZE_CLASSES[0], pool.lease(1).length);
+        assertEquals(BufferPool.SIZE_CLASSES[1], pool.lease(BufferPool.SIZE_CLASSES[0] + 1).length);
+        assertEquals(BufferPool.MAX_BUFFER_SIZE, pool.lease(BufferPool.MAX_BUFFER_SIZE).length);
+    }
+
+    @Test
+    public void testReleasedBufferIsReused() {
+        BufferPool pool = new BufferPool(4);
+        byte[] buffer = pool.lease(100);
+        assertEquals(1, pool.getOutstandingLeaseCount());
+        assertEquals(1, pool.getMissCount());
+
+        pool.release(buffer);
+        assertEquals(0, pool.getOutstandingLeaseCount());
+
+        assertSame(buffer, pool.lease(50));
+        assertEquals(1, pool.getHitCount());
+        assertEquals(0.5, pool.getHitRate(), 0.0001);
+    }
+
+    @Test
+    public void testOversizedBufferIsNotPooled() {
+        BufferPool pool = new BufferPool(4);
+        byte[] buffer = pool.lease(BufferPool.MAX_BUFFER_SIZE + 1);
+        assertEquals(BufferPool.MAX_BUFFER_SIZE + 1, buffer.length);
+        assertEquals(0, pool.getOutstandingLeaseCount());
+
+        pool.release(buffer);
+        assertEquals(0, pool.getFreeBufferCount());
+    }
+
+    @Test
+    public void testForeignAndDoubleReleasesAreIgnored() {
+        BufferPool pool = new BufferPool(4);
+        pool.release(new byte[BufferPool.SIZE_CLASSES[0]]);
+        assertEquals(0, pool.getFreeBufferCount());
+        assertEquals(0, pool.getOutstandingLeaseCount());
+
+        byte[] buffer = pool.lease(10);
+        pool.release(buffer);
+        pool.release(buffer);
+        assertEquals(1, pool.getFreeBufferCount());
+        assertEquals(0, pool.getOutstandingLeaseCount());
+        assertEquals(2, pool.getIgnoredReleaseCount());
+
+        assertSame(buffer, pool.lease(10));
+        assertNotSame(buffer, pool.lease(10));
+    }
+
+
+    @Test
+    public void testUnreleasedLeaseIsCountedAsLeaked() {
+        BufferPool pool = new BufferPool(4);
+        byte[] leaked = pool.lease(10);
+        pool.lease(2000);
+
+        assertEquals(0, pool.reclaimLeakedLeases(System.currentTimeMillis()));
+        assertEquals(2, pool.reclaimLeakedLeases(System.currentTimeMillis() + BufferPool.LEAK_TIMEOUT));
+        assertEquals(0, pool.getOutstandingLeaseCount());
+        assertEquals(2, pool.getLeakedLeaseCount());
+
+        // A late release of a leaked array does not make the count negative
+        pool.release(leaked);
+        assertEquals(0, pool.getOutstandingLeaseCount());
+        assertEquals(1, pool.getIgnoredReleaseCount());
+    }
+
+
+    @Test
+    public void testConcurrentLeasesAreTracked() throws Exception {
+        final BufferPool pool = new BufferPool(64);
+        Thread[] threads = new Thread[4];
+        for(int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for(int i = 0; i < 100000; i++) {
+                        byte[] buffer = pool.lease(100);
+                        pool.release(buffer);
+                        pool.release(buffer);
+                    }
+                }
+            });
+        }
+        for(Thread thread : threads) {
+            thread.start();
+        }
+        for(Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(0, pool.getOutstandingLeaseCount());
+        assertEquals(0, pool.getUntrackedLeaseCount());
+        assertEquals(400000, pool.getIgnoredReleaseCount());
+    }
+
+
+    @Test
+    public void testPoolRetainsAtMostMaxBuffersPerClass() {
+        BufferPool pool = new BufferPool(1);
+        byte[] first = pool.lease(10);
+        byte[] second = pool.lease(10);
+        pool.release(first);
+        pool.release(second);
+        assertEquals(1, pool.getFreeBufferCount());
+    }
+
+    @Test
+    public void testBuildPacket() throws Exception {
+        byte[] header = new byte[Header.HEADER_SIZE_BYTES];
+        Arrays.fill(header, (byte) 7);
+        byte[] payload = Payload.buildPayloadWithOnlyCommand((byte) 0x01);
+        InetAddress address = InetAddress.getByName("127.0.0.1");
+
+        DatagramPacket packet = Message.buildPacket(header, payload, address, 4000);
+        assertEquals(header.length + payload.length, packet.getLength());
+        assertArrayEquals(Message.buildMessage(header, payload), Arrays.copyOf(packet.getData(), packet.getLength()));
+        assertEquals(address, packet.getAddress());
+        assertEquals(4000, packet.getPort());
+        BufferPool.getInstance().release(packet.getData());
+    }
+}
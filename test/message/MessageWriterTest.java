@@ -0,0 +1,152 @@
+package message;
+
+import command.RequestCodes;
+import command.ResponseCodes;
+import org.junit.Test;
+
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MessageWriterTest {
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random().nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] written(MessageWriter writer) {
+        return Arrays.copyOf(writer.getBuffer(), writer.getLength());
+    }
+
+    @Test
+    public void testStandardRequestMatchesPayloadBuilder() throws Exception {
+        byte[] header = randomBytes(Header.HEADER_SIZE_BYTES);
+        byte[] key = randomBytes(Payload.KEY_SIZE_BYTES);
+        byte[] value = randomBytes(100);
+
+        MessageWriter writer = new MessageWriter(new byte[BufferPool.MAX_BUFFER_SIZE]);
+        writer.writeHeader(header).writeStandardRequest(RequestCodes.PUT, key, value);
+        assertArrayEquals(Message.buildMessage(header, Payload.buildStandardRequestPayload(RequestCodes.PUT, key, value)), written(writer));
+
+        writer.wrap(writer.getBuffer()).writeHeader(header).writeStandardRequest(RequestCodes.GET, key, null);
+        assertArrayEquals(Message.buildMessage(header, Payload.buildStandardRequestPayload(RequestCodes.GET, key)), written(writer));
+    }
+
+    @Test
+    public void testStandardResponseMatchesPayloadBuilder() throws Exception {
+        byte[] header = randomBytes(Header.HEADER_SIZE_BYTES);
+        byte[] value = randomBytes(Payload.MAX_VALUE_SIZE_BYTES + 10);
+
+        MessageWriter writer = new MessageWriter(new byte[BufferPool.MAX_BUFFER_SIZE]);
+        writer.writeHeader(header).writeStandardResponse(ResponseCodes.OPERATION_SUCCESS, value);
+        assertArrayEquals(Message.buildMessage(header, Payload.buildStandardResponsePayload(ResponseCodes.OPERATION_SUCCESS, value)), written(writer));
+    }
+
+    @Test
+    public void testForwardingRequestsMatchPayloadBuilders() throws Exception {
+        byte[] header = randomBytes(Header.HEADER_SIZE_BYTES);
+        byte[] inner = Payload.buildStandardRequestPayload(RequestCodes.GET, randomBytes(Payload.KEY_SIZE_BYTES));
+        InetAddress returnAddress = InetAddress.getByName("10.1.2.3");
+        InetAddress clientAddress = InetAddress.getByName("10.4.5.6");
+
+        MessageWriter writer = new MessageWriter(new byte[BufferPool.MAX_BUFFER_SIZE]);
+        writer.writeHeader(header).writeForwardingRequest(RequestCodes.FWD_GET, returnAddress, 4000, inner.length)
+                .writeBytes(inner, 0, inner.length);
+        assertArrayEquals(Message.buildMessage(header, Payload.buildForwardingRequestPayload(RequestCodes.FWD_GET, returnAddress, 4000, inner)),
+                written(writer));
+
+        writer.wrap(writer.getBuffer()).writeHeader(header)
+                .writeClientForwardingRequest(RequestCodes.FWD_GET, returnAddress, 4000, clientAddress, 5000, 123, inner.length)
+                .writePayload(new PayloadView().wrap(ByteBuffer.wrap(inner), 0, inner.length));
+        assertArrayEquals(Message.buildMessage(header, Payload.buildClientForwardingRequestPayload(RequestCodes.FWD_GET, returnAddress, 4000,
+                clientAddress, 5000, 123, inner)), written(writer));
+    }
+
+    @Test
+    public void testNodeListMatchesPayloadBuilder() throws Exception {
+        byte[] header = randomBytes(Header.HEADER_SIZE_BYTES);
+        byte[] nodeList = randomBytes(40);
+
+        MessageWriter writer = new MessageWriter(new byte[BufferPool.MAX_BUFFER_SIZE]);
+        writer.writeHeader(header).writePayloadWithNodeList(RequestCodes.JOIN_REQ, nodeList);
+        assertArrayEquals(Message.buildMessage(header, Payload.buildPayloadWithNodeList(RequestCodes.JOIN_REQ, nodeList)), written(writer));
+    }
+
+    @Test
+    public void testClientForwardingResponsePacket() throws Exception {
+        byte[] header = randomBytes(Header.HEADER_SIZE_BYTES);
+        byte[] value = randomBytes(10);
+        InetAddress clientAddress = InetAddress.getByName("10.4.5.6");
+        InetAddress destinationAddress = InetAddress.getByName("127.0.0.1");
+
+        DatagramPacket packet = MessageWriter.buildClientForwardingResponsePacket(header, ResponseCodes.OPERATION_SUCCESS, value,
+                clientAddress, 5000, destinationAddress, 6000);
+        byte[] expected = Message.buildMessage(header, Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, clientAddress, 5000,
+                Payload.buildStandardResponsePayload(ResponseCodes.OPERATION_SUCCESS, value)));
+        assertArrayEquals(expected, Arrays.copyOf(packet.getData(), packet.getLength()));
+        assertEquals(destinationAddress, packet.getAddress());
+        assertEquals(6000, packet.getPort());
+        BufferPool.getInstance().release(packet.getData());
+    }
+
+    @Test
+    public void testResponseWithValueBufferMatchesValueArray() throws Exception {
+        byte[] header = randomBytes(Header.HEADER_SIZE_BYTES);
+        byte[] value = randomBytes(100);
+        InetAddress address = InetAddress.getLoopbackAddress();
+
+        ByteBuffer valueBuffer = ByteBuffer.wrap(value).asReadOnlyBuffer();
+        DatagramPacket fromArray = MessageWriter.buildClientForwardingResponsePacket(header, ResponseCodes.OPERATION_SUCCESS, value,
+                address, 1000, address, 2000);
+        DatagramPacket fromBuffer = MessageWriter.buildClientForwardingResponsePacket(header, ResponseCodes.OPERATION_SUCCESS, valueBuffer,
+                address, 1000, address, 2000);
+        assertArrayEquals(Arrays.copyOf(fromArray.getData(), fromArray.getLength()), Arrays.copyOf(fromBuffer.getData(), fromBuffer.getLength()));
+        assertEquals(100, valueBuffer.remaining());
+    }
+
+
+    @Test
+    public void testPacketsFromReceivedRequestMatchHeaderArray() throws Exception {
+        byte[] header = randomBytes(Header.HEADER_SIZE_BYTES);
+        byte[] message = Message.buildMessage(header, Payload.buildStandardRequestPayload(RequestCodes.GET, randomBytes(Payload.KEY_SIZE_BYTES)));
+        InetAddress address = InetAddress.getLoopbackAddress();
+
+        // Received message that does not start at the beginning of its buffer
+        byte[] data = new byte[message.length + 7];
+        System.arraycopy(message, 0, data, 7, message.length);
+        MessageView request = new MessageView().wrap(new DatagramPacket(data, 7, message.length));
+
+        DatagramPacket fromArray = MessageWriter.buildClientForwardingRequestPacket(header, RequestCodes.FWD_GET, address, 1000, address, 2000, 5,
+                request.getPayload(), address, 3000);
+        DatagramPacket fromView = MessageWriter.buildClientForwardingRequestPacket(request, RequestCodes.FWD_GET, address, 1000, address, 2000, 5,
+                request.getPayload(), address, 3000);
+        assertArrayEquals(Arrays.copyOf(fromArray.getData(), fromArray.getLength()), Arrays.copyOf(fromView.getData(), fromView.getLength()));
+
+        ByteBuffer value = ByteBuffer.wrap(randomBytes(20));
+        fromArray = MessageWriter.buildClientForwardingResponsePacket(header, ResponseCodes.OPERATION_SUCCESS, value, address, 1000, address, 2000);
+        fromView = MessageWriter.buildClientForwardingResponsePacket(request, ResponseCodes.OPERATION_SUCCESS, value, address, 1000, address, 2000);
+        assertArrayEquals(Arrays.copyOf(fromArray.getData(), fromArray.getLength()), Arrays.copyOf(fromView.getData(), fromView.getLength()));
+
+        fromArray = MessageWriter.buildClientForwardingResponsePacket(header, ResponseCodes.NON_EXISTENT_KEY, address, 1000, address, 2000);
+        fromView = MessageWriter.buildClientForwardingResponsePacket(request, ResponseCodes.NON_EXISTENT_KEY, address, 1000, address, 2000);
+        assertArrayEquals(Arrays.copyOf(fromArray.getData(), fromArray.getLength()), Arrays.copyOf(fromView.getData(), fromView.getLength()));
+    }
+
+
+    @Test(expected = InvalidMessageException.class)
+    public void testHeaderOutsideBuffer() throws Exception {
+        new MessageWriter(new byte[BufferPool.MAX_BUFFER_SIZE]).writeHeader(ByteBuffer.allocate(20), 8, Header.HEADER_SIZE_BYTES);
+    }
+
+
+    @Test(expected = InvalidMessageException.class)
+    public void testBufferTooSmall() throws Exception {
+        new MessageWriter(new byte[Header.HEADER_SIZE_BYTES]).writeHeader(randomBytes(Header.HEADER_SIZE_BYTES)).writeCommand(RequestCodes.GET);
+    }
+}
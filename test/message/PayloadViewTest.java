@@ -0,0 +1,185 @@
+package message;
+
+import command.RequestCodes;
+import command.ResponseCodes;
+import org.junit.Test;
+import utility.HashUtility;
+
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PayloadViewTest {
+
+    @Test
+    public void testStandardRequestElements() throws Exception {
+        Random random = new Random();
+        byte[] key = new byte[32];
+        random.nextBytes(key);
+        byte[] value = "value".getBytes("UTF-8");
+        byte[] payload = Payload.buildStandardRequestPayload(RequestCodes.PUT, key, value);
+
+        PayloadView view = new PayloadView().wrap(ByteBuffer.wrap(payload), 0, payload.length);
+        assertEquals(RequestCodes.PUT, view.getCommand());
+        byte[] actualKey = new byte[Payload.KEY_SIZE_BYTES];
+        view.copyKey(actualKey);
+        assertArrayEquals(key, actualKey);
+        assertEquals(value.length, view.getRequestValueLength());
+        assertArrayEquals(value, view.getRequestValue());
+        assertEquals("value", view.getRequestValueAsString());
+        assertArrayEquals(payload, view.toByteArray());
+    }
+
+    @Test
+    public void testTimeToLiveFollowsValue() throws Exception {
+        byte[] key = new byte[32];
+        byte[] value = "value".getBytes("UTF-8");
+        byte[] payload = Payload.buildStandardRequestPayload(RequestCodes.PUT_WITH_TTL, key, value, 3600);
+
+        PayloadView view = new PayloadView().wrap(ByteBuffer.wrap(payload), 0, payload.length);
+        assertArrayEquals(value, view.getRequestValue());
+        assertEquals(3600, view.getTimeToLive());
+
+        byte[] withoutTimeToLive = Payload.buildStandardRequestPayload(RequestCodes.PUT, key, value);
+        assertEquals(0, new PayloadView().wrap(ByteBuffer.wrap(withoutTimeToLive), 0, withoutTimeToLive.length).getTimeToLive());
+    }
+
+
+    @Test
+    public void testMatchesGetPayloadElement() throws Exception {
+        byte[] key = Arrays.copyOf("key".getBytes("UTF-8"), Payload.KEY_SIZE_BYTES);
+        byte[] value = "some value".getBytes("UTF-8");
+        byte[] payload = Payload.buildStandardRequestPayload(RequestCodes.PUT, key, value);
+
+        PayloadView view = new PayloadView().wrap(ByteBuffer.wrap(payload), 0, payload.length);
+        assertArrayEquals(Payload.getPayloadElement(Payload.Element.KEY, payload), Arrays.copyOfRange(payload,
+                view.getKeyOffset(), view.getKeyOffset() + Payload.KEY_SIZE_BYTES));
+        assertArrayEquals(Payload.getPayloadElement(Payload.Element.REQUEST_VALUE, payload), view.getRequestValue());
+    }
+
+    @Test
+    public void testClientForwardingElements() throws Exception {
+        byte[] key = new byte[32];
+        byte[] inner = Payload.buildStandardRequestPayload(RequestCodes.GET, key);
+        InetAddress returnAddress = InetAddress.getByName("127.0.0.1");
+        InetAddress clientAddress = InetAddress.getByName("10.0.0.2");
+        byte[] payload = Payload.buildClientForwardingRequestPayload(RequestCodes.FWD_GET, returnAddress, 4000,
+                clientAddress, 5000, 321, inner);
+
+        PayloadView view = new PayloadView().wrap(ByteBuffer.wrap(payload), 0, payload.length);
+        assertEquals(RequestCodes.FWD_GET, view.getCommand());
+        assertEquals(returnAddress, view.getReturnAddress());
+        assertEquals(4000, view.getReturnPort());
+        assertEquals(clientAddress, view.getClientAddress());
+        assertEquals(5000, view.getClientPort());
+        assertEquals(321, view.getRingID());
+        assertEquals(1, view.getHopCount());
+
+        PayloadView forwarded = view.getClientForwardPayload(new PayloadView());
+        assertEquals(RequestCodes.GET, forwarded.getCommand());
+        assertArrayEquals(inner, forwarded.toByteArray());
+    }
+
+    @Test
+    public void testRegularForwardingPayload() throws Exception {
+        byte[] inner = Payload.buildPayloadWithOnlyCommand(ResponseCodes.OPERATION_SUCCESS);
+        InetAddress clientAddress = InetAddress.getByName("10.0.0.3");
+        byte[] payload = Payload.buildForwardingRequestPayload(ResponseCodes.CLIENT_FWD_RESPONSE, clientAddress, 6000, inner);
+
+        PayloadView view = new PayloadView().wrap(ByteBuffer.wrap(payload), 0, payload.length);
+        assertEquals(clientAddress, view.getReturnAddress());
+        assertEquals(6000, view.getReturnPort());
+        assertArrayEquals(inner, view.getRegularForwardPayload(new PayloadView()).toByteArray());
+    }
+
+    @Test
+    public void testSetCommandInPlace() throws Exception {
+        byte[] payload = Payload.buildStandardRequestPayload(RequestCodes.GET, new byte[32]);
+        PayloadView view = new PayloadView().wrap(ByteBuffer.wrap(payload), 0, payload.length);
+        view.setCommand(RequestCodes.REMOVE);
+        assertEquals(RequestCodes.REMOVE, payload[0]);
+    }
+
+    @Test(expected = InvalidMessageException.class)
+    public void testTruncatedKey() throws Exception {
+        byte[] payload = new byte[10];
+        new PayloadView().wrap(ByteBuffer.wrap(payload), 0, payload.length).getKeyAsString();
+    }
+
+    @Test(expected = BadValueLengthException.class)
+    public void testBadValueLength() throws Exception {
+        byte[] payload = new byte[Payload.REQUEST_VALUE_START_INDEX];
+        new PayloadView().wrap(ByteBuffer.wrap(payload), 0, payload.length).getRequestValueLength();
+    }
+
+    @Test
+    public void testMessageViewReadsPacketInPlace() throws Exception {
+        byte[] header = new byte[Header.HEADER_SIZE_BYTES];
+        new Random().nextBytes(header);
+        byte[] payload = Payload.buildStandardRequestPayload(RequestCodes.GET, new byte[32]);
+        byte[] message = Message.buildMessage(header, payload);
+        // Received packets may be shorter than the receive buffer
+        byte[] buffer = Arrays.copyOf(message, message.length + 100);
+        DatagramPacket packet = new DatagramPacket(buffer, message.length);
+
+        MessageView view = new MessageView().wrap(packet);
+        assertArrayEquals(header, view.getHeader());
+        assertTrue(view.headerEquals(header));
+        assertEquals(payload.length, view.getPayload().getLength());
+        assertEquals(RequestCodes.GET, view.getPayload().getCommand());
+    }
+
+    @Test
+    public void testRelayPacketSharesReceivedBuffer() throws Exception {
+        byte[] header = new byte[Header.HEADER_SIZE_BYTES];
+        new Random().nextBytes(header);
+        byte[] inner = Payload.buildStandardRequestPayload(RequestCodes.PUT, new byte[32], new byte[Payload.MAX_VALUE_SIZE_BYTES]);
+        InetAddress address = InetAddress.getByName("127.0.0.1");
+        byte[] message = Message.buildMessage(header, Payload.buildClientForwardingRequestPayload(RequestCodes.FWD_PUT,
+                address, 4000, address, 5000, 0, inner));
+        byte[] buffer = Arrays.copyOf(message, message.length + 100);
+
+        MessageView view = new MessageView().wrap(new DatagramPacket(buffer, message.length));
+        DatagramPacket relay = view.toRelayPacket(RequestCodes.POTENTIAL_IMS_PUT, address, 6000);
+        assertSame(buffer, relay.getData());
+        assertEquals(message.length, relay.getLength());
+        assertEquals(6000, relay.getPort());
+
+        // Only the command and the hop count are rewritten
+        message[Header.HEADER_SIZE_BYTES] = RequestCodes.POTENTIAL_IMS_PUT;
+        message[Header.HEADER_SIZE_BYTES + Payload.CLIENT_FORWARD_HOP_COUNT_START_INDEX] = 2;
+        assertArrayEquals(message, Arrays.copyOf(relay.getData(), relay.getLength()));
+        assertEquals(2, view.getPayload().getHopCount());
+    }
+
+    @Test
+    public void testHopCountSaturates() throws Exception {
+        byte[] payload = Payload.buildClientForwardingRequestPayload(RequestCodes.FWD_GET, InetAddress.getByName("127.0.0.1"), 4000,
+                InetAddress.getByName("127.0.0.1"), 5000, 0, Payload.buildStandardRequestPayload(RequestCodes.GET, new byte[32]));
+        PayloadView view = new PayloadView().wrap(ByteBuffer.wrap(payload), 0, payload.length);
+        view.setHopCount(200);
+        assertEquals(200, view.getHopCount());
+        view.setHopCount(1000);
+        assertEquals(255, view.getHopCount());
+    }
+
+    @Test
+    public void testKeyHashMatchesDecodedKey() throws Exception {
+        byte[] key = new byte[32];
+        new Random().nextBytes(key);
+        byte[] payload = Payload.buildStandardRequestPayload(RequestCodes.GET, key);
+        PayloadView view = new PayloadView().wrap(ByteBuffer.wrap(payload), 0, payload.length);
+        assertEquals(HashUtility.simpleHash(view.getKeyAsString(), HashUtility.DEFAULT_HASH_RANGE),
+                view.getKeyHash(HashUtility.DEFAULT_HASH_RANGE));
+    }
+
+    @Test(expected = InvalidMessageException.class)
+    public void testMessageViewRejectsShortPacket() throws Exception {
+        byte[] buffer = new byte[Header.HEADER_SIZE_BYTES];
+        new MessageView().wrap(new DatagramPacket(buffer, buffer.length));
+    }
+}
@@ -0,0 +1,103 @@
+package protocol;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class MessageHandlerPoolTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidWorkerCount() {
+        new MessageHandlerPool(0, 1);
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidQueueDepth() {
+        new MessageHandlerPool(1, 0);
+    }
+
+
+    @Test
+    public void testSubmitRunsHandler() throws Exception {
+        MessageHandlerPool pool = new MessageHandlerPool(1, 1);
+        final CountDownLatch ran = new CountDownLatch(1);
+
+        assertTrue(pool.submit(new Runnable() {
+            @Override
+            public void run() {
+                ran.countDown();
+            }
+        }));
+
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        pool.shutdown();
+    }
+
+
+    @Test
+    public void testSubmitRejectsWhenSaturated() throws Exception {
+        MessageHandlerPool pool = new MessageHandlerPool(1, 1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Runnable blocking = new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+
+        // Occupy the only worker and the only queue slot
+        assertTrue(pool.submit(blocking));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(pool.submit(blocking));
+        assertEquals(1, pool.getQueueDepth());
+
+        // Pool is saturated
+        assertFalse(pool.submit(blocking));
+        assertEquals(1, pool.getRejectedCount());
+
+        release.countDown();
+        pool.shutdown();
+    }
+
+
+    @Test
+    public void testVirtualThreadModeLimitsHandlersInFlight() throws Exception {
+        MessageHandlerPool pool = new MessageHandlerPool(1, 1, true);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Runnable blocking = new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+
+        // Runtimes without virtual threads fall back to platform threads with one queue slot
+        int accepted = pool.isUsingVirtualThreads() ? 1 : 2;
+        for(int i = 0; i < accepted; i++) {
+            assertTrue(pool.submit(blocking));
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        assertFalse(pool.submit(blocking));
+        assertEquals(1, pool.getRejectedCount());
+
+        release.countDown();
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,62 @@
+package protocol;
+
+import command.RequestCodes;
+import command.ResponseCodes;
+import message.Header;
+import message.Message;
+import message.MessageView;
+import message.MessageWriter;
+import message.Payload;
+import org.junit.Test;
+
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MessageHandlerTest {
+
+    private static DatagramPacket forwardedGET(byte[] header, byte flags) throws Exception {
+        InetAddress address = InetAddress.getByName("127.0.0.1");
+        byte[] payload = Payload.buildClientForwardingRequestPayload(RequestCodes.FWD_GET, address, 4000, address, 5000, 0,
+                Payload.buildStandardRequestPayload(RequestCodes.GET, new byte[32]));
+        payload[Payload.CLIENT_FORWARD_FLAGS_START_INDEX] = flags;
+        byte[] message = Message.buildMessage(header, payload);
+        return new DatagramPacket(message, message.length);
+    }
+
+
+    @Test
+    public void testResponseIsSentToClientWhenFlagged() throws Exception {
+        byte[] header = new byte[Header.HEADER_SIZE_BYTES];
+        new Random().nextBytes(header);
+        byte[] value = "value".getBytes("UTF-8");
+        InetAddress returnAddress = InetAddress.getByName("127.0.0.1");
+        InetAddress clientAddress = InetAddress.getByName("10.0.0.9");
+        DatagramPacket response = MessageWriter.buildClientForwardingResponsePacket(header, ResponseCodes.OPERATION_SUCCESS, value,
+                clientAddress, 5000, returnAddress, 4000);
+
+        MessageHandler handler = new MessageHandler(forwardedGET(header, Payload.FLAG_DIRECT_REPLY));
+        DatagramPacket direct = handler.applyDirectReply(response);
+
+        assertEquals(clientAddress, direct.getAddress());
+        assertEquals(5000, direct.getPort());
+        byte[] expected = Message.buildMessage(header, Payload.buildStandardResponsePayload(ResponseCodes.OPERATION_SUCCESS, value));
+        assertArrayEquals(expected, Arrays.copyOfRange(direct.getData(), direct.getOffset(), direct.getOffset() + direct.getLength()));
+    }
+
+
+    @Test
+    public void testResponseIsRelayedWhenNotFlagged() throws Exception {
+        byte[] header = new byte[Header.HEADER_SIZE_BYTES];
+        InetAddress returnAddress = InetAddress.getByName("127.0.0.1");
+        DatagramPacket response = MessageWriter.buildClientForwardingResponsePacket(header, ResponseCodes.NON_EXISTENT_KEY,
+                InetAddress.getByName("10.0.0.9"), 5000, returnAddress, 4000);
+
+        MessageHandler handler = new MessageHandler(forwardedGET(header, (byte) 0));
+        assertSame(response, handler.applyDirectReply(response));
+        assertEquals(ResponseCodes.CLIENT_FWD_RESPONSE, new MessageView().wrap(response).getPayload().getCommand());
+    }
+}
@@ -0,0 +1,79 @@
+package protocol;
+
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PendingRequestTableTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxPendingRequests() {
+        new PendingRequestTable(0);
+    }
+
+
+    @Test
+    public void testCompleteRemovesRequest() {
+        PendingRequestTable table = new PendingRequestTable(10);
+        byte[] uniqueID = new byte[16];
+        uniqueID[0] = 1;
+
+        table.add(uniqueID, InetAddress.getLoopbackAddress(), 4000);
+        assertTrue(table.isPending(uniqueID.clone()));
+        assertEquals(1, table.getPendingCount());
+
+        assertTrue(table.complete(uniqueID.clone()));
+        assertFalse(table.isPending(uniqueID));
+        assertFalse(table.complete(uniqueID));
+        assertEquals(1, table.getCompletedCount());
+    }
+
+
+    @Test
+    public void testTableIsBounded() {
+        PendingRequestTable table = new PendingRequestTable(2);
+        for(int i = 0; i < 5; i++) {
+            byte[] uniqueID = new byte[16];
+            uniqueID[0] = (byte) i;
+            table.add(uniqueID, InetAddress.getLoopbackAddress(), 4000);
+        }
+        assertEquals(2, table.getPendingCount());
+    }
+
+
+    @Test
+    public void testOnlyExpiredRequestsAreRemoved() {
+        PendingRequestTable table = new PendingRequestTable(10);
+        table.add(new byte[16], InetAddress.getLoopbackAddress(), 4000);
+        assertEquals(0, table.removeAllExpiredEntries());
+        assertEquals(1, table.getPendingCount());
+        assertEquals(0, table.getTimedOutCount());
+    }
+
+
+    @Test
+    public void testClientOfTimedOutRequestIsAnswered() {
+        final List<Integer> answeredPorts = new ArrayList<Integer>();
+        PendingRequestTable table = new PendingRequestTable(10) {
+            @Override
+            protected void sendTimeoutResponse(byte[] uniqueID, InetAddress clientAddress, int clientPort) {
+                answeredPorts.add(clientPort);
+            }
+        };
+        byte[] completedID = new byte[16];
+        completedID[0] = 1;
+        table.add(new byte[16], InetAddress.getLoopbackAddress(), 4000);
+        table.add(completedID, InetAddress.getLoopbackAddress(), 4001);
+        table.complete(completedID);
+
+        assertEquals(1, table.removeAllExpiredEntries(System.currentTimeMillis() + PendingRequestTable.REQUEST_TIMEOUT));
+        assertEquals(1, answeredPorts.size());
+        assertEquals(4000, (int) answeredPorts.get(0));
+        assertEquals(0, table.getPendingCount());
+        assertEquals(1, table.getTimedOutCount());
+    }
+}
@@ -2,6 +2,9 @@ package utility;
 
 import org.junit.Test;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -46,4 +49,22 @@ public class SimpleHashTest {
         }
     }
 
+    @Test
+    public void testBytesMatchDecodedString() {
+        Random random = new Random(431);
+        byte[] key = new byte[32];
+        for(int i = 0; i < 1000; i++) {
+            random.nextBytes(key);
+            if(i % 2 == 0) {
+                // Half of the keys are ASCII only
+                for(int j = 0; j < key.length; j++) {
+                    key[j] &= 0x7F;
+                }
+            }
+            String decoded = new String(key, StandardCharsets.UTF_8);
+            assertEquals(HashUtility.simpleHash(decoded, HashUtility.DEFAULT_HASH_RANGE),
+                    HashUtility.simpleHash(key, 0, key.length, HashUtility.DEFAULT_HASH_RANGE));
+        }
+    }
+
 }